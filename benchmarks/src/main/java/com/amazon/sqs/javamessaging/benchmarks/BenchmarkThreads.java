@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pools used by the load harness and the service fakes. All threads are
+ * daemon threads so that a failed run never keeps the JVM alive.
+ */
+final class BenchmarkThreads {
+
+    private BenchmarkThreads() {
+    }
+
+    static ScheduledExecutorService newScheduler(String name, int threads) {
+        return Executors.newScheduledThreadPool(threads, daemonThreadFactory(name));
+    }
+
+    static ExecutorService newFixedThreadPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(name));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
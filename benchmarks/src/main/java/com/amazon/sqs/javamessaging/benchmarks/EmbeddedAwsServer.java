@@ -0,0 +1,382 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.utils.BinaryUtils;
+import software.amazon.awssdk.utils.IoUtils;
+import software.amazon.awssdk.utils.Md5Utils;
+import software.amazon.awssdk.utils.http.SdkHttpUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Embedded HTTP server speaking enough of the Amazon S3 object API and of the Amazon
+ * SQS JSON API for the operations of the extended clients, so that real SDK clients
+ * can be benchmarked end to end on a machine with no network.
+ *
+ * <p>
+ * Both services are served from the same endpoint. S3 requests must use path-style
+ * addressing. Signatures are not verified. Queues and buckets are created on first use.
+ * Writes to queues or buckets whose name starts with {@value #DISCARDING_NAME_PREFIX}
+ * are accepted but nothing is kept, so that send benchmarks can run for long without
+ * filling the heap. Messages received with a visibility timeout of 0 stay visible.
+ * </p>
+ */
+public final class EmbeddedAwsServer implements AutoCloseable {
+    public static final String DISCARDING_NAME_PREFIX = "discard-";
+
+    private static final String SQS_TARGET_PREFIX = "AmazonSQS.";
+    private static final String SQS_CONTENT_TYPE = "application/x-amz-json-1.0";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Queue<ObjectNode>> queues = new ConcurrentHashMap<>();
+
+    private EmbeddedAwsServer(int threads) throws IOException {
+        this.executor = BenchmarkThreads.newFixedThreadPool("embedded-aws-server", threads);
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.httpServer.setExecutor(executor);
+        this.httpServer.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param threads
+     *            Number of threads handling requests.
+     * @return the running server.
+     */
+    public static EmbeddedAwsServer start(int threads) throws IOException {
+        EmbeddedAwsServer server = new EmbeddedAwsServer(threads);
+        server.httpServer.start();
+        return server;
+    }
+
+    /**
+     * @return the endpoint to pass to the SDK clients as endpoint override.
+     */
+    public URI getEndpoint() {
+        InetSocketAddress address = httpServer.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    /**
+     * @return the URL of the queue with the given name.
+     */
+    public String getQueueUrl(String queueName) {
+        return getEndpoint() + "/123456789012/" + queueName;
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            if (target != null && target.startsWith(SQS_TARGET_PREFIX)) {
+                handleSqs(exchange, target.substring(SQS_TARGET_PREFIX.length()));
+            } else {
+                handleS3(exchange);
+            }
+        } catch (RuntimeException e) {
+            sendResponse(exchange, 500, "text/plain", e.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleS3(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        int keyStart = path.indexOf('/', 1);
+        if (keyStart < 0) {
+            sendS3Error(exchange, 400, "InvalidRequest", "Only path-style object requests are supported.");
+            return;
+        }
+        String bucket = SdkHttpUtils.urlDecode(path.substring(1, keyStart));
+        String objectName = bucket + '/' + SdkHttpUtils.urlDecode(path.substring(keyStart + 1));
+
+        switch (exchange.getRequestMethod()) {
+            case "PUT":
+                byte[] object = readS3Body(exchange);
+                if (!bucket.startsWith(DISCARDING_NAME_PREFIX)) {
+                    objects.put(objectName, object);
+                }
+                exchange.getResponseHeaders().set("ETag", eTag(object));
+                sendResponse(exchange, 200, null, new byte[0]);
+                break;
+            case "GET":
+                byte[] storedObject = objects.get(objectName);
+                if (storedObject == null) {
+                    sendS3Error(exchange, 404, "NoSuchKey", "The specified key does not exist.");
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", eTag(storedObject));
+                sendResponse(exchange, 200, "application/octet-stream", storedObject);
+                break;
+            case "DELETE":
+                objects.remove(objectName);
+                exchange.sendResponseHeaders(204, -1);
+                break;
+            default:
+                sendS3Error(exchange, 405, "MethodNotAllowed", "The specified method is not allowed.");
+                break;
+        }
+    }
+
+    private void handleSqs(HttpExchange exchange, String operation) throws IOException {
+        JsonNode request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = OBJECT_MAPPER.readTree(body);
+        }
+
+        ObjectNode response = OBJECT_MAPPER.createObjectNode();
+        switch (operation) {
+            case "SendMessage":
+                putSendResult(response, enqueue(request.path("QueueUrl").asText(), request));
+                break;
+            case "SendMessageBatch":
+                ArrayNode successful = response.putArray("Successful");
+                for (JsonNode entry : request.path("Entries")) {
+                    ObjectNode result = successful.addObject().put("Id", entry.path("Id").asText());
+                    putSendResult(result, enqueue(request.path("QueueUrl").asText(), entry));
+                }
+                response.putArray("Failed");
+                break;
+            case "ReceiveMessage":
+                response.set("Messages", receive(request));
+                break;
+            case "DeleteMessage":
+            case "ChangeMessageVisibility":
+                break;
+            case "DeleteMessageBatch":
+            case "ChangeMessageVisibilityBatch":
+                ArrayNode deleted = response.putArray("Successful");
+                for (JsonNode entry : request.path("Entries")) {
+                    deleted.addObject().put("Id", entry.path("Id").asText());
+                }
+                response.putArray("Failed");
+                break;
+            default:
+                ObjectNode error = OBJECT_MAPPER.createObjectNode()
+                    .put("__type", "com.amazon.coral.service#UnknownOperationException")
+                    .put("message", "Operation " + operation + " is not supported by the embedded server.");
+                sendResponse(exchange, 400, SQS_CONTENT_TYPE, OBJECT_MAPPER.writeValueAsBytes(error));
+                return;
+        }
+        sendResponse(exchange, 200, SQS_CONTENT_TYPE, OBJECT_MAPPER.writeValueAsBytes(response));
+    }
+
+    private ObjectNode enqueue(String queueUrl, JsonNode entry) {
+        String body = entry.path("MessageBody").asText();
+        ObjectNode message = OBJECT_MAPPER.createObjectNode()
+            .put("MessageId", UUID.randomUUID().toString())
+            .put("Body", body)
+            .put("MD5OfBody", md5Hex(body.getBytes(StandardCharsets.UTF_8)));
+        JsonNode messageAttributes = entry.path("MessageAttributes");
+        if (messageAttributes.size() > 0) {
+            message.set("MessageAttributes", messageAttributes);
+            message.put("MD5OfMessageAttributes", md5OfMessageAttributes(messageAttributes));
+        }
+
+        if (!queueName(queueUrl).startsWith(DISCARDING_NAME_PREFIX)) {
+            getQueue(queueUrl).add(message);
+        }
+        return message;
+    }
+
+    private static void putSendResult(ObjectNode result, ObjectNode message) {
+        result.put("MessageId", message.path("MessageId").asText());
+        result.put("MD5OfMessageBody", message.path("MD5OfBody").asText());
+        if (message.has("MD5OfMessageAttributes")) {
+            result.put("MD5OfMessageAttributes", message.path("MD5OfMessageAttributes").asText());
+        }
+    }
+
+    private ArrayNode receive(JsonNode request) {
+        Queue<ObjectNode> queue = getQueue(request.path("QueueUrl").asText());
+        int maxNumberOfMessages = request.path("MaxNumberOfMessages").asInt(1);
+        boolean staysVisible = request.path("VisibilityTimeout").asInt(-1) == 0;
+
+        ArrayNode messages = OBJECT_MAPPER.createArrayNode();
+        List<ObjectNode> polled = new ArrayList<>(maxNumberOfMessages);
+        ObjectNode message;
+        while (polled.size() < maxNumberOfMessages && (message = queue.poll()) != null) {
+            polled.add(message);
+            messages.add(message.deepCopy().put("ReceiptHandle", UUID.randomUUID().toString()));
+        }
+        if (staysVisible) {
+            queue.addAll(polled);
+        }
+        return messages;
+    }
+
+    private Queue<ObjectNode> getQueue(String queueUrl) {
+        return queues.computeIfAbsent(queueName(queueUrl), k -> new ConcurrentLinkedQueue<>());
+    }
+
+    private static String queueName(String queueUrl) {
+        return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Reads the body of an S3 upload, decoding the <code>aws-chunked</code> encoding used
+     * by the SDK to sign streamed payloads over plain HTTP.
+     */
+    private static byte[] readS3Body(HttpExchange exchange) throws IOException {
+        String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        try (InputStream body = exchange.getRequestBody()) {
+            if (contentSha256 == null || !contentSha256.startsWith("STREAMING-")) {
+                return IoUtils.toByteArray(body);
+            }
+
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            while (true) {
+                String chunkHeader = readLine(body);
+                int extensionStart = chunkHeader.indexOf(';');
+                int chunkSize = Integer.parseInt(
+                    (extensionStart < 0 ? chunkHeader : chunkHeader.substring(0, extensionStart)).trim(), 16);
+                if (chunkSize == 0) {
+                    return decoded.toByteArray();
+                }
+                byte[] chunk = new byte[chunkSize];
+                int read = 0;
+                while (read < chunkSize) {
+                    int count = body.read(chunk, read, chunkSize - read);
+                    if (count < 0) {
+                        throw new IOException("Unexpected end of aws-chunked body.");
+                    }
+                    read += count;
+                }
+                decoded.write(chunk, 0, chunkSize);
+                readLine(body);
+            }
+        }
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = inputStream.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("Unexpected end of aws-chunked body.");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void sendS3Error(HttpExchange exchange, int statusCode, String code, String message)
+        throws IOException {
+        String error = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code + "</Code><Message>"
+                       + message + "</Message></Error>";
+        sendResponse(exchange, statusCode, "application/xml", error.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendResponse(HttpExchange exchange, int statusCode, String contentType, byte[] body)
+        throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+
+    private static String eTag(byte[] object) {
+        return "\"" + md5Hex(object) + "\"";
+    }
+
+    private static String md5Hex(byte[] bytes) {
+        return BinaryUtils.toHex(Md5Utils.computeMD5Hash(bytes));
+    }
+
+    /**
+     * Computes the MD5 of message attributes the way SQS does, which the SDK validates on
+     * every send and receive.
+     */
+    private static String md5OfMessageAttributes(JsonNode messageAttributes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Map<String, JsonNode> sortedAttributes = new TreeMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = messageAttributes.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            sortedAttributes.put(field.getKey(), field.getValue());
+        }
+        for (Map.Entry<String, JsonNode> attribute : sortedAttributes.entrySet()) {
+            JsonNode value = attribute.getValue();
+            updateLengthAndBytes(digest, attribute.getKey().getBytes(StandardCharsets.UTF_8));
+            updateLengthAndBytes(digest, value.path("DataType").asText().getBytes(StandardCharsets.UTF_8));
+            if (value.hasNonNull("StringValue")) {
+                digest.update((byte) 1);
+                updateLengthAndBytes(digest, value.get("StringValue").asText().getBytes(StandardCharsets.UTF_8));
+            } else if (value.hasNonNull("BinaryValue")) {
+                digest.update((byte) 2);
+                updateLengthAndBytes(digest, Base64.getDecoder().decode(value.get("BinaryValue").asText()));
+            }
+        }
+        return BinaryUtils.toHex(digest.digest());
+    }
+
+    private static void updateLengthAndBytes(MessageDigest digest, byte[] bytes) {
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Adds latency, throttling and failures to the calls made to the in-memory service fakes.
+ *
+ * <p>
+ * Every call is delayed by the configured latency plus a uniformly distributed jitter.
+ * It is then rejected with a throttling error with probability <code>throttleRate</code>,
+ * or with a client error with probability <code>failureRate</code>.
+ * </p>
+ */
+public final class FaultInjector {
+    private static final FaultInjector NONE = new FaultInjector(Duration.ZERO, Duration.ZERO, 0d, 0d);
+
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double throttleRate;
+    private final double failureRate;
+
+    public FaultInjector(Duration latency, Duration jitter, double throttleRate, double failureRate) {
+        if (latency.isNegative() || jitter.isNegative()) {
+            throw new IllegalArgumentException("Latency and jitter cannot be negative.");
+        }
+        if (throttleRate < 0d || failureRate < 0d || throttleRate + failureRate > 1d) {
+            throw new IllegalArgumentException("Throttle and failure rates must be between 0 and 1 in total.");
+        }
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.throttleRate = throttleRate;
+        this.failureRate = failureRate;
+    }
+
+    public static FaultInjector none() {
+        return NONE;
+    }
+
+    /**
+     * Runs the operation on the calling thread after the injected delay.
+     */
+    <T> T call(String throttlingErrorCode, Supplier<T> operation) {
+        long delayNanos = nextDelayNanos();
+        if (delayNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw AbortedException.create("Interrupted while injecting latency.", e);
+            }
+        }
+        injectFailure(throttlingErrorCode);
+        return operation.get();
+    }
+
+    /**
+     * Runs the operation on the scheduler once the injected delay has passed, without
+     * blocking the calling thread.
+     */
+    <T> CompletableFuture<T> callAsync(String throttlingErrorCode, ScheduledExecutorService scheduler,
+                                       Supplier<T> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                injectFailure(throttlingErrorCode);
+                result.complete(operation.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+
+        long delayNanos = nextDelayNanos();
+        if (delayNanos > 0) {
+            scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        } else {
+            scheduler.execute(task);
+        }
+        return result;
+    }
+
+    private long nextDelayNanos() {
+        if (jitterNanos == 0) {
+            return latencyNanos;
+        }
+        return latencyNanos + ThreadLocalRandom.current().nextLong(jitterNanos + 1);
+    }
+
+    private void injectFailure(String throttlingErrorCode) {
+        if (throttleRate == 0d && failureRate == 0d) {
+            return;
+        }
+
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random < throttleRate) {
+            throw AwsServiceException.builder()
+                .statusCode(503)
+                .message("Injected throttling.")
+                .awsErrorDetails(AwsErrorDetails.builder()
+                    .errorCode(throttlingErrorCode)
+                    .errorMessage("Injected throttling.")
+                    .build())
+                .build();
+        }
+        if (random < throttleRate + failureRate) {
+            throw SdkClientException.create("Injected failure.");
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClient;
+import com.amazon.sqs.javamessaging.ExtendedClientConfiguration;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Measures the heap used by the sync extended client to send and receive one large
+ * message, and fails when it exceeds the configured budget.
+ *
+ * <p>
+ * For every payload size, two values are recorded for the thread doing the work:
+ * </p>
+ * <ul>
+ * <li>the bytes allocated, read from the thread allocation counter,</li>
+ * <li>the peak heap above the heap in use before the operation, summed over all heap
+ * pools. Garbage not yet collected is included, so this is the heap the operation
+ * needs to complete without triggering a collection.</li>
+ * </ul>
+ * <p>
+ * The in-memory fakes add no copies of their own to the send path: uploads are read and
+ * dropped. For receive, the stored object exists before the measurement starts and is
+ * part of the baseline.
+ * </p>
+ * <p>
+ * Each budget is <code>ratio * payloadBytes + overheadBytes</code>, read from a
+ * properties file. The process exits with status 1 when any budget is exceeded.
+ * </p>
+ */
+public final class HeapFootprintGate {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/heap-footprint";
+    private static final String DISCARDING_BUCKET_NAME = EmbeddedAwsServer.DISCARDING_NAME_PREFIX + "heap-footprint";
+    private static final String BUCKET_NAME = "heap-footprint";
+    private static final String ROW_FORMAT = "%-8s %14s %16s %8s %16s %8s %s%n";
+
+    private final Properties budgets;
+
+    private HeapFootprintGate(Properties budgets) {
+        this.budgets = budgets;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = LoadHarness.parseOptions(args);
+        Properties budgets = new Properties();
+        try (InputStream budgetFile = Files.newInputStream(
+            Paths.get(options.getOrDefault("budget-file", "heap-footprint-budget.properties")))) {
+            budgets.load(budgetFile);
+        }
+        HeapFootprintGate gate = new HeapFootprintGate(budgets);
+
+        // Load and compile the code paths before measuring anything
+        gate.measureSend(1024);
+        gate.measureReceive(1024);
+
+        List<String> failures = new ArrayList<>();
+        System.out.printf(ROW_FORMAT, "op", "payload", "allocated", "ratio", "peak heap", "ratio", "");
+        for (String size : LoadHarness.parseList(options.getOrDefault("sizes", "1MB,64MB,512MB,1536MB"))) {
+            int payloadBytes = parseSize(size);
+            for (String operation : LoadHarness.parseList(options.getOrDefault("operations", "send,receive"))) {
+                Footprint footprint = "send".equals(operation)
+                    ? gate.measureSend(payloadBytes)
+                    : gate.measureReceive(payloadBytes);
+                gate.check(operation, payloadBytes, footprint, failures);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            System.out.println();
+            for (String failure : failures) {
+                System.out.println("FAILED: " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    private Footprint measureSend(int payloadBytes) {
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(new InMemorySqsClient(FaultInjector.none()),
+            new ExtendedClientConfiguration().withPayloadSupportEnabled(
+                new InMemoryS3Client(FaultInjector.none()), DISCARDING_BUCKET_NAME));
+        SendMessageRequest sendMessageRequest = SendMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .messageBody(BenchmarkPayloads.generateStringWithLength(payloadBytes))
+            .build();
+
+        return measure(() -> sqsExtended.sendMessage(sendMessageRequest));
+    }
+
+    private Footprint measureReceive(int payloadBytes) {
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(new InMemorySqsClient(FaultInjector.none()),
+            new ExtendedClientConfiguration().withPayloadSupportEnabled(
+                new InMemoryS3Client(FaultInjector.none()), BUCKET_NAME));
+        sqsExtended.sendMessage(SendMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .messageBody(BenchmarkPayloads.generateStringWithLength(payloadBytes))
+            .build());
+        ReceiveMessageRequest receiveMessageRequest = ReceiveMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .build();
+
+        ReceiveMessageResponse[] response = new ReceiveMessageResponse[1];
+        Footprint footprint = measure(() -> response[0] = sqsExtended.receiveMessage(receiveMessageRequest));
+        if (response[0].messages().get(0).body().length() != payloadBytes) {
+            throw new IllegalStateException("Received payload does not match the payload sent.");
+        }
+        return footprint;
+    }
+
+    private void check(String operation, int payloadBytes, Footprint footprint, List<String> failures) {
+        long overheadBytes = Long.parseLong(budgets.getProperty("overhead.bytes", "0"));
+        double allocatedRatio = Double.parseDouble(budgets.getProperty(operation + ".allocated.ratio"));
+        double peakRatio = Double.parseDouble(budgets.getProperty(operation + ".peak.ratio"));
+        long allocatedBudget = (long) (allocatedRatio * payloadBytes) + overheadBytes;
+        long peakBudget = (long) (peakRatio * payloadBytes) + overheadBytes;
+
+        List<String> exceeded = new ArrayList<>();
+        if (footprint.allocatedBytes > allocatedBudget) {
+            exceeded.add(String.format(Locale.ROOT, "%s of %s allocated %s, budget is %s", operation,
+                formatBytes(payloadBytes), formatBytes(footprint.allocatedBytes), formatBytes(allocatedBudget)));
+        }
+        if (footprint.peakHeapBytes > peakBudget) {
+            exceeded.add(String.format(Locale.ROOT, "%s of %s peaked at %s of heap, budget is %s", operation,
+                formatBytes(payloadBytes), formatBytes(footprint.peakHeapBytes), formatBytes(peakBudget)));
+        }
+        failures.addAll(exceeded);
+
+        System.out.printf(ROW_FORMAT, operation, formatBytes(payloadBytes),
+            formatBytes(footprint.allocatedBytes),
+            String.format(Locale.ROOT, "%.2f", (double) footprint.allocatedBytes / payloadBytes),
+            formatBytes(footprint.peakHeapBytes),
+            String.format(Locale.ROOT, "%.2f", (double) footprint.peakHeapBytes / payloadBytes),
+            exceeded.isEmpty() ? "" : "OVER BUDGET");
+    }
+
+    private static Footprint measure(Runnable operation) {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        long baselineBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+                baselineBytes += pool.getUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        long allocatedBefore = getCurrentThreadAllocatedBytes();
+
+        operation.run();
+
+        long allocatedBytes = getCurrentThreadAllocatedBytes() - allocatedBefore;
+        long peakBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakBytes += pool.getPeakUsage().getUsed();
+        }
+        return new Footprint(allocatedBytes, Math.max(0L, peakBytes - baselineBytes));
+    }
+
+    private static long getCurrentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            throw new IllegalStateException("Thread allocation counters are not supported by this JVM.");
+        }
+        return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+    }
+
+    static int parseSize(String size) {
+        String upperCaseSize = size.toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        String number = upperCaseSize;
+        if (upperCaseSize.endsWith("GB")) {
+            multiplier = 1L << 30;
+            number = upperCaseSize.substring(0, upperCaseSize.length() - 2);
+        } else if (upperCaseSize.endsWith("MB")) {
+            multiplier = 1L << 20;
+            number = upperCaseSize.substring(0, upperCaseSize.length() - 2);
+        } else if (upperCaseSize.endsWith("KB")) {
+            multiplier = 1L << 10;
+            number = upperCaseSize.substring(0, upperCaseSize.length() - 2);
+        }
+        return Math.toIntExact(Long.parseLong(number.trim()) * multiplier);
+    }
+
+    private static String formatBytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (double) (1L << 20));
+    }
+
+    private static final class Footprint {
+        private final long allocatedBytes;
+        private final long peakHeapBytes;
+
+        private Footprint(long allocatedBytes, long peakHeapBytes) {
+            this.allocatedBytes = allocatedBytes;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+}
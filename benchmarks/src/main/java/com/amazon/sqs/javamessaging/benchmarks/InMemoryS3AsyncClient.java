@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * In-memory {@link S3AsyncClient}, backed by an {@link InMemoryS3Client}. Injected
+ * latency is waited for on a scheduler, so calls never block the caller.
+ */
+public class InMemoryS3AsyncClient implements S3AsyncClient {
+    private static final String THROTTLING_ERROR_CODE = "SlowDown";
+
+    private final InMemoryS3Client s3Client = new InMemoryS3Client(FaultInjector.none());
+    private final FaultInjector faultInjector;
+    private final ScheduledExecutorService scheduler;
+
+    public InMemoryS3AsyncClient(FaultInjector faultInjector, int threads) {
+        this.faultInjector = faultInjector;
+        this.scheduler = BenchmarkThreads.newScheduler("in-memory-s3", threads);
+    }
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest putObjectRequest,
+                                                          AsyncRequestBody requestBody) {
+        return readAll(requestBody).thenCompose(object -> faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> {
+                s3Client.writeObject(putObjectRequest.bucket(), putObjectRequest.key(), object);
+                return PutObjectResponse.builder().build();
+            }));
+    }
+
+    @Override
+    public <ReturnT> CompletableFuture<ReturnT> getObject(
+        GetObjectRequest getObjectRequest, AsyncResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+                () -> s3Client.readObject(getObjectRequest.bucket(), getObjectRequest.key()))
+            .thenCompose(object -> {
+                CompletableFuture<ReturnT> result = responseTransformer.prepare();
+                responseTransformer.onResponse(
+                    GetObjectResponse.builder().contentLength((long) object.length).build());
+                responseTransformer.onStream(AsyncRequestBody.fromBytes(object));
+                return result;
+            });
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectResponse> deleteObject(DeleteObjectRequest deleteObjectRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler, () -> {
+            s3Client.removeObject(deleteObjectRequest.bucket(), deleteObjectRequest.key());
+            return DeleteObjectResponse.builder().build();
+        });
+    }
+
+    /**
+     * @return the number of objects currently stored.
+     */
+    public int getObjectCount() {
+        return s3Client.getObjectCount();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static CompletableFuture<byte[]> readAll(Publisher<ByteBuffer> publisher) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        publisher.subscribe(new Subscriber<ByteBuffer>() {
+            private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer byteBuffer) {
+                byte[] bytes = new byte[byteBuffer.remaining()];
+                byteBuffer.get(bytes);
+                content.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(content.toByteArray());
+            }
+        });
+        return result;
+    }
+}
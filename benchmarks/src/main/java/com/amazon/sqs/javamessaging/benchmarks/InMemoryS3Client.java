@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.utils.IoUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory {@link S3Client} supporting the object operations used to offload payloads.
+ * Uploads to buckets whose name starts with {@link EmbeddedAwsServer#DISCARDING_NAME_PREFIX}
+ * are read and dropped, so that no copy of the payload is kept.
+ */
+public class InMemoryS3Client implements S3Client {
+    private static final String THROTTLING_ERROR_CODE = "SlowDown";
+
+    private final FaultInjector faultInjector;
+    private final ConcurrentMap<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    public InMemoryS3Client(FaultInjector faultInjector) {
+        this.faultInjector = faultInjector;
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest putObjectRequest, RequestBody requestBody) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            try (InputStream content = requestBody.contentStreamProvider().newStream()) {
+                if (putObjectRequest.bucket().startsWith(EmbeddedAwsServer.DISCARDING_NAME_PREFIX)) {
+                    IoUtils.drainInputStream(content);
+                } else {
+                    writeObject(putObjectRequest.bucket(), putObjectRequest.key(), IoUtils.toByteArray(content));
+                }
+            } catch (IOException e) {
+                throw SdkClientException.create("Failed to read the request body.", e);
+            }
+            return PutObjectResponse.builder().build();
+        });
+    }
+
+    @Override
+    public <ReturnT> ReturnT getObject(GetObjectRequest getObjectRequest,
+                                       ResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            byte[] object = readObject(getObjectRequest.bucket(), getObjectRequest.key());
+            GetObjectResponse response = GetObjectResponse.builder().contentLength((long) object.length).build();
+            try {
+                return responseTransformer.transform(response,
+                    AbortableInputStream.create(new ByteArrayInputStream(object)));
+            } catch (Exception e) {
+                throw SdkClientException.create("Failed to transform the response.", e);
+            }
+        });
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest deleteObjectRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            removeObject(deleteObjectRequest.bucket(), deleteObjectRequest.key());
+            return DeleteObjectResponse.builder().build();
+        });
+    }
+
+    /**
+     * @return the number of objects currently stored.
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    void writeObject(String bucket, String key, byte[] object) {
+        objects.put(bucket + '/' + key, object);
+    }
+
+    byte[] readObject(String bucket, String key) {
+        byte[] object = objects.get(bucket + '/' + key);
+        if (object == null) {
+            throw NoSuchKeyException.builder().statusCode(404).message("The specified key does not exist.").build();
+        }
+        return object;
+    }
+
+    void removeObject(String bucket, String key) {
+        objects.remove(bucket + '/' + key);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * In-memory {@link SqsAsyncClient}, backed by an {@link InMemorySqsClient}. Injected
+ * latency is waited for on a scheduler, so calls never block the caller.
+ */
+public class InMemorySqsAsyncClient implements SqsAsyncClient {
+    private static final String THROTTLING_ERROR_CODE = "ThrottlingException";
+
+    private final InMemorySqsClient sqsClient = new InMemorySqsClient(FaultInjector.none());
+    private final FaultInjector faultInjector;
+    private final ScheduledExecutorService scheduler;
+
+    public InMemorySqsAsyncClient(FaultInjector faultInjector, int threads) {
+        this.faultInjector = faultInjector;
+        this.scheduler = BenchmarkThreads.newScheduler("in-memory-sqs", threads);
+    }
+
+    @Override
+    public CompletableFuture<SendMessageResponse> sendMessage(SendMessageRequest sendMessageRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> sqsClient.sendMessage(sendMessageRequest));
+    }
+
+    @Override
+    public CompletableFuture<SendMessageBatchResponse> sendMessageBatch(
+        SendMessageBatchRequest sendMessageBatchRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> sqsClient.sendMessageBatch(sendMessageBatchRequest));
+    }
+
+    @Override
+    public CompletableFuture<ReceiveMessageResponse> receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> sqsClient.receiveMessage(receiveMessageRequest));
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageResponse> deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> sqsClient.deleteMessage(deleteMessageRequest));
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageBatchResponse> deleteMessageBatch(
+        DeleteMessageBatchRequest deleteMessageBatchRequest) {
+        return faultInjector.callAsync(THROTTLING_ERROR_CODE, scheduler,
+            () -> sqsClient.deleteMessageBatch(deleteMessageBatchRequest));
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
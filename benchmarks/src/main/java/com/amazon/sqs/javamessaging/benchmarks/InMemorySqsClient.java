@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory {@link SqsClient} supporting the operations used by the extended client
+ * to send, receive and delete messages.
+ *
+ * <p>
+ * Received messages stay in flight until they are deleted; visibility timeouts are not
+ * modelled. Calls do not go through the SDK request pipeline, so injected throttling
+ * is never retried by the SDK.
+ * </p>
+ */
+public class InMemorySqsClient implements SqsClient {
+    private static final String THROTTLING_ERROR_CODE = "ThrottlingException";
+
+    private final FaultInjector faultInjector;
+    private final ConcurrentMap<String, Queue<Message>> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Message> inFlightMessages = new ConcurrentHashMap<>();
+
+    public InMemorySqsClient(FaultInjector faultInjector) {
+        this.faultInjector = faultInjector;
+    }
+
+    @Override
+    public SendMessageResponse sendMessage(SendMessageRequest sendMessageRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> SendMessageResponse.builder()
+            .messageId(enqueue(sendMessageRequest.queueUrl(), sendMessageRequest.messageBody(),
+                sendMessageRequest.messageAttributes()))
+            .build());
+    }
+
+    @Override
+    public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>();
+            for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.entries()) {
+                String messageId = enqueue(sendMessageBatchRequest.queueUrl(), entry.messageBody(),
+                    entry.messageAttributes());
+                successful.add(SendMessageBatchResultEntry.builder().id(entry.id()).messageId(messageId).build());
+            }
+            return SendMessageBatchResponse.builder().successful(successful).build();
+        });
+    }
+
+    @Override
+    public ReceiveMessageResponse receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            int maxNumberOfMessages = receiveMessageRequest.maxNumberOfMessages() == null
+                ? 1 : receiveMessageRequest.maxNumberOfMessages();
+            Queue<Message> queue = getQueue(receiveMessageRequest.queueUrl());
+
+            List<Message> messages = new ArrayList<>(maxNumberOfMessages);
+            Message message;
+            while (messages.size() < maxNumberOfMessages && (message = queue.poll()) != null) {
+                Message receivedMessage = message.toBuilder().receiptHandle(UUID.randomUUID().toString()).build();
+                inFlightMessages.put(receivedMessage.receiptHandle(), receivedMessage);
+                messages.add(receivedMessage);
+            }
+            return ReceiveMessageResponse.builder().messages(messages).build();
+        });
+    }
+
+    @Override
+    public DeleteMessageResponse deleteMessage(DeleteMessageRequest deleteMessageRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            inFlightMessages.remove(deleteMessageRequest.receiptHandle());
+            return DeleteMessageResponse.builder().build();
+        });
+    }
+
+    @Override
+    public DeleteMessageBatchResponse deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest) {
+        return faultInjector.call(THROTTLING_ERROR_CODE, () -> {
+            List<DeleteMessageBatchResultEntry> successful = new ArrayList<>();
+            for (DeleteMessageBatchRequestEntry entry : deleteMessageBatchRequest.entries()) {
+                inFlightMessages.remove(entry.receiptHandle());
+                successful.add(DeleteMessageBatchResultEntry.builder().id(entry.id()).build());
+            }
+            return DeleteMessageBatchResponse.builder().successful(successful).build();
+        });
+    }
+
+    /**
+     * @return the number of messages waiting to be received from the queue.
+     */
+    public int getApproximateNumberOfMessages(String queueUrl) {
+        return getQueue(queueUrl).size();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private String enqueue(String queueUrl, String messageBody, Map<String, MessageAttributeValue> attributes) {
+        String messageId = UUID.randomUUID().toString();
+        getQueue(queueUrl).add(Message.builder()
+            .messageId(messageId)
+            .body(messageBody)
+            .messageAttributes(attributes)
+            .build());
+        return messageId;
+    }
+
+    private Queue<Message> getQueue(String queueUrl) {
+        return queues.computeIfAbsent(queueUrl, k -> new ConcurrentLinkedQueue<>());
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedAsyncClient;
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClient;
+import com.amazon.sqs.javamessaging.ExtendedAsyncClientConfiguration;
+import com.amazon.sqs.javamessaging.ExtendedClientConfiguration;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the extended clients against in-memory SQS and S3 fakes and reports
+ * throughput and latency percentiles for send, receive and delete.
+ *
+ * <p>
+ * Each scenario runs the three operations at the same time, each at a fixed rate:
+ * senders fill the queue, receivers drain it and deleters delete what was received.
+ * Options are given as <code>--name=value</code>; comma separated values are swept.
+ * See the benchmarks README for the list of options.
+ * </p>
+ */
+public final class LoadHarness {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/load-harness";
+    private static final String S3_BUCKET_NAME = "load-harness-bucket";
+    private static final String ROW_FORMAT = "%-6s %-8s %10s %10s %8s %10s %10s %10s %10s %10s %8s %8s%n";
+
+    private final double rate;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final int receiveBatchSize;
+    private final int fakeThreads;
+    private final FaultInjector sqsFaultInjector;
+    private final FaultInjector s3FaultInjector;
+
+    private LoadHarness(Map<String, String> options) {
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup-seconds", "2")));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration-seconds", "10")));
+        this.receiveBatchSize = Integer.parseInt(options.getOrDefault("receive-batch-size", "10"));
+        this.fakeThreads = Integer.parseInt(options.getOrDefault("fake-threads", "8"));
+
+        Duration jitter = Duration.ofMillis(Long.parseLong(options.getOrDefault("jitter-ms", "2")));
+        double throttleRate = Double.parseDouble(options.getOrDefault("throttle-rate", "0"));
+        double failureRate = Double.parseDouble(options.getOrDefault("failure-rate", "0"));
+        this.sqsFaultInjector = new FaultInjector(
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("sqs-latency-ms", "5"))),
+            jitter, throttleRate, failureRate);
+        this.s3FaultInjector = new FaultInjector(
+            Duration.ofMillis(Long.parseLong(options.getOrDefault("s3-latency-ms", "20"))),
+            jitter, throttleRate, failureRate);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        LoadHarness loadHarness = new LoadHarness(options);
+
+        System.out.printf(ROW_FORMAT, "client", "op", "payload", "threshold", "threads", "msgs/s", "p50 ms",
+            "p99 ms", "p99.9 ms", "max ms", "ops", "errors");
+        for (String client : parseList(options.getOrDefault("clients", "sync,async"))) {
+            for (String threshold : parseList(options.getOrDefault("thresholds", "262144"))) {
+                for (String payloadBytes : parseList(options.getOrDefault("payload-bytes", "1024,262145,1048576"))) {
+                    if ("async".equals(client)) {
+                        loadHarness.runAsync(Integer.parseInt(payloadBytes), Integer.parseInt(threshold));
+                        continue;
+                    }
+                    for (String threads : parseList(options.getOrDefault("threads", "4,16"))) {
+                        loadHarness.runSync(Integer.parseInt(payloadBytes), Integer.parseInt(threshold),
+                            Integer.parseInt(threads));
+                    }
+                }
+            }
+        }
+    }
+
+    private void runSync(int payloadBytes, int threshold, int threads) throws Exception {
+        InMemoryS3Client s3Client = new InMemoryS3Client(s3FaultInjector);
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(new InMemorySqsClient(sqsFaultInjector),
+            new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(s3Client, S3_BUCKET_NAME)
+                .withPayloadSizeThreshold(threshold));
+
+        SendMessageRequest sendMessageRequest = newSendMessageRequest(payloadBytes);
+        ReceiveMessageRequest receiveMessageRequest = newReceiveMessageRequest();
+        Queue<String> receiptHandles = new ConcurrentLinkedQueue<>();
+
+        ExecutorService phases = BenchmarkThreads.newFixedThreadPool("load-phase", 3);
+        try {
+            Future<OpenLoopDriver.Result> send = phases.submit(() -> newDriver(rate).runBlocking(threads, () -> {
+                sqsExtended.sendMessage(sendMessageRequest);
+                return 1;
+            }));
+            Future<OpenLoopDriver.Result> receive = phases.submit(() -> newDriver(rate / receiveBatchSize)
+                .runBlocking(threads, () -> {
+                    List<Message> messages = sqsExtended.receiveMessage(receiveMessageRequest).messages();
+                    for (Message message : messages) {
+                        receiptHandles.add(message.receiptHandle());
+                    }
+                    return messages.size();
+                }));
+            Future<OpenLoopDriver.Result> delete = phases.submit(() -> newDriver(rate).runBlocking(threads, () -> {
+                String receiptHandle = receiptHandles.poll();
+                if (receiptHandle == null) {
+                    return null;
+                }
+                sqsExtended.deleteMessage(newDeleteMessageRequest(receiptHandle));
+                return 1;
+            }));
+
+            printResult("sync", "send", payloadBytes, threshold, threads, send.get());
+            printResult("sync", "receive", payloadBytes, threshold, threads, receive.get());
+            printResult("sync", "delete", payloadBytes, threshold, threads, delete.get());
+        } finally {
+            phases.shutdownNow();
+            sqsExtended.close();
+        }
+    }
+
+    private void runAsync(int payloadBytes, int threshold) throws Exception {
+        InMemoryS3AsyncClient s3AsyncClient = new InMemoryS3AsyncClient(s3FaultInjector, fakeThreads);
+        SqsAsyncClient sqsExtended = new AmazonSQSExtendedAsyncClient(
+            new InMemorySqsAsyncClient(sqsFaultInjector, fakeThreads),
+            new ExtendedAsyncClientConfiguration()
+                .withPayloadSupportEnabled(s3AsyncClient, S3_BUCKET_NAME)
+                .withPayloadSizeThreshold(threshold));
+
+        SendMessageRequest sendMessageRequest = newSendMessageRequest(payloadBytes);
+        ReceiveMessageRequest receiveMessageRequest = newReceiveMessageRequest();
+        Queue<String> receiptHandles = new ConcurrentLinkedQueue<>();
+
+        ExecutorService phases = BenchmarkThreads.newFixedThreadPool("load-phase", 3);
+        try {
+            Future<OpenLoopDriver.Result> send = phases.submit(() -> newDriver(rate).runAsync(
+                () -> sqsExtended.sendMessage(sendMessageRequest).thenApply(response -> 1)));
+            Future<OpenLoopDriver.Result> receive = phases.submit(() -> newDriver(rate / receiveBatchSize).runAsync(
+                () -> sqsExtended.receiveMessage(receiveMessageRequest).thenApply(response -> {
+                    for (Message message : response.messages()) {
+                        receiptHandles.add(message.receiptHandle());
+                    }
+                    return response.messages().size();
+                })));
+            Future<OpenLoopDriver.Result> delete = phases.submit(() -> newDriver(rate).runAsync(() -> {
+                String receiptHandle = receiptHandles.poll();
+                if (receiptHandle == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return sqsExtended.deleteMessage(newDeleteMessageRequest(receiptHandle)).thenApply(response -> 1);
+            }));
+
+            printResult("async", "send", payloadBytes, threshold, -1, send.get());
+            printResult("async", "receive", payloadBytes, threshold, -1, receive.get());
+            printResult("async", "delete", payloadBytes, threshold, -1, delete.get());
+        } finally {
+            phases.shutdownNow();
+            sqsExtended.close();
+            s3AsyncClient.close();
+        }
+    }
+
+    private OpenLoopDriver newDriver(double ratePerSecond) {
+        return new OpenLoopDriver(ratePerSecond, warmupNanos, durationNanos);
+    }
+
+    private static SendMessageRequest newSendMessageRequest(int payloadBytes) {
+        return SendMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .messageBody(BenchmarkPayloads.generateStringWithLength(payloadBytes))
+            .build();
+    }
+
+    private ReceiveMessageRequest newReceiveMessageRequest() {
+        return ReceiveMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .maxNumberOfMessages(receiveBatchSize)
+            .build();
+    }
+
+    private static DeleteMessageRequest newDeleteMessageRequest(String receiptHandle) {
+        return DeleteMessageRequest.builder()
+            .queueUrl(QUEUE_URL)
+            .receiptHandle(receiptHandle)
+            .build();
+    }
+
+    private static void printResult(String client, String operation, int payloadBytes, int threshold, int threads,
+                                    OpenLoopDriver.Result result) {
+        System.out.printf(ROW_FORMAT, client, operation, payloadBytes, threshold, threads < 0 ? "-" : threads,
+            String.format("%.1f", result.getMessagesPerSecond()),
+            String.format("%.3f", result.getLatencyMillis(50d)),
+            String.format("%.3f", result.getLatencyMillis(99d)),
+            String.format("%.3f", result.getLatencyMillis(99.9d)),
+            String.format("%.3f", result.getMaxLatencyMillis()),
+            result.getOperationCount(), result.getFailureCount());
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Options must be given as --name=value: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    static List<String> parseList(String value) {
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil;
+import com.amazon.sqs.javamessaging.SQSExtendedClientConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the size checks made on every message sent through the extended clients,
+ * across message body sizes and numbers of message attributes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageSizeBenchmark {
+
+    @Param({"1024", "65536", "262144", "1048576"})
+    public int bodySize;
+
+    @Param({"0", "3", "9"})
+    public int attributeCount;
+
+    private Map<String, MessageAttributeValue> messageAttributes;
+    private SendMessageRequest sendMessageRequest;
+    private SendMessageBatchRequestEntry batchEntry;
+    private Long messageContentSize;
+
+    @Setup
+    public void setup() {
+        messageAttributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            messageAttributes.put("attribute-" + i, MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue("value-" + i)
+                .build());
+        }
+
+        String messageBody = BenchmarkPayloads.generateStringWithLength(bodySize);
+        sendMessageRequest = SendMessageRequest.builder()
+            .queueUrl("benchmark-queue-url")
+            .messageBody(messageBody)
+            .messageAttributes(messageAttributes)
+            .build();
+        batchEntry = SendMessageBatchRequestEntry.builder()
+            .id("0")
+            .messageBody(messageBody)
+            .messageAttributes(messageAttributes)
+            .build();
+        messageContentSize = (long) bodySize;
+    }
+
+    @Benchmark
+    public boolean isLargeSendMessageRequest() {
+        return AmazonSQSExtendedClientUtil.isLarge(SQSExtendedClientConstants.DEFAULT_MESSAGE_SIZE_THRESHOLD,
+            sendMessageRequest);
+    }
+
+    @Benchmark
+    public boolean isLargeBatchEntry() {
+        return AmazonSQSExtendedClientUtil.isLarge(SQSExtendedClientConstants.DEFAULT_MESSAGE_SIZE_THRESHOLD,
+            batchEntry);
+    }
+
+    @Benchmark
+    public Map<String, MessageAttributeValue> checkMessageAttributes() {
+        AmazonSQSExtendedClientUtil.checkMessageAttributes(SQSExtendedClientConstants.DEFAULT_MESSAGE_SIZE_THRESHOLD,
+            messageAttributes);
+        return messageAttributes;
+    }
+
+    @Benchmark
+    public Map<String, MessageAttributeValue> updateMessageAttributePayloadSize() {
+        return AmazonSQSExtendedClientUtil.updateMessageAttributePayloadSize(messageAttributes, messageContentSize,
+            false);
+    }
+}
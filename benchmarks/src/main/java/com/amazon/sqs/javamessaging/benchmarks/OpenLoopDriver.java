@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Issues operations at a fixed rate, whatever the time taken by earlier operations.
+ *
+ * <p>
+ * The latency of every operation is measured from the time at which it was meant to
+ * start, not from the time it actually started. When the client falls behind, the
+ * time spent waiting for a free thread is therefore counted, and slow responses do not
+ * hide themselves by delaying the requests that would have measured them
+ * (coordinated omission).
+ * </p>
+ */
+final class OpenLoopDriver {
+    private final double ratePerSecond;
+    private final long warmupNanos;
+    private final long durationNanos;
+
+    OpenLoopDriver(double ratePerSecond, long warmupNanos, long durationNanos) {
+        if (ratePerSecond <= 0d) {
+            throw new IllegalArgumentException("The rate must be positive.");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.warmupNanos = warmupNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Runs a blocking operation on a pool of the given number of threads. The operation
+     * returns the number of messages it processed, or null if it had nothing to do, in
+     * which case it is not recorded.
+     */
+    Result runBlocking(int threads, Callable<Integer> operation) throws InterruptedException {
+        Result result = new Result();
+        ExecutorService workers = BenchmarkThreads.newFixedThreadPool("load-worker", threads);
+        try {
+            dispatch(result, intendedStartNanos -> workers.execute(() -> {
+                try {
+                    result.recordSuccess(intendedStartNanos, operation.call());
+                } catch (Exception e) {
+                    result.recordFailure(intendedStartNanos);
+                }
+            }));
+        } finally {
+            workers.shutdown();
+        }
+        workers.awaitTermination(10, TimeUnit.MINUTES);
+        return result;
+    }
+
+    /**
+     * Runs an asynchronous operation from the dispatching thread. The operation completes
+     * with the number of messages it processed, or null if it had nothing to do.
+     */
+    Result runAsync(Supplier<CompletableFuture<Integer>> operation) {
+        Result result = new Result();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        dispatch(result, intendedStartNanos -> {
+            CompletableFuture<Integer> future;
+            try {
+                future = operation.get();
+            } catch (RuntimeException e) {
+                result.recordFailure(intendedStartNanos);
+                return;
+            }
+            pending.add(future.handle((messageCount, throwable) -> {
+                if (throwable == null) {
+                    result.recordSuccess(intendedStartNanos, messageCount);
+                } else {
+                    result.recordFailure(intendedStartNanos);
+                }
+                return null;
+            }));
+        });
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        return result;
+    }
+
+    private void dispatch(Result result, LongConsumer issue) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long startNanos = System.nanoTime();
+        long measurementStartNanos = startNanos + warmupNanos;
+        long endNanos = measurementStartNanos + durationNanos;
+        result.measurementStartNanos = measurementStartNanos;
+
+        for (long i = 0; ; i++) {
+            long intendedStartNanos = startNanos + i * intervalNanos;
+            if (intendedStartNanos >= endNanos) {
+                break;
+            }
+            long waitNanos;
+            while ((waitNanos = intendedStartNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+            issue.accept(intendedStartNanos);
+        }
+    }
+
+    /**
+     * Latencies and counts of the operations started after the warmup period.
+     */
+    static final class Result {
+        private final Histogram latencyNanos = new ConcurrentHistogram(3);
+        private final LongAdder operationCount = new LongAdder();
+        private final LongAdder messageCount = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAccumulator lastCompletionNanos = new LongAccumulator(Long::max, Long.MIN_VALUE);
+        private volatile long measurementStartNanos;
+
+        void recordSuccess(long intendedStartNanos, Integer messages) {
+            long completionNanos = System.nanoTime();
+            if (intendedStartNanos < measurementStartNanos || messages == null) {
+                return;
+            }
+            latencyNanos.recordValue(Math.max(0L, completionNanos - intendedStartNanos));
+            operationCount.increment();
+            messageCount.add(messages);
+            lastCompletionNanos.accumulate(completionNanos);
+        }
+
+        void recordFailure(long intendedStartNanos) {
+            long completionNanos = System.nanoTime();
+            if (intendedStartNanos < measurementStartNanos) {
+                return;
+            }
+            failureCount.increment();
+            lastCompletionNanos.accumulate(completionNanos);
+        }
+
+        long getOperationCount() {
+            return operationCount.sum();
+        }
+
+        long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        double getMessagesPerSecond() {
+            long elapsedNanos = lastCompletionNanos.get() - measurementStartNanos;
+            return elapsedNanos <= 0 ? 0d : messageCount.sum() * 1e9d / elapsedNanos;
+        }
+
+        double getLatencyMillis(double percentile) {
+            return latencyNanos.getValueAtPercentile(percentile) / 1e6d;
+        }
+
+        double getMaxLatencyMillis() {
+            return latencyNanos.getMaxValue() / 1e6d;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the receipt handle rewriting done for every large message received,
+ * changed or deleted, and the S3 pointer JSON handling behind it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiptHandleBenchmark {
+
+    /**
+     * Length of the receipt handle returned by SQS. Real receipt handles are a few
+     * hundred characters long.
+     */
+    @Param({"256", "1024"})
+    public int receiptHandleLength;
+
+    @Param({"0", "64"})
+    public int s3KeyPrefixLength;
+
+    private String receiptHandle;
+    private PayloadS3Pointer payloadS3Pointer;
+    private String payloadPointerJson;
+    private String modifiedReceiptHandle;
+
+    @Setup
+    public void setup() {
+        receiptHandle = BenchmarkPayloads.generateStringWithLength(receiptHandleLength);
+        String s3Key = BenchmarkPayloads.generateStringWithLength(s3KeyPrefixLength) + UUID.randomUUID();
+        payloadS3Pointer = new PayloadS3Pointer("benchmark-bucket-name", s3Key);
+        payloadPointerJson = payloadS3Pointer.toJson();
+        modifiedReceiptHandle = AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle(receiptHandle,
+            payloadPointerJson);
+    }
+
+    @Benchmark
+    public String embedS3PointerInReceiptHandle() {
+        return AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle(receiptHandle, payloadPointerJson);
+    }
+
+    @Benchmark
+    public String getOrigReceiptHandle() {
+        return AmazonSQSExtendedClientUtil.getOrigReceiptHandle(modifiedReceiptHandle);
+    }
+
+    @Benchmark
+    public String getMessagePointerFromModifiedReceiptHandle() {
+        return AmazonSQSExtendedClientUtil.getMessagePointerFromModifiedReceiptHandle(modifiedReceiptHandle);
+    }
+
+    @Benchmark
+    public String pointerToJson() {
+        return payloadS3Pointer.toJson();
+    }
+
+    @Benchmark
+    public PayloadS3Pointer pointerFromJson() {
+        return PayloadS3Pointer.fromJson(payloadPointerJson);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging.benchmarks;
+
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedAsyncClient;
+import com.amazon.sqs.javamessaging.AmazonSQSExtendedClient;
+import com.amazon.sqs.javamessaging.ExtendedAsyncClientConfiguration;
+import com.amazon.sqs.javamessaging.ExtendedClientConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of the extended clients built on the real SDK clients, with
+ * their HTTP connection pools and marshalling, against an {@link EmbeddedAwsServer}.
+ *
+ * <p>
+ * Payloads are sent to a queue and a bucket that discard what they receive. Receives
+ * read a queue filled once per trial with a visibility timeout of 0, so every call
+ * fetches <code>batchSize</code> payloads from S3.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class WireBenchmark {
+    private static final String SEND_QUEUE_NAME = EmbeddedAwsServer.DISCARDING_NAME_PREFIX + "send-queue";
+    private static final String SEND_BUCKET_NAME = EmbeddedAwsServer.DISCARDING_NAME_PREFIX + "send-bucket";
+    private static final String RECEIVE_QUEUE_NAME = "receive-queue";
+    private static final String RECEIVE_BUCKET_NAME = "receive-bucket";
+    private static final int SERVER_THREADS = 64;
+
+    @Param({"10", "50"})
+    public int maxConnections;
+
+    @Param({"1024", "262145", "1048576"})
+    public int payloadBytes;
+
+    @Param({"1", "10"})
+    public int batchSize;
+
+    private EmbeddedAwsServer server;
+    private SqsClient sqsClient;
+    private S3Client s3Client;
+    private SqsAsyncClient sqsAsyncClient;
+    private S3AsyncClient s3AsyncClient;
+
+    private SqsClient sendExtendedClient;
+    private SqsClient receiveExtendedClient;
+    private SqsAsyncClient sendExtendedAsyncClient;
+    private SqsAsyncClient receiveExtendedAsyncClient;
+
+    private SendMessageBatchRequest sendMessageBatchRequest;
+    private ReceiveMessageRequest receiveMessageRequest;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = EmbeddedAwsServer.start(SERVER_THREADS);
+        StaticCredentialsProvider credentialsProvider =
+            StaticCredentialsProvider.create(AwsBasicCredentials.create("benchmark", "benchmark"));
+
+        sqsClient = SqsClient.builder()
+            .endpointOverride(server.getEndpoint())
+            .region(Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections))
+            .build();
+        s3Client = S3Client.builder()
+            .endpointOverride(server.getEndpoint())
+            .region(Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .forcePathStyle(true)
+            .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections))
+            .build();
+        sqsAsyncClient = SqsAsyncClient.builder()
+            .endpointOverride(server.getEndpoint())
+            .region(Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+            .build();
+        s3AsyncClient = S3AsyncClient.builder()
+            .endpointOverride(server.getEndpoint())
+            .region(Region.US_EAST_1)
+            .credentialsProvider(credentialsProvider)
+            .forcePathStyle(true)
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+            .build();
+
+        sendExtendedClient = new AmazonSQSExtendedClient(sqsClient,
+            new ExtendedClientConfiguration().withPayloadSupportEnabled(s3Client, SEND_BUCKET_NAME));
+        receiveExtendedClient = new AmazonSQSExtendedClient(sqsClient,
+            new ExtendedClientConfiguration().withPayloadSupportEnabled(s3Client, RECEIVE_BUCKET_NAME));
+        sendExtendedAsyncClient = new AmazonSQSExtendedAsyncClient(sqsAsyncClient,
+            new ExtendedAsyncClientConfiguration().withPayloadSupportEnabled(s3AsyncClient, SEND_BUCKET_NAME));
+        receiveExtendedAsyncClient = new AmazonSQSExtendedAsyncClient(sqsAsyncClient,
+            new ExtendedAsyncClientConfiguration().withPayloadSupportEnabled(s3AsyncClient, RECEIVE_BUCKET_NAME));
+
+        String messageBody = BenchmarkPayloads.generateStringWithLength(payloadBytes);
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            entries.add(SendMessageBatchRequestEntry.builder().id(Integer.toString(i)).messageBody(messageBody).build());
+        }
+        sendMessageBatchRequest = SendMessageBatchRequest.builder()
+            .queueUrl(server.getQueueUrl(SEND_QUEUE_NAME))
+            .entries(entries)
+            .build();
+
+        receiveExtendedClient.sendMessageBatch(sendMessageBatchRequest.toBuilder()
+            .queueUrl(server.getQueueUrl(RECEIVE_QUEUE_NAME))
+            .build());
+        receiveMessageRequest = ReceiveMessageRequest.builder()
+            .queueUrl(server.getQueueUrl(RECEIVE_QUEUE_NAME))
+            .maxNumberOfMessages(batchSize)
+            .visibilityTimeout(0)
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sqsClient.close();
+        s3Client.close();
+        sqsAsyncClient.close();
+        s3AsyncClient.close();
+        server.close();
+    }
+
+    @Benchmark
+    public SendMessageBatchResponse syncSendMessageBatch() {
+        return sendExtendedClient.sendMessageBatch(sendMessageBatchRequest);
+    }
+
+    @Benchmark
+    public SendMessageBatchResponse asyncSendMessageBatch() {
+        return sendExtendedAsyncClient.sendMessageBatch(sendMessageBatchRequest).join();
+    }
+
+    @Benchmark
+    public ReceiveMessageResponse syncReceiveMessage() {
+        return receiveExtendedClient.receiveMessage(receiveMessageRequest);
+    }
+
+    @Benchmark
+    public ReceiveMessageResponse asyncReceiveMessage() {
+        return receiveExtendedAsyncClient.receiveMessage(receiveMessageRequest).join();
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.http.HttpStatusCode;
+
+/**
+ * Adapts the number of Amazon S3 payload operations in flight to what S3 currently sustains.
+ *
+ * <p>
+ * The concurrency limit starts at the minimum and grows by one each time a full window of
+ * operations, as many as the current limit, succeeds while the limit is in use. It is cut
+ * by the backoff ratio when an operation is throttled (HTTP 503 <code>SlowDown</code> or any
+ * other throttling error) or, if a latency threshold is set, takes longer than the threshold.
+ * Only one cut is made per window: signals from operations started before the previous cut
+ * are ignored, since they describe the load before it was reduced.
+ * </p>
+ *
+ * <p>
+ * Operations beyond the limit wait in a first-in, first-out queue. The controller is used
+ * by the synchronous client through {@link #call(Supplier)}, blocking the calling thread
+ * while it waits, and by the asynchronous client through {@link #submit(Supplier)}. The
+ * same controller may be shared by several clients writing to the same buckets.
+ * </p>
+ *
+ * <p>
+ * Throttled requests retried successfully by the SDK are only seen as higher latency, so
+ * set a latency threshold, or reduce the retries of the S3 client, to react to them sooner.
+ * </p>
+ */
+public final class AdaptiveS3ConcurrencyController implements AsyncOperationLimiter {
+    private static final Log LOG = LogFactory.getLog(AdaptiveS3ConcurrencyController.class);
+
+    public static final double DEFAULT_BACKOFF_RATIO = 0.5;
+
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final LongSupplier nanoTime;
+    private final ArrayDeque<Consumer<Permit>> waiting = new ArrayDeque<>();
+    private int concurrencyLimit;
+    private int inFlight;
+    private int successesInWindow;
+    private long window;
+    private long throttleCount;
+    private long backoffCount;
+
+    /**
+     * Creates a controller reacting to throttling only, with the default backoff ratio.
+     *
+     * @param minConcurrency
+     *            The lowest and initial concurrency limit, which must be positive.
+     * @param maxConcurrency
+     *            The highest concurrency limit, for example the connection pool size of the S3 client.
+     */
+    public AdaptiveS3ConcurrencyController(int minConcurrency, int maxConcurrency) {
+        this(minConcurrency, maxConcurrency, null, DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * Creates a controller.
+     *
+     * @param minConcurrency
+     *            The lowest and initial concurrency limit, which must be positive.
+     * @param maxConcurrency
+     *            The highest concurrency limit, for example the connection pool size of the S3 client.
+     * @param latencyThreshold
+     *            Latency above which an operation is treated like a throttled one, or null to ignore latency.
+     * @param backoffRatio
+     *            Factor applied to the limit when backing off, strictly between 0 and 1.
+     */
+    public AdaptiveS3ConcurrencyController(int minConcurrency, int maxConcurrency, Duration latencyThreshold,
+                                           double backoffRatio) {
+        this(minConcurrency, maxConcurrency, latencyThreshold, backoffRatio, System::nanoTime);
+    }
+
+    AdaptiveS3ConcurrencyController(int minConcurrency, int maxConcurrency, Duration latencyThreshold,
+                                    double backoffRatio, LongSupplier nanoTime) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            String errorMessage = "The S3 concurrency limits must be positive, with the maximum no lower than the minimum.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (latencyThreshold != null && (latencyThreshold.isNegative() || latencyThreshold.isZero())) {
+            String errorMessage = "The S3 latency threshold must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (!(backoffRatio > 0 && backoffRatio < 1)) {
+            String errorMessage = "The S3 concurrency backoff ratio must be between 0 and 1.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.latencyThresholdNanos = latencyThreshold == null ? 0 : latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.nanoTime = nanoTime;
+        this.concurrencyLimit = minConcurrency;
+    }
+
+    /**
+     * Runs the operation on the calling thread once the current limit allows it, waiting
+     * for earlier operations to complete if needed.
+     *
+     * @param operation
+     *            The operation.
+     * @return the result of the operation.
+     */
+    public <T> T call(Supplier<T> operation) {
+        Permit permit = acquire();
+        T result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException e) {
+            release(permit, e);
+            throw e;
+        }
+        release(permit, null);
+        return result;
+    }
+
+    /**
+     * Starts the operation once the current limit allows it, in the order operations were
+     * submitted. The permit is held until the future returned by the operation completes.
+     *
+     * @param operation
+     *            Starts the operation and returns its future.
+     * @return a future completed with the outcome of the operation.
+     */
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        acquire(permit -> run(operation, result, permit));
+        return result;
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     * @return the limit.
+     */
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Gets the number of operations currently in flight.
+     * @return the operations holding a permit.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of operations currently waiting for a permit.
+     * @return the queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * Gets the number of operations that failed because S3 throttled them.
+     * @return the throttled operations.
+     */
+    public synchronized long getThrottleCount() {
+        return throttleCount;
+    }
+
+    /**
+     * Gets the number of times the concurrency limit was cut.
+     * @return the backoffs.
+     */
+    public synchronized long getBackoffCount() {
+        return backoffCount;
+    }
+
+    private Permit acquire() {
+        CompletableFuture<Permit> granted = new CompletableFuture<>();
+        Consumer<Permit> waiter = granted::complete;
+        acquire(waiter);
+        try {
+            return granted.get();
+        } catch (InterruptedException e) {
+            boolean removed;
+            synchronized (this) {
+                removed = waiting.remove(waiter);
+            }
+            if (!removed) {
+                // The permit was granted concurrently, give it back without counting the operation
+                release(granted.join(), e);
+            }
+            Thread.currentThread().interrupt();
+            String errorMessage = "Interrupted while waiting to start an S3 operation.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } catch (ExecutionException e) {
+            throw SdkClientException.create("Failed to start an S3 operation.", e.getCause());
+        }
+    }
+
+    private void acquire(Consumer<Permit> waiter) {
+        Permit permit;
+        synchronized (this) {
+            if (inFlight >= concurrencyLimit || !waiting.isEmpty()) {
+                waiting.addLast(waiter);
+                return;
+            }
+            permit = grant();
+        }
+        waiter.accept(permit);
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> operation, CompletableFuture<T> result, Permit permit) {
+        if (result.isCancelled()) {
+            // Cancelled while waiting for a permit
+            release(permit, null);
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException e) {
+            release(permit, e);
+            result.completeExceptionally(e);
+            return;
+        }
+        // Cancelling the result, for example when a hedged fetch loses, cancels the operation
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        future.whenComplete((value, throwable) -> {
+            release(permit, throwable);
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private Permit grant() {
+        inFlight++;
+        return new Permit(nanoTime.getAsLong(), window);
+    }
+
+    private void release(Permit permit, Throwable failure) {
+        long latencyNanos = nanoTime.getAsLong() - permit.startNanos;
+        boolean throttled = isThrottling(failure);
+        List<Consumer<Permit>> waiters = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            boolean saturated = inFlight >= concurrencyLimit;
+            inFlight--;
+            if (throttled) {
+                throttleCount++;
+            }
+            if (throttled || (latencyThresholdNanos > 0 && latencyNanos > latencyThresholdNanos)) {
+                if (permit.window == window) {
+                    backOff();
+                }
+            } else if (failure == null && saturated && ++successesInWindow >= concurrencyLimit) {
+                if (concurrencyLimit < maxConcurrency) {
+                    concurrencyLimit++;
+                }
+                successesInWindow = 0;
+            }
+            while (inFlight < concurrencyLimit && !waiting.isEmpty()) {
+                waiters.add(waiting.pollFirst());
+                permits.add(grant());
+            }
+        }
+        for (int i = 0; i < waiters.size(); i++) {
+            waiters.get(i).accept(permits.get(i));
+        }
+    }
+
+    private void backOff() {
+        int previousLimit = concurrencyLimit;
+        concurrencyLimit = Math.max(minConcurrency, (int) (concurrencyLimit * backoffRatio));
+        successesInWindow = 0;
+        window++;
+        backoffCount++;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("S3 concurrency limit lowered from " + previousLimit + " to " + concurrencyLimit + ".");
+        }
+    }
+
+    private static boolean isThrottling(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkServiceException) {
+                SdkServiceException serviceException = (SdkServiceException) cause;
+                return serviceException.isThrottlingException()
+                       || serviceException.statusCode() == HttpStatusCode.SERVICE_UNAVAILABLE;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static final class Permit {
+        private final long startNanos;
+        private final long window;
+
+        private Permit(long startNanos, long window) {
+            this.startNanos = startNanos;
+            this.window = window;
+        }
+    }
+}
@@ -1,29 +1,47 @@
 package com.amazon.sqs.javamessaging;
 
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.checkMessageAttributes;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.compressInline;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.decideOffload;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.decompressInlineOrKeep;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getMessagePointerFromModifiedReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getOrigReceiptHandle;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getPayloadSizeIfPresent;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getQueueS3KeyPrefix;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getReservedAttributeNameIfPresent;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getS3Key;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isCompressedInline;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isLarge;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isS3ReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.updateMessageAttributePayloadSize;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.withReservedAttributeNames;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
 import software.amazon.awssdk.awscore.AwsRequest;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.util.VersionInfo;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
 import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
@@ -84,6 +102,11 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
     private static final Log LOG = LogFactory.getLog(AmazonSQSExtendedAsyncClient.class);
     private ExtendedAsyncClientConfiguration clientConfiguration;
     private PayloadStoreAsync payloadStore;
+    private Map<String, PayloadStoreAsync> payloadStoresByBucketName;
+    private VisibilityHeartbeat visibilityHeartbeat;
+    private QueueMessageSizeLimits queueMessageSizeLimits;
+    private final Set<String> retentionCheckedQueueUrls = ConcurrentHashMap.newKeySet();
+    private CompletableFuture<Void> lifecycleCleanupCheck = CompletableFuture.completedFuture(null);
 
     /**
      * Constructs a new Amazon SQS extended async client to invoke service methods on
@@ -126,10 +149,46 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
                                         ExtendedAsyncClientConfiguration extendedClientConfig) {
         super(sqsClient);
         this.clientConfiguration = new ExtendedAsyncClientConfiguration(extendedClientConfig);
+        if (clientConfiguration.getQueueMetadataCacheTtl() != null) {
+            this.queueMetadataCache = new QueueMetadataCache(clientConfiguration.getQueueMetadataCacheTtl(),
+                clientConfiguration.getQueueMetadataCachedAttributeNames());
+        }
         S3AsyncDao s3Dao = new S3AsyncDao(clientConfiguration.getS3AsyncClient(),
             clientConfiguration.getServerSideEncryptionStrategy(),
             clientConfiguration.getObjectCannedACL());
-        this.payloadStore = new S3BackedPayloadStoreAsync(s3Dao, clientConfiguration.getS3BucketName());
+        PayloadStoreAsync customPayloadStore = clientConfiguration.getPayloadStore();
+        this.payloadStore = decoratePayloadStore(controlS3Access(customPayloadStore != null
+            ? customPayloadStore
+            : newS3PayloadStore(s3Dao, clientConfiguration.getS3BucketName())));
+
+        S3BucketRoutingPolicy s3BucketRoutingPolicy = clientConfiguration.getS3BucketRoutingPolicy();
+        if (s3BucketRoutingPolicy != null) {
+            if (customPayloadStore != null) {
+                String errorMessage = "S3 bucket routing policy cannot be used with a custom payload store.";
+                LOG.error(errorMessage);
+                throw SdkClientException.create(errorMessage);
+            }
+            this.payloadStoresByBucketName = new HashMap<>();
+            for (String s3BucketName : s3BucketRoutingPolicy.getBucketNames()) {
+                payloadStoresByBucketName.put(s3BucketName,
+                    decoratePayloadStore(controlS3Access(newS3PayloadStore(s3Dao, s3BucketName))));
+            }
+        }
+
+        if (clientConfiguration.getVisibilityHeartbeatTimeout() > 0) {
+            this.visibilityHeartbeat = new VisibilityHeartbeat(clientConfiguration.getVisibilityHeartbeatTimeout(),
+                clientConfiguration.getVisibilityHeartbeatInterval(),
+                clientConfiguration.getVisibilityHeartbeatMaxExtension(),
+                request -> super.changeMessageVisibilityBatch(appendUserAgent(request.toBuilder()).build()));
+        }
+        if (clientConfiguration.getQueueMessageSizeCacheTtl() != null) {
+            this.queueMessageSizeLimits = new QueueMessageSizeLimits(clientConfiguration.getQueueMessageSizeCacheTtl(),
+                clientConfiguration.getPayloadSizeThreshold(),
+                request -> super.getQueueAttributes(appendUserAgent(request.toBuilder()).build()));
+        }
+        if (clientConfiguration.getLifecycleCleanupPayloadTtl() != null) {
+            this.lifecycleCleanupCheck = checkLifecycleCleanup();
+        }
     }
 
     /**
@@ -158,11 +217,30 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
             throw SdkClientException.create(errorMessage);
         }
 
-        //Check message attributes for ExtendedClient related constraints
-        checkMessageAttributes(clientConfiguration.getPayloadSizeThreshold(), sendMessageRequest.messageAttributes());
+        SendMessageRequest request = sendMessageRequest;
+        checkRetentionPeriod(request.queueUrl());
+        return withPayloadSizeThreshold(request.queueUrl(),
+            payloadSizeThreshold -> sendMessage(request, payloadSizeThreshold));
+    }
 
-        if (clientConfiguration.isAlwaysThroughS3()
-            || isLarge(clientConfiguration.getPayloadSizeThreshold(), sendMessageRequest)) {
+    private CompletableFuture<SendMessageResponse> sendMessage(SendMessageRequest sendMessageRequest,
+                                                               int payloadSizeThreshold) {
+        //Check message attributes for ExtendedClient related constraints
+        checkMessageAttributes(payloadSizeThreshold, sendMessageRequest.messageAttributes(), compressesInline());
+
+        OffloadPolicy.Decision offloadDecision = decideOffload(clientConfiguration.getOffloadPolicy(),
+            clientConfiguration.isAlwaysThroughS3(), sendMessageRequest.queueUrl(), payloadSizeThreshold,
+            sendMessageRequest.messageBody(), sendMessageRequest.messageAttributes(), sendMessageRequest);
+        if (offloadDecision == OffloadPolicy.Decision.COMPRESS_INLINE) {
+            SendMessageRequest compressedRequest = compressInline(payloadSizeThreshold, sendMessageRequest);
+            if (compressedRequest != null) {
+                return super.sendMessage(compressedRequest);
+            }
+            offloadDecision = isLarge(payloadSizeThreshold, sendMessageRequest)
+                ? OffloadPolicy.Decision.OFFLOAD
+                : OffloadPolicy.Decision.INLINE;
+        }
+        if (offloadDecision == OffloadPolicy.Decision.OFFLOAD) {
             return storeMessageInS3(sendMessageRequest)
                 .thenCompose(modifiedRequest -> super.sendMessage(modifiedRequest));
         }
@@ -190,87 +268,132 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
             return super.receiveMessage(receiveMessageRequestBuilder.build());
         }
 
-        // Remove before adding to avoid any duplicates
-        List<String> messageAttributeNames = new ArrayList<>(receiveMessageRequest.messageAttributeNames());
-        messageAttributeNames.removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-        messageAttributeNames.addAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-        receiveMessageRequestBuilder.messageAttributeNames(messageAttributeNames);
+        receiveMessageRequestBuilder.messageAttributeNames(
+            withReservedAttributeNames(receiveMessageRequest.messageAttributeNames(), compressesInline()));
         String queueUrl = receiveMessageRequest.queueUrl();
         receiveMessageRequest = receiveMessageRequestBuilder.build();
 
+        long pollStartNanos = System.nanoTime();
         return super.receiveMessage(receiveMessageRequest)
+            .whenComplete((receiveMessageResponse, throwable) -> recordMetric(
+                ExtendedClientMetric.RECEIVE_POLL, queueUrl, pollStartNanos, -1L, throwable == null))
             .thenCompose(receiveMessageResponse -> {
+                long resolveStartNanos = System.nanoTime();
                 List<Message> messages = receiveMessageResponse.messages();
 
                 // Check for no messages. If so, no need to process further.
                 if (messages.isEmpty()) {
                     return CompletableFuture.completedFuture(messages);
                 }
+                if (visibilityHeartbeat != null) {
+                    // Messages are kept invisible while their payloads are downloaded
+                    visibilityHeartbeat.track(queueUrl, messages);
+                }
 
                 List<CompletableFuture<Message>> modifiedMessageFutures = new ArrayList<>(messages.size());
-                for (Message message : messages) {
-                    Message.Builder messageBuilder = message.toBuilder();
-
-                    // For each received message check if they are stored in S3.
-                    Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(
-                        message.messageAttributes());
-                    if (!largePayloadAttributeName.isPresent()) {
-                        // Not S3
-                        modifiedMessageFutures.add(CompletableFuture.completedFuture(messageBuilder.build()));
-                    } else {
-                        // In S3
-                        final String largeMessagePointer = message.body()
-                            .replace("com.amazon.sqs.javamessaging.MessageS3Pointer",
-                                "software.amazon.payloadoffloading.PayloadS3Pointer");
-
-                        // Retrieve original payload
-                        modifiedMessageFutures.add(payloadStore.getOriginalPayload(largeMessagePointer)
-                            .handle((originalPayload,throwable) -> {
-
-                                if(throwable != null)
-                                {
-                                    if(clientConfiguration.ignoresPayloadNotFound())
-                                    {
-                                        DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest
-                                                .builder()
-                                                .queueUrl(queueUrl)
-                                                .receiptHandle(message.receiptHandle())
-                                                .build();
-
-                                        deleteMessage(deleteMessageRequest).join();
-                                        LOG.warn("Message deleted from SQS since payload with pointer could not be found in S3.");
-                                        return null;
-                                    }
-                                    else
-                                    {
-                                        throw new CompletionException(throwable);
-                                    }
+                PayloadByteBudget payloadByteBudget = clientConfiguration.getReceivePayloadByteBudget();
+                List<Message> messagesOverBudget = new ArrayList<>();
+                long reservedBytes = 0;
+                try {
+                    for (Message message : messages) {
+                        Message.Builder messageBuilder = message.toBuilder();
+
+                        // For each received message check if they are stored in S3.
+                        Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(
+                            message.messageAttributes());
+                        if (!largePayloadAttributeName.isPresent()) {
+                            // Not S3
+                            modifiedMessageFutures.add(CompletableFuture.completedFuture(
+                                compressesInline() && isCompressedInline(message.messageAttributes())
+                                    ? decompressInlineOrKeep(message)
+                                    : messageBuilder.build()));
+                        } else {
+                            // In S3
+                            long payloadSize = getPayloadSizeIfPresent(message.messageAttributes());
+                            if (payloadByteBudget != null && payloadSize > 0) {
+                                if (!payloadByteBudget.tryReserve(payloadSize)) {
+                                    messagesOverBudget.add(message);
+                                    continue;
                                 }
+                                reservedBytes += payloadSize;
+                            }
 
-                                // Set original payload
-                                messageBuilder.body(originalPayload);
+                            final String largeMessagePointer = message.body()
+                                .replace("com.amazon.sqs.javamessaging.MessageS3Pointer",
+                                    "software.amazon.payloadoffloading.PayloadS3Pointer");
 
-                                // Remove the additional attribute before returning the message
-                                // to user.
-                                Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(
-                                    message.messageAttributes());
-                                messageAttributes.keySet().removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-                                messageBuilder.messageAttributes(messageAttributes);
+                            // Retrieve original payload
+                            modifiedMessageFutures.add(getOriginalPayload(queueUrl, largeMessagePointer, payloadSize)
+                                .handle((originalPayload,throwable) -> {
 
-                                // Embed s3 object pointer in the receipt handle.
-                                String modifiedReceiptHandle = embedS3PointerInReceiptHandle(
-                                    message.receiptHandle(),
-                                    largeMessagePointer);
-                                messageBuilder.receiptHandle(modifiedReceiptHandle);
+                                    if(throwable != null)
+                                    {
+                                        if(clientConfiguration.ignoresPayloadNotFound())
+                                        {
+                                            DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest
+                                                    .builder()
+                                                    .queueUrl(queueUrl)
+                                                    .receiptHandle(message.receiptHandle())
+                                                    .build();
+
+                                            deleteMessage(deleteMessageRequest).join();
+                                            incrementMetric(ExtendedClientMetric.PAYLOAD_NOT_FOUND, queueUrl);
+                                            LOG.warn("Message deleted from SQS since payload with pointer could not be found in S3.");
+                                            return null;
+                                        }
+                                        else
+                                        {
+                                            // The fetch metrics stage already wraps the failure
+                                            throw throwable instanceof CompletionException
+                                                ? (CompletionException) throwable
+                                                : new CompletionException(throwable);
+                                        }
+                                    }
 
-                                return messageBuilder.build();
-                            }));
+                                    // Set original payload
+                                    messageBuilder.body(originalPayload);
+
+                                    // Remove the additional attribute before returning the message
+                                    // to user.
+                                    Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(
+                                        message.messageAttributes());
+                                    messageAttributes.keySet().removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
+                                    messageBuilder.messageAttributes(messageAttributes);
+
+                                    // Embed s3 object pointer in the receipt handle.
+                                    PayloadOperationEvents.Handle rewriteEvent = PayloadOperationEvents.begin(
+                                        PayloadOperationEvents.Operation.RECEIPT_HANDLE_REWRITE);
+                                    String modifiedReceiptHandle = embedS3PointerInReceiptHandle(
+                                        message.receiptHandle(),
+                                        largeMessagePointer);
+                                    rewriteEvent.completeForPointer(queueUrl, largeMessagePointer, -1L, true);
+                                    messageBuilder.receiptHandle(modifiedReceiptHandle);
+
+                                    return messageBuilder.build();
+                                }));
+                        }
                     }
+                } catch (RuntimeException e) {
+                    releasePayloadBytes(payloadByteBudget, reservedBytes);
+                    releaseFromHeartbeat(queueUrl, messages);
+                    throw e;
+                } finally {
+                    makeVisibleAgain(queueUrl, messagesOverBudget);
                 }
+                final long reservedPayloadBytes = reservedBytes;
 
                 // Convert list of message futures to a future list of messages.
                 return CompletableFuture.allOf(
                         modifiedMessageFutures.toArray(new CompletableFuture[modifiedMessageFutures.size()]))
+                    .whenComplete((v, throwable) -> {
+                        releasePayloadBytes(payloadByteBudget, reservedPayloadBytes);
+                        if (throwable != null) {
+                            // None of the messages reach the caller, let their visibility timeout expire
+                            releaseFromHeartbeat(queueUrl, messages);
+                        }
+                        recordMetric(
+                            ExtendedClientMetric.RECEIVE_RESOLVE, queueUrl, resolveStartNanos, -1L, throwable == null);
+                    })
                     .thenApply(v -> modifiedMessageFutures.stream()
                         .map(CompletableFuture::join)
                         .filter(Objects::nonNull)
@@ -301,6 +424,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
         String receiptHandle = deleteMessageRequest.receiptHandle();
         String origReceiptHandle = receiptHandle;
         String messagePointer = null;
+        releaseFromHeartbeat(deleteMessageRequest.queueUrl(), receiptHandle);
 
         // Update original receipt handle if needed.
         if (clientConfiguration.isPayloadSupportEnabled() && isS3ReceiptHandle(receiptHandle)) {
@@ -325,7 +449,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
         final String messageToDeletePointer = messagePointer;
         return super.deleteMessage(deleteMessageRequestBuilder.build())
             .thenCompose(deleteMessageResponse ->
-                payloadStore.deleteOriginalPayload(messageToDeletePointer)
+                deleteOriginalPayload(deleteMessageRequest.queueUrl(), messageToDeletePointer)
                     .thenApply(v -> deleteMessageResponse));
     }
 
@@ -338,6 +462,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
 
         ChangeMessageVisibilityRequest.Builder changeMessageVisibilityRequestBuilder =
             changeMessageVisibilityRequest.toBuilder();
+        releaseFromHeartbeat(changeMessageVisibilityRequest.queueUrl(), changeMessageVisibilityRequest.receiptHandle());
         if (isS3ReceiptHandle(changeMessageVisibilityRequest.receiptHandle())) {
             changeMessageVisibilityRequestBuilder.receiptHandle(
                 getOrigReceiptHandle(changeMessageVisibilityRequest.receiptHandle()));
@@ -366,23 +491,41 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
             return super.sendMessageBatch(sendMessageBatchRequest);
         }
 
+        checkRetentionPeriod(sendMessageBatchRequest.queueUrl());
+        return withPayloadSizeThreshold(sendMessageBatchRequest.queueUrl(),
+            payloadSizeThreshold -> sendMessageBatch(sendMessageBatchRequest, payloadSizeThreshold));
+    }
+
+    private CompletableFuture<SendMessageBatchResponse> sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest,
+                                                                         int payloadSizeThreshold) {
         List<CompletableFuture<SendMessageBatchRequestEntry>> batchEntryFutures = new ArrayList<>(
             sendMessageBatchRequest.entries().size());
-        boolean hasS3Entries = false;
+        boolean hasModifiedEntries = false;
         for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.entries()) {
             //Check message attributes for ExtendedClient related constraints
-            checkMessageAttributes(clientConfiguration.getPayloadSizeThreshold(), entry.messageAttributes());
-
-            if (clientConfiguration.isAlwaysThroughS3()
-                || isLarge(clientConfiguration.getPayloadSizeThreshold(), entry)) {
-                batchEntryFutures.add(storeMessageInS3(entry));
-                hasS3Entries = true;
+            checkMessageAttributes(payloadSizeThreshold, entry.messageAttributes(), compressesInline());
+
+            OffloadPolicy.Decision offloadDecision = decideOffload(clientConfiguration.getOffloadPolicy(),
+                clientConfiguration.isAlwaysThroughS3(), sendMessageBatchRequest.queueUrl(), payloadSizeThreshold,
+                entry.messageBody(), entry.messageAttributes(), entry);
+            if (offloadDecision == OffloadPolicy.Decision.COMPRESS_INLINE) {
+                SendMessageBatchRequestEntry compressedEntry = compressInline(payloadSizeThreshold, entry);
+                if (compressedEntry != null) {
+                    entry = compressedEntry;
+                    hasModifiedEntries = true;
+                } else if (isLarge(payloadSizeThreshold, entry)) {
+                    offloadDecision = OffloadPolicy.Decision.OFFLOAD;
+                }
+            }
+            if (offloadDecision == OffloadPolicy.Decision.OFFLOAD) {
+                batchEntryFutures.add(storeMessageInS3(sendMessageBatchRequest.queueUrl(), entry));
+                hasModifiedEntries = true;
             } else {
                 batchEntryFutures.add(CompletableFuture.completedFuture(entry));
             }
         }
 
-        if (!hasS3Entries) {
+        if (!hasModifiedEntries) {
             return super.sendMessageBatch(sendMessageBatchRequest);
         }
 
@@ -424,6 +567,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
             DeleteMessageBatchRequestEntry.Builder entryBuilder = entry.toBuilder();
             String receiptHandle = entry.receiptHandle();
             String origReceiptHandle = receiptHandle;
+            releaseFromHeartbeat(deleteMessageBatchRequest.queueUrl(), receiptHandle);
 
             // Update original receipt handle if needed
             if (isS3ReceiptHandle(receiptHandle)) {
@@ -431,7 +575,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
                 // Delete s3 payload if needed
                 if (clientConfiguration.doesCleanupS3Payload()) {
                     String messagePointer = getMessagePointerFromModifiedReceiptHandle(receiptHandle);
-                    payloadStore.deleteOriginalPayload(messagePointer);
+                    deleteOriginalPayload(deleteMessageBatchRequest.queueUrl(), messagePointer);
                 }
             }
 
@@ -453,6 +597,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
             changeMessageVisibilityBatchRequest.entries().size());
         for (ChangeMessageVisibilityBatchRequestEntry entry : changeMessageVisibilityBatchRequest.entries()) {
             ChangeMessageVisibilityBatchRequestEntry.Builder entryBuilder = entry.toBuilder();
+            releaseFromHeartbeat(changeMessageVisibilityBatchRequest.queueUrl(), entry.receiptHandle());
             if (isS3ReceiptHandle(entry.receiptHandle())) {
                 entryBuilder.receiptHandle(getOrigReceiptHandle(entry.receiptHandle()));
             }
@@ -482,7 +627,84 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
         return super.purgeQueue(purgeQueueRequestBuilder.build());
     }
 
-    private CompletableFuture<SendMessageBatchRequestEntry> storeMessageInS3(SendMessageBatchRequestEntry batchEntry) {
+    /**
+     * Gets the outcome of checking, when the client was created, that the payload buckets have
+     * a lifecycle rule expiring payloads, see
+     * {@link ExtendedAsyncClientConfiguration#withLifecycleCleanup(java.time.Duration)}. The
+     * check runs in the background so that creating the client never blocks; wait for this
+     * future before sending to make sure payloads will not be left behind.
+     *
+     * @return a future completed once the check succeeds, or completed exceptionally with an
+     *         {@link SdkClientException} if some bucket has no matching rule. Already completed
+     *         if lifecycle cleanup is not enabled.
+     */
+    public CompletableFuture<Void> lifecycleCleanupCheck() {
+        // Callers completing the returned future must not affect later callers
+        return lifecycleCleanupCheck.thenApply(result -> result);
+    }
+
+    /**
+     * <p>
+     * Purges the queue, then deletes the payloads stored in Amazon S3 for the messages it
+     * held. Requires payloads to be stored in S3 under queue-scoped key prefixes, see
+     * {@link ExtendedAsyncClientConfiguration#withQueueScopedS3KeyPrefix(boolean)}; payloads
+     * stored before they were enabled are not found.
+     * </p>
+     * <p>
+     * The prefix of the queue is listed with <code>ListObjectsV2</code>, walking partitions in
+     * parallel, and each page of objects is removed with one <code>DeleteObjects</code> call.
+     * Only objects last modified before the purge started are deleted, so that the payloads
+     * of messages sent during the sweep are kept.
+     * </p>
+     * <p>
+     * <b>Messages already moved to a dead-letter queue lose their payloads too.</b> A message
+     * redriven to a dead-letter queue keeps pointing at the payload stored under the prefix of
+     * the queue it was sent to, so that payload is deleted by the sweep and the dead-letter
+     * message can no longer be read. Redrive or drain the dead-letter queue first when its
+     * messages are still needed.
+     * </p>
+     * <p>
+     * The S3 requests of the sweep go through the {@link ExtendedAsyncClientConfiguration#withAdaptiveS3Concurrency
+     * adaptive S3 concurrency controller} and the {@link ExtendedAsyncClientConfiguration#withS3ConcurrencyLimiter
+     * S3 concurrency limiter} when configured, sharing its permits with payload
+     * uploads and downloads.
+     * </p>
+     *
+     * @param purgeQueueRequest
+     *            The PurgeQueue request.
+     * @param concurrency
+     *            The maximum number of S3 requests in flight during the sweep.
+     * @param progressListener
+     *            Called with the progress after each listed page and each deletion, possibly
+     *            from several threads at once, or null.
+     * @return a future completed with the final progress of the sweep.
+     */
+    public CompletableFuture<PayloadSweepProgress> purgeQueueWithPayloads(
+        PurgeQueueRequest purgeQueueRequest, int concurrency, Consumer<PayloadSweepProgress> progressListener) {
+        if (purgeQueueRequest == null) {
+            String errorMessage = "purgeQueueRequest cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (concurrency < 1) {
+            String errorMessage = "The payload sweep concurrency must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        List<String> s3BucketNames = getSweptS3BucketNames();
+        String s3KeyPrefix = getS3KeyPrefix(purgeQueueRequest.queueUrl());
+
+        Instant purgeStartTime = Instant.now();
+        S3AsyncClient s3Client = clientConfiguration.getS3AsyncClient();
+        return super.purgeQueue(appendUserAgent(purgeQueueRequest.toBuilder()).build())
+            .thenCompose(response -> new S3PayloadSweeper(concurrency, purgeStartTime, progressListener,
+                request -> submitS3(() -> s3Client.listObjectsV2(request)),
+                request -> submitS3(() -> s3Client.deleteObjects(request)))
+                .sweep(s3BucketNames, s3KeyPrefix));
+    }
+
+    private CompletableFuture<SendMessageBatchRequestEntry> storeMessageInS3(String queueUrl,
+                                                                             SendMessageBatchRequestEntry batchEntry) {
         // Read the content of the message from message body
         String messageContentStr = batchEntry.messageBody();
 
@@ -495,7 +717,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
                 clientConfiguration.usesLegacyReservedAttributeName()));
 
         // Store the message content in S3.
-        return storeOriginalPayload(messageContentStr)
+        return storeOriginalPayload(queueUrl, messageContentStr, messageContentSize)
             .thenApply(largeMessagePointer -> {
                 batchEntryBuilder.messageBody(largeMessagePointer);
                 return batchEntryBuilder.build();
@@ -503,6 +725,7 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
     }
 
     private CompletableFuture<SendMessageRequest> storeMessageInS3(SendMessageRequest sendMessageRequest) {
+        String queueUrl = sendMessageRequest.queueUrl();
         // Read the content of the message from message body
         String messageContentStr = sendMessageRequest.messageBody();
 
@@ -515,22 +738,280 @@ public class AmazonSQSExtendedAsyncClient extends AmazonSQSExtendedAsyncClientBa
                 clientConfiguration.usesLegacyReservedAttributeName()));
 
         // Store the message content in S3.
-        return storeOriginalPayload(messageContentStr)
+        return storeOriginalPayload(queueUrl, messageContentStr, messageContentSize)
             .thenApply(largeMessagePointer -> {
                 sendMessageRequestBuilder.messageBody(largeMessagePointer);
                 return sendMessageRequestBuilder.build();
             });
     }
 
-    private CompletableFuture<String> storeOriginalPayload(String messageContentStr) {
-        String s3KeyPrefix = clientConfiguration.getS3KeyPrefix();
-        if (StringUtils.isBlank(s3KeyPrefix)) {
-            return payloadStore.storeOriginalPayload(messageContentStr);
+    private CompletableFuture<String> storeOriginalPayload(String queueUrl, String messageContentStr,
+                                                           long messageContentSize) {
+        String s3BucketName = selectUploadS3BucketName(messageContentSize);
+        PayloadStoreAsync uploadPayloadStore = getUploadPayloadStore(s3BucketName);
+        String s3Key = getS3Key(getS3KeyPrefix(queueUrl), clientConfiguration.getS3KeyPartitioner(),
+            clientConfiguration.getS3KeyGenerator().generateS3KeyName());
+
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.STORE);
+        long startNanos = System.nanoTime();
+        return uploadPayloadStore.storeOriginalPayload(messageContentStr, s3Key)
+            .whenComplete((largeMessagePointer, throwable) -> {
+                recordMetric(ExtendedClientMetric.PAYLOAD_STORE, queueUrl, startNanos, messageContentSize,
+                    throwable == null);
+                event.complete(queueUrl, s3BucketName, messageContentSize, throwable == null);
+            });
+    }
+
+    private CompletableFuture<String> getOriginalPayload(String queueUrl, String largeMessagePointer,
+                                                         long payloadSize) {
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.FETCH);
+        long startNanos = System.nanoTime();
+        return PayloadFetchHedging.withPayloadSize(payloadSize, () -> payloadStore.getOriginalPayload(largeMessagePointer))
+            .whenComplete((originalPayload, throwable) -> {
+                recordMetric(ExtendedClientMetric.PAYLOAD_FETCH, queueUrl, startNanos, payloadSize, throwable == null);
+                event.completeForPointer(queueUrl, largeMessagePointer, payloadSize, throwable == null);
+            });
+    }
+
+    private CompletableFuture<Void> deleteOriginalPayload(String queueUrl, String messagePointer) {
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.DELETE);
+        long startNanos = System.nanoTime();
+        return payloadStore.deleteOriginalPayload(messagePointer)
+            .whenComplete((v, throwable) -> {
+                recordMetric(ExtendedClientMetric.PAYLOAD_DELETE, queueUrl, startNanos, -1L, throwable == null);
+                event.completeForPointer(queueUrl, messagePointer, -1L, throwable == null);
+            });
+    }
+
+    private void recordMetric(ExtendedClientMetric metric, String queueUrl, long startNanos, long payloadBytes,
+                              boolean succeeded) {
+        ExtendedClientMetrics metrics = clientConfiguration.getMetrics();
+        if (metrics != null) {
+            metrics.record(metric, queueUrl, System.nanoTime() - startNanos, payloadBytes, succeeded);
+        }
+    }
+
+    private void incrementMetric(ExtendedClientMetric metric, String queueUrl) {
+        ExtendedClientMetrics metrics = clientConfiguration.getMetrics();
+        if (metrics != null) {
+            metrics.increment(metric, queueUrl);
+        }
+    }
+
+    private boolean compressesInline() {
+        // Any offload policy may compress, so only then is the encoding attribute reserved
+        return clientConfiguration.getOffloadPolicy() != null;
+    }
+
+    private String selectUploadS3BucketName(long messageContentSize) {
+        if (payloadStoresByBucketName == null) {
+            return clientConfiguration.getS3BucketName();
+        }
+        return clientConfiguration.getS3BucketRoutingPolicy().selectBucket(messageContentSize);
+    }
+
+    private <T> CompletableFuture<T> withPayloadSizeThreshold(String queueUrl,
+                                                              IntFunction<CompletableFuture<T>> send) {
+        if (queueMessageSizeLimits == null) {
+            return send.apply(clientConfiguration.getPayloadSizeThreshold());
+        }
+        return queueMessageSizeLimits.get(queueUrl).thenCompose(send::apply);
+    }
+
+    private void releaseFromHeartbeat(String queueUrl, String receiptHandle) {
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.release(queueUrl, receiptHandle);
+        }
+    }
+
+    private void releaseFromHeartbeat(String queueUrl, List<Message> messages) {
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.release(queueUrl, messages);
+        }
+    }
+
+    private static void releasePayloadBytes(PayloadByteBudget payloadByteBudget, long reservedBytes) {
+        if (reservedBytes > 0) {
+            payloadByteBudget.release(reservedBytes);
+        }
+    }
+
+    private void makeVisibleAgain(String queueUrl, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        releaseFromHeartbeat(queueUrl, messages);
+
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                .id(Integer.toString(i))
+                .receiptHandle(messages.get(i).receiptHandle())
+                .visibilityTimeout(0)
+                .build());
+            incrementMetric(ExtendedClientMetric.PAYLOAD_BUDGET_EXCEEDED, queueUrl);
+        }
+        ChangeMessageVisibilityBatchRequest.Builder requestBuilder = ChangeMessageVisibilityBatchRequest.builder()
+            .queueUrl(queueUrl)
+            .entries(entries);
+
+        // The messages become visible again anyway once their visibility timeout expires
+        super.changeMessageVisibilityBatch(appendUserAgent(requestBuilder).build())
+            .whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    LOG.warn("Failed to make messages over the payload byte budget visible again.", throwable);
+                } else if (response.hasFailed() && !response.failed().isEmpty()) {
+                    LOG.warn("Failed to make " + response.failed().size() + " messages over the payload byte budget "
+                             + "visible again: " + response.failed().get(0).message());
+                }
+            });
+        LOG.info(messages.size() + " messages made visible again since their payloads did not fit in the byte budget.");
+    }
+
+    private PayloadStoreAsync newS3PayloadStore(S3AsyncDao s3Dao, String s3BucketName) {
+        PayloadBufferPool payloadBufferPool = clientConfiguration.getPayloadBufferPool();
+        if (payloadBufferPool == null) {
+            return new S3BackedPayloadStoreAsync(s3Dao, s3BucketName);
         }
-        return payloadStore.storeOriginalPayload(messageContentStr, s3KeyPrefix + UUID.randomUUID());
+        return new PooledS3PayloadStoreAsync(clientConfiguration.getS3AsyncClient(), s3BucketName,
+            clientConfiguration.getServerSideEncryptionStrategy(), clientConfiguration.getObjectCannedACL(),
+            payloadBufferPool);
+    }
+
+    private PayloadStoreAsync controlS3Access(PayloadStoreAsync store) {
+        AdaptiveS3ConcurrencyController adaptiveS3Concurrency = clientConfiguration.getAdaptiveS3Concurrency();
+        if (adaptiveS3Concurrency != null) {
+            store = new ConcurrencyLimitedPayloadStoreAsync(store, adaptiveS3Concurrency);
+        }
+        S3ConcurrencyLimiter s3ConcurrencyLimiter = clientConfiguration.getS3ConcurrencyLimiter();
+        if (s3ConcurrencyLimiter != null) {
+            store = new ConcurrencyLimitedPayloadStoreAsync(store, s3ConcurrencyLimiter);
+        }
+        // Hedged fetches take their own permit
+        PayloadFetchHedging payloadFetchHedging = clientConfiguration.getPayloadFetchHedging();
+        return payloadFetchHedging == null ? store : new HedgedPayloadStoreAsync(store, payloadFetchHedging);
+    }
+
+    private <T> CompletableFuture<T> submitS3(Supplier<CompletableFuture<T>> operation) {
+        // Limited in the same order as the payload stores, the limiter outermost
+        AdaptiveS3ConcurrencyController adaptiveS3Concurrency = clientConfiguration.getAdaptiveS3Concurrency();
+        Supplier<CompletableFuture<T>> limitedOperation = adaptiveS3Concurrency == null
+            ? operation
+            : () -> adaptiveS3Concurrency.submit(operation);
+        S3ConcurrencyLimiter s3ConcurrencyLimiter = clientConfiguration.getS3ConcurrencyLimiter();
+        return s3ConcurrencyLimiter == null ? limitedOperation.get() : s3ConcurrencyLimiter.submit(limitedOperation);
+    }
+
+    private PayloadStoreAsync decoratePayloadStore(PayloadStoreAsync store) {
+        for (UnaryOperator<PayloadStoreAsync> decorator : clientConfiguration.getPayloadStoreDecorators()) {
+            store = decorator.apply(store);
+            if (store == null) {
+                String errorMessage = "Payload store decorator returned null.";
+                LOG.error(errorMessage);
+                throw SdkClientException.create(errorMessage);
+            }
+        }
+        return store;
+    }
+
+    private PayloadStoreAsync getUploadPayloadStore(String s3BucketName) {
+        if (payloadStoresByBucketName == null) {
+            return payloadStore;
+        }
+
+        PayloadStoreAsync uploadPayloadStore = payloadStoresByBucketName.get(s3BucketName);
+        if (uploadPayloadStore == null) {
+            String errorMessage = "S3 bucket routing policy selected unknown bucket " + s3BucketName + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return uploadPayloadStore;
+    }
+
+    private String getS3KeyPrefix(String queueUrl) {
+        return clientConfiguration.usesQueueScopedS3KeyPrefix()
+            ? getQueueS3KeyPrefix(clientConfiguration.getS3KeyPrefix(), queueUrl)
+            : clientConfiguration.getS3KeyPrefix();
+    }
+
+    private List<String> getSweptS3BucketNames() {
+        if (clientConfiguration.getS3BucketName() == null || clientConfiguration.getPayloadStore() != null
+            || !clientConfiguration.usesQueueScopedS3KeyPrefix()) {
+            String errorMessage = "Purging payloads requires payloads to be stored in S3 under queue-scoped "
+                                  + "S3 key prefixes.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return getS3BucketNames();
+    }
+
+    private List<String> getS3BucketNames() {
+        S3BucketRoutingPolicy s3BucketRoutingPolicy = clientConfiguration.getS3BucketRoutingPolicy();
+        return s3BucketRoutingPolicy != null
+            ? new ArrayList<>(s3BucketRoutingPolicy.getBucketNames())
+            : Collections.singletonList(clientConfiguration.getS3BucketName());
+    }
+
+    private CompletableFuture<Void> checkLifecycleCleanup() {
+        if (clientConfiguration.getS3BucketName() == null || clientConfiguration.getPayloadStore() != null) {
+            String errorMessage = "Lifecycle cleanup requires payloads to be stored in S3.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        // Not waited for so that creating the client never blocks, see lifecycleCleanupCheck()
+        S3AsyncClient s3AsyncClient = clientConfiguration.getS3AsyncClient();
+        return LifecycleCleanupCheck.check(getS3BucketNames(), clientConfiguration.getS3KeyPrefix(),
+            clientConfiguration.getLifecycleCleanupPayloadTtl(), s3AsyncClient::getBucketLifecycleConfiguration);
+    }
+
+    private void checkRetentionPeriod(String queueUrl) {
+        Duration payloadTtl = clientConfiguration.getLifecycleCleanupPayloadTtl();
+        if (payloadTtl == null || queueUrl == null || !retentionCheckedQueueUrls.add(queueUrl)) {
+            return;
+        }
+        // Read once per queue and not waited for; a retention period too long is logged as an error
+        LifecycleCleanupCheck.checkRetentionPeriod(queueUrl, payloadTtl,
+            request -> super.getQueueAttributes(appendUserAgent(request.toBuilder()).build()));
     }
 
     private static <T extends AwsRequest.Builder> T appendUserAgent(final T builder) {
         return AmazonSQSExtendedClientUtil.appendUserAgent(builder, USER_AGENT_NAME, USER_AGENT_VERSION);
     }
+
+    /**
+     * Returns a publisher of the messages received with the given request, receiving
+     * messages and fetching their payloads only when its subscribers request them. See
+     * {@link ExtendedQueuePublisher}.
+     *
+     * @param receiveMessageRequest
+     *            The request used for every receive.
+     * @return the publisher.
+     */
+    public Publisher<Message> receiveMessagePublisher(ReceiveMessageRequest receiveMessageRequest) {
+        return new ExtendedQueuePublisher(this, receiveMessageRequest);
+    }
+
+    /**
+     * Returns a subscriber deleting the messages it receives, along with their payloads,
+     * in batches. See {@link MessageBatchAcknowledger}.
+     *
+     * @param queueUrl
+     *            The URL of the queue the messages were received from.
+     * @return the subscriber.
+     */
+    public MessageBatchAcknowledger messageBatchAcknowledger(String queueUrl) {
+        return new MessageBatchAcknowledger(this, queueUrl);
+    }
+
+    @Override
+    public void close() {
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.close();
+        }
+        super.close();
+        AmazonSQSExtendedClientUtil.closePayloadStore(payloadStore);
+        if (payloadStoresByBucketName != null) {
+            payloadStoresByBucketName.values().forEach(AmazonSQSExtendedClientUtil::closePayloadStore);
+        }
+    }
 }
@@ -51,6 +51,7 @@ import software.amazon.awssdk.services.sqs.model.UntagQueueResponse;
 
 abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     SqsAsyncClient amazonSqsToBeExtended;
+    QueueMetadataCache queueMetadataCache;
 
     public AmazonSQSExtendedAsyncClientBase(SqsAsyncClient sqsClient) {
         amazonSqsToBeExtended = sqsClient;
@@ -61,7 +62,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<SendMessageResponse> sendMessage(SendMessageRequest sendMessageRequest) {
-        return amazonSqsToBeExtended.sendMessage(sendMessageRequest);
+        return callOnQueue(sendMessageRequest.queueUrl(), amazonSqsToBeExtended.sendMessage(sendMessageRequest));
     }
 
     /**
@@ -69,7 +70,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<ReceiveMessageResponse> receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
-        return amazonSqsToBeExtended.receiveMessage(receiveMessageRequest);
+        return callOnQueue(receiveMessageRequest.queueUrl(), amazonSqsToBeExtended.receiveMessage(receiveMessageRequest));
     }
 
     /**
@@ -77,7 +78,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<DeleteMessageResponse> deleteMessage(DeleteMessageRequest deleteMessageRequest) {
-        return amazonSqsToBeExtended.deleteMessage(deleteMessageRequest);
+        return callOnQueue(deleteMessageRequest.queueUrl(), amazonSqsToBeExtended.deleteMessage(deleteMessageRequest));
     }
 
     /**
@@ -86,7 +87,8 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<SetQueueAttributesResponse> setQueueAttributes(
         SetQueueAttributesRequest setQueueAttributesRequest) {
-        return amazonSqsToBeExtended.setQueueAttributes(setQueueAttributesRequest);
+        return amazonSqsToBeExtended.setQueueAttributes(setQueueAttributesRequest)
+            .whenComplete((response, throwable) -> invalidateQueueMetadata(setQueueAttributesRequest.queueUrl()));
     }
 
     /**
@@ -95,7 +97,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<ChangeMessageVisibilityBatchResponse> changeMessageVisibilityBatch(
         ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) {
-        return amazonSqsToBeExtended.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
+        return callOnQueue(changeMessageVisibilityBatchRequest.queueUrl(), amazonSqsToBeExtended.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest));
     }
 
     /**
@@ -104,7 +106,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<ChangeMessageVisibilityResponse> changeMessageVisibility(
         ChangeMessageVisibilityRequest changeMessageVisibilityRequest)  {
-        return amazonSqsToBeExtended.changeMessageVisibility(changeMessageVisibilityRequest);
+        return callOnQueue(changeMessageVisibilityRequest.queueUrl(), amazonSqsToBeExtended.changeMessageVisibility(changeMessageVisibilityRequest));
     }
 
     /**
@@ -112,7 +114,10 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<GetQueueUrlResponse> getQueueUrl(GetQueueUrlRequest getQueueUrlRequest) {
-        return amazonSqsToBeExtended.getQueueUrl(getQueueUrlRequest);
+        if (queueMetadataCache == null) {
+            return amazonSqsToBeExtended.getQueueUrl(getQueueUrlRequest);
+        }
+        return queueMetadataCache.getQueueUrl(getQueueUrlRequest, amazonSqsToBeExtended::getQueueUrl);
     }
 
     /**
@@ -130,7 +135,11 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<GetQueueAttributesResponse> getQueueAttributes(
         GetQueueAttributesRequest getQueueAttributesRequest) {
-        return amazonSqsToBeExtended.getQueueAttributes(getQueueAttributesRequest);
+        if (queueMetadataCache == null) {
+            return amazonSqsToBeExtended.getQueueAttributes(getQueueAttributesRequest);
+        }
+        return queueMetadataCache.getQueueAttributes(getQueueAttributesRequest,
+            request -> callOnQueue(request.queueUrl(), amazonSqsToBeExtended.getQueueAttributes(request)));
     }
 
     /**
@@ -139,7 +148,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<SendMessageBatchResponse> sendMessageBatch(
         SendMessageBatchRequest sendMessageBatchRequest) {
-        return amazonSqsToBeExtended.sendMessageBatch(sendMessageBatchRequest);
+        return callOnQueue(sendMessageBatchRequest.queueUrl(), amazonSqsToBeExtended.sendMessageBatch(sendMessageBatchRequest));
     }
 
     /**
@@ -147,7 +156,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<PurgeQueueResponse> purgeQueue(PurgeQueueRequest purgeQueueRequest) {
-        return amazonSqsToBeExtended.purgeQueue(purgeQueueRequest);
+        return callOnQueue(purgeQueueRequest.queueUrl(), amazonSqsToBeExtended.purgeQueue(purgeQueueRequest));
     }
 
     /**
@@ -164,7 +173,8 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
      */
     @Override
     public CompletableFuture<DeleteQueueResponse> deleteQueue(DeleteQueueRequest deleteQueueRequest) {
-        return amazonSqsToBeExtended.deleteQueue(deleteQueueRequest);
+        return amazonSqsToBeExtended.deleteQueue(deleteQueueRequest)
+            .whenComplete((response, throwable) -> invalidateQueueMetadata(deleteQueueRequest.queueUrl()));
     }
 
     /**
@@ -189,7 +199,7 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     @Override
     public CompletableFuture<DeleteMessageBatchResponse> deleteMessageBatch(
         DeleteMessageBatchRequest deleteMessageBatchRequest) {
-        return amazonSqsToBeExtended.deleteMessageBatch(deleteMessageBatchRequest);
+        return callOnQueue(deleteMessageBatchRequest.queueUrl(), amazonSqsToBeExtended.deleteMessageBatch(deleteMessageBatchRequest));
     }
 
     /**
@@ -274,4 +284,18 @@ abstract class AmazonSQSExtendedAsyncClientBase implements SqsAsyncClient {
     public void close() {
         amazonSqsToBeExtended.close();
     }
+
+    private <T> CompletableFuture<T> callOnQueue(String queueUrl, CompletableFuture<T> call) {
+        if (queueMetadataCache != null) {
+            call.whenComplete((response, throwable) ->
+                queueMetadataCache.invalidateIfQueueDoesNotExist(queueUrl, throwable));
+        }
+        return call;
+    }
+
+    private void invalidateQueueMetadata(String queueUrl) {
+        if (queueMetadataCache != null && queueUrl != null) {
+            queueMetadataCache.invalidate(queueUrl);
+        }
+    }
 }
@@ -16,20 +16,39 @@
 package com.amazon.sqs.javamessaging;
 
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.checkMessageAttributes;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.compressInline;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.decideOffload;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.decompressInlineOrKeep;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getMessagePointerFromModifiedReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getOrigReceiptHandle;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getPayloadSizeIfPresent;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getQueueS3KeyPrefix;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getReservedAttributeNameIfPresent;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getS3Key;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isCompressedInline;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isLarge;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isS3ReceiptHandle;
 import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.updateMessageAttributePayloadSize;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.withReservedAttributeNames;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +57,7 @@ import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.util.VersionInfo;
+import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.BatchEntryIdsNotDistinctException;
@@ -107,6 +127,11 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
     private static final Log LOG = LogFactory.getLog(AmazonSQSExtendedClient.class);
     private ExtendedClientConfiguration clientConfiguration;
     private PayloadStore payloadStore;
+    private Map<String, PayloadStore> payloadStoresByBucketName;
+    private InProcessPayloadStore inProcessPayloadStore;
+    private VisibilityHeartbeat visibilityHeartbeat;
+    private QueueMessageSizeLimits queueMessageSizeLimits;
+    private final Set<String> retentionCheckedQueueUrls = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructs a new Amazon SQS extended client to invoke service methods on
@@ -142,10 +167,61 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
     public AmazonSQSExtendedClient(SqsClient sqsClient, ExtendedClientConfiguration extendedClientConfig) {
         super(sqsClient);
         this.clientConfiguration = new ExtendedClientConfiguration(extendedClientConfig);
+        if (clientConfiguration.getQueueMetadataCacheTtl() != null) {
+            this.queueMetadataCache = new QueueMetadataCache(clientConfiguration.getQueueMetadataCacheTtl(),
+                    clientConfiguration.getQueueMetadataCachedAttributeNames());
+        }
         S3Dao s3Dao = new S3Dao(clientConfiguration.getS3Client(),
                 clientConfiguration.getServerSideEncryptionStrategy(),
                 clientConfiguration.getObjectCannedACL());
-        this.payloadStore = new S3BackedPayloadStore(s3Dao, clientConfiguration.getS3BucketName());
+        PayloadStore customPayloadStore = clientConfiguration.getPayloadStore();
+        S3BucketRoutingPolicy s3BucketRoutingPolicy = clientConfiguration.getS3BucketRoutingPolicy();
+        if (clientConfiguration.getInProcessPayloadByteBudget() > 0
+            && (customPayloadStore != null || s3BucketRoutingPolicy != null)) {
+            String errorMessage = "In-process payload store cannot be used with a custom payload store "
+                                  + "or an S3 bucket routing policy.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (clientConfiguration.getInProcessPayloadByteBudget() > 0 && clientConfiguration.ignoresPayloadNotFound()) {
+            // In either upload mode, another consumer may find no payload in Amazon S3 yet and
+            // silently delete the message
+            String errorMessage = "In-process payload store cannot be used when payloads not found are ignored.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.payloadStore = decoratePayloadStore(customPayloadStore != null
+                ? controlS3Access(customPayloadStore)
+                : newS3PayloadStore(s3Dao, clientConfiguration.getS3BucketName()));
+
+        if (s3BucketRoutingPolicy != null) {
+            if (customPayloadStore != null) {
+                String errorMessage = "S3 bucket routing policy cannot be used with a custom payload store.";
+                LOG.error(errorMessage);
+                throw SdkClientException.create(errorMessage);
+            }
+            this.payloadStoresByBucketName = new HashMap<>();
+            for (String s3BucketName : s3BucketRoutingPolicy.getBucketNames()) {
+                payloadStoresByBucketName.put(s3BucketName,
+                        decoratePayloadStore(newS3PayloadStore(s3Dao, s3BucketName)));
+            }
+        }
+
+        if (clientConfiguration.getVisibilityHeartbeatTimeout() > 0) {
+            this.visibilityHeartbeat = new VisibilityHeartbeat(clientConfiguration.getVisibilityHeartbeatTimeout(),
+                    clientConfiguration.getVisibilityHeartbeatInterval(),
+                    clientConfiguration.getVisibilityHeartbeatMaxExtension(),
+                    request -> callNow(() -> super.changeMessageVisibilityBatch(
+                            appendUserAgent(request.toBuilder()).build())));
+        }
+        if (clientConfiguration.getQueueMessageSizeCacheTtl() != null) {
+            this.queueMessageSizeLimits = new QueueMessageSizeLimits(clientConfiguration.getQueueMessageSizeCacheTtl(),
+                    clientConfiguration.getPayloadSizeThreshold(),
+                    request -> callNow(() -> super.getQueueAttributes(appendUserAgent(request.toBuilder()).build())));
+        }
+        if (clientConfiguration.getLifecycleCleanupPayloadTtl() != null) {
+            checkLifecycleCleanup();
+        }
     }
 
     /**
@@ -205,10 +281,23 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         }
 
         //Check message attributes for ExtendedClient related constraints
-        checkMessageAttributes(clientConfiguration.getPayloadSizeThreshold(), sendMessageRequest.messageAttributes());
-
-        if (clientConfiguration.isAlwaysThroughS3()
-            || isLarge(clientConfiguration.getPayloadSizeThreshold(), sendMessageRequest)) {
+        checkRetentionPeriod(sendMessageRequest.queueUrl());
+        int payloadSizeThreshold = getPayloadSizeThreshold(sendMessageRequest.queueUrl());
+        checkMessageAttributes(payloadSizeThreshold, sendMessageRequest.messageAttributes(), compressesInline());
+
+        OffloadPolicy.Decision offloadDecision = decideOffload(clientConfiguration.getOffloadPolicy(),
+            clientConfiguration.isAlwaysThroughS3(), sendMessageRequest.queueUrl(), payloadSizeThreshold,
+            sendMessageRequest.messageBody(), sendMessageRequest.messageAttributes(), sendMessageRequest);
+        if (offloadDecision == OffloadPolicy.Decision.COMPRESS_INLINE) {
+            SendMessageRequest compressedRequest = compressInline(payloadSizeThreshold, sendMessageRequest);
+            if (compressedRequest != null) {
+                return super.sendMessage(compressedRequest);
+            }
+            offloadDecision = isLarge(payloadSizeThreshold, sendMessageRequest)
+                ? OffloadPolicy.Decision.OFFLOAD
+                : OffloadPolicy.Decision.INLINE;
+        }
+        if (offloadDecision == OffloadPolicy.Decision.OFFLOAD) {
             sendMessageRequest = storeMessageInS3(sendMessageRequest);
         }
         return super.sendMessage(sendMessageRequest);
@@ -320,58 +409,104 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         if (!clientConfiguration.isPayloadSupportEnabled()) {
             return super.receiveMessage(receiveMessageRequestBuilder.build());
         }
-        //Remove before adding to avoid any duplicates
-        List<String> messageAttributeNames = new ArrayList<>(receiveMessageRequest.messageAttributeNames());
-        messageAttributeNames.removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-        messageAttributeNames.addAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-        receiveMessageRequestBuilder.messageAttributeNames(messageAttributeNames);
+        receiveMessageRequestBuilder.messageAttributeNames(
+            withReservedAttributeNames(receiveMessageRequest.messageAttributeNames(), compressesInline()));
         receiveMessageRequest = receiveMessageRequestBuilder.build();
 
-        ReceiveMessageResponse receiveMessageResponse = super.receiveMessage(receiveMessageRequest);
+        String queueUrl = receiveMessageRequest.queueUrl();
+        long pollStartNanos = System.nanoTime();
+        boolean pollSucceeded = false;
+        ReceiveMessageResponse receiveMessageResponse;
+        try {
+            receiveMessageResponse = super.receiveMessage(receiveMessageRequest);
+            pollSucceeded = true;
+        } finally {
+            recordMetric(ExtendedClientMetric.RECEIVE_POLL, queueUrl, pollStartNanos, -1L, pollSucceeded);
+        }
         ReceiveMessageResponse.Builder receiveMessageResponseBuilder = receiveMessageResponse.toBuilder();
 
+        long resolveStartNanos = System.nanoTime();
         List<Message> messages = receiveMessageResponse.messages();
+        if (visibilityHeartbeat != null) {
+            // Messages are kept invisible while their payloads are downloaded
+            visibilityHeartbeat.track(queueUrl, messages);
+        }
         List<Message> modifiedMessages = new ArrayList<>(messages.size());
-        for (Message message : messages) {
-            Message.Builder messageBuilder = message.toBuilder();
-
-            // for each received message check if they are stored in S3.
-            Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(message.messageAttributes());
-            if (largePayloadAttributeName.isPresent()) {
-                String largeMessagePointer = message.body();
-                largeMessagePointer = largeMessagePointer.replace("com.amazon.sqs.javamessaging.MessageS3Pointer", "software.amazon.payloadoffloading.PayloadS3Pointer");
-
-                try {
-                    messageBuilder.body(payloadStore.getOriginalPayload(largeMessagePointer));
-                } catch (SdkException e) {
-                    if (e.getCause() instanceof NoSuchKeyException && clientConfiguration.ignoresPayloadNotFound()) {
-                        DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest
-                                .builder()
-                                .queueUrl(receiveMessageRequest.queueUrl())
-                                .receiptHandle(message.receiptHandle())
-                                .build();
-                        deleteMessage(deleteMessageRequest);
-                        LOG.warn("Message deleted from SQS since payload with pointer could not be found in S3.");
-                        continue;
-                    } else throw e;
+        PayloadByteBudget payloadByteBudget = clientConfiguration.getReceivePayloadByteBudget();
+        List<Message> messagesOverBudget = new ArrayList<>();
+        long reservedBytes = 0;
+        boolean resolved = false;
+        try {
+            for (Message message : messages) {
+                if (compressesInline() && isCompressedInline(message.messageAttributes())) {
+                    modifiedMessages.add(decompressInlineOrKeep(message));
+                    continue;
                 }
-
-                // remove the additional attribute before returning the message
-                // to user.
-                Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(message.messageAttributes());
-                messageAttributes.keySet().removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
-                messageBuilder.messageAttributes(messageAttributes);
-
-                // Embed s3 object pointer in the receipt handle.
-                String modifiedReceiptHandle = embedS3PointerInReceiptHandle(
-                        message.receiptHandle(),
-                        largeMessagePointer);
-
-                messageBuilder.receiptHandle(modifiedReceiptHandle);
+                Message.Builder messageBuilder = message.toBuilder();
+
+                // for each received message check if they are stored in S3.
+                Optional<String> largePayloadAttributeName = getReservedAttributeNameIfPresent(message.messageAttributes());
+                if (largePayloadAttributeName.isPresent()) {
+                    long payloadSize = getPayloadSizeIfPresent(message.messageAttributes());
+                    if (payloadByteBudget != null && payloadSize > 0) {
+                        if (!payloadByteBudget.tryReserve(payloadSize)) {
+                            messagesOverBudget.add(message);
+                            continue;
+                        }
+                        reservedBytes += payloadSize;
+                    }
+
+                    String largeMessagePointer = message.body();
+                    largeMessagePointer = largeMessagePointer.replace("com.amazon.sqs.javamessaging.MessageS3Pointer", "software.amazon.payloadoffloading.PayloadS3Pointer");
+
+                    try {
+                        messageBuilder.body(getOriginalPayload(queueUrl, largeMessagePointer, payloadSize));
+                    } catch (SdkException e) {
+                        if (e.getCause() instanceof NoSuchKeyException && clientConfiguration.ignoresPayloadNotFound()) {
+                            DeleteMessageRequest deleteMessageRequest = DeleteMessageRequest
+                                    .builder()
+                                    .queueUrl(queueUrl)
+                                    .receiptHandle(message.receiptHandle())
+                                    .build();
+                            deleteMessage(deleteMessageRequest);
+                            incrementMetric(ExtendedClientMetric.PAYLOAD_NOT_FOUND, queueUrl);
+                            LOG.warn("Message deleted from SQS since payload with pointer could not be found in S3.");
+                            continue;
+                        } else throw e;
+                    }
+
+                    // remove the additional attribute before returning the message
+                    // to user.
+                    Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(message.messageAttributes());
+                    messageAttributes.keySet().removeAll(AmazonSQSExtendedClientUtil.RESERVED_ATTRIBUTE_NAMES);
+                    messageBuilder.messageAttributes(messageAttributes);
+
+                    // Embed s3 object pointer in the receipt handle.
+                    PayloadOperationEvents.Handle rewriteEvent =
+                        PayloadOperationEvents.begin(PayloadOperationEvents.Operation.RECEIPT_HANDLE_REWRITE);
+                    String modifiedReceiptHandle = embedS3PointerInReceiptHandle(
+                            message.receiptHandle(),
+                            largeMessagePointer);
+                    rewriteEvent.completeForPointer(queueUrl, largeMessagePointer, -1L, true);
+
+                    messageBuilder.receiptHandle(modifiedReceiptHandle);
+                }
+                modifiedMessages.add(messageBuilder.build());
+            }
+            resolved = true;
+        } finally {
+            if (reservedBytes > 0) {
+                payloadByteBudget.release(reservedBytes);
+            }
+            makeVisibleAgain(queueUrl, messagesOverBudget);
+            if (!resolved && visibilityHeartbeat != null) {
+                // None of the messages reach the caller, let their visibility timeout expire
+                visibilityHeartbeat.release(queueUrl, messages);
             }
-            modifiedMessages.add(messageBuilder.build());
         }
 
+        recordMetric(ExtendedClientMetric.RECEIVE_RESOLVE, queueUrl, resolveStartNanos, -1L, true);
+
         receiveMessageResponseBuilder.messages(modifiedMessages);
         return receiveMessageResponseBuilder.build();
     }
@@ -435,6 +570,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
 
         String receiptHandle = deleteMessageRequest.receiptHandle();
         String origReceiptHandle = receiptHandle;
+        releaseFromHeartbeat(deleteMessageRequest.queueUrl(), receiptHandle);
 
         // Update original receipt handle if needed
         if (isS3ReceiptHandle(receiptHandle)) {
@@ -442,7 +578,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
             // Delete pay load from S3 if needed
             if (clientConfiguration.doesCleanupS3Payload()) {
                 String messagePointer = getMessagePointerFromModifiedReceiptHandle(receiptHandle);
-                payloadStore.deleteOriginalPayload(messagePointer);
+                deleteOriginalPayload(deleteMessageRequest.queueUrl(), messagePointer);
             }
         }
 
@@ -540,6 +676,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
             throws AwsServiceException, SdkClientException {
 
         ChangeMessageVisibilityRequest.Builder changeMessageVisibilityRequestBuilder = changeMessageVisibilityRequest.toBuilder();
+        releaseFromHeartbeat(changeMessageVisibilityRequest.queueUrl(), changeMessageVisibilityRequest.receiptHandle());
         if (isS3ReceiptHandle(changeMessageVisibilityRequest.receiptHandle())) {
             changeMessageVisibilityRequestBuilder.receiptHandle(
                     getOrigReceiptHandle(changeMessageVisibilityRequest.receiptHandle()));
@@ -632,20 +769,33 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
 
         List<SendMessageBatchRequestEntry> batchEntries = new ArrayList<>(sendMessageBatchRequest.entries().size());
 
-        boolean hasS3Entries = false;
+        boolean hasModifiedEntries = false;
+        checkRetentionPeriod(sendMessageBatchRequest.queueUrl());
+        int payloadSizeThreshold = getPayloadSizeThreshold(sendMessageBatchRequest.queueUrl());
         for (SendMessageBatchRequestEntry entry : sendMessageBatchRequest.entries()) {
             //Check message attributes for ExtendedClient related constraints
-            checkMessageAttributes(clientConfiguration.getPayloadSizeThreshold(), entry.messageAttributes());
-
-            if (clientConfiguration.isAlwaysThroughS3()
-                || isLarge(clientConfiguration.getPayloadSizeThreshold(), entry)) {
-                entry = storeMessageInS3(entry);
-                hasS3Entries = true;
+            checkMessageAttributes(payloadSizeThreshold, entry.messageAttributes(), compressesInline());
+
+            OffloadPolicy.Decision offloadDecision = decideOffload(clientConfiguration.getOffloadPolicy(),
+                clientConfiguration.isAlwaysThroughS3(), sendMessageBatchRequest.queueUrl(), payloadSizeThreshold,
+                entry.messageBody(), entry.messageAttributes(), entry);
+            if (offloadDecision == OffloadPolicy.Decision.COMPRESS_INLINE) {
+                SendMessageBatchRequestEntry compressedEntry = compressInline(payloadSizeThreshold, entry);
+                if (compressedEntry != null) {
+                    entry = compressedEntry;
+                    hasModifiedEntries = true;
+                } else if (isLarge(payloadSizeThreshold, entry)) {
+                    offloadDecision = OffloadPolicy.Decision.OFFLOAD;
+                }
+            }
+            if (offloadDecision == OffloadPolicy.Decision.OFFLOAD) {
+                entry = storeMessageInS3(sendMessageBatchRequest.queueUrl(), entry);
+                hasModifiedEntries = true;
             }
             batchEntries.add(entry);
         }
 
-        if (hasS3Entries) {
+        if (hasModifiedEntries) {
             sendMessageBatchRequest = sendMessageBatchRequest.toBuilder().entries(batchEntries).build();
         }
 
@@ -716,6 +866,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
             DeleteMessageBatchRequestEntry.Builder entryBuilder = entry.toBuilder();
             String receiptHandle = entry.receiptHandle();
             String origReceiptHandle = receiptHandle;
+            releaseFromHeartbeat(deleteMessageBatchRequest.queueUrl(), receiptHandle);
 
             // Update original receipt handle if needed
             if (isS3ReceiptHandle(receiptHandle)) {
@@ -723,7 +874,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
                 // Delete s3 payload if needed
                 if (clientConfiguration.doesCleanupS3Payload()) {
                     String messagePointer = getMessagePointerFromModifiedReceiptHandle(receiptHandle);
-                    payloadStore.deleteOriginalPayload(messagePointer);
+                    deleteOriginalPayload(deleteMessageBatchRequest.queueUrl(), messagePointer);
                 }
             }
 
@@ -787,6 +938,7 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(changeMessageVisibilityBatchRequest.entries().size());
         for (ChangeMessageVisibilityBatchRequestEntry entry : changeMessageVisibilityBatchRequest.entries()) {
             ChangeMessageVisibilityBatchRequestEntry.Builder entryBuilder = entry.toBuilder();
+            releaseFromHeartbeat(changeMessageVisibilityBatchRequest.queueUrl(), entry.receiptHandle());
             if (isS3ReceiptHandle(entry.receiptHandle())) {
                 entryBuilder.receiptHandle(getOrigReceiptHandle(entry.receiptHandle()));
             }
@@ -853,7 +1005,81 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
         return super.purgeQueue(purgeQueueRequestBuilder.build());
     }
 
-    private SendMessageBatchRequestEntry storeMessageInS3(SendMessageBatchRequestEntry batchEntry) {
+    /**
+     * <p>
+     * Purges the queue, then deletes the payloads stored in Amazon S3 for the messages it
+     * held. Requires payloads to be stored in S3 under queue-scoped key prefixes, see
+     * {@link ExtendedClientConfiguration#withQueueScopedS3KeyPrefix(boolean)}; payloads stored before they were
+     * enabled are not found.
+     * </p>
+     * <p>
+     * The prefix of the queue is listed with <code>ListObjectsV2</code>, walking partitions in
+     * parallel, and each page of objects is removed with one <code>DeleteObjects</code> call.
+     * Only objects last modified before the purge started are deleted, so that the payloads
+     * of messages sent during the sweep are kept.
+     * </p>
+     * <p>
+     * <b>Messages already moved to a dead-letter queue lose their payloads too.</b> A message
+     * redriven to a dead-letter queue keeps pointing at the payload stored under the prefix of
+     * the queue it was sent to, so that payload is deleted by the sweep and the dead-letter
+     * message can no longer be read. Redrive or drain the dead-letter queue first when its
+     * messages are still needed.
+     * </p>
+     * <p>
+     * The S3 requests of the sweep go through the {@link ExtendedClientConfiguration#withAdaptiveS3Concurrency
+     * adaptive S3 concurrency controller} when configured, sharing its permits with payload
+     * uploads and downloads.
+     * </p>
+     *
+     * @param purgeQueueRequest
+     *            The PurgeQueue request.
+     * @param concurrency
+     *            The maximum number of S3 requests in flight during the sweep.
+     * @param progressListener
+     *            Called with the progress after each listed page and each deletion, possibly
+     *            from several threads at once, or null.
+     * @return the final progress of the sweep.
+     */
+    public PayloadSweepProgress purgeQueueWithPayloads(PurgeQueueRequest purgeQueueRequest, int concurrency,
+                                                       Consumer<PayloadSweepProgress> progressListener) {
+        if (purgeQueueRequest == null) {
+            String errorMessage = "purgeQueueRequest cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (concurrency < 1) {
+            String errorMessage = "The payload sweep concurrency must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        List<String> s3BucketNames = getSweptS3BucketNames();
+        String s3KeyPrefix = getS3KeyPrefix(purgeQueueRequest.queueUrl());
+
+        Instant purgeStartTime = Instant.now();
+        super.purgeQueue(appendUserAgent(purgeQueueRequest.toBuilder()).build());
+
+        ExecutorService sweepExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "sqs-extended-payload-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        S3Client s3Client = clientConfiguration.getS3Client();
+        try {
+            return new S3PayloadSweeper(concurrency, purgeStartTime, progressListener,
+                    request -> CompletableFuture.supplyAsync(
+                        () -> callS3(() -> s3Client.listObjectsV2(request)), sweepExecutor),
+                    request -> CompletableFuture.supplyAsync(
+                        () -> callS3(() -> s3Client.deleteObjects(request)), sweepExecutor))
+                .sweep(s3BucketNames, s3KeyPrefix)
+                .join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SdkException ? (SdkException) e.getCause() : e;
+        } finally {
+            sweepExecutor.shutdown();
+        }
+    }
+
+    private SendMessageBatchRequestEntry storeMessageInS3(String queueUrl, SendMessageBatchRequestEntry batchEntry) {
 
         // Read the content of the message from message body
         String messageContentStr = batchEntry.messageBody();
@@ -867,13 +1093,14 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
                 clientConfiguration.usesLegacyReservedAttributeName()));
 
         // Store the message content in S3.
-        String largeMessagePointer = storeOriginalPayload(messageContentStr);
+        String largeMessagePointer = storeOriginalPayload(queueUrl, messageContentStr, messageContentSize);
         batchEntryBuilder.messageBody(largeMessagePointer);
 
         return batchEntryBuilder.build();
     }
 
     private SendMessageRequest storeMessageInS3(SendMessageRequest sendMessageRequest) {
+        String queueUrl = sendMessageRequest.queueUrl();
 
         // Read the content of the message from message body
         String messageContentStr = sendMessageRequest.messageBody();
@@ -887,29 +1114,273 @@ public class AmazonSQSExtendedClient extends AmazonSQSExtendedClientBase impleme
                 clientConfiguration.usesLegacyReservedAttributeName()));
 
         // Store the message content in S3.
-        String largeMessagePointer = storeOriginalPayload(messageContentStr);
+        String largeMessagePointer = storeOriginalPayload(queueUrl, messageContentStr, messageContentSize);
         sendMessageRequestBuilder.messageBody(largeMessagePointer);
 
         return sendMessageRequestBuilder.build();
     }
 
-    private String storeOriginalPayload(String messageContentStr) {
-        String s3KeyPrefix = clientConfiguration.getS3KeyPrefix();
-        if (StringUtils.isBlank(s3KeyPrefix)) {
-            return payloadStore.storeOriginalPayload(messageContentStr);
+    private String storeOriginalPayload(String queueUrl, String messageContentStr, long messageContentSize) {
+        String s3BucketName = selectUploadS3BucketName(messageContentSize);
+        PayloadStore uploadPayloadStore = getUploadPayloadStore(s3BucketName);
+        String s3Key = getS3Key(getS3KeyPrefix(queueUrl), clientConfiguration.getS3KeyPartitioner(),
+            clientConfiguration.getS3KeyGenerator().generateS3KeyName());
+
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.STORE);
+        long startNanos = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            String largeMessagePointer = uploadPayloadStore.storeOriginalPayload(messageContentStr, s3Key);
+            succeeded = true;
+            return largeMessagePointer;
+        } finally {
+            recordMetric(ExtendedClientMetric.PAYLOAD_STORE, queueUrl, startNanos, messageContentSize, succeeded);
+            event.complete(queueUrl, s3BucketName, messageContentSize, succeeded);
+        }
+    }
+
+    private String getOriginalPayload(String queueUrl, String largeMessagePointer, long payloadSize) {
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.FETCH);
+        long startNanos = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            String originalPayload = PayloadFetchHedging.withPayloadSize(payloadSize,
+                    () -> payloadStore.getOriginalPayload(largeMessagePointer));
+            succeeded = true;
+            return originalPayload;
+        } finally {
+            recordMetric(ExtendedClientMetric.PAYLOAD_FETCH, queueUrl, startNanos, payloadSize, succeeded);
+            event.completeForPointer(queueUrl, largeMessagePointer, payloadSize, succeeded);
+        }
+    }
+
+    private void deleteOriginalPayload(String queueUrl, String messagePointer) {
+        PayloadOperationEvents.Handle event = PayloadOperationEvents.begin(PayloadOperationEvents.Operation.DELETE);
+        long startNanos = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            payloadStore.deleteOriginalPayload(messagePointer);
+            succeeded = true;
+        } finally {
+            recordMetric(ExtendedClientMetric.PAYLOAD_DELETE, queueUrl, startNanos, -1L, succeeded);
+            event.completeForPointer(queueUrl, messagePointer, -1L, succeeded);
+        }
+    }
+
+    private void recordMetric(ExtendedClientMetric metric, String queueUrl, long startNanos, long payloadBytes,
+                              boolean succeeded) {
+        ExtendedClientMetrics metrics = clientConfiguration.getMetrics();
+        if (metrics != null) {
+            metrics.record(metric, queueUrl, System.nanoTime() - startNanos, payloadBytes, succeeded);
+        }
+    }
+
+    private void incrementMetric(ExtendedClientMetric metric, String queueUrl) {
+        ExtendedClientMetrics metrics = clientConfiguration.getMetrics();
+        if (metrics != null) {
+            metrics.increment(metric, queueUrl);
         }
-        return payloadStore.storeOriginalPayload(messageContentStr, s3KeyPrefix + UUID.randomUUID());
+    }
+
+    private boolean compressesInline() {
+        // Any offload policy may compress, so only then is the encoding attribute reserved
+        return clientConfiguration.getOffloadPolicy() != null;
+    }
+
+    private String selectUploadS3BucketName(long messageContentSize) {
+        if (payloadStoresByBucketName == null) {
+            return clientConfiguration.getS3BucketName();
+        }
+        return clientConfiguration.getS3BucketRoutingPolicy().selectBucket(messageContentSize);
+    }
+
+    private void makeVisibleAgain(String queueUrl, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.release(queueUrl, messages);
+        }
+
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                    .id(Integer.toString(i))
+                    .receiptHandle(messages.get(i).receiptHandle())
+                    .visibilityTimeout(0)
+                    .build());
+            incrementMetric(ExtendedClientMetric.PAYLOAD_BUDGET_EXCEEDED, queueUrl);
+        }
+        ChangeMessageVisibilityBatchRequest.Builder requestBuilder = ChangeMessageVisibilityBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(entries);
+        try {
+            ChangeMessageVisibilityBatchResponse response =
+                    super.changeMessageVisibilityBatch(appendUserAgent(requestBuilder).build());
+            if (response.hasFailed() && !response.failed().isEmpty()) {
+                LOG.warn("Failed to make " + response.failed().size()
+                         + " messages over the payload byte budget visible again: " + response.failed().get(0).message());
+            }
+        } catch (SdkException e) {
+            // The messages become visible again anyway once their visibility timeout expires
+            LOG.warn("Failed to make messages over the payload byte budget visible again.", e);
+        }
+        LOG.info(messages.size() + " messages made visible again since their payloads did not fit in the byte budget.");
+    }
+
+    private int getPayloadSizeThreshold(String queueUrl) {
+        if (queueMessageSizeLimits == null) {
+            return clientConfiguration.getPayloadSizeThreshold();
+        }
+        return queueMessageSizeLimits.get(queueUrl).join();
+    }
+
+    private String getS3KeyPrefix(String queueUrl) {
+        return clientConfiguration.usesQueueScopedS3KeyPrefix()
+            ? getQueueS3KeyPrefix(clientConfiguration.getS3KeyPrefix(), queueUrl)
+            : clientConfiguration.getS3KeyPrefix();
+    }
+
+    private List<String> getSweptS3BucketNames() {
+        if (clientConfiguration.getS3BucketName() == null || clientConfiguration.getPayloadStore() != null
+            || !clientConfiguration.usesQueueScopedS3KeyPrefix()) {
+            String errorMessage = "Purging payloads requires payloads to be stored in S3 under queue-scoped "
+                                  + "S3 key prefixes.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return getS3BucketNames();
+    }
+
+    private List<String> getS3BucketNames() {
+        S3BucketRoutingPolicy s3BucketRoutingPolicy = clientConfiguration.getS3BucketRoutingPolicy();
+        return s3BucketRoutingPolicy != null
+            ? new ArrayList<>(s3BucketRoutingPolicy.getBucketNames())
+            : Collections.singletonList(clientConfiguration.getS3BucketName());
+    }
+
+    private void checkLifecycleCleanup() {
+        if (clientConfiguration.getS3BucketName() == null || clientConfiguration.getPayloadStore() != null
+            || clientConfiguration.getInProcessPayloadByteBudget() > 0) {
+            String errorMessage = "Lifecycle cleanup requires payloads to be stored in S3.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        S3Client s3Client = clientConfiguration.getS3Client();
+        try {
+            LifecycleCleanupCheck.check(getS3BucketNames(), clientConfiguration.getS3KeyPrefix(),
+                    clientConfiguration.getLifecycleCleanupPayloadTtl(),
+                    request -> callNow(() -> s3Client.getBucketLifecycleConfiguration(request)))
+                .join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SdkException ? (SdkException) e.getCause() : e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> callNow(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(call.get());
+        } catch (SdkException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void releaseFromHeartbeat(String queueUrl, String receiptHandle) {
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.release(queueUrl, receiptHandle);
+        }
+    }
+
+    private PayloadStore newS3PayloadStore(S3Dao s3Dao, String s3BucketName) {
+        PayloadBufferPool payloadBufferPool = clientConfiguration.getPayloadBufferPool();
+        PayloadStore store = payloadBufferPool == null
+                ? new S3BackedPayloadStore(s3Dao, s3BucketName)
+                : new PooledS3PayloadStore(clientConfiguration.getS3Client(), s3BucketName,
+                        clientConfiguration.getServerSideEncryptionStrategy(), clientConfiguration.getObjectCannedACL(),
+                        payloadBufferPool);
+        // Payloads served from memory by the in-process store are neither limited nor hedged
+        store = controlS3Access(store);
+        if (clientConfiguration.getInProcessPayloadByteBudget() > 0) {
+            inProcessPayloadStore = new InProcessPayloadStore(store, s3BucketName,
+                    clientConfiguration.getInProcessPayloadByteBudget(),
+                    clientConfiguration.getInProcessPayloadUploadMode());
+            store = inProcessPayloadStore;
+        }
+        return store;
+    }
+
+    private PayloadStore controlS3Access(PayloadStore store) {
+        AdaptiveS3ConcurrencyController adaptiveS3Concurrency = clientConfiguration.getAdaptiveS3Concurrency();
+        if (adaptiveS3Concurrency != null) {
+            store = new ConcurrencyLimitedPayloadStore(store, adaptiveS3Concurrency);
+        }
+        // Hedged fetches take their own permit
+        PayloadFetchHedging payloadFetchHedging = clientConfiguration.getPayloadFetchHedging();
+        return payloadFetchHedging == null ? store : new HedgedPayloadStore(store, payloadFetchHedging);
+    }
+
+    private <T> T callS3(Supplier<T> operation) {
+        AdaptiveS3ConcurrencyController adaptiveS3Concurrency = clientConfiguration.getAdaptiveS3Concurrency();
+        return adaptiveS3Concurrency == null ? operation.get() : adaptiveS3Concurrency.call(operation);
+    }
+
+    private PayloadStore decoratePayloadStore(PayloadStore store) {
+        for (UnaryOperator<PayloadStore> decorator : clientConfiguration.getPayloadStoreDecorators()) {
+            store = decorator.apply(store);
+            if (store == null) {
+                String errorMessage = "Payload store decorator returned null.";
+                LOG.error(errorMessage);
+                throw SdkClientException.create(errorMessage);
+            }
+        }
+        return store;
+    }
+
+    private PayloadStore getUploadPayloadStore(String s3BucketName) {
+        if (payloadStoresByBucketName == null) {
+            return payloadStore;
+        }
+
+        PayloadStore uploadPayloadStore = payloadStoresByBucketName.get(s3BucketName);
+        if (uploadPayloadStore == null) {
+            String errorMessage = "S3 bucket routing policy selected unknown bucket " + s3BucketName + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return uploadPayloadStore;
     }
 
     @SuppressWarnings("unchecked")
+    private void checkRetentionPeriod(String queueUrl) {
+        Duration payloadTtl = clientConfiguration.getLifecycleCleanupPayloadTtl();
+        if (payloadTtl == null || queueUrl == null || !retentionCheckedQueueUrls.add(queueUrl)) {
+            return;
+        }
+        // Read once per queue; a retention period too long is logged as an error
+        LifecycleCleanupCheck.checkRetentionPeriod(queueUrl, payloadTtl,
+            request -> callNow(() -> super.getQueueAttributes(appendUserAgent(request.toBuilder()).build())));
+    }
+
     private static <T extends AwsRequest.Builder> T appendUserAgent(final T builder) {
         return AmazonSQSExtendedClientUtil.appendUserAgent(builder, USER_AGENT_NAME, USER_AGENT_VERSION);
     }
 
-	@Override
-	public void close() {
-		super.close();
-		this.clientConfiguration.getS3Client().close();
-	}    
-    
+    @Override
+    public void close() {
+        if (visibilityHeartbeat != null) {
+            visibilityHeartbeat.close();
+        }
+        super.close();
+        // Payloads still held in memory are written to S3 before the S3 client is closed
+        AmazonSQSExtendedClientUtil.closePayloadStore(inProcessPayloadStore);
+        AmazonSQSExtendedClientUtil.closePayloadStore(payloadStore);
+        if (payloadStoresByBucketName != null) {
+            payloadStoresByBucketName.values().forEach(AmazonSQSExtendedClientUtil::closePayloadStore);
+        }
+        if (clientConfiguration.getS3Client() != null) {
+            clientConfiguration.getS3Client().close();
+        }
+    }
 }
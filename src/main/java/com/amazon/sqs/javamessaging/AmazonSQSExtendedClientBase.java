@@ -16,6 +16,9 @@
 package com.amazon.sqs.javamessaging;
 
 import java.lang.UnsupportedOperationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.exception.SdkClientException;
@@ -86,6 +89,7 @@ import software.amazon.awssdk.services.sqs.model.UntagQueueResponse;
 
 abstract class AmazonSQSExtendedClientBase implements SqsClient {
     SqsClient amazonSqsToBeExtended;
+    QueueMetadataCache queueMetadataCache;
 
     public AmazonSQSExtendedClientBase(SqsClient sqsClient) {
         amazonSqsToBeExtended = sqsClient;
@@ -128,7 +132,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
      */
     public SendMessageResponse sendMessage(SendMessageRequest sendMessageRequest) throws
             InvalidMessageContentsException, UnsupportedOperationException, SdkException, SdkClientException, SqsException {
-        return amazonSqsToBeExtended.sendMessage(sendMessageRequest);
+        return callOnQueue(sendMessageRequest.queueUrl(), () -> amazonSqsToBeExtended.sendMessage(sendMessageRequest));
     }
 
     /**
@@ -224,7 +228,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
      *      Documentation</a>
      */
     public ReceiveMessageResponse receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
-        return amazonSqsToBeExtended.receiveMessage(receiveMessageRequest);
+        return callOnQueue(receiveMessageRequest.queueUrl(), () -> amazonSqsToBeExtended.receiveMessage(receiveMessageRequest));
     }
 
     /**
@@ -271,7 +275,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
      */
     public DeleteMessageResponse deleteMessage(DeleteMessageRequest deleteMessageRequest) throws
             InvalidIdFormatException, ReceiptHandleIsInvalidException, SdkException, SdkClientException, SqsException {
-        return amazonSqsToBeExtended.deleteMessage(deleteMessageRequest);
+        return callOnQueue(deleteMessageRequest.queueUrl(), () -> amazonSqsToBeExtended.deleteMessage(deleteMessageRequest));
     }
 
     /**
@@ -323,7 +327,11 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public SetQueueAttributesResponse setQueueAttributes(SetQueueAttributesRequest setQueueAttributesRequest)
             throws InvalidAttributeNameException, AwsServiceException, SdkClientException, SqsException {
 
-        return amazonSqsToBeExtended.setQueueAttributes(setQueueAttributesRequest);
+        try {
+            return amazonSqsToBeExtended.setQueueAttributes(setQueueAttributesRequest);
+        } finally {
+            invalidateQueueMetadata(setQueueAttributesRequest.queueUrl());
+        }
     }
 
     /**
@@ -375,7 +383,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
             ChangeMessageVisibilityBatchRequest changeMessageVisibilityBatchRequest) throws AwsServiceException,
             SdkClientException {
 
-        return amazonSqsToBeExtended.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest);
+        return callOnQueue(changeMessageVisibilityBatchRequest.queueUrl(), () -> amazonSqsToBeExtended.changeMessageVisibilityBatch(changeMessageVisibilityBatchRequest));
     }
 
     /**
@@ -467,7 +475,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public ChangeMessageVisibilityResponse changeMessageVisibility(ChangeMessageVisibilityRequest changeMessageVisibilityRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.changeMessageVisibility(changeMessageVisibilityRequest);
+        return callOnQueue(changeMessageVisibilityRequest.queueUrl(), () -> amazonSqsToBeExtended.changeMessageVisibility(changeMessageVisibilityRequest));
     }
 
     /**
@@ -501,7 +509,11 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public GetQueueUrlResponse getQueueUrl(GetQueueUrlRequest getQueueUrlRequest) throws AwsServiceException,
             SdkClientException {
 
-        return amazonSqsToBeExtended.getQueueUrl(getQueueUrlRequest);
+        if (queueMetadataCache == null) {
+            return amazonSqsToBeExtended.getQueueUrl(getQueueUrlRequest);
+        }
+        return join(queueMetadataCache.getQueueUrl(getQueueUrlRequest,
+                request -> callNow(() -> amazonSqsToBeExtended.getQueueUrl(request))));
     }
 
     /**
@@ -581,7 +593,13 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public GetQueueAttributesResponse getQueueAttributes(GetQueueAttributesRequest getQueueAttributesRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.getQueueAttributes(getQueueAttributesRequest);
+        if (queueMetadataCache == null) {
+            return callOnQueue(getQueueAttributesRequest.queueUrl(),
+                    () -> amazonSqsToBeExtended.getQueueAttributes(getQueueAttributesRequest));
+        }
+        return join(queueMetadataCache.getQueueAttributes(getQueueAttributesRequest,
+                request -> callNow(() -> callOnQueue(request.queueUrl(),
+                        () -> amazonSqsToBeExtended.getQueueAttributes(request)))));
     }
 
     /**
@@ -654,7 +672,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public SendMessageBatchResponse sendMessageBatch(SendMessageBatchRequest sendMessageBatchRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.sendMessageBatch(sendMessageBatchRequest);
+        return callOnQueue(sendMessageBatchRequest.queueUrl(), () -> amazonSqsToBeExtended.sendMessageBatch(sendMessageBatchRequest));
     }
 
     /**
@@ -700,7 +718,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public PurgeQueueResponse purgeQueue(PurgeQueueRequest purgeQueueRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.purgeQueue(purgeQueueRequest);
+        return callOnQueue(purgeQueueRequest.queueUrl(), () -> amazonSqsToBeExtended.purgeQueue(purgeQueueRequest));
 
     }
 
@@ -788,7 +806,11 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public DeleteQueueResponse deleteQueue(DeleteQueueRequest deleteQueueRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.deleteQueue(deleteQueueRequest);
+        try {
+            return amazonSqsToBeExtended.deleteQueue(deleteQueueRequest);
+        } finally {
+            invalidateQueueMetadata(deleteQueueRequest.queueUrl());
+        }
     }
 
     /**
@@ -879,7 +901,7 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public DeleteMessageBatchResponse deleteMessageBatch(DeleteMessageBatchRequest deleteMessageBatchRequest)
             throws AwsServiceException, SdkClientException {
 
-        return amazonSqsToBeExtended.deleteMessageBatch(deleteMessageBatchRequest);
+        return callOnQueue(deleteMessageBatchRequest.queueUrl(), () -> amazonSqsToBeExtended.deleteMessageBatch(deleteMessageBatchRequest));
     }
 
     /**
@@ -1148,4 +1170,40 @@ abstract class AmazonSQSExtendedClientBase implements SqsClient {
     public void close() {
         amazonSqsToBeExtended.close();
     }
+
+    private <T> T callOnQueue(String queueUrl, Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (QueueDoesNotExistException e) {
+            invalidateQueueMetadata(queueUrl);
+            throw e;
+        }
+    }
+
+    private void invalidateQueueMetadata(String queueUrl) {
+        if (queueMetadataCache != null && queueUrl != null) {
+            queueMetadataCache.invalidate(queueUrl);
+        }
+    }
+
+    private static <T> CompletableFuture<T> callNow(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(call.get());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.amazon.sqs.javamessaging;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -11,7 +12,9 @@ import software.amazon.awssdk.awscore.AwsRequest;
 import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.ApiName;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.SdkPojo;
 import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.model.Message;
 import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
@@ -27,6 +30,11 @@ public class AmazonSQSExtendedClientUtil {
         SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME);
 
     public static void checkMessageAttributes(int payloadSizeThreshold, Map<String, MessageAttributeValue> messageAttributes) {
+        checkMessageAttributes(payloadSizeThreshold, messageAttributes, false);
+    }
+
+    public static void checkMessageAttributes(int payloadSizeThreshold, Map<String, MessageAttributeValue> messageAttributes,
+                                              boolean compressesInline) {
         int msgAttributesSize = getMsgAttributesSize(messageAttributes);
         if (msgAttributesSize > payloadSizeThreshold) {
             String errorMessage = "Total size of Message attributes is " + msgAttributesSize
@@ -52,6 +60,13 @@ public class AmazonSQSExtendedClientUtil {
             LOG.error(errorMessage);
             throw SdkClientException.create(errorMessage);
         }
+
+        if (compressesInline && isCompressedInline(messageAttributes)) {
+            String errorMessage = "Message attribute name " + SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME
+                                  + " is reserved for use by SQS extended client.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
     }
 
     public static Optional<String> getReservedAttributeNameIfPresent(Map<String, MessageAttributeValue> msgAttributes) {
@@ -64,6 +79,20 @@ public class AmazonSQSExtendedClientUtil {
         return Optional.ofNullable(reservedAttributeName);
     }
 
+    public static long getPayloadSizeIfPresent(Map<String, MessageAttributeValue> msgAttributes) {
+        Optional<String> reservedAttributeName = getReservedAttributeNameIfPresent(msgAttributes);
+        if (!reservedAttributeName.isPresent()) {
+            return -1L;
+        }
+
+        String payloadSize = msgAttributes.get(reservedAttributeName.get()).stringValue();
+        try {
+            return payloadSize == null ? -1L : Long.parseLong(payloadSize);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
     public static String embedS3PointerInReceiptHandle(String receiptHandle, String pointer) {
         PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(pointer);
         String s3MsgBucketName = s3Pointer.getS3BucketName();
@@ -108,6 +137,110 @@ public class AmazonSQSExtendedClientUtil {
         return (totalMsgSize > payloadSizeThreshold);
     }
 
+    public static OffloadPolicy.Decision decideOffload(OffloadPolicy offloadPolicy, boolean alwaysThroughS3,
+                                                       String queueUrl, int payloadSizeThreshold, String messageBody,
+                                                       Map<String, MessageAttributeValue> messageAttributes,
+                                                       SdkPojo request) {
+        if (alwaysThroughS3) {
+            return OffloadPolicy.Decision.OFFLOAD;
+        }
+        long msgBodySize = Util.getStringSizeInBytes(messageBody);
+        int msgAttributesSize = getMsgAttributesSize(messageAttributes);
+        if (offloadPolicy == null) {
+            return msgAttributesSize + msgBodySize > payloadSizeThreshold
+                ? OffloadPolicy.Decision.OFFLOAD
+                : OffloadPolicy.Decision.INLINE;
+        }
+
+        OffloadPolicy.Decision decision = offloadPolicy.decide(queueUrl, msgBodySize, msgAttributesSize,
+            payloadSizeThreshold, request);
+        if (decision == null) {
+            String errorMessage = "Offload policy returned no decision.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (decision == OffloadPolicy.Decision.INLINE && msgAttributesSize + msgBodySize > payloadSizeThreshold) {
+            // The policy cannot make a message exceed the queue limit
+            return OffloadPolicy.Decision.OFFLOAD;
+        }
+        return decision;
+    }
+
+    public static SendMessageRequest compressInline(int payloadSizeThreshold, SendMessageRequest sendMessageRequest) {
+        if (Util.getStringSizeInBytes(sendMessageRequest.messageBody()) > SQSExtendedClientConstants.MAX_COMPRESSED_INLINE_BODY_SIZE) {
+            // Receivers refuse to decompress bodies this large
+            return null;
+        }
+        String compressedBody = InlineCompression.compress(sendMessageRequest.messageBody());
+        Map<String, MessageAttributeValue> messageAttributes =
+            withCompressedBodyAttribute(sendMessageRequest.messageAttributes());
+        if (!fitsCompressed(payloadSizeThreshold, sendMessageRequest.messageBody(), compressedBody, messageAttributes)) {
+            return null;
+        }
+        return sendMessageRequest.toBuilder()
+            .messageBody(compressedBody)
+            .messageAttributes(messageAttributes)
+            .build();
+    }
+
+    public static SendMessageBatchRequestEntry compressInline(int payloadSizeThreshold,
+                                                              SendMessageBatchRequestEntry batchEntry) {
+        if (Util.getStringSizeInBytes(batchEntry.messageBody()) > SQSExtendedClientConstants.MAX_COMPRESSED_INLINE_BODY_SIZE) {
+            // Receivers refuse to decompress bodies this large
+            return null;
+        }
+        String compressedBody = InlineCompression.compress(batchEntry.messageBody());
+        Map<String, MessageAttributeValue> messageAttributes =
+            withCompressedBodyAttribute(batchEntry.messageAttributes());
+        if (!fitsCompressed(payloadSizeThreshold, batchEntry.messageBody(), compressedBody, messageAttributes)) {
+            return null;
+        }
+        return batchEntry.toBuilder()
+            .messageBody(compressedBody)
+            .messageAttributes(messageAttributes)
+            .build();
+    }
+
+    public static boolean isCompressedInline(Map<String, MessageAttributeValue> msgAttributes) {
+        return msgAttributes.containsKey(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME);
+    }
+
+    public static Message decompressInline(Message message) {
+        Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(message.messageAttributes());
+        MessageAttributeValue encoding = messageAttributes.remove(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME);
+        if (!InlineCompression.ENCODING.equals(encoding.stringValue())) {
+            String errorMessage = "Unsupported message body encoding " + encoding.stringValue() + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return message.toBuilder()
+            .body(InlineCompression.decompress(message.body(), SQSExtendedClientConstants.MAX_COMPRESSED_INLINE_BODY_SIZE))
+            .messageAttributes(messageAttributes)
+            .build();
+    }
+
+    public static Message decompressInlineOrKeep(Message message) {
+        try {
+            return decompressInline(message);
+        } catch (SdkClientException e) {
+            // Only this message fails; it is returned as received, still marked as compressed
+            LOG.warn("Returning message " + message.messageId() + " without decompressing its body.", e);
+            return message;
+        }
+    }
+
+    public static List<String> withReservedAttributeNames(List<String> messageAttributeNames, boolean compressesInline) {
+        List<String> updatedMessageAttributeNames = new ArrayList<>(messageAttributeNames);
+        // Remove before adding to avoid any duplicates
+        updatedMessageAttributeNames.removeAll(RESERVED_ATTRIBUTE_NAMES);
+        updatedMessageAttributeNames.addAll(RESERVED_ATTRIBUTE_NAMES);
+        if (compressesInline) {
+            updatedMessageAttributeNames.remove(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME);
+            updatedMessageAttributeNames.add(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME);
+        }
+        return updatedMessageAttributeNames;
+    }
+
     public static Map<String, MessageAttributeValue> updateMessageAttributePayloadSize(
         Map<String, MessageAttributeValue> messageAttributes, Long messageContentSize,
         boolean usesLegacyReservedAttributeName) {
@@ -144,6 +277,21 @@ public class AmazonSQSExtendedClientUtil {
         return receiptHandle.substring(firstOccurence + marker.length(), secondOccurence);
     }
 
+    private static Map<String, MessageAttributeValue> withCompressedBodyAttribute(
+        Map<String, MessageAttributeValue> messageAttributes) {
+        Map<String, MessageAttributeValue> updatedMessageAttributes = new HashMap<>(messageAttributes);
+        updatedMessageAttributes.put(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME,
+            MessageAttributeValue.builder().dataType("String").stringValue(InlineCompression.ENCODING).build());
+        return updatedMessageAttributes;
+    }
+
+    private static boolean fitsCompressed(int payloadSizeThreshold, String messageBody, String compressedBody,
+                                          Map<String, MessageAttributeValue> compressedAttributes) {
+        long compressedBodySize = Util.getStringSizeInBytes(compressedBody);
+        return compressedBodySize < Util.getStringSizeInBytes(messageBody)
+               && compressedBodySize + getMsgAttributesSize(compressedAttributes) <= payloadSizeThreshold;
+    }
+
     private static int getMsgAttributesSize(Map<String, MessageAttributeValue> msgAttributes) {
         int totalMsgAttributesSize = 0;
         for (Map.Entry<String, MessageAttributeValue> entry : msgAttributes.entrySet()) {
@@ -197,4 +345,59 @@ public class AmazonSQSExtendedClientUtil {
 
         return trimmedPrefix;
     }
+
+    public static void validateS3KeyPartitioner(String s3KeyPrefix, S3KeyPartitioner s3KeyPartitioner) {
+        if (s3KeyPartitioner == null) {
+            return;
+        }
+
+        int maxPrefixLength = s3KeyPrefix.length() + s3KeyPartitioner.getMaxPartitionLength();
+        if (maxPrefixLength > SQSExtendedClientConstants.MAX_S3_KEY_PREFIX_LENGTH) {
+            String errorMessage = "The S3 key prefix length including the partition must not be greater than "
+                                  + SQSExtendedClientConstants.MAX_S3_KEY_PREFIX_LENGTH;
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+    }
+
+    public static String getQueueS3KeyPrefix(String s3KeyPrefix, String queueUrl) {
+        if (StringUtils.isBlank(queueUrl)) {
+            String errorMessage = "The queue URL is required for queue-scoped S3 key prefixes.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+
+        // Scope by account and queue name, the last two segments of https://sqs.<region>.amazonaws.com/<account>/<name>
+        String[] segments = queueUrl.trim().split("/");
+        String queueScope = segments.length >= 5
+            ? segments[segments.length - 2] + "/" + segments[segments.length - 1]
+            : segments[segments.length - 1];
+        return trimAndValidateS3KeyPrefix(s3KeyPrefix + queueScope + "/");
+    }
+
+    public static String getS3Key(String s3KeyPrefix, S3KeyPartitioner s3KeyPartitioner, String s3KeyName) {
+        if (StringUtils.isEmpty(s3KeyName) || s3KeyName.length() > SQSExtendedClientConstants.UUID_LENGTH) {
+            String errorMessage = "The generated S3 key name must not be empty or longer than "
+                                  + SQSExtendedClientConstants.UUID_LENGTH;
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+
+        if (s3KeyPartitioner == null) {
+            return s3KeyPrefix + s3KeyName;
+        }
+        String partitionedPrefix = s3KeyPrefix + s3KeyPartitioner.getPartition(s3KeyName);
+        return trimAndValidateS3KeyPrefix(partitionedPrefix) + s3KeyName;
+    }
+
+    static void closePayloadStore(Object payloadStore) {
+        if (!(payloadStore instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) payloadStore).close();
+        } catch (Exception e) {
+            LOG.warn("Failed to close payload store.", e);
+        }
+    }
 }
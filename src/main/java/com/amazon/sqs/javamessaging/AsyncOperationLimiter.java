@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous operations, possibly delaying their start to bound how many are in flight.
+ */
+interface AsyncOperationLimiter {
+
+    /**
+     * Starts the operation once the limiter allows it.
+     *
+     * @param operation
+     *            Starts the operation and returns its future.
+     * @return a future completed with the outcome of the operation.
+     */
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation);
+}
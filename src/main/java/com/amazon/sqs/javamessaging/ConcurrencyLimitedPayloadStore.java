@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Payload store running every operation of the underlying store through an
+ * {@link AdaptiveS3ConcurrencyController}.
+ */
+class ConcurrencyLimitedPayloadStore implements PayloadStore, AutoCloseable {
+    private final PayloadStore delegate;
+    private final AdaptiveS3ConcurrencyController controller;
+
+    ConcurrencyLimitedPayloadStore(PayloadStore delegate, AdaptiveS3ConcurrencyController controller) {
+        this.delegate = delegate;
+        this.controller = controller;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload) {
+        return controller.call(() -> delegate.storeOriginalPayload(payload));
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, String s3Key) {
+        return controller.call(() -> delegate.storeOriginalPayload(payload, s3Key));
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return controller.call(() -> delegate.getOriginalPayload(payloadPointer));
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        controller.call(() -> {
+            delegate.deleteOriginalPayload(payloadPointer);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        AmazonSQSExtendedClientUtil.closePayloadStore(delegate);
+    }
+}
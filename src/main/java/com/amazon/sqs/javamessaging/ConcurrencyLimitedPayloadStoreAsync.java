@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.concurrent.CompletableFuture;
+import software.amazon.payloadoffloading.PayloadStoreAsync;
+
+/**
+ * Payload store running every operation of the underlying store through a
+ * {@link S3ConcurrencyLimiter} or an {@link AdaptiveS3ConcurrencyController}.
+ */
+class ConcurrencyLimitedPayloadStoreAsync implements PayloadStoreAsync, AutoCloseable {
+    private final PayloadStoreAsync delegate;
+    private final AsyncOperationLimiter limiter;
+
+    ConcurrencyLimitedPayloadStoreAsync(PayloadStoreAsync delegate, AsyncOperationLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload) {
+        return limiter.submit(() -> delegate.storeOriginalPayload(payload));
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload, String s3Key) {
+        return limiter.submit(() -> delegate.storeOriginalPayload(payload, s3Key));
+    }
+
+    @Override
+    public CompletableFuture<String> getOriginalPayload(String payloadPointer) {
+        return limiter.submit(() -> delegate.getOriginalPayload(payloadPointer));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteOriginalPayload(String payloadPointer) {
+        return limiter.submit(() -> delegate.deleteOriginalPayload(payloadPointer));
+    }
+
+    @Override
+    public void close() {
+        AmazonSQSExtendedClientUtil.closePayloadStore(delegate);
+    }
+}
@@ -15,11 +15,22 @@
 
 package com.amazon.sqs.javamessaging;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import software.amazon.awssdk.annotations.NotThreadSafe;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.payloadoffloading.PayloadStore;
 import software.amazon.payloadoffloading.PayloadStorageConfiguration;
 import software.amazon.payloadoffloading.ServerSideEncryptionStrategy;
 
@@ -36,6 +47,27 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
     private boolean useLegacyReservedAttributeName = true;
     private boolean ignorePayloadNotFound = false;
     private String s3KeyPrefix = "";
+    private S3KeyPartitioner s3KeyPartitioner;
+    private S3KeyGenerator s3KeyGenerator = S3KeyGenerators.secureRandom();
+    private S3BucketRoutingPolicy s3BucketRoutingPolicy;
+    private ExtendedClientMetrics metrics;
+    private PayloadStore payloadStore;
+    private List<UnaryOperator<PayloadStore>> payloadStoreDecorators = new ArrayList<>();
+    private PayloadBufferPool payloadBufferPool;
+    private PayloadByteBudget receivePayloadByteBudget;
+    private AdaptiveS3ConcurrencyController adaptiveS3Concurrency;
+    private PayloadFetchHedging payloadFetchHedging;
+    private int visibilityHeartbeatTimeoutSeconds;
+    private int visibilityHeartbeatIntervalSeconds;
+    private int visibilityHeartbeatMaxExtensionSeconds = VisibilityHeartbeat.DEFAULT_MAX_EXTENSION_SECONDS;
+    private Duration queueMessageSizeCacheTtl;
+    private OffloadPolicy offloadPolicy;
+    private Duration queueMetadataCacheTtl;
+    private boolean queueScopedS3KeyPrefix = false;
+    private Duration lifecycleCleanupPayloadTtl;
+    private Set<QueueAttributeName> queueMetadataCachedAttributeNames = QueueMetadataCache.DEFAULT_CACHED_ATTRIBUTE_NAMES;
+    private long inProcessPayloadByteBudget;
+    private InProcessPayloadStore.UploadMode inProcessPayloadUploadMode;
 
     public ExtendedClientConfiguration() {
         super();
@@ -44,10 +76,31 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
 
     public ExtendedClientConfiguration(ExtendedClientConfiguration other) {
         super(other);
-        this.cleanupS3Payload = other.doesCleanupS3Payload();
+        this.cleanupS3Payload = other.cleanupS3Payload;
         this.useLegacyReservedAttributeName = other.usesLegacyReservedAttributeName();
         this.ignorePayloadNotFound = other.ignoresPayloadNotFound();
         this.s3KeyPrefix = other.s3KeyPrefix;
+        this.s3KeyPartitioner = other.s3KeyPartitioner;
+        this.s3KeyGenerator = other.s3KeyGenerator;
+        this.s3BucketRoutingPolicy = other.s3BucketRoutingPolicy;
+        this.metrics = other.metrics;
+        this.payloadStore = other.payloadStore;
+        this.payloadStoreDecorators = new ArrayList<>(other.payloadStoreDecorators);
+        this.payloadBufferPool = other.payloadBufferPool;
+        this.receivePayloadByteBudget = other.receivePayloadByteBudget;
+        this.adaptiveS3Concurrency = other.adaptiveS3Concurrency;
+        this.payloadFetchHedging = other.payloadFetchHedging;
+        this.visibilityHeartbeatTimeoutSeconds = other.visibilityHeartbeatTimeoutSeconds;
+        this.visibilityHeartbeatIntervalSeconds = other.visibilityHeartbeatIntervalSeconds;
+        this.visibilityHeartbeatMaxExtensionSeconds = other.visibilityHeartbeatMaxExtensionSeconds;
+        this.queueMessageSizeCacheTtl = other.queueMessageSizeCacheTtl;
+        this.offloadPolicy = other.offloadPolicy;
+        this.queueMetadataCacheTtl = other.queueMetadataCacheTtl;
+        this.queueScopedS3KeyPrefix = other.queueScopedS3KeyPrefix;
+        this.lifecycleCleanupPayloadTtl = other.lifecycleCleanupPayloadTtl;
+        this.queueMetadataCachedAttributeNames = other.queueMetadataCachedAttributeNames;
+        this.inProcessPayloadByteBudget = other.inProcessPayloadByteBudget;
+        this.inProcessPayloadUploadMode = other.inProcessPayloadUploadMode;
     }
 
     /**
@@ -109,7 +162,8 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
 
     /**
      * Sets whether or not messages should be removed from Amazon SQS
-     * when payloads are not found in Amazon S3.
+     * when payloads are not found in Amazon S3. This cannot be enabled along with
+     * the in-process payload store, whose payloads may not be in Amazon S3 yet.
      *
      * @param ignorePayloadNotFound
      *            Whether or not messages should be removed from Amazon SQS
@@ -140,7 +194,9 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
      *         A S3 key prefix value
      */
     public void setS3KeyPrefix(String s3KeyPrefix) {
-        this.s3KeyPrefix = AmazonSQSExtendedClientUtil.trimAndValidateS3KeyPrefix(s3KeyPrefix);
+        String trimmedPrefix = AmazonSQSExtendedClientUtil.trimAndValidateS3KeyPrefix(s3KeyPrefix);
+        AmazonSQSExtendedClientUtil.validateS3KeyPartitioner(trimmedPrefix, s3KeyPartitioner);
+        this.s3KeyPrefix = trimmedPrefix;
     }
 
     /**
@@ -164,14 +220,827 @@ public class ExtendedClientConfiguration extends PayloadStorageConfiguration {
         return this.s3KeyPrefix;
     }
 
+    /**
+     * Sets the strategy used to spread payload objects across several partitions
+     * under the S3 key prefix. Objects are stored under the S3 key prefix only when
+     * no partitioner is set.
+     *
+     * @param s3KeyPartitioner
+     *         A S3 key partitioner, or null to disable partitioning. Default: null
+     */
+    public void setS3KeyPartitioner(S3KeyPartitioner s3KeyPartitioner) {
+        AmazonSQSExtendedClientUtil.validateS3KeyPartitioner(this.s3KeyPrefix, s3KeyPartitioner);
+        this.s3KeyPartitioner = s3KeyPartitioner;
+    }
+
+    /**
+     * Sets the strategy used to spread payload objects across several partitions
+     * under the S3 key prefix. Objects are stored under the S3 key prefix only when
+     * no partitioner is set.
+     *
+     * @param s3KeyPartitioner
+     *         A S3 key partitioner, or null to disable partitioning. Default: null
+     *
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withS3KeyPartitioner(S3KeyPartitioner s3KeyPartitioner) {
+        setS3KeyPartitioner(s3KeyPartitioner);
+        return this;
+    }
+
+    /**
+     * Gets the S3 key partitioner
+     * @return the partitioner which is being used to compose the S3 key, or null if none is set.
+     */
+    public S3KeyPartitioner getS3KeyPartitioner() {
+        return this.s3KeyPartitioner;
+    }
+
+    /**
+     * Sets the generator of the unique name appended to the S3 key prefix of each
+     * payload object.
+     *
+     * <p>
+     * The default, {@link S3KeyGenerators#secureRandom()}, draws every name from a shared
+     * {@link java.security.SecureRandom}, so concurrent senders contend on its lock. Senders
+     * of many large messages in parallel can use {@link S3KeyGenerators#threadLocalRandom()}
+     * or {@link S3KeyGenerators#timeOrdered()}, which do not contend but generate predictable
+     * names, when the payload bucket is not shared with untrusted parties.
+     * </p>
+     *
+     * @param s3KeyGenerator
+     *         A S3 key generator. Default: {@link S3KeyGenerators#secureRandom()}
+     */
+    public void setS3KeyGenerator(S3KeyGenerator s3KeyGenerator) {
+        if (s3KeyGenerator == null) {
+            String errorMessage = "s3KeyGenerator cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.s3KeyGenerator = s3KeyGenerator;
+    }
+
+    /**
+     * Sets the generator of the unique name appended to the S3 key prefix of each
+     * payload object.
+     *
+     * @param s3KeyGenerator
+     *         A S3 key generator. Default: {@link S3KeyGenerators#secureRandom()}
+     *
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withS3KeyGenerator(S3KeyGenerator s3KeyGenerator) {
+        setS3KeyGenerator(s3KeyGenerator);
+        return this;
+    }
+
+    /**
+     * Gets the S3 key generator
+     * @return the generator which is being used to compose the S3 key.
+     */
+    public S3KeyGenerator getS3KeyGenerator() {
+        return this.s3KeyGenerator;
+    }
+
+    /**
+     * Sets the policy used to spread payloads across several S3 buckets. When no
+     * policy is set, all payloads are stored in the bucket given when enabling
+     * payload support. Payloads are always read and deleted from the bucket
+     * recorded in the message pointer, whichever policy is set.
+     *
+     * @param s3BucketRoutingPolicy
+     *         A bucket routing policy, or null to use a single bucket. Default: null
+     */
+    public void setS3BucketRoutingPolicy(S3BucketRoutingPolicy s3BucketRoutingPolicy) {
+        this.s3BucketRoutingPolicy = s3BucketRoutingPolicy;
+    }
+
+    /**
+     * Sets the policy used to spread payloads across several S3 buckets. When no
+     * policy is set, all payloads are stored in the bucket given when enabling
+     * payload support. Payloads are always read and deleted from the bucket
+     * recorded in the message pointer, whichever policy is set.
+     *
+     * @param s3BucketRoutingPolicy
+     *         A bucket routing policy, or null to use a single bucket. Default: null
+     *
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withS3BucketRoutingPolicy(S3BucketRoutingPolicy s3BucketRoutingPolicy) {
+        setS3BucketRoutingPolicy(s3BucketRoutingPolicy);
+        return this;
+    }
+
+    /**
+     * Gets the S3 bucket routing policy
+     * @return the policy which is being used to select the bucket of each payload, or null if none is set.
+     */
+    public S3BucketRoutingPolicy getS3BucketRoutingPolicy() {
+        return this.s3BucketRoutingPolicy;
+    }
+
+    /**
+     * Sets the metrics in which the client records its payload operations. The same
+     * metrics may be shared by several clients.
+     *
+     * @param metrics
+     *         The metrics to record to, or null to disable recording. Default: null
+     */
+    public void setMetrics(ExtendedClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the metrics in which the client records its payload operations. The same
+     * metrics may be shared by several clients.
+     *
+     * @param metrics
+     *         The metrics to record to, or null to disable recording. Default: null
+     *
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withMetrics(ExtendedClientMetrics metrics) {
+        setMetrics(metrics);
+        return this;
+    }
+
+    /**
+     * Gets the metrics in which the client records its payload operations.
+     * @return the metrics, or null if recording is disabled.
+     */
+    public ExtendedClientMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Enables support for payload messages, offloading payloads to the given store
+     * instead of the Amazon S3 bucket.
+     *
+     * <p>
+     * The store is given the same S3 key names as the Amazon S3 store, and reads and
+     * deletes payloads using the pointers it returned when storing them. If the store
+     * implements {@link AutoCloseable}, it is closed when the client is closed.
+     * </p>
+     *
+     * @param payloadStore
+     *            The store used to offload payloads.
+     */
+    public void setPayloadSupportEnabled(PayloadStore payloadStore) {
+        if (payloadStore == null) {
+            String errorMessage = "payloadStore cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.payloadStore = payloadStore;
+    }
+
+    /**
+     * Enables support for payload messages, offloading payloads to the given store
+     * instead of the Amazon S3 bucket.
+     *
+     * @param payloadStore
+     *            The store used to offload payloads.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadSupportEnabled(PayloadStore payloadStore) {
+        setPayloadSupportEnabled(payloadStore);
+        return this;
+    }
+
+    /**
+     * Gets the store used to offload payloads instead of the Amazon S3 bucket.
+     * @return the store, or null if payloads are offloaded to the Amazon S3 bucket.
+     */
+    public PayloadStore getPayloadStore() {
+        return this.payloadStore;
+    }
+
+    /**
+     * Adds a decorator applied to the payload stores created by the client, for example
+     * to add caching or instrumentation around the Amazon S3 store. Every payload store,
+     * fetch and delete goes through the decorated store.
+     *
+     * <p>
+     * Decorators are applied in the order they are added, so the first decorator wraps
+     * the underlying store directly. They are applied to the store set with
+     * {@link #setPayloadSupportEnabled(PayloadStore)} as well, and to the store of every
+     * bucket of the {@link S3BucketRoutingPolicy}, if any.
+     * </p>
+     *
+     * @param payloadStoreDecorator
+     *            Function receiving a payload store and returning the store to use instead.
+     */
+    public void addPayloadStoreDecorator(UnaryOperator<PayloadStore> payloadStoreDecorator) {
+        if (payloadStoreDecorator == null) {
+            String errorMessage = "payloadStoreDecorator cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.payloadStoreDecorators.add(payloadStoreDecorator);
+    }
+
+    /**
+     * Adds a decorator applied to the payload stores created by the client.
+     *
+     * @param payloadStoreDecorator
+     *            Function receiving a payload store and returning the store to use instead.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadStoreDecorator(UnaryOperator<PayloadStore> payloadStoreDecorator) {
+        addPayloadStoreDecorator(payloadStoreDecorator);
+        return this;
+    }
+
+    /**
+     * Gets the decorators applied to the payload stores created by the client.
+     * @return the decorators, in the order they are applied.
+     */
+    public List<UnaryOperator<PayloadStore>> getPayloadStoreDecorators() {
+        return Collections.unmodifiableList(payloadStoreDecorators);
+    }
+
+    /**
+     * Keeps stored payloads in memory, up to the given number of bytes, so that consumers
+     * in the same JVM read them without going through Amazon S3. See
+     * {@link InProcessPayloadStore} for how and when payloads are written to Amazon S3.
+     *
+     * <p>
+     * Payloads kept in memory may not be in Amazon S3 yet when their message is received,
+     * so this should only be enabled for queues consumed by the producing JVM. It cannot
+     * be used with a custom payload store or an S3 bucket routing policy, nor when payloads
+     * not found are ignored, in either upload mode. With
+     * {@link InProcessPayloadStore.UploadMode#ON_EVICTION}, every consumer of the queue must be
+     * the producing process.
+     * </p>
+     *
+     * @param byteBudget
+     *            The maximum number of bytes of payloads retained in memory, or 0 to disable
+     *            the in-process store. Default: 0
+     * @param uploadMode
+     *            When payloads are written to Amazon S3.
+     */
+    public void setInProcessPayloadStoreEnabled(long byteBudget, InProcessPayloadStore.UploadMode uploadMode) {
+        if (byteBudget < 0 || (byteBudget > 0 && uploadMode == null)) {
+            String errorMessage = "The in-process payload byte budget cannot be negative and requires an upload mode.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.inProcessPayloadByteBudget = byteBudget;
+        this.inProcessPayloadUploadMode = byteBudget > 0 ? uploadMode : null;
+    }
+
+    /**
+     * Keeps stored payloads in memory, up to the given number of bytes, so that consumers
+     * in the same JVM read them without going through Amazon S3.
+     *
+     * @param byteBudget
+     *            The maximum number of bytes of payloads retained in memory, or 0 to disable
+     *            the in-process store. Default: 0
+     * @param uploadMode
+     *            When payloads are written to Amazon S3.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withInProcessPayloadStoreEnabled(long byteBudget,
+                                                                        InProcessPayloadStore.UploadMode uploadMode) {
+        setInProcessPayloadStoreEnabled(byteBudget, uploadMode);
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of bytes of payloads retained in memory.
+     * @return the byte budget, or 0 if the in-process store is disabled.
+     */
+    public long getInProcessPayloadByteBudget() {
+        return this.inProcessPayloadByteBudget;
+    }
+
+    /**
+     * Gets when payloads retained in memory are written to Amazon S3.
+     * @return the upload mode, or null if the in-process store is disabled.
+     */
+    public InProcessPayloadStore.UploadMode getInProcessPayloadUploadMode() {
+        return this.inProcessPayloadUploadMode;
+    }
+
+    /**
+     * Sets the pool of direct buffers in which payload bytes are staged while they are
+     * uploaded to or downloaded from Amazon S3, instead of allocating a byte array the size
+     * of every payload on the heap. The same pool may be shared by several clients.
+     *
+     * <p>
+     * The pool is not used with a custom payload store.
+     * </p>
+     *
+     * @param payloadBufferPool
+     *            The pool, or null to let the Amazon S3 store allocate its own arrays. Default: null
+     */
+    public void setPayloadBufferPool(PayloadBufferPool payloadBufferPool) {
+        this.payloadBufferPool = payloadBufferPool;
+    }
+
+    /**
+     * Sets the pool of direct buffers in which payload bytes are staged while they are
+     * uploaded to or downloaded from Amazon S3.
+     *
+     * @param payloadBufferPool
+     *            The pool, or null to let the Amazon S3 store allocate its own arrays. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadBufferPool(PayloadBufferPool payloadBufferPool) {
+        setPayloadBufferPool(payloadBufferPool);
+        return this;
+    }
+
+    /**
+     * Gets the pool of direct buffers in which payload bytes are staged.
+     * @return the pool, or null if none is used.
+     */
+    public PayloadBufferPool getPayloadBufferPool() {
+        return this.payloadBufferPool;
+    }
+
+    /**
+     * Sets the budget bounding the total size of the payloads downloaded at once by
+     * <code>receiveMessage</code>. Pass the same budget to several clients to bound the
+     * payload bytes in flight across all of them.
+     *
+     * <p>
+     * A received message whose payload does not fit in the budget is not downloaded. It is
+     * left out of the response and made visible again right away, so that another consumer
+     * can receive it. Messages without a recorded payload size are never held back.
+     * </p>
+     *
+     * @param receivePayloadByteBudget
+     *            The budget, or null to download all payloads. Default: null
+     */
+    public void setReceivePayloadByteBudget(PayloadByteBudget receivePayloadByteBudget) {
+        this.receivePayloadByteBudget = receivePayloadByteBudget;
+    }
+
+    /**
+     * Sets the budget bounding the total size of the payloads downloaded at once by
+     * <code>receiveMessage</code>.
+     *
+     * @param receivePayloadByteBudget
+     *            The budget, or null to download all payloads. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withReceivePayloadByteBudget(PayloadByteBudget receivePayloadByteBudget) {
+        setReceivePayloadByteBudget(receivePayloadByteBudget);
+        return this;
+    }
+
+    /**
+     * Gets the budget bounding the total size of the payloads downloaded at once.
+     * @return the budget, or null if none is used.
+     */
+    public PayloadByteBudget getReceivePayloadByteBudget() {
+        return this.receivePayloadByteBudget;
+    }
+
+    /**
+     * Sets the controller adapting the number of Amazon S3 payload operations in flight to
+     * the throttling and latency observed. Every payload store, fetch and delete is run
+     * through it. Pass the same controller to several clients writing to the same buckets.
+     *
+     * @param adaptiveS3Concurrency
+     *            The controller, or null to start every operation right away. Default: null
+     */
+    public void setAdaptiveS3Concurrency(AdaptiveS3ConcurrencyController adaptiveS3Concurrency) {
+        this.adaptiveS3Concurrency = adaptiveS3Concurrency;
+    }
+
+    /**
+     * Sets the controller adapting the number of Amazon S3 payload operations in flight.
+     *
+     * @param adaptiveS3Concurrency
+     *            The controller, or null to start every operation right away. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withAdaptiveS3Concurrency(AdaptiveS3ConcurrencyController adaptiveS3Concurrency) {
+        setAdaptiveS3Concurrency(adaptiveS3Concurrency);
+        return this;
+    }
+
+    /**
+     * Gets the controller adapting the number of Amazon S3 payload operations in flight.
+     * @return the controller, or null if none is used.
+     */
+    public AdaptiveS3ConcurrencyController getAdaptiveS3Concurrency() {
+        return this.adaptiveS3Concurrency;
+    }
+
+    /**
+     * Sets the policy hedging slow payload fetches made by <code>receiveMessage</code>: a
+     * fetch that has not completed within the hedge delay is started a second time and the
+     * first to succeed is used, the other being cancelled. Only payloads up to the maximum
+     * hedged payload size of the policy are hedged.
+     *
+     * @param payloadFetchHedging
+     *            The policy, or null to never hedge fetches. Default: null
+     */
+    public void setPayloadFetchHedging(PayloadFetchHedging payloadFetchHedging) {
+        this.payloadFetchHedging = payloadFetchHedging;
+    }
+
+    /**
+     * Sets the policy hedging slow payload fetches made by <code>receiveMessage</code>.
+     *
+     * @param payloadFetchHedging
+     *            The policy, or null to never hedge fetches. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withPayloadFetchHedging(PayloadFetchHedging payloadFetchHedging) {
+        setPayloadFetchHedging(payloadFetchHedging);
+        return this;
+    }
+
+    /**
+     * Gets the policy hedging slow payload fetches.
+     * @return the policy, or null if fetches are never hedged.
+     */
+    public PayloadFetchHedging getPayloadFetchHedging() {
+        return this.payloadFetchHedging;
+    }
+
+    /**
+     * Enables a heartbeat keeping the messages returned by <code>receiveMessage</code>
+     * invisible until they are deleted, so that no other consumer receives a message, and
+     * downloads its payload, while it is still being processed. Every heartbeat interval
+     * the visibility timeout of each message is set again to the given value, in batches.
+     *
+     * <p>
+     * Tracking starts before payloads are downloaded, so the heartbeat interval must be
+     * shorter than the visibility timeout of the queue or of the receive request. A
+     * message stops being extended when it is deleted, when its visibility is changed by
+     * the application, for example to release it, or once it has been extended for the
+     * maximum extension time, see {@link #setVisibilityHeartbeatMaxExtension(int)}.
+     * </p>
+     *
+     * @param visibilityTimeoutSeconds
+     *            Visibility timeout set by each heartbeat, between 1 and 43200 seconds.
+     * @param heartbeatIntervalSeconds
+     *            Time between heartbeats, positive and shorter than the visibility timeout.
+     */
+    public void setVisibilityHeartbeat(int visibilityTimeoutSeconds, int heartbeatIntervalSeconds) {
+        if (visibilityTimeoutSeconds < 1 || visibilityTimeoutSeconds > VisibilityHeartbeat.MAX_VISIBILITY_SECONDS
+            || heartbeatIntervalSeconds < 1 || heartbeatIntervalSeconds >= visibilityTimeoutSeconds) {
+            String errorMessage = "The heartbeat visibility timeout must be between 1 and "
+                                  + VisibilityHeartbeat.MAX_VISIBILITY_SECONDS
+                                  + " seconds and the heartbeat interval positive and shorter than it.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.visibilityHeartbeatTimeoutSeconds = visibilityTimeoutSeconds;
+        this.visibilityHeartbeatIntervalSeconds = heartbeatIntervalSeconds;
+    }
+
+    /**
+     * Enables a heartbeat keeping the messages returned by <code>receiveMessage</code>
+     * invisible until they are deleted.
+     *
+     * @param visibilityTimeoutSeconds
+     *            Visibility timeout set by each heartbeat, between 1 and 43200 seconds.
+     * @param heartbeatIntervalSeconds
+     *            Time between heartbeats, positive and shorter than the visibility timeout.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withVisibilityHeartbeat(int visibilityTimeoutSeconds, int heartbeatIntervalSeconds) {
+        setVisibilityHeartbeat(visibilityTimeoutSeconds, heartbeatIntervalSeconds);
+        return this;
+    }
+
+    /**
+     * Gets the visibility timeout set by each heartbeat.
+     * @return the timeout in seconds, or 0 if the heartbeat is disabled.
+     */
+    public int getVisibilityHeartbeatTimeout() {
+        return this.visibilityHeartbeatTimeoutSeconds;
+    }
+
+    /**
+     * Gets the time between heartbeats.
+     * @return the interval in seconds, or 0 if the heartbeat is disabled.
+     */
+    public int getVisibilityHeartbeatInterval() {
+        return this.visibilityHeartbeatIntervalSeconds;
+    }
+
+    /**
+     * Sets how long the heartbeat keeps a message invisible after it was received. Once this
+     * time has elapsed, the message is no longer extended and becomes visible again, so that
+     * a consumer that hangs without crashing does not hold it until the 12 hour limit of
+     * Amazon SQS.
+     *
+     * @param maxExtensionSeconds
+     *            The maximum extension time, between 1 and 43200 seconds. Default: 3600
+     */
+    public void setVisibilityHeartbeatMaxExtension(int maxExtensionSeconds) {
+        if (maxExtensionSeconds < 1 || maxExtensionSeconds > VisibilityHeartbeat.MAX_VISIBILITY_SECONDS) {
+            String errorMessage = "The heartbeat maximum extension time must be between 1 and "
+                                  + VisibilityHeartbeat.MAX_VISIBILITY_SECONDS + " seconds.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.visibilityHeartbeatMaxExtensionSeconds = maxExtensionSeconds;
+    }
+
+    /**
+     * Sets how long the heartbeat keeps a message invisible after it was received.
+     *
+     * @param maxExtensionSeconds
+     *            The maximum extension time, between 1 and 43200 seconds. Default: 3600
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withVisibilityHeartbeatMaxExtension(int maxExtensionSeconds) {
+        setVisibilityHeartbeatMaxExtension(maxExtensionSeconds);
+        return this;
+    }
+
+    /**
+     * Gets how long the heartbeat keeps a message invisible after it was received.
+     * @return the maximum extension time in seconds.
+     */
+    public int getVisibilityHeartbeatMaxExtension() {
+        return this.visibilityHeartbeatMaxExtensionSeconds;
+    }
+
+    /**
+     * Enables offloading messages only when they exceed the <code>MaximumMessageSize</code>
+     * of the queue they are sent to, instead of the payload size threshold. The attribute is
+     * read with <code>GetQueueAttributes</code> and cached per queue URL for the given TTL;
+     * if it cannot be read, the payload size threshold is used for that queue until the TTL
+     * expires. A lowered queue limit may take up to the TTL to be picked up.
+     *
+     * @param cacheTtl
+     *            How long the limit of a queue is cached, or null to always use the payload
+     *            size threshold. Default: null
+     */
+    public void setQueueMessageSizeDiscovery(Duration cacheTtl) {
+        if (cacheTtl != null && (cacheTtl.isNegative() || cacheTtl.isZero())) {
+            String errorMessage = "The queue message size cache TTL must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.queueMessageSizeCacheTtl = cacheTtl;
+    }
+
+    /**
+     * Enables offloading messages only when they exceed the <code>MaximumMessageSize</code>
+     * of the queue they are sent to.
+     *
+     * @param cacheTtl
+     *            How long the limit of a queue is cached, or null to always use the payload
+     *            size threshold. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withQueueMessageSizeDiscovery(Duration cacheTtl) {
+        setQueueMessageSizeDiscovery(cacheTtl);
+        return this;
+    }
+
+    /**
+     * Gets how long the maximum message size of a queue is cached.
+     * @return the TTL, or null if the payload size threshold is always used.
+     */
+    public Duration getQueueMessageSizeCacheTtl() {
+        return this.queueMessageSizeCacheTtl;
+    }
+
+    /**
+     * Sets the policy that decides, for each outgoing message, whether it is sent inline,
+     * offloaded to the payload store or compressed inline. When alwaysThroughS3 is enabled
+     * every message is offloaded regardless of the policy, and a message the policy keeps
+     * inline is still offloaded if it exceeds the payload size threshold. While a policy is
+     * set, the <code>ExtendedPayloadEncoding</code> message attribute is reserved, and received
+     * messages carrying it are decompressed; consumers of compressed messages must set a policy too.
+     *
+     * @param offloadPolicy
+     *            The policy, or null to offload exactly the messages that exceed the payload
+     *            size threshold. Default: null
+     * @see OffloadPolicies
+     */
+    public void setOffloadPolicy(OffloadPolicy offloadPolicy) {
+        this.offloadPolicy = offloadPolicy;
+    }
+
+    /**
+     * Sets the policy that decides, for each outgoing message, whether it is sent inline,
+     * offloaded to the payload store or compressed inline.
+     *
+     * @param offloadPolicy
+     *            The policy, or null to offload exactly the messages that exceed the payload
+     *            size threshold. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withOffloadPolicy(OffloadPolicy offloadPolicy) {
+        setOffloadPolicy(offloadPolicy);
+        return this;
+    }
+
+    /**
+     * Gets the policy that decides how each outgoing message is sent.
+     * @return the policy, or null if only the payload size threshold is used.
+     */
+    public OffloadPolicy getOffloadPolicy() {
+        return this.offloadPolicy;
+    }
+
+    /**
+     * Enables caching the results of <code>getQueueUrl</code>, and of <code>getQueueAttributes</code>
+     * for attributes that rarely change such as <code>QueueArn</code>, <code>MaximumMessageSize</code>
+     * or <code>VisibilityTimeout</code>. Concurrent misses for the same request share one call to
+     * SQS. The entries of a queue are dropped when it is deleted through this client, when its
+     * attributes are set through this client and when SQS reports that it does not exist.
+     *
+     * @param cacheTtl
+     *            How long results are cached, or null to always call SQS. Default: null
+     */
+    public void setQueueMetadataCache(Duration cacheTtl) {
+        setQueueMetadataCache(cacheTtl, QueueMetadataCache.DEFAULT_CACHED_ATTRIBUTE_NAMES);
+    }
+
+    /**
+     * Enables caching the results of <code>getQueueUrl</code>, and of <code>getQueueAttributes</code>
+     * for the given attributes. Requests for any other attribute always call SQS.
+     *
+     * @param cacheTtl
+     *            How long results are cached, or null to always call SQS. Default: null
+     * @param cachedAttributeNames
+     *            The attributes whose values may be cached.
+     */
+    public void setQueueMetadataCache(Duration cacheTtl, Collection<QueueAttributeName> cachedAttributeNames) {
+        if (cacheTtl != null && (cacheTtl.isNegative() || cacheTtl.isZero())) {
+            String errorMessage = "The queue metadata cache TTL must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (cachedAttributeNames == null || cachedAttributeNames.contains(QueueAttributeName.ALL)) {
+            String errorMessage = "Cached queue attribute names cannot be null or include All.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.queueMetadataCacheTtl = cacheTtl;
+        this.queueMetadataCachedAttributeNames = Collections.unmodifiableSet(new HashSet<>(cachedAttributeNames));
+    }
+
+    /**
+     * Enables caching the results of <code>getQueueUrl</code>, and of <code>getQueueAttributes</code>
+     * for attributes that rarely change.
+     *
+     * @param cacheTtl
+     *            How long results are cached, or null to always call SQS. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withQueueMetadataCache(Duration cacheTtl) {
+        setQueueMetadataCache(cacheTtl);
+        return this;
+    }
+
+    /**
+     * Enables caching the results of <code>getQueueUrl</code>, and of <code>getQueueAttributes</code>
+     * for the given attributes.
+     *
+     * @param cacheTtl
+     *            How long results are cached, or null to always call SQS. Default: null
+     * @param cachedAttributeNames
+     *            The attributes whose values may be cached.
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withQueueMetadataCache(Duration cacheTtl,
+            Collection<QueueAttributeName> cachedAttributeNames) {
+        setQueueMetadataCache(cacheTtl, cachedAttributeNames);
+        return this;
+    }
+
+    /**
+     * Gets how long queue URLs and queue attributes are cached.
+     * @return the TTL, or null if SQS is always called.
+     */
+    public Duration getQueueMetadataCacheTtl() {
+        return this.queueMetadataCacheTtl;
+    }
+
+    /**
+     * Gets the queue attributes whose values may be cached.
+     * @return the attribute names.
+     */
+    public Set<QueueAttributeName> getQueueMetadataCachedAttributeNames() {
+        return this.queueMetadataCachedAttributeNames;
+    }
+
+    /**
+     * Stores payloads under a prefix specific to the queue they are sent to, made of the
+     * account and name of the queue: <code>s3KeyPrefix + account + '/' + queueName + '/'</code>,
+     * followed by the partition if any. It allows deleting the payloads of a queue when it is
+     * purged, and is required by <code>purgeQueueWithPayloads</code>.
+     *
+     * @param queueScopedS3KeyPrefix
+     *            Whether payloads are stored under a queue-scoped prefix. Default: false
+     */
+    public void setQueueScopedS3KeyPrefix(boolean queueScopedS3KeyPrefix) {
+        this.queueScopedS3KeyPrefix = queueScopedS3KeyPrefix;
+    }
+
+    /**
+     * Stores payloads under a prefix specific to the queue they are sent to.
+     *
+     * @param queueScopedS3KeyPrefix
+     *            Whether payloads are stored under a queue-scoped prefix. Default: false
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withQueueScopedS3KeyPrefix(boolean queueScopedS3KeyPrefix) {
+        setQueueScopedS3KeyPrefix(queueScopedS3KeyPrefix);
+        return this;
+    }
+
+    /**
+     * Checks whether payloads are stored under a prefix specific to their queue.
+     * @return true if S3 key prefixes are queue-scoped.
+     */
+    public boolean usesQueueScopedS3KeyPrefix() {
+        return this.queueScopedS3KeyPrefix;
+    }
+
+    /**
+     * Leaves the deletion of payloads to an S3 lifecycle rule instead of deleting each payload
+     * along with its message, which saves one S3 request per deleted message. Payloads are
+     * no longer deleted when their message is, see {@link #doesCleanupS3Payload()}.
+     *
+     * <p>
+     * The payload buckets must have an enabled lifecycle rule expiring every object under the
+     * S3 key prefix at least <code>payloadTtl</code> after its creation, which is checked when
+     * the client is created. The TTL must exceed the message retention period of every queue
+     * the client sends to, including their dead-letter queues, or payloads of messages still
+     * in a queue will be expired. The retention period of each queue is read on the first send
+     * to it, and an error is logged if it is not shorter than the TTL; dead-letter queues are not
+     * checked. This mode cannot be used with a custom payload store.
+     * </p>
+     *
+     * @param payloadTtl
+     *            The minimum time payloads are kept, or null to delete payloads with their
+     *            message. Default: null
+     */
+    public void setLifecycleCleanup(Duration payloadTtl) {
+        if (payloadTtl != null && (payloadTtl.isNegative() || payloadTtl.isZero())) {
+            String errorMessage = "Lifecycle cleanup payload TTL must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.lifecycleCleanupPayloadTtl = payloadTtl;
+    }
+
+    /**
+     * Leaves the deletion of payloads to an S3 lifecycle rule instead of deleting each payload
+     * along with its message.
+     *
+     * @param payloadTtl
+     *            The minimum time payloads are kept, or null to delete payloads with their
+     *            message. Default: null
+     * @return the updated ExtendedClientConfiguration object.
+     */
+    public ExtendedClientConfiguration withLifecycleCleanup(Duration payloadTtl) {
+        setLifecycleCleanup(payloadTtl);
+        return this;
+    }
+
+    /**
+     * Gets the minimum time payloads are kept when their deletion is left to an S3 lifecycle rule.
+     * @return the TTL, or null if payloads are deleted with their message.
+     */
+    public Duration getLifecycleCleanupPayloadTtl() {
+        return this.lifecycleCleanupPayloadTtl;
+    }
+
+    /**
+     * Checks whether payload support is enabled, either with an Amazon S3 bucket or
+     * with a custom payload store.
+     *
+     * @return true if payload support is enabled.
+     */
+    @Override
+    public boolean isPayloadSupportEnabled() {
+        return payloadStore != null || super.isPayloadSupportEnabled();
+    }
+
+    /**
+     * Disables support for payload messages, including any custom payload store.
+     */
+    @Override
+    public void setPayloadSupportDisabled() {
+        super.setPayloadSupportDisabled();
+        this.payloadStore = null;
+    }
+
     /**
      * Checks whether or not clean up large objects in S3 is enabled.
      *
      * @return True if clean up is enabled when deleting the concerning SQS message.
+     *         Always false when payloads are deleted by a lifecycle rule.
      *         Default: true
      */
     public boolean doesCleanupS3Payload() {
-        return cleanupS3Payload;
+        return cleanupS3Payload && lifecycleCleanupPayloadTtl == null;
     }
 
     /**
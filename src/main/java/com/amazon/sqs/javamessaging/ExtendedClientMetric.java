@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Operations measured by {@link ExtendedClientMetrics}.
+ */
+public enum ExtendedClientMetric {
+    /**
+     * Storing an offloaded message payload in Amazon S3.
+     */
+    PAYLOAD_STORE,
+
+    /**
+     * Retrieving a message payload from Amazon S3.
+     */
+    PAYLOAD_FETCH,
+
+    /**
+     * Deleting a message payload from Amazon S3.
+     */
+    PAYLOAD_DELETE,
+
+    /**
+     * Polling Amazon SQS in <code>receiveMessage</code>, excluding payload retrieval.
+     */
+    RECEIVE_POLL,
+
+    /**
+     * Resolving all the payloads of the messages returned by one <code>receiveMessage</code> call.
+     */
+    RECEIVE_RESOLVE,
+
+    /**
+     * A message deleted because its payload was not found and payloads not found are ignored.
+     */
+    PAYLOAD_NOT_FOUND,
+
+    /**
+     * A received message made visible again because its payload did not fit in the
+     * {@link PayloadByteBudget}.
+     */
+    PAYLOAD_BUDGET_EXCEEDED
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.annotations.ThreadSafe;
+import software.amazon.awssdk.metrics.MetricCategory;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricCollector;
+import software.amazon.awssdk.metrics.MetricLevel;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+/**
+ * Counters and histograms for the operations performed by the extended clients,
+ * kept per {@link ExtendedClientMetric} and per queue URL.
+ *
+ * <p>
+ * Recording only updates striped counters, so a single instance can be shared by
+ * many clients and threads. The current values are read with {@link #snapshot()}.
+ * Every recorded operation is also published to the given {@link MetricPublisher}s,
+ * if any, as a metric collection named {@value #METRIC_COLLECTION_NAME}.
+ * </p>
+ */
+@ThreadSafe
+public class ExtendedClientMetrics {
+    private static final Log LOG = LogFactory.getLog(ExtendedClientMetrics.class);
+
+    public static final String METRIC_COLLECTION_NAME = "SqsExtendedClient";
+
+    public static final SdkMetric<String> OPERATION = SdkMetric.create(
+        "SqsExtendedClientOperation", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<String> QUEUE_URL = SdkMetric.create(
+        "SqsExtendedClientQueueUrl", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<Duration> DURATION = SdkMetric.create(
+        "SqsExtendedClientDuration", Duration.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<Long> PAYLOAD_BYTES = SdkMetric.create(
+        "SqsExtendedClientPayloadBytes", Long.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+    public static final SdkMetric<Boolean> SUCCESS = SdkMetric.create(
+        "SqsExtendedClientSuccess", Boolean.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+    private final Map<ExtendedClientMetric, ConcurrentMap<String, OperationStats>> statsByMetric =
+        new EnumMap<>(ExtendedClientMetric.class);
+    private final List<MetricPublisher> metricPublishers;
+
+    public ExtendedClientMetrics(MetricPublisher... metricPublishers) {
+        for (ExtendedClientMetric metric : ExtendedClientMetric.values()) {
+            statsByMetric.put(metric, new ConcurrentHashMap<>());
+        }
+        this.metricPublishers = Collections.unmodifiableList(Arrays.asList(metricPublishers.clone()));
+    }
+
+    /**
+     * Records one operation.
+     *
+     * @param metric
+     *            The operation.
+     * @param queueUrl
+     *            The URL of the queue the operation was made for, may be null.
+     * @param durationNanos
+     *            The duration of the operation in nanoseconds.
+     * @param payloadBytes
+     *            The size of the payload involved, or a negative value if unknown.
+     * @param success
+     *            Whether the operation succeeded.
+     */
+    public void record(ExtendedClientMetric metric, String queueUrl, long durationNanos, long payloadBytes,
+                       boolean success) {
+        String queueKey = queueUrl == null ? "" : queueUrl;
+        OperationStats stats = statsByMetric.get(metric).get(queueKey);
+        if (stats == null) {
+            stats = statsByMetric.get(metric).computeIfAbsent(queueKey, k -> new OperationStats());
+        }
+        stats.record(durationNanos, payloadBytes, success);
+
+        if (!metricPublishers.isEmpty()) {
+            publish(metric, queueKey, durationNanos, payloadBytes, success);
+        }
+    }
+
+    /**
+     * Records one occurrence of an event that has no duration.
+     *
+     * @param metric
+     *            The event.
+     * @param queueUrl
+     *            The URL of the queue the event occurred for, may be null.
+     */
+    public void increment(ExtendedClientMetric metric, String queueUrl) {
+        record(metric, queueUrl, 0L, -1L, true);
+    }
+
+    /**
+     * Returns the values recorded so far for every operation and queue.
+     *
+     * @return a snapshot keyed by operation then by queue URL. Operations with no
+     *         queue URL are keyed by the empty string.
+     */
+    public Map<ExtendedClientMetric, Map<String, OperationSnapshot>> snapshot() {
+        Map<ExtendedClientMetric, Map<String, OperationSnapshot>> snapshot = new EnumMap<>(ExtendedClientMetric.class);
+        for (Map.Entry<ExtendedClientMetric, ConcurrentMap<String, OperationStats>> entry : statsByMetric.entrySet()) {
+            Map<String, OperationSnapshot> snapshotsByQueueUrl = new HashMap<>();
+            for (Map.Entry<String, OperationStats> statsEntry : entry.getValue().entrySet()) {
+                snapshotsByQueueUrl.put(statsEntry.getKey(), statsEntry.getValue().snapshot());
+            }
+            snapshot.put(entry.getKey(), Collections.unmodifiableMap(snapshotsByQueueUrl));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private void publish(ExtendedClientMetric metric, String queueUrl, long durationNanos, long payloadBytes,
+                         boolean success) {
+        MetricCollector collector = MetricCollector.create(METRIC_COLLECTION_NAME);
+        collector.reportMetric(OPERATION, metric.name());
+        collector.reportMetric(QUEUE_URL, queueUrl);
+        collector.reportMetric(DURATION, Duration.ofNanos(durationNanos));
+        if (payloadBytes >= 0) {
+            collector.reportMetric(PAYLOAD_BYTES, payloadBytes);
+        }
+        collector.reportMetric(SUCCESS, success);
+
+        MetricCollection metricCollection = collector.collect();
+        for (MetricPublisher metricPublisher : metricPublishers) {
+            try {
+                metricPublisher.publish(metricCollection);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to publish extended client metrics.", e);
+            }
+        }
+    }
+
+    private static final class OperationStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAdder totalPayloadBytes = new LongAdder();
+        private final Histogram latencyNanos = new Histogram();
+        private final Histogram payloadBytes = new Histogram();
+
+        void record(long durationNanos, long payloadSize, boolean success) {
+            count.increment();
+            if (!success) {
+                failureCount.increment();
+            }
+            latencyNanos.record(durationNanos);
+            if (payloadSize >= 0) {
+                totalPayloadBytes.add(payloadSize);
+                payloadBytes.record(payloadSize);
+            }
+        }
+
+        OperationSnapshot snapshot() {
+            return new OperationSnapshot(count.sum(), failureCount.sum(), totalPayloadBytes.sum(),
+                latencyNanos.snapshot(), payloadBytes.snapshot());
+        }
+    }
+
+    /**
+     * Histogram with one bucket per power of two, which bounds the relative error of
+     * any percentile to a factor of two at a constant cost per recorded value.
+     */
+    private static final class Histogram {
+        private static final int BUCKET_COUNT = 64;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+        Histogram() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            long positiveValue = Math.max(0L, value);
+            buckets[bucketIndex(positiveValue)].increment();
+            max.accumulate(positiveValue);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new HistogramSnapshot(counts, max.get());
+        }
+
+        static int bucketIndex(long value) {
+            return value == 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+        }
+
+        static long bucketUpperBound(int index) {
+            return index == 0 ? 0L : (index >= 63 ? Long.MAX_VALUE : (1L << index) - 1);
+        }
+    }
+
+    /**
+     * Immutable view of a histogram.
+     */
+    public static final class HistogramSnapshot {
+        private final long[] counts;
+        private final long max;
+        private final long total;
+
+        HistogramSnapshot(long[] counts, long max) {
+            this.counts = counts;
+            this.max = max;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, at most twice the exact value.
+         *
+         * @param percentile
+         *            The percentile, between 0 and 100.
+         * @return the percentile upper bound, or 0 if nothing was recorded.
+         */
+        public long getPercentile(double percentile) {
+            if (total == 0) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(Math.max(0d, Math.min(100d, percentile)) / 100d * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1L, rank)) {
+                    return Math.min(max, Histogram.bucketUpperBound(i));
+                }
+            }
+            return max;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * Immutable view of the values recorded for one operation and queue.
+     */
+    public static final class OperationSnapshot {
+        private final long count;
+        private final long failureCount;
+        private final long totalPayloadBytes;
+        private final HistogramSnapshot latencyNanos;
+        private final HistogramSnapshot payloadBytes;
+
+        OperationSnapshot(long count, long failureCount, long totalPayloadBytes, HistogramSnapshot latencyNanos,
+                          HistogramSnapshot payloadBytes) {
+            this.count = count;
+            this.failureCount = failureCount;
+            this.totalPayloadBytes = totalPayloadBytes;
+            this.latencyNanos = latencyNanos;
+            this.payloadBytes = payloadBytes;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getTotalPayloadBytes() {
+            return totalPayloadBytes;
+        }
+
+        /**
+         * @return the distribution of durations, in nanoseconds.
+         */
+        public HistogramSnapshot getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return the distribution of payload sizes, in bytes.
+         */
+        public HistogramSnapshot getPayloadBytes() {
+            return payloadBytes;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+
+/**
+ * Publisher of the messages of a queue, receiving them only when subscribers signal
+ * demand for them.
+ *
+ * <p>
+ * Each subscriber gets its own subscription, which repeatedly receives messages with the
+ * given request as long as it has outstanding demand, asking for no more messages than
+ * requested and never more than one receive at a time. With the extended client, the
+ * payloads of large messages are fetched as part of each receive, so at most as many
+ * payloads as the subscriber requested are downloaded at once, and none are downloaded
+ * while it does not request more.
+ * </p>
+ *
+ * <p>
+ * Messages are not deleted when they are delivered; see {@link MessageBatchAcknowledger}.
+ * Messages received but not delivered before the subscription is cancelled become visible
+ * again once their visibility timeout expires. A failed receive terminates the subscription
+ * with the error, after the retries configured in the SQS client.
+ * </p>
+ */
+public class ExtendedQueuePublisher implements Publisher<Message> {
+    private static final Log LOG = LogFactory.getLog(ExtendedQueuePublisher.class);
+
+    private final SqsAsyncClient sqsClient;
+    private final ReceiveMessageRequest receiveMessageRequest;
+
+    /**
+     * Creates a publisher of the messages received with the given request.
+     *
+     * @param sqsClient
+     *            The client used to receive messages, usually an {@link AmazonSQSExtendedAsyncClient}.
+     * @param receiveMessageRequest
+     *            The request used for every receive. Its maximum number of messages, 1 if not
+     *            set, is lowered to the outstanding demand, so it should usually be set to 10.
+     *            Long polling with a wait time is recommended.
+     */
+    public ExtendedQueuePublisher(SqsAsyncClient sqsClient, ReceiveMessageRequest receiveMessageRequest) {
+        if (sqsClient == null || receiveMessageRequest == null || receiveMessageRequest.queueUrl() == null) {
+            String errorMessage = "sqsClient and receiveMessageRequest with a queue URL cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.sqsClient = sqsClient;
+        this.receiveMessageRequest = receiveMessageRequest;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null.");
+        }
+        subscriber.onSubscribe(new QueueSubscription(subscriber));
+    }
+
+    private final class QueueSubscription implements Subscription {
+        private final Subscriber<? super Message> subscriber;
+        private final Queue<Message> received = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger drainCount = new AtomicInteger();
+        private volatile boolean receiving;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        private QueueSubscription(Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " messages, which is not positive.");
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Delivers received messages and starts the next receive, from a single thread at a time.
+         */
+        private void drain() {
+            if (drainCount.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (cancelled) {
+                    received.clear();
+                    continue;
+                }
+                while (requested.get() > 0 && !received.isEmpty() && !cancelled) {
+                    requested.decrementAndGet();
+                    subscriber.onNext(received.poll());
+                }
+                if (error != null && !cancelled) {
+                    cancelled = true;
+                    subscriber.onError(error);
+                    continue;
+                }
+                long demand = requested.get();
+                if (!cancelled && !receiving && demand > 0 && received.isEmpty()) {
+                    receiving = true;
+                    receive(demand);
+                }
+            } while (drainCount.decrementAndGet() != 0);
+        }
+
+        private void receive(long demand) {
+            int maxNumberOfMessages = (int) Math.min(demand,
+                receiveMessageRequest.maxNumberOfMessages() != null ? receiveMessageRequest.maxNumberOfMessages() : 1);
+            ReceiveMessageRequest request = receiveMessageRequest.toBuilder()
+                .maxNumberOfMessages(maxNumberOfMessages)
+                .build();
+            try {
+                sqsClient.receiveMessage(request).whenComplete(this::onReceived);
+            } catch (RuntimeException e) {
+                onReceived(null, e);
+            }
+        }
+
+        private void onReceived(ReceiveMessageResponse response, Throwable throwable) {
+            if (throwable != null) {
+                // Receives completed by the async client fail with the cause wrapped in a CompletionException
+                error = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            } else if (response.hasMessages()) {
+                received.addAll(response.messages());
+            }
+            receiving = false;
+            drain();
+        }
+    }
+}
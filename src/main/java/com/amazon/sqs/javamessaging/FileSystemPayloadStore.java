@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.utils.StringUtils;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Payload store keeping payloads as files under a root directory, for producers and
+ * consumers that share a local or network file system.
+ *
+ * <p>
+ * Payloads are stored with the same pointers as the Amazon S3 store: the bucket name of
+ * a pointer is the name given to this store, and its key is the path of the file relative
+ * to the root directory. Receipt handles of received messages are therefore modified the
+ * same way, and the store can be set with
+ * {@link ExtendedClientConfiguration#setPayloadSupportEnabled(PayloadStore)} without any
+ * other change. Every client sharing the payloads must use the same store name and a root
+ * directory pointing to the same location.
+ * </p>
+ *
+ * <p>
+ * Each payload is written to a temporary file that is renamed atomically once complete,
+ * so readers never observe partially written payloads. A missing payload is reported the
+ * same way as a missing Amazon S3 object, with a {@link NoSuchKeyException} cause.
+ * </p>
+ */
+public class FileSystemPayloadStore implements PayloadStore {
+    private static final Log LOG = LogFactory.getLog(FileSystemPayloadStore.class);
+
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private final Path rootDirectory;
+    private final String storeName;
+
+    /**
+     * Creates a store keeping payloads under the given root directory, which is created
+     * if it does not exist.
+     *
+     * @param rootDirectory
+     *            The directory under which payloads are stored.
+     * @param storeName
+     *            The name recorded as bucket name in the payload pointers.
+     */
+    public FileSystemPayloadStore(Path rootDirectory, String storeName) {
+        if (rootDirectory == null || StringUtils.isBlank(storeName)) {
+            String errorMessage = "rootDirectory and storeName cannot be null or empty.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        try {
+            this.rootDirectory = Files.createDirectories(rootDirectory).toRealPath();
+        } catch (IOException e) {
+            String errorMessage = "Failed to create the payload directory " + rootDirectory + ".";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+        this.storeName = storeName;
+    }
+
+    /**
+     * Gets the directory under which payloads are stored.
+     * @return the root directory.
+     */
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    /**
+     * Gets the name recorded as bucket name in the payload pointers.
+     * @return the store name.
+     */
+    public String getStoreName() {
+        return storeName;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload) {
+        return storeOriginalPayload(payload, S3KeyGenerators.secureRandom().generateS3KeyName());
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, String key) {
+        Path file = resolve(key);
+        Path temporaryFile = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temporaryFile = Files.createTempFile(file.getParent(), "." + file.getFileName(), TEMPORARY_FILE_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(payload);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            temporaryFile = null;
+        } catch (IOException e) {
+            String errorMessage = "Failed to store the payload in file " + file + ".";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } finally {
+            deleteTemporaryFile(temporaryFile);
+        }
+
+        LOG.info("Payload file created, Store name: " + storeName + ", Path: " + file + ".");
+        return new PayloadS3Pointer(storeName, key).toJson();
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        Path file = resolvePointer(payloadPointer);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                String errorMessage = "The payload in file " + file + " is too large to be read.";
+                LOG.error(errorMessage);
+                throw SdkClientException.create(errorMessage);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full or the end of the file is reached
+            }
+            ((Buffer) buffer).flip();
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        } catch (NoSuchFileException e) {
+            String errorMessage = "The payload file " + file + " does not exist.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage, NoSuchKeyException.builder().message(errorMessage).build());
+        } catch (IOException e) {
+            String errorMessage = "Failed to read the payload from file " + file + ".";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        Path file = resolvePointer(payloadPointer);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            String errorMessage = "Failed to delete the payload file " + file + ".";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+        LOG.info("Payload file deleted, Store name: " + storeName + ", Path: " + file + ".");
+    }
+
+    private Path resolvePointer(String payloadPointer) {
+        PayloadS3Pointer pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        if (!storeName.equals(pointer.getS3BucketName())) {
+            String errorMessage = "The payload pointer refers to " + pointer.getS3BucketName()
+                                  + " instead of the payload store " + storeName + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return resolve(pointer.getS3Key());
+    }
+
+    private Path resolve(String key) {
+        if (StringUtils.isEmpty(key)) {
+            String errorMessage = "The payload key cannot be null or empty.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        Path file = rootDirectory.resolve(key).normalize();
+        if (!file.startsWith(rootDirectory) || file.equals(rootDirectory)) {
+            String errorMessage = "The payload key " + key + " does not name a file under " + rootDirectory + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return file;
+    }
+
+    private static void deleteTemporaryFile(Path temporaryFile) {
+        if (temporaryFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temporaryFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the temporary payload file " + temporaryFile + ".", e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Payload store hedging the fetches of the underlying store with a {@link PayloadFetchHedging}.
+ * Stores and deletes are not hedged. The size of the payload being fetched is given by the
+ * client through {@link PayloadFetchHedging#withPayloadSize}.
+ */
+class HedgedPayloadStore implements PayloadStore, AutoCloseable {
+    private final PayloadStore delegate;
+    private final PayloadFetchHedging hedging;
+
+    HedgedPayloadStore(PayloadStore delegate, PayloadFetchHedging hedging) {
+        this.delegate = delegate;
+        this.hedging = hedging;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload) {
+        return delegate.storeOriginalPayload(payload);
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, String s3Key) {
+        return delegate.storeOriginalPayload(payload, s3Key);
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        return hedging.fetch(() -> delegate.getOriginalPayload(payloadPointer));
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        delegate.deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void close() {
+        AmazonSQSExtendedClientUtil.closePayloadStore(delegate);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.concurrent.CompletableFuture;
+import software.amazon.payloadoffloading.PayloadStoreAsync;
+
+/**
+ * Payload store hedging the fetches of the underlying store with a {@link PayloadFetchHedging}.
+ * Stores and deletes are not hedged. The size of the payload being fetched is given by the
+ * client through {@link PayloadFetchHedging#withPayloadSize}.
+ */
+class HedgedPayloadStoreAsync implements PayloadStoreAsync, AutoCloseable {
+    private final PayloadStoreAsync delegate;
+    private final PayloadFetchHedging hedging;
+
+    HedgedPayloadStoreAsync(PayloadStoreAsync delegate, PayloadFetchHedging hedging) {
+        this.delegate = delegate;
+        this.hedging = hedging;
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload) {
+        return delegate.storeOriginalPayload(payload);
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload, String s3Key) {
+        return delegate.storeOriginalPayload(payload, s3Key);
+    }
+
+    @Override
+    public CompletableFuture<String> getOriginalPayload(String payloadPointer) {
+        return hedging.fetchAsync(() -> delegate.getOriginalPayload(payloadPointer));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteOriginalPayload(String payloadPointer) {
+        return delegate.deleteOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void close() {
+        AmazonSQSExtendedClientUtil.closePayloadStore(delegate);
+    }
+}
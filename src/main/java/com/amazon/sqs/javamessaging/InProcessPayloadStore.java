@@ -0,0 +1,322 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.utils.StringUtils;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStore;
+
+/**
+ * Payload store keeping recently stored payloads in memory, so that consumers running in
+ * the same JVM as the producer read them without going through Amazon S3.
+ *
+ * <p>
+ * Stored payloads are kept in memory until they are deleted or evicted to keep the
+ * retained payloads within the byte budget, oldest first. Payloads are written to the
+ * underlying store either in the background as soon as they are stored
+ * ({@link UploadMode#ASYNC}), or only when they are evicted or the store is closed
+ * ({@link UploadMode#ON_EVICTION}). A payload deleted before it was written to the
+ * underlying store is never written, saving both the upload and the delete. Payloads
+ * that are not in memory are read from and deleted in the underlying store.
+ * </p>
+ *
+ * <p>
+ * Pointers are those of the Amazon S3 store for the given bucket, so the underlying store
+ * must be the Amazon S3 store of that bucket, possibly decorated. Since a payload may not
+ * be in Amazon S3 yet when its message is sent, consumers in other processes may fail to
+ * read it, so this store should only be used for queues consumed by the producing JVM, or
+ * tolerate retries through {@link UploadMode#ASYNC}. Payloads not yet written when the JVM
+ * stops without closing the store are lost.
+ * </p>
+ */
+public class InProcessPayloadStore implements PayloadStore, AutoCloseable {
+    private static final Log LOG = LogFactory.getLog(InProcessPayloadStore.class);
+
+    public static final int DEFAULT_UPLOAD_THREAD_COUNT = 8;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * When payloads kept in memory are written to the underlying store.
+     */
+    public enum UploadMode {
+        /**
+         * Payloads are written in the background as soon as they are stored. The message may
+         * be sent before its payload is written, and a failed write is only retried when the
+         * payload is evicted or the store is closed, so a consumer in another process may not
+         * find it. The extended client refuses this mode when payloads not found are ignored.
+         */
+        ASYNC,
+
+        /**
+         * Payloads are only written when they are evicted from memory or the store is closed.
+         * Every consumer of the queue must then be the producing process: a consumer in
+         * another process finds no payload in Amazon S3 until it is evicted. As with
+         * {@link #ASYNC}, the extended client refuses this mode when payloads not found are
+         * ignored, since such messages would be deleted without being processed.
+         */
+        ON_EVICTION
+    }
+
+    private final PayloadStore delegate;
+    private final String s3BucketName;
+    private final long byteBudget;
+    private final UploadMode uploadMode;
+    private final ExecutorService uploadExecutor;
+
+    // Entries in insertion order, so that the oldest payloads are evicted first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long retainedBytes;
+
+    /**
+     * Creates a store keeping up to <code>byteBudget</code> bytes of payloads in memory.
+     *
+     * @param delegate
+     *            The Amazon S3 store of the bucket, to which payloads are eventually written.
+     * @param s3BucketName
+     *            The name of the bucket of the underlying store.
+     * @param byteBudget
+     *            The maximum number of bytes of payloads retained in memory, estimated as two
+     *            bytes per character.
+     * @param uploadMode
+     *            When payloads are written to the underlying store.
+     */
+    public InProcessPayloadStore(PayloadStore delegate, String s3BucketName, long byteBudget, UploadMode uploadMode) {
+        if (delegate == null || StringUtils.isBlank(s3BucketName) || uploadMode == null) {
+            String errorMessage = "delegate, s3BucketName and uploadMode cannot be null or empty.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (byteBudget <= 0) {
+            String errorMessage = "The in-process payload byte budget must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.delegate = delegate;
+        this.s3BucketName = s3BucketName;
+        this.byteBudget = byteBudget;
+        this.uploadMode = uploadMode;
+        this.uploadExecutor = uploadMode == UploadMode.ASYNC
+                ? Executors.newFixedThreadPool(DEFAULT_UPLOAD_THREAD_COUNT, runnable -> {
+                    Thread thread = new Thread(runnable, "sqs-extended-payload-upload-" + THREAD_COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload) {
+        return storeOriginalPayload(payload, S3KeyGenerators.secureRandom().generateS3KeyName());
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, String s3Key) {
+        long size = getRetainedSize(payload);
+        if (size > byteBudget) {
+            return delegate.storeOriginalPayload(payload, s3Key);
+        }
+
+        Entry entry = new Entry(payload, s3Key, size);
+        // Evicted payloads stay readable from memory until they are written to the underlying store
+        List<Entry> evicted = add(entry);
+        for (Entry oldest : evicted) {
+            oldest.upload();
+        }
+        evict(evicted);
+        if (uploadExecutor != null) {
+            try {
+                uploadExecutor.execute(entry::uploadInBackground);
+            } catch (RejectedExecutionException e) {
+                entry.upload();
+            }
+        }
+        return new PayloadS3Pointer(s3BucketName, s3Key).toJson();
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        Entry entry = get(payloadPointer);
+        return entry != null ? entry.payload : delegate.getOriginalPayload(payloadPointer);
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        Entry entry = remove(payloadPointer);
+        if (entry == null || entry.markDeleted()) {
+            delegate.deleteOriginalPayload(payloadPointer);
+        }
+    }
+
+    /**
+     * Gets the number of bytes of payloads currently retained in memory.
+     * @return the retained bytes.
+     */
+    public long getRetainedBytes() {
+        synchronized (entries) {
+            return retainedBytes;
+        }
+    }
+
+    /**
+     * Writes all payloads still only kept in memory to the underlying store and stops the
+     * background uploads.
+     */
+    @Override
+    public void close() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
+            try {
+                uploadExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<Entry> remaining;
+        synchronized (entries) {
+            remaining = new ArrayList<>(entries.values());
+            entries.clear();
+            retainedBytes = 0;
+        }
+        for (Entry entry : remaining) {
+            try {
+                entry.upload();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to write payload " + entry.s3Key + " to " + s3BucketName + " on close.", e);
+            }
+        }
+    }
+
+    private List<Entry> add(Entry entry) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Entry replaced = entries.put(entry.s3Key, entry);
+            if (replaced != null) {
+                retainedBytes -= replaced.size;
+            }
+            retainedBytes += entry.size;
+            long excessBytes = retainedBytes - byteBudget;
+            for (Iterator<Entry> iterator = entries.values().iterator(); excessBytes > 0 && iterator.hasNext();) {
+                Entry oldest = iterator.next();
+                if (oldest != entry) {
+                    evicted.add(oldest);
+                    excessBytes -= oldest.size;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    private void evict(List<Entry> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        synchronized (entries) {
+            for (Entry entry : evicted) {
+                if (entries.remove(entry.s3Key, entry)) {
+                    retainedBytes -= entry.size;
+                }
+            }
+        }
+    }
+
+    private Entry get(String payloadPointer) {
+        String s3Key = getS3Key(payloadPointer);
+        if (s3Key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            return entries.get(s3Key);
+        }
+    }
+
+    private Entry remove(String payloadPointer) {
+        String s3Key = getS3Key(payloadPointer);
+        if (s3Key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.remove(s3Key);
+            if (entry != null) {
+                retainedBytes -= entry.size;
+            }
+            return entry;
+        }
+    }
+
+    private String getS3Key(String payloadPointer) {
+        PayloadS3Pointer pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        return s3BucketName.equals(pointer.getS3BucketName()) ? pointer.getS3Key() : null;
+    }
+
+    private static long getRetainedSize(String payload) {
+        return 2L * payload.length();
+    }
+
+    private final class Entry {
+        private final String payload;
+        private final String s3Key;
+        private final long size;
+        private boolean uploaded;
+        private boolean deleted;
+
+        private Entry(String payload, String s3Key, long size) {
+            this.payload = payload;
+            this.s3Key = s3Key;
+            this.size = size;
+        }
+
+        private synchronized void upload() {
+            if (uploaded || deleted) {
+                return;
+            }
+            delegate.storeOriginalPayload(payload, s3Key);
+            uploaded = true;
+        }
+
+        private void uploadInBackground() {
+            try {
+                upload();
+            } catch (RuntimeException e) {
+                // The payload stays in memory and is written again when evicted or on close
+                LOG.warn("Failed to write payload " + s3Key + " to " + s3BucketName + " in the background.", e);
+            }
+        }
+
+        /**
+         * Marks the payload as deleted, so that it is never written afterwards.
+         * @return true if the payload was already written to the underlying store.
+         */
+        private synchronized boolean markDeleted() {
+            deleted = true;
+            return uploaded;
+        }
+    }
+}
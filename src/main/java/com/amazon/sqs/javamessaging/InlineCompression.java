@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Compresses message bodies sent inline with {@link OffloadPolicy.Decision#COMPRESS_INLINE}.
+ * Bodies are gzip-compressed and Base64-encoded, so that they remain valid message text.
+ * Decompression stops once the output exceeds a limit, so that a small message cannot
+ * expand into an arbitrarily large body.
+ */
+final class InlineCompression {
+    private static final Log LOG = LogFactory.getLog(InlineCompression.class);
+
+    static final String ENCODING = "gzip/base64";
+
+    private InlineCompression() {
+    }
+
+    static String compress(String messageBody) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(messageBody.length() / 4 + 64);
+        try (OutputStream gzip = new GZIPOutputStream(Base64.getEncoder().wrap(compressed))) {
+            gzip.write(messageBody.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            String errorMessage = "Failed to compress the message body.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+        return new String(compressed.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    static String decompress(String messageBody, int maxDecompressedSize) {
+        byte[] encoded = messageBody.getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream(
+            (int) Math.min((long) encoded.length * 4, maxDecompressedSize));
+        try (InputStream gzip = new GZIPInputStream(Base64.getDecoder().wrap(new ByteArrayInputStream(encoded)))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                if (decompressed.size() + read > maxDecompressedSize) {
+                    String errorMessage = "Decompressed message body exceeds " + maxDecompressedSize + " bytes.";
+                    LOG.error(errorMessage);
+                    throw SdkClientException.create(errorMessage);
+                }
+                decompressed.write(buffer, 0, read);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            String errorMessage = "Failed to decompress the message body.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+        return new String(decompressed.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
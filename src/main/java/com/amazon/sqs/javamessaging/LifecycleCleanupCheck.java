@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationResponse;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+/**
+ * Checks that the payload buckets have a lifecycle rule expiring payloads, for clients that
+ * leave payload deletion to S3 instead of deleting each payload along with its message.
+ *
+ * <p>
+ * A rule matches when it is enabled, expires objects a number of days after their creation
+ * that is not below the payload TTL, and applies to every key under the S3 key prefix: its
+ * filter may only restrict keys to a prefix of the S3 key prefix, with no tag or object size
+ * condition.
+ * </p>
+ *
+ * <p>
+ * The message retention period of each queue sent to is also compared with the payload TTL,
+ * since payloads expiring first can no longer be read by the consumers of their message.
+ * </p>
+ */
+final class LifecycleCleanupCheck {
+    private static final Log LOG = LogFactory.getLog(LifecycleCleanupCheck.class);
+
+    private static final int NOT_FOUND = 404;
+
+    private LifecycleCleanupCheck() {
+    }
+
+    /**
+     * Checks the lifecycle configuration of each bucket.
+     *
+     * @param s3BucketNames
+     *            The payload buckets.
+     * @param s3KeyPrefix
+     *            The prefix of the payload keys.
+     * @param payloadTtl
+     *            The minimum time payloads must be kept.
+     * @param getLifecycleConfiguration
+     *            Calls GetBucketLifecycleConfiguration.
+     * @return a future completed exceptionally with an {@link SdkClientException} if some bucket
+     *         has no matching rule. If a lifecycle configuration cannot be read, for example for
+     *         lack of permission, a warning is logged and the bucket is assumed to be configured.
+     */
+    static CompletableFuture<Void> check(
+        Collection<String> s3BucketNames, String s3KeyPrefix, Duration payloadTtl,
+        Function<GetBucketLifecycleConfigurationRequest, CompletableFuture<GetBucketLifecycleConfigurationResponse>>
+            getLifecycleConfiguration) {
+        List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+        for (String s3BucketName : s3BucketNames) {
+            CompletableFuture<GetBucketLifecycleConfigurationResponse> response;
+            try {
+                response = getLifecycleConfiguration.apply(
+                    GetBucketLifecycleConfigurationRequest.builder().bucket(s3BucketName).build());
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            checks.add(response.handle((configuration, throwable) -> {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                if (cause == null) {
+                    return hasMatchingRule(configuration.rules(), s3KeyPrefix, payloadTtl);
+                }
+                if (cause instanceof S3Exception && ((S3Exception) cause).statusCode() == NOT_FOUND) {
+                    return false;
+                }
+                LOG.warn("Failed to read the lifecycle configuration of bucket " + s3BucketName
+                         + ", payloads are assumed to be expired by a lifecycle rule.", cause);
+                return true;
+            }).thenApply(matched -> {
+                if (!matched) {
+                    String errorMessage = "Bucket " + s3BucketName + " has no enabled lifecycle rule expiring "
+                                          + "objects under prefix '" + s3KeyPrefix + "' after at least "
+                                          + payloadTtl.toDays() + " days.";
+                    LOG.error(errorMessage);
+                    throw SdkClientException.create(errorMessage);
+                }
+                return true;
+            }));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Checks that the payload TTL exceeds the message retention period of a queue.
+     *
+     * @param queueUrl
+     *            The URL of the queue.
+     * @param payloadTtl
+     *            The minimum time payloads are kept.
+     * @param getQueueAttributes
+     *            Calls GetQueueAttributes.
+     * @return a future completed with false if payloads may expire before their message, in
+     *         which case an error is logged, never completed exceptionally. If the retention
+     *         period cannot be read, a warning is logged and the future is completed with true.
+     */
+    static CompletableFuture<Boolean> checkRetentionPeriod(
+        String queueUrl, Duration payloadTtl,
+        Function<GetQueueAttributesRequest, CompletableFuture<GetQueueAttributesResponse>> getQueueAttributes) {
+        CompletableFuture<GetQueueAttributesResponse> response;
+        try {
+            response = getQueueAttributes.apply(GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNames(QueueAttributeName.MESSAGE_RETENTION_PERIOD)
+                .build());
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((attributes, throwable) -> {
+            String retentionSeconds = throwable == null && attributes != null
+                ? attributes.attributes().get(QueueAttributeName.MESSAGE_RETENTION_PERIOD)
+                : null;
+            Duration retentionPeriod;
+            try {
+                retentionPeriod = Duration.ofSeconds(Long.parseLong(retentionSeconds));
+            } catch (NumberFormatException e) {
+                LOG.warn("Failed to read the message retention period of queue " + queueUrl
+                         + ", payloads are assumed to outlive its messages.", throwable);
+                return true;
+            }
+            if (payloadTtl.compareTo(retentionPeriod) <= 0) {
+                LOG.error("Lifecycle cleanup payload TTL of " + payloadTtl + " does not exceed the message retention "
+                          + "period of " + retentionPeriod + " of queue " + queueUrl + ", payloads may expire "
+                          + "before their messages are received.");
+                return false;
+            }
+            return true;
+        });
+    }
+
+    static boolean hasMatchingRule(List<LifecycleRule> rules, String s3KeyPrefix, Duration payloadTtl) {
+        for (LifecycleRule rule : rules) {
+            if (!ExpirationStatus.ENABLED.equals(rule.status()) || rule.expiration() == null
+                || rule.expiration().days() == null
+                || Duration.ofDays(rule.expiration().days()).compareTo(payloadTtl) < 0) {
+                continue;
+            }
+            String rulePrefix = getRulePrefix(rule);
+            if (rulePrefix != null && s3KeyPrefix.startsWith(rulePrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the prefix a rule applies to, or null if it has other conditions.
+     */
+    @SuppressWarnings("deprecation")
+    private static String getRulePrefix(LifecycleRule rule) {
+        LifecycleRuleFilter filter = rule.filter();
+        if (filter == null) {
+            // Rules created before filters were introduced only have a prefix
+            return rule.prefix() != null ? rule.prefix() : "";
+        }
+        if (filter.tag() != null || filter.and() != null || filter.objectSizeGreaterThan() != null
+            || filter.objectSizeLessThan() != null) {
+            return null;
+        }
+        return filter.prefix() != null ? filter.prefix() : "";
+    }
+}
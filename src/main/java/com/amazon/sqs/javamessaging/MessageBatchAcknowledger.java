@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * Subscriber deleting the messages it receives from a queue, in batches.
+ *
+ * <p>
+ * Messages are deleted once <code>maxBatchSize</code> of them are pending or the oldest
+ * pending message has waited for <code>maxBatchDelay</code>, whichever comes first. With
+ * the extended client, the payloads of large messages are deleted along with them. Messages
+ * are requested from upstream a few batches at a time, as earlier batches are deleted, so
+ * that a slow queue slows down the messages acknowledged upstream rather than letting them
+ * pile up. Messages that fail to be deleted are logged and become visible again once their
+ * visibility timeout expires.
+ * </p>
+ *
+ * <p>
+ * The future returned by {@link #getCompletion()} completes once upstream has completed and
+ * every pending message has been deleted, or completes exceptionally with the upstream error.
+ * </p>
+ */
+public class MessageBatchAcknowledger implements Subscriber<Message> {
+    private static final Log LOG = LogFactory.getLog(MessageBatchAcknowledger.class);
+
+    public static final int MAX_BATCH_SIZE = 10;
+    public static final Duration DEFAULT_MAX_BATCH_DELAY = Duration.ofMillis(500);
+
+    private static final int MAX_BATCHES_IN_FLIGHT = 4;
+
+    private final SqsAsyncClient sqsClient;
+    private final String queueUrl;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    // In-flight deletes plus one for upstream, so that completion waits for both
+    private final AtomicInteger pendingWork = new AtomicInteger(1);
+    private final Object lock = new Object();
+    private List<Message> batch = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private Subscription subscription;
+    private volatile Throwable upstreamError;
+
+    /**
+     * Creates an acknowledger deleting messages in batches of up to 10, waiting at most
+     * {@link #DEFAULT_MAX_BATCH_DELAY} for a batch to fill.
+     *
+     * @param sqsClient
+     *            The client used to delete messages, usually an {@link AmazonSQSExtendedAsyncClient}.
+     * @param queueUrl
+     *            The URL of the queue the messages were received from.
+     */
+    public MessageBatchAcknowledger(SqsAsyncClient sqsClient, String queueUrl) {
+        this(sqsClient, queueUrl, MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY);
+    }
+
+    /**
+     * Creates an acknowledger deleting messages in batches.
+     *
+     * @param sqsClient
+     *            The client used to delete messages, usually an {@link AmazonSQSExtendedAsyncClient}.
+     * @param queueUrl
+     *            The URL of the queue the messages were received from.
+     * @param maxBatchSize
+     *            The maximum number of messages deleted together, between 1 and {@link #MAX_BATCH_SIZE}.
+     * @param maxBatchDelay
+     *            The maximum time a message waits for its batch to fill.
+     */
+    public MessageBatchAcknowledger(SqsAsyncClient sqsClient, String queueUrl, int maxBatchSize,
+                                    Duration maxBatchDelay) {
+        if (sqsClient == null || queueUrl == null || maxBatchDelay == null || maxBatchDelay.isNegative()) {
+            String errorMessage = "sqsClient, queueUrl and a non-negative maxBatchDelay are required.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE) {
+            String errorMessage = "The maximum batch size must be between 1 and " + MAX_BATCH_SIZE + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = maxBatchDelay.toNanos();
+    }
+
+    /**
+     * Gets the future completing once all messages have been acknowledged.
+     * @return the completion future.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (lock) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        subscription.request((long) maxBatchSize * MAX_BATCHES_IN_FLIGHT);
+    }
+
+    @Override
+    public void onNext(Message message) {
+        List<Message> fullBatch = null;
+        synchronized (lock) {
+            batch.add(message);
+            if (batch.size() >= maxBatchSize) {
+                fullBatch = takeBatch();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = Scheduler.INSTANCE.schedule(this::flush, maxBatchDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            delete(fullBatch);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        onComplete();
+    }
+
+    @Override
+    public void onComplete() {
+        flush();
+        finishWork();
+    }
+
+    private void flush() {
+        List<Message> pendingBatch;
+        synchronized (lock) {
+            pendingBatch = takeBatch();
+        }
+        if (!pendingBatch.isEmpty()) {
+            delete(pendingBatch);
+        }
+    }
+
+    private List<Message> takeBatch() {
+        List<Message> taken = batch;
+        if (!taken.isEmpty()) {
+            // Counted while holding the lock, so that completion never misses a batch being flushed
+            pendingWork.incrementAndGet();
+            batch = new ArrayList<>();
+        }
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return taken;
+    }
+
+    private void delete(List<Message> messages) {
+        List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(DeleteMessageBatchRequestEntry.builder()
+                .id(Integer.toString(i))
+                .receiptHandle(messages.get(i).receiptHandle())
+                .build());
+        }
+        DeleteMessageBatchRequest request = DeleteMessageBatchRequest.builder()
+            .queueUrl(queueUrl)
+            .entries(entries)
+            .build();
+
+        CompletableFuture<DeleteMessageBatchResponse> future;
+        try {
+            future = sqsClient.deleteMessageBatch(request);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                LOG.warn("Failed to delete " + messages.size() + " messages from " + queueUrl + ".", throwable);
+            } else if (response.hasFailed() && !response.failed().isEmpty()) {
+                LOG.warn("Failed to delete " + response.failed().size() + " of " + messages.size()
+                         + " messages from " + queueUrl + ": " + response.failed().get(0).message());
+            }
+            Subscription currentSubscription;
+            synchronized (lock) {
+                currentSubscription = subscription;
+            }
+            if (currentSubscription != null) {
+                currentSubscription.request(messages.size());
+            }
+            finishWork();
+        });
+    }
+
+    private void finishWork() {
+        if (pendingWork.decrementAndGet() != 0) {
+            return;
+        }
+        if (upstreamError != null) {
+            completion.completeExceptionally(upstreamError);
+        } else {
+            completion.complete(null);
+        }
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqs-extended-message-acknowledger");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
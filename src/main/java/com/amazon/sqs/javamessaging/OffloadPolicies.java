@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Built-in {@link OffloadPolicy} implementations.
+ */
+public final class OffloadPolicies {
+    private static final Log LOG = LogFactory.getLog(OffloadPolicies.class);
+
+    private static final int SQS_BILLING_CHUNK_SIZE = 65536;
+
+    private OffloadPolicies() {
+    }
+
+    /**
+     * Offloads messages larger than the payload size threshold and sends the others inline,
+     * which is what the client does when no policy is set.
+     *
+     * @return the policy.
+     */
+    public static OffloadPolicy sizeThreshold() {
+        return (queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+            bodySize + attributesSize > payloadSizeThreshold ? OffloadPolicy.Decision.OFFLOAD : OffloadPolicy.Decision.INLINE;
+    }
+
+    /**
+     * Offloads messages larger than the given threshold, or than the payload size threshold
+     * if it is lower, and sends the others inline.
+     *
+     * @param threshold
+     *            Largest message size, in bytes, sent inline.
+     * @return the policy.
+     */
+    public static OffloadPolicy sizeThreshold(int threshold) {
+        if (threshold < 0) {
+            String errorMessage = "The offload threshold cannot be negative.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return (queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+            bodySize + attributesSize > Math.min(threshold, payloadSizeThreshold)
+                ? OffloadPolicy.Decision.OFFLOAD
+                : OffloadPolicy.Decision.INLINE;
+    }
+
+    /**
+     * Uses a different policy for each queue, for example {@link #sizeThreshold(int)} with a
+     * low threshold for latency-critical queues and {@link #costWeighted(double, double)} for
+     * bulk queues.
+     *
+     * @param policiesByQueueUrl
+     *            Policy of each queue, by queue URL.
+     * @param defaultPolicy
+     *            Policy of the queues not in the map.
+     * @return the policy.
+     */
+    public static OffloadPolicy perQueue(Map<String, OffloadPolicy> policiesByQueueUrl, OffloadPolicy defaultPolicy) {
+        if (policiesByQueueUrl == null || defaultPolicy == null) {
+            String errorMessage = "Policies by queue URL and the default policy cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        Map<String, OffloadPolicy> policies = new HashMap<>(policiesByQueueUrl);
+        return (queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+            policies.getOrDefault(queueUrl, defaultPolicy)
+                .decide(queueUrl, bodySize, attributesSize, payloadSizeThreshold, request);
+    }
+
+    /**
+     * Picks the cheapest way of sending each message. Costs are counted in SQS requests, each
+     * message being billed one request per 64 KiB chunk. Sending inline costs the chunks of
+     * the message; compressing inline costs the chunks of the message at the expected
+     * compression ratio; offloading costs one request plus the given cost of storing,
+     * fetching and deleting the payload. Ties are resolved in favor of inline, then
+     * compressed inline, then offloaded.
+     *
+     * @param offloadCost
+     *            Cost of the payload store operations of one message, in SQS requests.
+     * @param expectedCompressionRatio
+     *            Expected compressed size over original size, greater than 0 and at most 1.
+     * @return the policy.
+     */
+    public static OffloadPolicy costWeighted(double offloadCost, double expectedCompressionRatio) {
+        if (offloadCost < 0 || !(expectedCompressionRatio > 0 && expectedCompressionRatio <= 1)) {
+            String errorMessage = "The offload cost cannot be negative and the expected compression ratio "
+                                  + "must be greater than 0 and at most 1.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return (queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) -> {
+            long size = bodySize + attributesSize;
+            // Base64 encoding grows the compressed body by a third
+            long compressedSize = (long) Math.ceil(bodySize * expectedCompressionRatio * 4 / 3) + attributesSize;
+
+            OffloadPolicy.Decision decision = OffloadPolicy.Decision.OFFLOAD;
+            double cost = 1 + offloadCost;
+            if (compressedSize <= payloadSizeThreshold && chunks(compressedSize) <= cost) {
+                decision = OffloadPolicy.Decision.COMPRESS_INLINE;
+                cost = chunks(compressedSize);
+            }
+            if (size <= payloadSizeThreshold && chunks(size) <= cost) {
+                decision = OffloadPolicy.Decision.INLINE;
+            }
+            return decision;
+        };
+    }
+
+    private static long chunks(long size) {
+        return Math.max(1, (size + SQS_BILLING_CHUNK_SIZE - 1) / SQS_BILLING_CHUNK_SIZE);
+    }
+}
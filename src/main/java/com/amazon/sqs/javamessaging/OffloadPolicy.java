@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import software.amazon.awssdk.core.SdkPojo;
+
+/**
+ * Decides, for each message sent, whether its body is sent inline, compressed inline or
+ * offloaded to the payload store.
+ *
+ * <p>
+ * Whatever the policy decides, a message is never sent inline when it exceeds the payload
+ * size threshold, and a message that does not fit once compressed is offloaded instead.
+ * Setting <code>alwaysThroughS3</code> offloads every message without consulting the policy.
+ * </p>
+ *
+ * @see OffloadPolicies
+ */
+@FunctionalInterface
+public interface OffloadPolicy {
+
+    /**
+     * How a message body is sent.
+     */
+    enum Decision {
+        /**
+         * Send the body as is.
+         */
+        INLINE,
+
+        /**
+         * Store the body in the payload store and send a pointer to it.
+         */
+        OFFLOAD,
+
+        /**
+         * Send the body gzip-compressed and Base64-encoded, decompressed again on receive.
+         * Only consumers using a version of this client that supports inline compression,
+         * configured with an offload policy, can read these messages; other consumers,
+         * including earlier versions of this client and plain SQS clients, receive the
+         * compressed body. Bodies larger than
+         * {@link SQSExtendedClientConstants#MAX_COMPRESSED_INLINE_BODY_SIZE} are offloaded
+         * instead, and received bodies that would decompress beyond it are returned compressed.
+         */
+        COMPRESS_INLINE
+    }
+
+    /**
+     * Decides how a message body is sent.
+     *
+     * @param queueUrl
+     *            The URL of the queue the message is sent to.
+     * @param bodySize
+     *            Size of the message body in bytes.
+     * @param attributesSize
+     *            Size of the message attributes in bytes.
+     * @param payloadSizeThreshold
+     *            Largest message size, body and attributes, that can be sent inline to the queue.
+     * @param request
+     *            The <code>SendMessageRequest</code> or <code>SendMessageBatchRequestEntry</code> being sent.
+     * @return the decision, never null.
+     */
+    Decision decide(String queueUrl, long bodySize, int attributesSize, int payloadSizeThreshold, SdkPojo request);
+}
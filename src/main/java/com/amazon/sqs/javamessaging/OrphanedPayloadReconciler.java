@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+/**
+ * Deletes payloads that no message can reference anymore.
+ *
+ * <p>
+ * Payloads are left behind when sending a message fails after its payload was stored, when
+ * a queue is purged with <code>purgeQueue</code>, or when <code>cleanupS3Payload</code> is
+ * disabled. A payload older than the retention period of every queue it may have been sent
+ * to can no longer be referenced, since SQS has deleted its message. The reconciler lists
+ * the payload bucket under a prefix, in parallel across partitions and key ranges, and
+ * removes the objects last modified before <code>now - maxPayloadAge</code> with
+ * <code>DeleteObjects</code> calls of up to 1000 keys, optionally under a rate limit.
+ * </p>
+ *
+ * <p>
+ * Only the S3 API is used, so the reconciler runs against any S3-compatible stand-in, such
+ * as a local emulator, by building the S3 client with an endpoint override. Progress,
+ * including throughput, is reported as {@link PayloadSweepProgress} snapshots.
+ * </p>
+ */
+public class OrphanedPayloadReconciler {
+    private static final Log LOG = LogFactory.getLog(OrphanedPayloadReconciler.class);
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    // Longest retention period SQS allows for a queue
+    public static final Duration MAXIMUM_MESSAGE_RETENTION_PERIOD = Duration.ofDays(14);
+
+    private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final String s3BucketName;
+    private final Duration maxPayloadAge;
+    private String s3KeyPrefix = "";
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private double deleteRequestsPerSecond;
+    private boolean keyRangeSplitting = true;
+    private boolean timeOrderedKeys;
+    private boolean dryRun;
+    private boolean shortMaxPayloadAgeAllowed;
+    private Consumer<PayloadSweepProgress> progressListener;
+
+    /**
+     * Creates a reconciler using a synchronous S3 client, called from a pool of
+     * <code>concurrency</code> threads during each run.
+     *
+     * @param s3Client
+     *            The S3 client.
+     * @param s3BucketName
+     *            The bucket holding the payloads.
+     * @param maxPayloadAge
+     *            Payloads last modified longer ago are deleted. It must be at least the longest
+     *            retention period of the queues using the bucket, dead-letter queues included,
+     *            and at least {@link #MAXIMUM_MESSAGE_RETENTION_PERIOD} unless
+     *            {@link #withShortMaxPayloadAgeAllowed(boolean)} is enabled.
+     */
+    public OrphanedPayloadReconciler(S3Client s3Client, String s3BucketName, Duration maxPayloadAge) {
+        this(s3Client, null, s3BucketName, maxPayloadAge);
+    }
+
+    /**
+     * Creates a reconciler using an asynchronous S3 client.
+     *
+     * @param s3AsyncClient
+     *            The S3 async client.
+     * @param s3BucketName
+     *            The bucket holding the payloads.
+     * @param maxPayloadAge
+     *            Payloads last modified longer ago are deleted. It must be at least the longest
+     *            retention period of the queues using the bucket, dead-letter queues included,
+     *            and at least {@link #MAXIMUM_MESSAGE_RETENTION_PERIOD} unless
+     *            {@link #withShortMaxPayloadAgeAllowed(boolean)} is enabled.
+     */
+    public OrphanedPayloadReconciler(S3AsyncClient s3AsyncClient, String s3BucketName, Duration maxPayloadAge) {
+        this(null, s3AsyncClient, s3BucketName, maxPayloadAge);
+    }
+
+    private OrphanedPayloadReconciler(S3Client s3Client, S3AsyncClient s3AsyncClient, String s3BucketName,
+                                      Duration maxPayloadAge) {
+        if ((s3Client == null && s3AsyncClient == null) || s3BucketName == null || maxPayloadAge == null
+            || maxPayloadAge.isNegative() || maxPayloadAge.isZero()) {
+            String errorMessage = "S3 client, bucket name and a positive maxPayloadAge are required.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3BucketName = s3BucketName;
+        this.maxPayloadAge = maxPayloadAge;
+    }
+
+    /**
+     * Gets the retention period of a queue, from which <code>maxPayloadAge</code> is usually
+     * derived.
+     *
+     * @param sqsClient
+     *            The SQS client.
+     * @param queueUrl
+     *            The URL of the queue.
+     * @return the value of the <code>MessageRetentionPeriod</code> attribute of the queue.
+     */
+    public static Duration getMessageRetentionPeriod(SqsClient sqsClient, String queueUrl) {
+        String retentionSeconds = sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNames(QueueAttributeName.MESSAGE_RETENTION_PERIOD)
+                .build())
+            .attributes()
+            .get(QueueAttributeName.MESSAGE_RETENTION_PERIOD);
+        if (retentionSeconds == null) {
+            String errorMessage = "Failed to read the message retention period of queue " + queueUrl + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return Duration.ofSeconds(Long.parseLong(retentionSeconds));
+    }
+
+    /**
+     * Restricts the reconciliation to the payloads stored under a prefix, such as the S3 key
+     * prefix of the extended client, or a queue-scoped prefix.
+     *
+     * @param s3KeyPrefix
+     *            The prefix. Default: empty
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withS3KeyPrefix(String s3KeyPrefix) {
+        this.s3KeyPrefix = AmazonSQSExtendedClientUtil.trimAndValidateS3KeyPrefix(s3KeyPrefix);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of S3 requests in flight.
+     *
+     * @param concurrency
+     *            The concurrency, which must be positive. Default: {@link #DEFAULT_CONCURRENCY}
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            String errorMessage = "The reconciliation concurrency must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Limits the number of <code>DeleteObjects</code> requests started per second, each
+     * deleting up to 1000 payloads.
+     *
+     * @param deleteRequestsPerSecond
+     *            The rate limit, or 0 for no limit. Default: 0
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withDeleteRateLimit(double deleteRequestsPerSecond) {
+        if (!(deleteRequestsPerSecond >= 0)) {
+            String errorMessage = "The delete rate limit cannot be negative.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.deleteRequestsPerSecond = deleteRequestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Lists the prefix as 16 key ranges in parallel, one per leading hexadecimal digit of the
+     * names below it, instead of one page after another. Partitions are always listed in
+     * parallel.
+     *
+     * @param keyRangeSplitting
+     *            Whether the prefix is split into key ranges. Default: true
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withKeyRangeSplitting(boolean keyRangeSplitting) {
+        this.keyRangeSplitting = keyRangeSplitting;
+        return this;
+    }
+
+    /**
+     * Declares that every payload under the prefix was named by
+     * {@link S3KeyGenerators#timeOrdered()}, so that listing a prefix stops at the first
+     * name created after the cutoff instead of reading the newer names that follow it.
+     *
+     * @param timeOrderedKeys
+     *            Whether payload names are time-ordered. Default: false
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withTimeOrderedKeys(boolean timeOrderedKeys) {
+        this.timeOrderedKeys = timeOrderedKeys;
+        return this;
+    }
+
+    /**
+     * Only counts the orphaned payloads, reported as listed objects, without deleting them.
+     *
+     * @param dryRun
+     *            Whether payloads are kept. Default: false
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+        return this;
+    }
+
+    /**
+     * Allows a <code>maxPayloadAge</code> shorter than {@link #MAXIMUM_MESSAGE_RETENTION_PERIOD},
+     * for buckets used only by queues known to retain messages for less time. The payloads of
+     * messages still in a queue with a longer retention, such as a dead-letter queue, are
+     * deleted otherwise.
+     *
+     * @param shortMaxPayloadAgeAllowed
+     *            Whether a shorter maxPayloadAge is accepted. Default: false
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withShortMaxPayloadAgeAllowed(boolean shortMaxPayloadAgeAllowed) {
+        this.shortMaxPayloadAgeAllowed = shortMaxPayloadAgeAllowed;
+        return this;
+    }
+
+    /**
+     * Sets the listener called with the progress after each listed page and each deletion,
+     * possibly from several threads at once.
+     *
+     * @param progressListener
+     *            The listener, or null. Default: null
+     * @return this reconciler.
+     */
+    public OrphanedPayloadReconciler withProgressListener(Consumer<PayloadSweepProgress> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Deletes the orphaned payloads, blocking until done.
+     *
+     * @return the final progress.
+     */
+    public PayloadSweepProgress reconcile() {
+        try {
+            return reconcileAsync().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SdkException ? (SdkException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Deletes the orphaned payloads.
+     *
+     * @return a future completed with the final progress, or completed exceptionally if
+     *         some prefix could not be listed.
+     */
+    public CompletableFuture<PayloadSweepProgress> reconcileAsync() {
+        if (!shortMaxPayloadAgeAllowed && maxPayloadAge.compareTo(MAXIMUM_MESSAGE_RETENTION_PERIOD) < 0) {
+            String errorMessage = "maxPayloadAge " + maxPayloadAge + " is shorter than the maximum message retention "
+                                  + "period of " + MAXIMUM_MESSAGE_RETENTION_PERIOD + ", which may delete payloads "
+                                  + "of messages still in a queue. Enable withShortMaxPayloadAgeAllowed to allow it.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        Instant storedBefore = Instant.now().minus(maxPayloadAge);
+        LOG.info("Reconciling payloads of bucket " + s3BucketName + " under prefix '" + s3KeyPrefix
+                 + "' last modified before " + storedBefore + (dryRun ? ", dry run." : "."));
+
+        if (s3AsyncClient != null) {
+            return sweep(new S3PayloadSweeper(concurrency, storedBefore, progressListener,
+                s3AsyncClient::listObjectsV2, dryRun ? null : s3AsyncClient::deleteObjects));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "sqs-extended-payload-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<PayloadSweepProgress> result = sweep(new S3PayloadSweeper(concurrency, storedBefore,
+            progressListener, request -> CompletableFuture.supplyAsync(() -> s3Client.listObjectsV2(request), executor),
+            dryRun ? null : request -> CompletableFuture.supplyAsync(() -> s3Client.deleteObjects(request), executor)));
+        result.whenComplete((progress, throwable) -> executor.shutdown());
+        return result;
+    }
+
+    private CompletableFuture<PayloadSweepProgress> sweep(S3PayloadSweeper sweeper) {
+        if (keyRangeSplitting) {
+            sweeper.withKeyRangeSplitting();
+        }
+        if (timeOrderedKeys) {
+            sweeper.withTimeOrderedKeys();
+        }
+        if (deleteRequestsPerSecond > 0) {
+            sweeper.withDeleteRateLimit(deleteRequestsPerSecond);
+        }
+        return sweeper.sweep(Collections.singletonList(s3BucketName), s3KeyPrefix);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Pool of direct byte buffers used to stage payload bytes while they are uploaded to or
+ * downloaded from Amazon S3, instead of allocating a new byte array the size of every
+ * payload on the heap.
+ *
+ * <p>
+ * Buffers are grouped in size classes, powers of two between the minimum and maximum
+ * class sizes. A request is served by a buffer of the smallest class that fits it, reusing
+ * a released buffer when one is available. Requests larger than the maximum class are
+ * served by unpooled heap buffers, so that direct memory is only ever held by buffers the
+ * pool owns: unpooled direct buffers are only freed once the garbage collector runs, and a
+ * burst of large payloads could exhaust direct memory while the heap is mostly idle. The
+ * default classes go up to 32 MiB; raise the maximum class size to stage larger payloads
+ * in pooled direct buffers, bearing in mind that every buffer in use may be that large.
+ * Released buffers are kept for reuse as long as the idle buffers stay within the retained
+ * byte limit, and dropped otherwise.
+ * </p>
+ *
+ * <p>
+ * Every buffer acquired must be released exactly once, after which it must no longer be
+ * used. A pool is thread-safe and may be shared by several clients.
+ * </p>
+ */
+public final class PayloadBufferPool {
+    private static final Log LOG = LogFactory.getLog(PayloadBufferPool.class);
+
+    public static final int DEFAULT_MIN_CLASS_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CLASS_SIZE = 32 * 1024 * 1024;
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    private final int minClassShift;
+    private final int maxClassShift;
+    private final long maxRetainedBytes;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong outstandingBuffers = new AtomicLong();
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder reuseCount = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Creates a pool with the default size classes, from 64 KiB to 32 MiB, retaining up to
+     * 64 MiB of idle buffers. Payloads larger than 32 MiB are staged in heap buffers.
+     */
+    public PayloadBufferPool() {
+        this(DEFAULT_MIN_CLASS_SIZE, DEFAULT_MAX_CLASS_SIZE, DEFAULT_MAX_RETAINED_BYTES);
+    }
+
+    /**
+     * Creates a pool with the given size classes.
+     *
+     * @param minClassSize
+     *            The size of the smallest buffers, a power of two.
+     * @param maxClassSize
+     *            The size of the largest pooled buffers, a power of two not smaller than
+     *            <code>minClassSize</code>.
+     * @param maxRetainedBytes
+     *            The maximum number of bytes of idle buffers kept for reuse.
+     */
+    @SuppressWarnings("unchecked")
+    public PayloadBufferPool(int minClassSize, int maxClassSize, long maxRetainedBytes) {
+        if (Integer.bitCount(minClassSize) != 1 || Integer.bitCount(maxClassSize) != 1
+            || minClassSize > maxClassSize || maxRetainedBytes < 0) {
+            String errorMessage = "Buffer pool class sizes must be powers of two with minClassSize <= maxClassSize, "
+                                  + "and maxRetainedBytes cannot be negative.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.minClassShift = Integer.numberOfTrailingZeros(minClassSize);
+        this.maxClassShift = Integer.numberOfTrailingZeros(maxClassSize);
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.freeBuffers = new ConcurrentLinkedQueue[maxClassShift - minClassShift + 1];
+        for (int i = 0; i < freeBuffers.length; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Acquires a buffer with room for at least <code>size</code> bytes, a direct buffer unless
+     * <code>size</code> exceeds the maximum class size. The returned buffer has its position
+     * set to 0 and its limit set to <code>size</code>.
+     *
+     * @param size
+     *            The number of bytes needed.
+     * @return the buffer, to be given back with {@link #release(ByteBuffer)}.
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0) {
+            String errorMessage = "Buffer size cannot be negative.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        acquireCount.increment();
+        outstandingBuffers.incrementAndGet();
+
+        int sizeClass = getSizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = freeBuffers[sizeClass].poll();
+            if (buffer != null) {
+                retainedBytes.addAndGet(-buffer.capacity());
+                reuseCount.increment();
+            }
+        }
+        if (buffer == null) {
+            if (sizeClass >= 0) {
+                int capacity = 1 << (minClassShift + sizeClass);
+                buffer = ByteBuffer.allocateDirect(capacity);
+                allocatedBytes.add(capacity);
+            } else {
+                buffer = ByteBuffer.allocate(size);
+            }
+        }
+        ((Buffer) buffer).clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer acquired from this pool.
+     *
+     * @param buffer
+     *            The buffer, which must no longer be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        outstandingBuffers.decrementAndGet();
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        if (!buffer.isDirect() || sizeClass < 0 || capacity != 1 << (minClassShift + sizeClass)) {
+            return;
+        }
+        if (retainedBytes.addAndGet(capacity) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-capacity);
+            return;
+        }
+        freeBuffers[sizeClass].offer(buffer);
+    }
+
+    /**
+     * Gets the number of buffers acquired since the pool was created.
+     * @return the acquire count.
+     */
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * Gets the number of acquisitions served by a previously released buffer.
+     * @return the reuse count.
+     */
+    public long getReuseCount() {
+        return reuseCount.sum();
+    }
+
+    /**
+     * Gets the total number of bytes of direct buffers allocated since the pool was created.
+     * @return the allocated bytes.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Gets the number of bytes of idle buffers currently kept for reuse.
+     * @return the retained bytes.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Gets the number of buffers acquired and not yet released.
+     * @return the outstanding buffer count.
+     */
+    public long getOutstandingBufferCount() {
+        return outstandingBuffers.get();
+    }
+
+    private int getSizeClass(int size) {
+        if (size <= 1 << minClassShift) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift <= maxClassShift ? shift - minClassShift : -1;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Encodes and decodes payloads to and from buffers of a {@link PayloadBufferPool}.
+ */
+final class PayloadBuffers {
+    private static final Log LOG = LogFactory.getLog(PayloadBuffers.class);
+
+    static final String PAYLOAD_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+    private static final int UNKNOWN_LENGTH_INITIAL_SIZE = 64 * 1024;
+
+    private static final int DECODE_CHUNK_SIZE = 8 * 1024;
+
+    private PayloadBuffers() {
+    }
+
+    /**
+     * Encodes the payload in UTF-8 into a buffer acquired from the pool, without going
+     * through an intermediate byte array.
+     *
+     * @return the buffer, flipped for reading.
+     */
+    static ByteBuffer encode(PayloadBufferPool pool, String payload) {
+        ByteBuffer buffer = pool.acquire(getUtf8Length(payload));
+        try {
+            StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(CharBuffer.wrap(payload), buffer, true);
+        } catch (RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes the UTF-8 payload held by the buffer. Heap buffers are decoded straight into the
+     * string; direct buffers are decoded through a small chunk into a builder sized for the
+     * payload, instead of a char buffer the size of the payload that is grown as needed.
+     *
+     * @return the payload.
+     */
+    static String decode(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            String payload = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+                StandardCharsets.UTF_8);
+            ((Buffer) buffer).position(buffer.limit());
+            return payload;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // A UTF-8 payload never has more chars than bytes
+        StringBuilder payload = new StringBuilder(buffer.remaining());
+        CharBuffer chunk = CharBuffer.allocate(DECODE_CHUNK_SIZE);
+        CoderResult result;
+        do {
+            result = decoder.decode(buffer, chunk, true);
+            appendChunk(payload, chunk);
+        } while (result.isOverflow());
+        do {
+            result = decoder.flush(chunk);
+            appendChunk(payload, chunk);
+        } while (result.isOverflow());
+        return payload.toString();
+    }
+
+    private static void appendChunk(StringBuilder payload, CharBuffer chunk) {
+        ((Buffer) chunk).flip();
+        payload.append(chunk);
+        ((Buffer) chunk).clear();
+    }
+
+    /**
+     * Reads the whole stream into a buffer acquired from the pool, sized from the expected
+     * length when it is known and grown as needed.
+     *
+     * @return the buffer, flipped for reading.
+     */
+    static ByteBuffer readFully(PayloadBufferPool pool, InputStream inputStream, Long expectedLength)
+        throws IOException {
+        ByteBuffer buffer = pool.acquire(getInitialSize(expectedLength));
+        try {
+            ReadableByteChannel channel = Channels.newChannel(inputStream);
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    // Only grow the buffer once the stream turns out to be longer than expected
+                    int next = inputStream.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    buffer = grow(pool, buffer, 1);
+                    buffer.put((byte) next);
+                } else if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Appends the bytes of <code>source</code> to the buffer, replacing it with a larger
+     * buffer from the pool if it is full.
+     *
+     * @return the buffer holding the appended bytes.
+     */
+    static ByteBuffer append(PayloadBufferPool pool, ByteBuffer buffer, ByteBuffer source) {
+        if (source.remaining() > buffer.remaining()) {
+            buffer = grow(pool, buffer, source.remaining());
+        }
+        buffer.put(source);
+        return buffer;
+    }
+
+    static int getInitialSize(Long expectedLength) {
+        if (expectedLength == null || expectedLength < 0) {
+            return UNKNOWN_LENGTH_INITIAL_SIZE;
+        }
+        return (int) Math.min(expectedLength, Integer.MAX_VALUE - 8);
+    }
+
+    static InputStream newInputStream(ByteBuffer buffer) {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    private static ByteBuffer grow(PayloadBufferPool pool, ByteBuffer buffer, int minimumGrowth) {
+        long newSize = Math.max(2L * buffer.capacity(), (long) buffer.position() + minimumGrowth);
+        if (newSize > Integer.MAX_VALUE - 8) {
+            String errorMessage = "The payload is too large to be read.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        ByteBuffer grown = pool.acquire((int) newSize);
+        ((Buffer) buffer).flip();
+        grown.put(buffer);
+        pool.release(buffer);
+        return grown;
+    }
+
+    static int getUtf8Length(String payload) {
+        int length = 0;
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < payload.length()
+                       && Character.isLowSurrogate(payload.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced with '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
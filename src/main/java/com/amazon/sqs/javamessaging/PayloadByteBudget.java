@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Budget bounding the total size of the payloads being downloaded by
+ * <code>receiveMessage</code>. The same budget may be shared by several clients to bound
+ * the payload bytes in flight across the whole process.
+ *
+ * <p>
+ * Bytes are reserved before a payload is downloaded, using the payload size recorded in
+ * the message attributes, and released once the <code>receiveMessage</code> call that
+ * downloaded it completes. A reservation that does not fit fails immediately instead of
+ * waiting, except when nothing is reserved at all, so that a payload larger than the whole
+ * budget is still received eventually.
+ * </p>
+ */
+public final class PayloadByteBudget {
+    private static final Log LOG = LogFactory.getLog(PayloadByteBudget.class);
+
+    private final long maxBytes;
+    private long reservedBytes;
+
+    /**
+     * Creates a budget allowing up to the given number of payload bytes in flight.
+     *
+     * @param maxBytes
+     *            The maximum number of payload bytes in flight, which must be positive.
+     */
+    public PayloadByteBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            String errorMessage = "The payload byte budget must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reserves the given number of bytes if they fit in the budget.
+     *
+     * @param bytes
+     *            The number of bytes to reserve.
+     * @return true if the bytes were reserved, in which case they must be released later.
+     */
+    public synchronized boolean tryReserve(long bytes) {
+        if (reservedBytes > 0 && bytes > maxBytes - reservedBytes) {
+            return false;
+        }
+        reservedBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Releases bytes previously reserved with {@link #tryReserve(long)}.
+     *
+     * @param bytes
+     *            The number of bytes to release.
+     */
+    public synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+    }
+
+    /**
+     * Gets the maximum number of payload bytes in flight.
+     * @return the budget size.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes currently reserved.
+     * @return the reserved bytes.
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Hedges payload fetches to cut their tail latency.
+ *
+ * <p>
+ * When a fetch has not completed within the hedge delay, a second, identical fetch is
+ * started and whichever succeeds first provides the payload, the other one being cancelled.
+ * The delay is either fixed or tracks a percentile of the latency of recent fetches, so that
+ * only the slowest fetches are hedged. The number of hedged fetches is capped at a fraction
+ * of all fetches, with a small allowance for bursts, so that a slow bucket is not hit with
+ * twice the load.
+ * </p>
+ *
+ * <p>
+ * Only payloads whose size is known and at most the maximum hedged payload size are hedged,
+ * so that large payloads are never downloaded twice: a hedge holds a second copy of the
+ * payload in memory that the receive payload byte budget does not account for.
+ * </p>
+ *
+ * <p>
+ * The same instance may be shared by several clients, in which case the latency and the
+ * hedge allowance are tracked across all of them.
+ * </p>
+ */
+public final class PayloadFetchHedging {
+    private static final Log LOG = LogFactory.getLog(PayloadFetchHedging.class);
+
+    public static final double DEFAULT_MAX_HEDGE_RATIO = 0.05;
+    public static final long DEFAULT_MAX_HEDGED_PAYLOAD_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_FETCH_THREADS = 64;
+
+    private static final int LATENCY_WINDOW_SIZE = 1024;
+    private static final int DELAY_UPDATE_INTERVAL = 64;
+    private static final double MAX_HEDGE_BURST = 10;
+
+    // Size of the payload fetched by the calling thread, set by the clients around each fetch
+    private static final ThreadLocal<Long> PAYLOAD_SIZE = new ThreadLocal<>();
+
+    private final double percentile;
+    private final long minHedgeDelayNanos;
+    private final double maxHedgeRatio;
+    private final LongSupplier nanoTime;
+    private final ScheduledExecutorService scheduler;
+    private volatile ExecutorService fetchExecutor;
+    private volatile long maxHedgedPayloadSize = DEFAULT_MAX_HEDGED_PAYLOAD_SIZE;
+
+    private final long[] latencyWindow = new long[LATENCY_WINDOW_SIZE];
+    private int latencyCount;
+    private double hedgeTokens;
+    private volatile long hedgeDelayNanos;
+
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    PayloadFetchHedging(double percentile, Duration minHedgeDelay, double maxHedgeRatio, LongSupplier nanoTime,
+                        ScheduledExecutorService scheduler, ExecutorService fetchExecutor) {
+        if (minHedgeDelay == null || minHedgeDelay.isNegative() || minHedgeDelay.isZero()) {
+            String errorMessage = "The hedge delay must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        if (!(maxHedgeRatio > 0 && maxHedgeRatio <= 1)) {
+            String errorMessage = "The maximum hedge ratio must be greater than 0 and at most 1.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.percentile = percentile;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.nanoTime = nanoTime;
+        this.scheduler = scheduler;
+        this.fetchExecutor = fetchExecutor;
+        this.hedgeDelayNanos = minHedgeDelayNanos;
+    }
+
+    /**
+     * Hedges fetches that have not completed after a fixed delay.
+     *
+     * @param hedgeDelay
+     *            Time after which a second fetch is started.
+     * @param maxHedgeRatio
+     *            Highest fraction of fetches that may be hedged, greater than 0 and at most 1.
+     * @return the hedging policy.
+     */
+    public static PayloadFetchHedging fixedDelay(Duration hedgeDelay, double maxHedgeRatio) {
+        return new PayloadFetchHedging(Double.NaN, hedgeDelay, maxHedgeRatio, System::nanoTime,
+                Threads.SCHEDULER, Threads.FETCH_EXECUTOR);
+    }
+
+    /**
+     * Hedges fetches that have not completed after the given percentile of the latency of
+     * recent fetches, for example 0.95 to hedge the slowest 5%.
+     *
+     * @param percentile
+     *            Latency percentile, strictly between 0 and 1.
+     * @param minHedgeDelay
+     *            Lowest delay, also used until enough fetches have been measured.
+     * @param maxHedgeRatio
+     *            Highest fraction of fetches that may be hedged, greater than 0 and at most 1.
+     * @return the hedging policy.
+     */
+    public static PayloadFetchHedging percentileDelay(double percentile, Duration minHedgeDelay,
+                                                      double maxHedgeRatio) {
+        if (!(percentile > 0 && percentile < 1)) {
+            String errorMessage = "The hedge latency percentile must be between 0 and 1.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return new PayloadFetchHedging(percentile, minHedgeDelay, maxHedgeRatio, System::nanoTime,
+                Threads.SCHEDULER, Threads.FETCH_EXECUTOR);
+    }
+
+    /**
+     * Sets the largest payload that may be hedged. Payloads of unknown size are only hedged
+     * when there is no limit.
+     *
+     * @param maxHedgedPayloadSize
+     *            The size in bytes, or {@link Long#MAX_VALUE} for no limit.
+     *            Default: {@link #DEFAULT_MAX_HEDGED_PAYLOAD_SIZE}
+     * @return this hedging policy.
+     */
+    public PayloadFetchHedging withMaxHedgedPayloadSize(long maxHedgedPayloadSize) {
+        if (maxHedgedPayloadSize < 0) {
+            String errorMessage = "The maximum hedged payload size cannot be negative.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.maxHedgedPayloadSize = maxHedgedPayloadSize;
+        return this;
+    }
+
+    /**
+     * Sets the executor running the blocking fetches of the sync client that may be hedged.
+     * When the executor rejects a fetch, it runs on the calling thread without a hedge, and a
+     * hedge it rejects is not started. The default executor runs up to
+     * {@link #DEFAULT_MAX_FETCH_THREADS} fetches at once.
+     *
+     * @param fetchExecutor
+     *            The executor, which should be bounded.
+     * @return this hedging policy.
+     */
+    public PayloadFetchHedging withFetchExecutor(ExecutorService fetchExecutor) {
+        if (fetchExecutor == null) {
+            String errorMessage = "fetchExecutor cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.fetchExecutor = fetchExecutor;
+        return this;
+    }
+
+    /**
+     * Runs a blocking fetch, hedging it if it is slow. Fetches that may be hedged run on the
+     * fetch executor while the calling thread waits, the others on the calling thread.
+     *
+     * @param fetch
+     *            The fetch, which may be run twice concurrently. It should stop when its
+     *            thread is interrupted, which is how the losing fetch is cancelled.
+     * @return the result of the first fetch to succeed.
+     */
+    public <T> T fetch(Supplier<T> fetch) {
+        if (!mayHedge()) {
+            return fetch.get();
+        }
+        CompletableFuture<T> result = hedge(() -> startBlocking(fetch, false), () -> startBlocking(fetch, true));
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            // Cancelling the result interrupts the fetches still running
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            String errorMessage = "Interrupted while fetching a payload.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw SdkClientException.create("Failed to fetch a payload.", cause);
+        }
+    }
+
+    /**
+     * Starts an asynchronous fetch, hedging it if it is slow.
+     *
+     * @param fetch
+     *            Starts the fetch and returns its future. It may be called twice, and the
+     *            future of the losing fetch is cancelled.
+     * @return a future completed with the result of the first fetch to succeed, or with the
+     *         failure of the last fetch to fail.
+     */
+    public <T> CompletableFuture<T> fetchAsync(Supplier<CompletableFuture<T>> fetch) {
+        if (!mayHedge()) {
+            try {
+                return fetch.get();
+            } catch (RuntimeException e) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        return hedge(fetch, fetch);
+    }
+
+    /**
+     * Runs a fetch with the size of the payload it reads known to the hedging policy of the
+     * stores it goes through on the calling thread.
+     *
+     * @param payloadSize
+     *            The size of the payload in bytes, or a negative value if unknown.
+     * @param fetch
+     *            Starts the fetch.
+     * @return the result of the fetch.
+     */
+    static <T> T withPayloadSize(long payloadSize, Supplier<T> fetch) {
+        Long previousPayloadSize = PAYLOAD_SIZE.get();
+        PAYLOAD_SIZE.set(payloadSize);
+        try {
+            return fetch.get();
+        } finally {
+            if (previousPayloadSize == null) {
+                PAYLOAD_SIZE.remove();
+            } else {
+                PAYLOAD_SIZE.set(previousPayloadSize);
+            }
+        }
+    }
+
+    /**
+     * Gets the current hedge delay.
+     * @return the delay after which a fetch is hedged.
+     */
+    public Duration getHedgeDelay() {
+        return Duration.ofNanos(hedgeDelayNanos);
+    }
+
+    /**
+     * Gets the number of fetches started that could be hedged, not counting hedges.
+     * @return the fetches.
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * Gets the number of hedged fetches started.
+     * @return the hedges.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Gets the number of hedged fetches that succeeded before the fetch they hedged.
+     * @return the hedges that won.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    private boolean mayHedge() {
+        if (maxHedgedPayloadSize == Long.MAX_VALUE) {
+            return true;
+        }
+        Long payloadSize = PAYLOAD_SIZE.get();
+        return payloadSize != null && payloadSize >= 0 && payloadSize <= maxHedgedPayloadSize;
+    }
+
+    private <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> first,
+                                           Supplier<CompletableFuture<T>> second) {
+        fetchCount.incrementAndGet();
+        synchronized (this) {
+            hedgeTokens = Math.min(MAX_HEDGE_BURST, hedgeTokens + maxHedgeRatio);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Attempts<T> attempts = new Attempts<>();
+        startAttempt(first, result, attempts, false);
+
+        ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+            if (!result.isDone() && tryTakeHedgeToken()) {
+                startAttempt(second, result, attempts, true);
+            }
+        }, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        result.whenComplete((value, throwable) -> {
+            hedge.cancel(false);
+            // The losing attempt, if any, is no longer needed
+            attempts.futures.forEach(attempt -> attempt.cancel(true));
+        });
+        return result;
+    }
+
+    private <T> void startAttempt(Supplier<CompletableFuture<T>> fetch, CompletableFuture<T> result,
+                                  Attempts<T> attempts, boolean hedged) {
+        attempts.pending.incrementAndGet();
+        long startNanos = nanoTime.getAsLong();
+        CompletableFuture<T> attempt;
+        try {
+            attempt = fetch.get();
+        } catch (RuntimeException e) {
+            attempt = new CompletableFuture<>();
+            attempt.completeExceptionally(e);
+        }
+        if (attempt == null) {
+            // The hedge could not be started, the result depends on the first attempt alone
+            if (attempts.pending.decrementAndGet() == 0) {
+                result.completeExceptionally(attempts.lastFailure.get());
+            }
+            return;
+        }
+        if (hedged) {
+            hedgeCount.incrementAndGet();
+        }
+        attempts.futures.add(attempt);
+        if (result.isDone()) {
+            attempt.cancel(true);
+        }
+        attempt.whenComplete((value, throwable) -> {
+            if (throwable instanceof CancellationException && result.isDone()) {
+                return;
+            }
+            if (!hedged) {
+                // Only first attempts are measured, hedges would hide the latency being cut
+                recordLatency(nanoTime.getAsLong() - startNanos);
+            }
+            if (throwable == null) {
+                if (result.complete(value) && hedged) {
+                    hedgeWinCount.incrementAndGet();
+                }
+            } else {
+                attempts.lastFailure.set(throwable);
+                if (attempts.pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(throwable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts a blocking fetch on the fetch executor, so that it can be hedged and cancelled.
+     *
+     * @return the future of the fetch, or null if it is a hedge the executor rejected.
+     */
+    private <T> CompletableFuture<T> startBlocking(Supplier<T> fetch, boolean hedged) {
+        CompletableFuture<T> attempt = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                attempt.complete(fetch.get());
+            } catch (RuntimeException | Error e) {
+                attempt.completeExceptionally(e);
+            }
+        }, null);
+        // Cancelling the attempt interrupts its thread, which aborts the request
+        attempt.whenComplete((value, throwable) -> {
+            if (attempt.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        try {
+            fetchExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (hedged) {
+                return null;
+            }
+            task.run();
+        }
+        return attempt;
+    }
+
+    private synchronized boolean tryTakeHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens--;
+        return true;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        if (Double.isNaN(percentile)) {
+            return;
+        }
+        latencyWindow[latencyCount % LATENCY_WINDOW_SIZE] = latencyNanos;
+        latencyCount++;
+        if (latencyCount % DELAY_UPDATE_INTERVAL != 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencyWindow, Math.min(latencyCount, LATENCY_WINDOW_SIZE));
+        Arrays.sort(sorted);
+        long percentileNanos = sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+        hedgeDelayNanos = Math.max(minHedgeDelayNanos, percentileNanos);
+    }
+
+    /**
+     * Attempts made for one fetch.
+     */
+    private static final class Attempts<T> {
+        private final List<CompletableFuture<T>> futures = new CopyOnWriteArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+    }
+
+    private static final class Threads {
+        private static final ScheduledExecutorService SCHEDULER = newScheduler();
+        private static final ExecutorService FETCH_EXECUTOR = new ThreadPoolExecutor(0, DEFAULT_MAX_FETCH_THREADS,
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "sqs-extended-payload-fetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        private static ScheduledExecutorService newScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "sqs-extended-payload-hedge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Most fetches complete before their hedge is due
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+/**
+ * Java Flight Recorder event types for payload operations. This class must only be
+ * loaded through {@link PayloadOperationEvents}, once JFR is known to be available.
+ */
+final class PayloadJfrEvents {
+
+    private PayloadJfrEvents() {
+    }
+
+    static PayloadOperationEvents.Handle begin(PayloadOperationEvents.Operation operation) {
+        PayloadEvent event;
+        switch (operation) {
+            case STORE:
+                event = new PayloadStoreEvent();
+                break;
+            case FETCH:
+                event = new PayloadFetchEvent();
+                break;
+            case DELETE:
+                event = new PayloadDeleteEvent();
+                break;
+            default:
+                event = new ReceiptHandleRewriteEvent();
+                break;
+        }
+        if (!event.isEnabled()) {
+            return PayloadOperationEvents.DISABLED;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Category({"Amazon SQS", "Extended Client"})
+    abstract static class PayloadEvent extends Event implements PayloadOperationEvents.Handle {
+
+        @Label("Queue URL")
+        String queueUrl;
+
+        @Label("S3 Bucket")
+        String s3BucketName;
+
+        @Label("Payload Size")
+        @Description("Size of the payload, or -1 if unknown")
+        @DataAmount
+        long payloadBytes;
+
+        @Label("Succeeded")
+        boolean succeeded;
+
+        @Override
+        public void complete(String queueUrl, String s3BucketName, long payloadBytes, boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.queueUrl = queueUrl;
+                this.s3BucketName = s3BucketName;
+                this.payloadBytes = payloadBytes;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+
+        @Override
+        public void completeForPointer(String queueUrl, String payloadPointer, long payloadBytes,
+                                       boolean succeeded) {
+            end();
+            if (shouldCommit()) {
+                this.queueUrl = queueUrl;
+                this.s3BucketName = getS3BucketName(payloadPointer);
+                this.payloadBytes = payloadBytes;
+                this.succeeded = succeeded;
+                commit();
+            }
+        }
+
+        private static String getS3BucketName(String payloadPointer) {
+            try {
+                return PayloadS3Pointer.fromJson(payloadPointer).getS3BucketName();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    @Name("com.amazon.sqs.javamessaging.PayloadStore")
+    @Label("Payload Store")
+    @Description("Message payload stored in Amazon S3")
+    static final class PayloadStoreEvent extends PayloadEvent {
+    }
+
+    @Name("com.amazon.sqs.javamessaging.PayloadFetch")
+    @Label("Payload Fetch")
+    @Description("Message payload read from Amazon S3")
+    static final class PayloadFetchEvent extends PayloadEvent {
+    }
+
+    @Name("com.amazon.sqs.javamessaging.PayloadDelete")
+    @Label("Payload Delete")
+    @Description("Message payload deleted from Amazon S3")
+    static final class PayloadDeleteEvent extends PayloadEvent {
+    }
+
+    @Name("com.amazon.sqs.javamessaging.ReceiptHandleRewrite")
+    @Label("Receipt Handle Rewrite")
+    @Description("S3 pointer embedded in the receipt handle of a received message")
+    static final class ReceiptHandleRewriteEvent extends PayloadEvent {
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Emits Java Flight Recorder events for the payload operations made by the extended
+ * clients, when the running JVM supports JFR.
+ *
+ * <p>
+ * The library still targets Java 8, so the JFR event classes are only loaded once
+ * <code>jdk.jfr.Event</code> has been found on the running JVM. On JVMs without JFR,
+ * or when the events are not enabled in any recording, {@link #begin(Operation)}
+ * returns a handle that does nothing.
+ * </p>
+ */
+final class PayloadOperationEvents {
+    private static final Log LOG = LogFactory.getLog(PayloadOperationEvents.class);
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    /**
+     * The payload operations for which events are emitted.
+     */
+    enum Operation {
+        STORE,
+        FETCH,
+        DELETE,
+        RECEIPT_HANDLE_REWRITE
+    }
+
+    /**
+     * An operation in progress, started by {@link #begin(Operation)}.
+     */
+    interface Handle {
+
+        /**
+         * Ends the operation and commits its event.
+         *
+         * @param queueUrl
+         *            The URL of the queue the operation was made for.
+         * @param s3BucketName
+         *            The bucket holding the payload.
+         * @param payloadBytes
+         *            The size of the payload, or a negative value if unknown.
+         * @param succeeded
+         *            Whether the operation succeeded.
+         */
+        void complete(String queueUrl, String s3BucketName, long payloadBytes, boolean succeeded);
+
+        /**
+         * Ends the operation and commits its event, reading the bucket from the
+         * payload pointer only if the event is actually recorded.
+         *
+         * @param queueUrl
+         *            The URL of the queue the operation was made for.
+         * @param payloadPointer
+         *            The JSON pointer to the payload.
+         * @param payloadBytes
+         *            The size of the payload, or a negative value if unknown.
+         * @param succeeded
+         *            Whether the operation succeeded.
+         */
+        void completeForPointer(String queueUrl, String payloadPointer, long payloadBytes, boolean succeeded);
+    }
+
+    static final Handle DISABLED = new Handle() {
+        @Override
+        public void complete(String queueUrl, String s3BucketName, long payloadBytes, boolean succeeded) {
+        }
+
+        @Override
+        public void completeForPointer(String queueUrl, String payloadPointer, long payloadBytes,
+                                       boolean succeeded) {
+        }
+    };
+
+    private PayloadOperationEvents() {
+    }
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param operation
+     *            The operation.
+     * @return the handle used to complete the operation, never null.
+     */
+    static Handle begin(Operation operation) {
+        if (!JFR_AVAILABLE) {
+            return DISABLED;
+        }
+        return PayloadJfrEvents.begin(operation);
+    }
+
+    static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("Java Flight Recorder is not available, payload operation events are disabled.");
+            return false;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the progress of a payload sweep, which deletes payloads stored in Amazon S3
+ * for a purged queue or that are no longer referenced by any message.
+ *
+ * @see AmazonSQSExtendedClient#purgeQueueWithPayloads
+ * @see AmazonSQSExtendedAsyncClient#purgeQueueWithPayloads
+ * @see OrphanedPayloadReconciler
+ */
+public final class PayloadSweepProgress {
+    private final long pagesListed;
+    private final long objectsListed;
+    private final long objectsDeleted;
+    private final long objectsFailed;
+    private final long elapsedNanos;
+    private final boolean complete;
+
+    PayloadSweepProgress(long pagesListed, long objectsListed, long objectsDeleted, long objectsFailed,
+                         long elapsedNanos, boolean complete) {
+        this.pagesListed = pagesListed;
+        this.objectsListed = objectsListed;
+        this.objectsDeleted = objectsDeleted;
+        this.objectsFailed = objectsFailed;
+        this.elapsedNanos = elapsedNanos;
+        this.complete = complete;
+    }
+
+    /**
+     * Gets the number of <code>ListObjectsV2</code> pages read so far.
+     * @return the pages listed.
+     */
+    public long getPagesListed() {
+        return pagesListed;
+    }
+
+    /**
+     * Gets the number of payload objects found so far that are old enough to be deleted.
+     * @return the objects listed.
+     */
+    public long getObjectsListed() {
+        return objectsListed;
+    }
+
+    /**
+     * Gets the number of payload objects deleted so far.
+     * @return the objects deleted.
+     */
+    public long getObjectsDeleted() {
+        return objectsDeleted;
+    }
+
+    /**
+     * Gets the number of payload objects that could not be deleted so far.
+     * @return the objects that failed to be deleted.
+     */
+    public long getObjectsFailed() {
+        return objectsFailed;
+    }
+
+    /**
+     * Gets the time elapsed since the sweep started.
+     * @return the elapsed time.
+     */
+    public Duration getElapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    /**
+     * Gets the average number of payload objects listed per second since the sweep started.
+     * @return the listing throughput.
+     */
+    public double getObjectsListedPerSecond() {
+        return perSecond(objectsListed);
+    }
+
+    /**
+     * Gets the average number of payload objects deleted per second since the sweep started.
+     * @return the deletion throughput.
+     */
+    public double getObjectsDeletedPerSecond() {
+        return perSecond(objectsDeleted);
+    }
+
+    /**
+     * Checks whether the sweep has finished.
+     * @return true if no listing or deletion is left.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        return "PayloadSweepProgress(pagesListed=" + pagesListed + ", objectsListed=" + objectsListed
+               + ", objectsDeleted=" + objectsDeleted + ", objectsFailed=" + objectsFailed
+               + ", elapsed=" + getElapsed() + ", objectsDeletedPerSecond="
+               + String.format("%.1f", getObjectsDeletedPerSecond()) + ", complete=" + complete + ")";
+    }
+
+    private double perSecond(long count) {
+        return elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0;
+    }
+}
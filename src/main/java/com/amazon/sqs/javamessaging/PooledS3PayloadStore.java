@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStore;
+import software.amazon.payloadoffloading.ServerSideEncryptionStrategy;
+
+/**
+ * Amazon S3 payload store staging payload bytes in buffers of a {@link PayloadBufferPool}
+ * instead of allocating a byte array the size of every payload. Payloads and pointers are
+ * the same as those of the default Amazon S3 store.
+ *
+ * <p>
+ * The buffer holding an uploaded payload is released as soon as the upload completes, and
+ * the buffer holding a downloaded payload as soon as it is decoded.
+ * </p>
+ */
+class PooledS3PayloadStore implements PayloadStore {
+    private static final Log LOG = LogFactory.getLog(PooledS3PayloadStore.class);
+
+    private final S3Client s3Client;
+    private final String s3BucketName;
+    private final ServerSideEncryptionStrategy serverSideEncryptionStrategy;
+    private final ObjectCannedACL objectCannedACL;
+    private final PayloadBufferPool bufferPool;
+
+    PooledS3PayloadStore(S3Client s3Client, String s3BucketName,
+                         ServerSideEncryptionStrategy serverSideEncryptionStrategy,
+                         ObjectCannedACL objectCannedACL, PayloadBufferPool bufferPool) {
+        this.s3Client = s3Client;
+        this.s3BucketName = s3BucketName;
+        this.serverSideEncryptionStrategy = serverSideEncryptionStrategy;
+        this.objectCannedACL = objectCannedACL;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload) {
+        return storeOriginalPayload(payload, S3KeyGenerators.secureRandom().generateS3KeyName());
+    }
+
+    @Override
+    public String storeOriginalPayload(String payload, String s3Key) {
+        PutObjectRequest.Builder putObjectRequestBuilder = PutObjectRequest.builder()
+            .bucket(s3BucketName)
+            .key(s3Key);
+        if (objectCannedACL != null) {
+            putObjectRequestBuilder.acl(objectCannedACL);
+        }
+        if (serverSideEncryptionStrategy != null) {
+            serverSideEncryptionStrategy.decorate(putObjectRequestBuilder);
+        }
+
+        ByteBuffer buffer = PayloadBuffers.encode(bufferPool, payload);
+        try {
+            // The content provider is called again for every retry, each time with a fresh view of the buffer
+            s3Client.putObject(putObjectRequestBuilder.build(), RequestBody.fromContentProvider(
+                () -> PayloadBuffers.newInputStream(buffer), buffer.remaining(), PayloadBuffers.PAYLOAD_CONTENT_TYPE));
+        } catch (SdkException e) {
+            String errorMessage = "Failed to store the message content in an S3 object.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } finally {
+            bufferPool.release(buffer);
+        }
+
+        LOG.info("S3 object created, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+        return new PayloadS3Pointer(s3BucketName, s3Key).toJson();
+    }
+
+    @Override
+    public String getOriginalPayload(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+            .bucket(s3Pointer.getS3BucketName())
+            .key(s3Pointer.getS3Key())
+            .build();
+
+        ByteBuffer buffer = null;
+        try (ResponseInputStream<GetObjectResponse> object = s3Client.getObject(getObjectRequest)) {
+            buffer = PayloadBuffers.readFully(bufferPool, object, object.response().contentLength());
+            String payload = PayloadBuffers.decode(buffer);
+            LOG.info("S3 object read, Bucket name: " + s3Pointer.getS3BucketName() + ", Object key: "
+                     + s3Pointer.getS3Key() + ".");
+            return payload;
+        } catch (SdkException e) {
+            String errorMessage = "Failed to get the S3 object which contains the payload.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } catch (IOException e) {
+            String errorMessage = "Failure when handling the message which was read from S3 object.";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        } finally {
+            if (buffer != null) {
+                bufferPool.release(buffer);
+            }
+        }
+    }
+
+    @Override
+    public void deleteOriginalPayload(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(s3Pointer.getS3BucketName())
+                .key(s3Pointer.getS3Key())
+                .build());
+        } catch (SdkException e) {
+            String errorMessage = "Failed to delete the S3 object which contains the payload";
+            LOG.error(errorMessage, e);
+            throw SdkClientException.create(errorMessage, e);
+        }
+        LOG.info("S3 object deleted, Bucket name: " + s3Pointer.getS3BucketName() + ", Object key: "
+                 + s3Pointer.getS3Key() + ".");
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStoreAsync;
+import software.amazon.payloadoffloading.ServerSideEncryptionStrategy;
+
+/**
+ * Asynchronous Amazon S3 payload store staging payload bytes in buffers of a
+ * {@link PayloadBufferPool} instead of allocating a byte array the size of every payload.
+ * Payloads and pointers are the same as those of the default Amazon S3 store.
+ *
+ * <p>
+ * The buffer holding an uploaded payload is released as soon as the upload completes, and
+ * the buffer holding a downloaded payload as soon as it is decoded.
+ * </p>
+ */
+class PooledS3PayloadStoreAsync implements PayloadStoreAsync {
+    private static final Log LOG = LogFactory.getLog(PooledS3PayloadStoreAsync.class);
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String s3BucketName;
+    private final ServerSideEncryptionStrategy serverSideEncryptionStrategy;
+    private final ObjectCannedACL objectCannedACL;
+    private final PayloadBufferPool bufferPool;
+
+    PooledS3PayloadStoreAsync(S3AsyncClient s3AsyncClient, String s3BucketName,
+                              ServerSideEncryptionStrategy serverSideEncryptionStrategy,
+                              ObjectCannedACL objectCannedACL, PayloadBufferPool bufferPool) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3BucketName = s3BucketName;
+        this.serverSideEncryptionStrategy = serverSideEncryptionStrategy;
+        this.objectCannedACL = objectCannedACL;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload) {
+        return storeOriginalPayload(payload, S3KeyGenerators.secureRandom().generateS3KeyName());
+    }
+
+    @Override
+    public CompletableFuture<String> storeOriginalPayload(String payload, String s3Key) {
+        PutObjectRequest.Builder putObjectRequestBuilder = PutObjectRequest.builder()
+            .bucket(s3BucketName)
+            .key(s3Key);
+        if (objectCannedACL != null) {
+            putObjectRequestBuilder.acl(objectCannedACL);
+        }
+        if (serverSideEncryptionStrategy != null) {
+            serverSideEncryptionStrategy.decorate(putObjectRequestBuilder);
+        }
+
+        ByteBuffer buffer = PayloadBuffers.encode(bufferPool, payload);
+        CompletableFuture<?> putFuture;
+        try {
+            putFuture = s3AsyncClient.putObject(putObjectRequestBuilder.build(), new PooledBufferRequestBody(buffer));
+        } catch (RuntimeException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+        return putFuture.handle((response, throwable) -> {
+            bufferPool.release(buffer);
+            if (throwable != null) {
+                String errorMessage = "Failed to store the message content in an S3 object.";
+                LOG.error(errorMessage, throwable);
+                throw new CompletionException(SdkClientException.create(errorMessage, unwrap(throwable)));
+            }
+            LOG.info("S3 object created, Bucket name: " + s3BucketName + ", Object key: " + s3Key + ".");
+            return new PayloadS3Pointer(s3BucketName, s3Key).toJson();
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getOriginalPayload(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+            .bucket(s3Pointer.getS3BucketName())
+            .key(s3Pointer.getS3Key())
+            .build();
+
+        CompletableFuture<String> download = s3AsyncClient.getObject(getObjectRequest,
+            new PooledBufferResponseTransformer(bufferPool));
+        CompletableFuture<String> result = download
+            .handle((payload, throwable) -> {
+                if (throwable != null) {
+                    String errorMessage = "Failed to get the S3 object which contains the payload.";
+                    LOG.error(errorMessage, throwable);
+                    throw new CompletionException(SdkClientException.create(errorMessage, unwrap(throwable)));
+                }
+                LOG.info("S3 object read, Bucket name: " + s3Pointer.getS3BucketName() + ", Object key: "
+                         + s3Pointer.getS3Key() + ".");
+                return payload;
+            });
+        // Cancelling the fetch, for example when a hedged fetch loses, aborts the download
+        result.whenComplete((payload, throwable) -> {
+            if (result.isCancelled()) {
+                download.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteOriginalPayload(String payloadPointer) {
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(payloadPointer);
+        DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
+            .bucket(s3Pointer.getS3BucketName())
+            .key(s3Pointer.getS3Key())
+            .build();
+
+        return s3AsyncClient.deleteObject(deleteObjectRequest)
+            .handle((response, throwable) -> {
+                if (throwable != null) {
+                    String errorMessage = "Failed to delete the S3 object which contains the payload";
+                    LOG.error(errorMessage, throwable);
+                    throw new CompletionException(SdkClientException.create(errorMessage, unwrap(throwable)));
+                }
+                LOG.info("S3 object deleted, Bucket name: " + s3Pointer.getS3BucketName() + ", Object key: "
+                         + s3Pointer.getS3Key() + ".");
+                return null;
+            });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+    }
+
+    /**
+     * Request body publishing a read-only view of a pooled buffer, once per subscription so
+     * that retries resend the whole payload.
+     */
+    private static final class PooledBufferRequestBody implements AsyncRequestBody {
+        private final ByteBuffer buffer;
+
+        private PooledBufferRequestBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Optional<Long> contentLength() {
+            return Optional.of((long) buffer.remaining());
+        }
+
+        @Override
+        public String contentType() {
+            return PayloadBuffers.PAYLOAD_CONTENT_TYPE;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            AtomicBoolean done = new AtomicBoolean();
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        if (done.compareAndSet(false, true)) {
+                            subscriber.onError(new IllegalArgumentException("Requested " + n + " items."));
+                        }
+                    } else if (done.compareAndSet(false, true)) {
+                        subscriber.onNext(view);
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Response transformer accumulating the object into a pooled buffer and decoding it
+     * once complete.
+     */
+    private static final class PooledBufferResponseTransformer
+        implements AsyncResponseTransformer<GetObjectResponse, String> {
+        private final PayloadBufferPool bufferPool;
+        private volatile CompletableFuture<String> future;
+        private volatile Long contentLength;
+
+        private PooledBufferResponseTransformer(PayloadBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+        }
+
+        @Override
+        public CompletableFuture<String> prepare() {
+            future = new CompletableFuture<>();
+            return future;
+        }
+
+        @Override
+        public void onResponse(GetObjectResponse response) {
+            contentLength = response.contentLength();
+        }
+
+        @Override
+        public void onStream(SdkPublisher<ByteBuffer> publisher) {
+            CompletableFuture<String> result = future;
+            publisher.subscribe(new Subscriber<ByteBuffer>() {
+                private Subscription subscription;
+                private ByteBuffer buffer;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.subscription = subscription;
+                    this.buffer = bufferPool.acquire(PayloadBuffers.getInitialSize(contentLength));
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(ByteBuffer byteBuffer) {
+                    try {
+                        buffer = PayloadBuffers.append(bufferPool, buffer, byteBuffer);
+                    } catch (RuntimeException e) {
+                        subscription.cancel();
+                        onError(e);
+                        return;
+                    }
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    releaseBuffer();
+                    result.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    if (buffer == null) {
+                        return;
+                    }
+                    try {
+                        ((Buffer) buffer).flip();
+                        result.complete(PayloadBuffers.decode(buffer));
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    } finally {
+                        releaseBuffer();
+                    }
+                }
+
+                private void releaseBuffer() {
+                    if (buffer != null) {
+                        bufferPool.release(buffer);
+                        buffer = null;
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable error) {
+            CompletableFuture<String> result = future;
+            if (result != null) {
+                result.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+/**
+ * Caches the <code>MaximumMessageSize</code> attribute of each queue, so that messages
+ * are offloaded only when they exceed the limit of the queue they are sent to.
+ *
+ * <p>
+ * Each limit is read with <code>GetQueueAttributes</code> and kept for the cache TTL.
+ * Concurrent lookups for the same queue share one request. When the attribute cannot be
+ * read, the configured payload size threshold is used for the same TTL instead.
+ * </p>
+ */
+class QueueMessageSizeLimits {
+    private static final Log LOG = LogFactory.getLog(QueueMessageSizeLimits.class);
+
+    private final long cacheTtlNanos;
+    private final int fallbackLimit;
+    private final Function<GetQueueAttributesRequest, CompletableFuture<GetQueueAttributesResponse>> getQueueAttributes;
+    private final LongSupplier nanoTime;
+    private final Map<String, CachedLimit> limitsByQueueUrl = new ConcurrentHashMap<>();
+
+    QueueMessageSizeLimits(Duration cacheTtl, int fallbackLimit,
+                           Function<GetQueueAttributesRequest, CompletableFuture<GetQueueAttributesResponse>> getQueueAttributes) {
+        this(cacheTtl, fallbackLimit, getQueueAttributes, System::nanoTime);
+    }
+
+    QueueMessageSizeLimits(Duration cacheTtl, int fallbackLimit,
+                           Function<GetQueueAttributesRequest, CompletableFuture<GetQueueAttributesResponse>> getQueueAttributes,
+                           LongSupplier nanoTime) {
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.fallbackLimit = fallbackLimit;
+        this.getQueueAttributes = getQueueAttributes;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Gets the maximum message size of the queue, in bytes.
+     *
+     * @param queueUrl
+     *            The URL of the queue.
+     * @return a future completed with the limit, never completed exceptionally.
+     */
+    CompletableFuture<Integer> get(String queueUrl) {
+        long nowNanos = nanoTime.getAsLong();
+        CachedLimit cached = limitsByQueueUrl.get(queueUrl);
+        if (cached != null && !cached.isExpired(nowNanos)) {
+            return cached.limit;
+        }
+
+        CachedLimit loading = new CachedLimit(nowNanos + cacheTtlNanos);
+        CachedLimit current = limitsByQueueUrl.compute(queueUrl,
+            (key, existing) -> existing != null && !existing.isExpired(nowNanos) ? existing : loading);
+        if (current == loading) {
+            load(queueUrl, loading.limit);
+        }
+        return current.limit;
+    }
+
+    private void load(String queueUrl, CompletableFuture<Integer> limit) {
+        GetQueueAttributesRequest request = GetQueueAttributesRequest.builder()
+            .queueUrl(queueUrl)
+            .attributeNames(QueueAttributeName.MAXIMUM_MESSAGE_SIZE)
+            .build();
+        CompletableFuture<GetQueueAttributesResponse> response;
+        try {
+            response = getQueueAttributes.apply(request);
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        response.whenComplete((attributes, throwable) -> {
+            String maximumMessageSize = throwable == null
+                ? attributes.attributes().get(QueueAttributeName.MAXIMUM_MESSAGE_SIZE)
+                : null;
+            try {
+                limit.complete(Integer.parseInt(maximumMessageSize));
+            } catch (NumberFormatException e) {
+                // Fall back to the threshold the client would use without discovery
+                LOG.warn("Failed to read the maximum message size of queue " + queueUrl + ", using "
+                         + fallbackLimit + " bytes.", throwable);
+                limit.complete(fallbackLimit);
+            }
+        });
+    }
+
+    private static final class CachedLimit {
+        private final CompletableFuture<Integer> limit = new CompletableFuture<>();
+        private final long expiresAtNanos;
+
+        private CachedLimit(long expiresAtNanos) {
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            // A limit still loading is shared, however long the request takes
+            return limit.isDone() && nowNanos - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+
+/**
+ * Caches the results of <code>GetQueueUrl</code> and of <code>GetQueueAttributes</code>
+ * requests for attributes that rarely change, so that resolving a queue before each send
+ * does not cost a round trip to SQS.
+ *
+ * <p>
+ * Results are kept for the cache TTL and keyed by request, ignoring its override
+ * configuration. Concurrent misses for the same request share one call, and failed calls
+ * are not cached. The entries of a queue are dropped when it is deleted, when its
+ * attributes are set and when SQS reports that it does not exist.
+ * </p>
+ */
+class QueueMetadataCache {
+    static final Set<QueueAttributeName> DEFAULT_CACHED_ATTRIBUTE_NAMES = Collections.unmodifiableSet(new HashSet<>(
+        Arrays.asList(QueueAttributeName.QUEUE_ARN, QueueAttributeName.MAXIMUM_MESSAGE_SIZE,
+            QueueAttributeName.MESSAGE_RETENTION_PERIOD, QueueAttributeName.DELAY_SECONDS,
+            QueueAttributeName.VISIBILITY_TIMEOUT, QueueAttributeName.RECEIVE_MESSAGE_WAIT_TIME_SECONDS,
+            QueueAttributeName.REDRIVE_POLICY, QueueAttributeName.FIFO_QUEUE,
+            QueueAttributeName.CONTENT_BASED_DEDUPLICATION, QueueAttributeName.KMS_MASTER_KEY_ID,
+            QueueAttributeName.KMS_DATA_KEY_REUSE_PERIOD_SECONDS, QueueAttributeName.SQS_MANAGED_SSE_ENABLED)));
+
+    private final long cacheTtlNanos;
+    private final Set<String> cachedAttributeNames = new HashSet<>();
+    private final LongSupplier nanoTime;
+    private final Map<GetQueueUrlRequest, CachedResult<GetQueueUrlResponse>> queueUrls = new ConcurrentHashMap<>();
+    private final Map<GetQueueAttributesRequest, CachedResult<GetQueueAttributesResponse>> queueAttributes =
+        new ConcurrentHashMap<>();
+
+    QueueMetadataCache(Duration cacheTtl, Collection<QueueAttributeName> cachedAttributeNames) {
+        this(cacheTtl, cachedAttributeNames, System::nanoTime);
+    }
+
+    QueueMetadataCache(Duration cacheTtl, Collection<QueueAttributeName> cachedAttributeNames, LongSupplier nanoTime) {
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        for (QueueAttributeName attributeName : cachedAttributeNames) {
+            this.cachedAttributeNames.add(attributeName.toString());
+        }
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Gets the URL of a queue, calling SQS only when it is not cached.
+     *
+     * @param request
+     *            The GetQueueUrl request.
+     * @param getQueueUrl
+     *            Calls SQS.
+     * @return a future completed with the response.
+     */
+    CompletableFuture<GetQueueUrlResponse> getQueueUrl(
+        GetQueueUrlRequest request, Function<GetQueueUrlRequest, CompletableFuture<GetQueueUrlResponse>> getQueueUrl) {
+        GetQueueUrlRequest key = request.toBuilder().overrideConfiguration((AwsRequestOverrideConfiguration) null).build();
+        return get(queueUrls, key, request, getQueueUrl);
+    }
+
+    /**
+     * Gets attributes of a queue, calling SQS only when they are not cached. Requests for
+     * any attribute that is not cached, including <code>All</code>, always call SQS.
+     *
+     * @param request
+     *            The GetQueueAttributes request.
+     * @param getQueueAttributes
+     *            Calls SQS.
+     * @return a future completed with the response.
+     */
+    CompletableFuture<GetQueueAttributesResponse> getQueueAttributes(
+        GetQueueAttributesRequest request,
+        Function<GetQueueAttributesRequest, CompletableFuture<GetQueueAttributesResponse>> getQueueAttributes) {
+        if (request.attributeNamesAsStrings().isEmpty()
+            || !cachedAttributeNames.containsAll(request.attributeNamesAsStrings())) {
+            return getQueueAttributes.apply(request);
+        }
+        GetQueueAttributesRequest key =
+            request.toBuilder().overrideConfiguration((AwsRequestOverrideConfiguration) null).build();
+        return get(queueAttributes, key, request, getQueueAttributes);
+    }
+
+    /**
+     * Drops the cached attributes of a queue, and its cached URL.
+     *
+     * @param queueUrl
+     *            The URL of the queue.
+     */
+    void invalidate(String queueUrl) {
+        queueAttributes.keySet().removeIf(key -> queueUrl.equals(key.queueUrl()));
+        // The URL a loading entry resolves to is unknown, so it is dropped as well
+        queueUrls.values().removeIf(cached -> !cached.result.isDone()
+            || (!cached.result.isCompletedExceptionally() && queueUrl.equals(cached.result.join().queueUrl())));
+    }
+
+    /**
+     * Drops the cached attributes of a queue, and its cached URL, if the throwable reports
+     * that the queue does not exist.
+     *
+     * @param queueUrl
+     *            The URL of the queue.
+     * @param throwable
+     *            The failure of a call made on the queue, or null.
+     */
+    void invalidateIfQueueDoesNotExist(String queueUrl, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+        if (cause instanceof QueueDoesNotExistException && queueUrl != null) {
+            invalidate(queueUrl);
+        }
+    }
+
+    private <K, V> CompletableFuture<V> get(Map<K, CachedResult<V>> cache, K key, K request,
+                                            Function<K, CompletableFuture<V>> call) {
+        long nowNanos = nanoTime.getAsLong();
+        CachedResult<V> cached = cache.get(key);
+        if (cached != null && !cached.isExpired(nowNanos)) {
+            return copy(cached.result);
+        }
+
+        CachedResult<V> loading = new CachedResult<>(nowNanos + cacheTtlNanos);
+        CachedResult<V> current = cache.compute(key,
+            (k, existing) -> existing != null && !existing.isExpired(nowNanos) ? existing : loading);
+        if (current == loading) {
+            CompletableFuture<V> response;
+            try {
+                response = call.apply(request);
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            response.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    // Failures are shared with the waiting callers, but never cached
+                    cache.remove(key, loading);
+                    loading.result.completeExceptionally(throwable);
+                } else {
+                    loading.result.complete(value);
+                }
+            });
+        }
+        return copy(current.result);
+    }
+
+    private static <V> CompletableFuture<V> copy(CompletableFuture<V> result) {
+        // Callers must not be able to complete or cancel the shared result
+        return result.thenApply(Function.identity());
+    }
+
+    private static final class CachedResult<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final long expiresAtNanos;
+
+        private CachedResult(long expiresAtNanos) {
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long nowNanos) {
+            // A result still loading is shared, however long the call takes
+            return result.isDone() && nowNanos - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.utils.StringUtils;
+
+/**
+ * Built-in {@link S3BucketRoutingPolicy} implementations.
+ */
+public final class S3BucketRoutingPolicies {
+    private static final Log LOG = LogFactory.getLog(S3BucketRoutingPolicies.class);
+
+    private S3BucketRoutingPolicies() {
+    }
+
+    /**
+     * Stores payloads in each of the given buckets in turn.
+     *
+     * @param s3BucketNames
+     *            Names of the buckets, which must be already created and configured in s3.
+     * @return the routing policy.
+     */
+    public static S3BucketRoutingPolicy roundRobin(String... s3BucketNames) {
+        if (s3BucketNames == null || s3BucketNames.length == 0) {
+            throw error("At least one S3 bucket name is required.");
+        }
+        for (String s3BucketName : s3BucketNames) {
+            validateBucketName(s3BucketName);
+        }
+        return new RoundRobinPolicy(s3BucketNames.clone());
+    }
+
+    /**
+     * Stores payloads in the given buckets at random, in proportion to the weight of
+     * each bucket.
+     *
+     * @param weightsByS3BucketName
+     *            Positive weight of each bucket, keyed by bucket name.
+     * @return the routing policy.
+     */
+    public static S3BucketRoutingPolicy weighted(Map<String, Integer> weightsByS3BucketName) {
+        if (weightsByS3BucketName == null || weightsByS3BucketName.isEmpty()) {
+            throw error("At least one S3 bucket weight is required.");
+        }
+
+        String[] s3BucketNames = new String[weightsByS3BucketName.size()];
+        long[] cumulativeWeights = new long[weightsByS3BucketName.size()];
+        long totalWeight = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : weightsByS3BucketName.entrySet()) {
+            validateBucketName(entry.getKey());
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw error("The weight of S3 bucket " + entry.getKey() + " must be positive.");
+            }
+            totalWeight += entry.getValue();
+            s3BucketNames[i] = entry.getKey();
+            cumulativeWeights[i] = totalWeight;
+            i++;
+        }
+        return new WeightedPolicy(s3BucketNames, cumulativeWeights);
+    }
+
+    /**
+     * Stores payloads in a bucket chosen by payload size. A payload is stored in the
+     * bucket with the largest minimum size that does not exceed the payload size, or in
+     * the default bucket when the payload is smaller than all minimum sizes.
+     *
+     * @param defaultS3BucketName
+     *            Name of the bucket for payloads smaller than all minimum sizes.
+     * @param s3BucketNamesByMinimumSize
+     *            Bucket names keyed by the minimum payload size in bytes they store.
+     * @return the routing policy.
+     */
+    public static S3BucketRoutingPolicy bySizeClass(String defaultS3BucketName,
+                                                    Map<Long, String> s3BucketNamesByMinimumSize) {
+        validateBucketName(defaultS3BucketName);
+        if (s3BucketNamesByMinimumSize == null) {
+            throw error("s3BucketNamesByMinimumSize cannot be null.");
+        }
+
+        NavigableMap<Long, String> sizeClasses = new TreeMap<>();
+        sizeClasses.put(Long.MIN_VALUE, defaultS3BucketName);
+        for (Map.Entry<Long, String> entry : s3BucketNamesByMinimumSize.entrySet()) {
+            if (entry.getKey() == null || entry.getKey() < 0) {
+                throw error("The minimum payload size of S3 bucket " + entry.getValue() + " must not be negative.");
+            }
+            validateBucketName(entry.getValue());
+            sizeClasses.put(entry.getKey(), entry.getValue());
+        }
+        return new SizeClassPolicy(sizeClasses);
+    }
+
+    private static void validateBucketName(String s3BucketName) {
+        if (StringUtils.isBlank(s3BucketName)) {
+            throw error("S3 bucket names cannot be null or empty.");
+        }
+    }
+
+    private static SdkClientException error(String errorMessage) {
+        LOG.error(errorMessage);
+        return SdkClientException.create(errorMessage);
+    }
+
+    private static Set<String> toSet(String... s3BucketNames) {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(s3BucketNames)));
+    }
+
+    private static final class RoundRobinPolicy implements S3BucketRoutingPolicy {
+        private final String[] s3BucketNames;
+        private final Set<String> s3BucketNameSet;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private RoundRobinPolicy(String[] s3BucketNames) {
+            this.s3BucketNames = s3BucketNames;
+            this.s3BucketNameSet = toSet(s3BucketNames);
+        }
+
+        @Override
+        public Set<String> getBucketNames() {
+            return s3BucketNameSet;
+        }
+
+        @Override
+        public String selectBucket(long payloadSize) {
+            return s3BucketNames[Math.floorMod(next.getAndIncrement(), s3BucketNames.length)];
+        }
+    }
+
+    private static final class WeightedPolicy implements S3BucketRoutingPolicy {
+        private final String[] s3BucketNames;
+        private final long[] cumulativeWeights;
+        private final Set<String> s3BucketNameSet;
+
+        private WeightedPolicy(String[] s3BucketNames, long[] cumulativeWeights) {
+            this.s3BucketNames = s3BucketNames;
+            this.cumulativeWeights = cumulativeWeights;
+            this.s3BucketNameSet = toSet(s3BucketNames);
+        }
+
+        @Override
+        public Set<String> getBucketNames() {
+            return s3BucketNameSet;
+        }
+
+        @Override
+        public String selectBucket(long payloadSize) {
+            long totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+            long point = ThreadLocalRandom.current().nextLong(totalWeight);
+            int index = Arrays.binarySearch(cumulativeWeights, point + 1);
+            return s3BucketNames[index >= 0 ? index : -index - 1];
+        }
+    }
+
+    private static final class SizeClassPolicy implements S3BucketRoutingPolicy {
+        private final NavigableMap<Long, String> sizeClasses;
+        private final Set<String> s3BucketNameSet;
+
+        private SizeClassPolicy(NavigableMap<Long, String> sizeClasses) {
+            this.sizeClasses = sizeClasses;
+            this.s3BucketNameSet = Collections.unmodifiableSet(new LinkedHashSet<>(sizeClasses.values()));
+        }
+
+        @Override
+        public Set<String> getBucketNames() {
+            return s3BucketNameSet;
+        }
+
+        @Override
+        public String selectBucket(long payloadSize) {
+            return sizeClasses.floorEntry(payloadSize).getValue();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.Set;
+
+/**
+ * Selects the S3 bucket in which each offloaded payload is stored.
+ *
+ * <p>
+ * Only uploads are routed. The bucket is recorded in the message pointer and in
+ * the modified receipt handle, so payloads are always read and deleted from the
+ * bucket they were stored in, whatever the policy of the receiving client is.
+ * </p>
+ *
+ * @see S3BucketRoutingPolicies
+ */
+public interface S3BucketRoutingPolicy {
+
+    /**
+     * Returns the names of all the buckets this policy may select.
+     *
+     * @return the bucket names. Never empty.
+     */
+    Set<String> getBucketNames();
+
+    /**
+     * Selects the bucket in which a payload is stored.
+     *
+     * @param payloadSize
+     *            Size of the payload in bytes.
+     * @return one of the names returned by {@link #getBucketNames()}.
+     */
+    String selectBucket(long payloadSize);
+}
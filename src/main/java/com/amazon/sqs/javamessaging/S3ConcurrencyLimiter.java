@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Limits the number of asynchronous Amazon S3 operations in flight at once.
+ *
+ * <p>
+ * Operations beyond the limit wait in a first-in, first-out queue and start as earlier
+ * operations complete, instead of all being handed to the HTTP client at once where they
+ * would fail to acquire a connection. Setting the limit at or below the
+ * <code>maxConcurrency</code> of the S3 async HTTP client turns bursts into queueing
+ * latency rather than errors. The same limiter may be shared by several clients.
+ * </p>
+ */
+public final class S3ConcurrencyLimiter implements AsyncOperationLimiter {
+    private static final Log LOG = LogFactory.getLog(S3ConcurrencyLimiter.class);
+
+    // Operations handed a permit while the current thread is already starting one
+    private static final ThreadLocal<ArrayDeque<Runnable>> HANDED_OFF = new ThreadLocal<>();
+
+    private final int maxConcurrency;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private int inFlight;
+    private int peakQueueDepth;
+
+    /**
+     * Creates a limiter allowing up to the given number of operations in flight.
+     *
+     * @param maxConcurrency
+     *            The maximum number of operations in flight, which must be positive.
+     */
+    public S3ConcurrencyLimiter(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            String errorMessage = "The maximum S3 concurrency must be positive.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Starts the operation as soon as a permit is available, in the order operations were
+     * submitted. The permit is held until the future returned by the operation completes.
+     *
+     * @param operation
+     *            Starts the operation and returns its future.
+     * @return a future completed with the outcome of the operation.
+     */
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> run(operation, result);
+        synchronized (this) {
+            if (inFlight >= maxConcurrency || !waiting.isEmpty()) {
+                waiting.addLast(start);
+                peakQueueDepth = Math.max(peakQueueDepth, waiting.size());
+                return result;
+            }
+            inFlight++;
+        }
+        start.run();
+        return result;
+    }
+
+    /**
+     * Gets the maximum number of operations in flight.
+     * @return the limit.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the number of operations currently in flight.
+     * @return the operations holding a permit.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of operations currently waiting for a permit.
+     * @return the queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * Gets the largest number of operations that waited for a permit at the same time.
+     * @return the peak queue depth.
+     */
+    public synchronized int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> operation, CompletableFuture<T> result) {
+        if (result.isCancelled()) {
+            // Cancelled while waiting for a permit
+            release();
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (RuntimeException e) {
+            release();
+            result.completeExceptionally(e);
+            return;
+        }
+        // Cancelling the result, for example when a hedged fetch loses, cancels the operation
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        future.whenComplete((value, throwable) -> {
+            release();
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.pollFirst();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        // The permit is handed over to the next operation, if any
+        if (next != null) {
+            handOff(next);
+        }
+    }
+
+    /**
+     * Starts an operation that was handed a permit. Operations completing synchronously
+     * release their permit from within this call, so starting the next one directly would
+     * recurse once per queued operation. Operations handed off while this thread is already
+     * starting one are instead run by the outermost call, in a loop.
+     */
+    private static void handOff(Runnable start) {
+        ArrayDeque<Runnable> pending = HANDED_OFF.get();
+        if (pending != null) {
+            pending.addLast(start);
+            return;
+        }
+        pending = new ArrayDeque<>();
+        HANDED_OFF.set(pending);
+        try {
+            Runnable next = start;
+            while (next != null) {
+                next.run();
+                next = pending.pollFirst();
+            }
+        } finally {
+            HANDED_OFF.remove();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Generates the unique name of each payload object. The name is appended to the
+ * S3 key prefix and partition to form the S3 key.
+ *
+ * <p>
+ * Implementations are called concurrently by every thread sending messages and
+ * should therefore avoid shared locks.
+ * </p>
+ *
+ * @see S3KeyGenerators
+ */
+@FunctionalInterface
+public interface S3KeyGenerator {
+
+    /**
+     * Generates a new unique object name.
+     *
+     * @return a name of at most {@link SQSExtendedClientConstants#UUID_LENGTH} characters,
+     *         made of letters, digits, '_', '-' and '.' only.
+     */
+    String generateS3KeyName();
+}
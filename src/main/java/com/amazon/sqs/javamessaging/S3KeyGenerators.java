@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Built-in {@link S3KeyGenerator} implementations. All of them generate names in
+ * the canonical 36 characters UUID format.
+ *
+ * <p>
+ * The default, {@link #secureRandom()}, keeps names unguessable at the cost of a lock
+ * shared by all senders in the JVM, which concurrent senders contend on. The other
+ * generators draw from {@link ThreadLocalRandom} and never contend, but their names
+ * are predictable, so they are opt-in.
+ * </p>
+ */
+public final class S3KeyGenerators {
+    private static final Log LOG = LogFactory.getLog(S3KeyGenerators.class);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final S3KeyGenerator THREAD_LOCAL_RANDOM = () -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Version 4 and IETF variant bits, as in UUID.randomUUID()
+        long mostSigBits = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+        long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return format(mostSigBits, leastSigBits);
+    };
+
+    private static final S3KeyGenerator SECURE_RANDOM = () -> UUID.randomUUID().toString();
+
+    private S3KeyGenerators() {
+    }
+
+    /**
+     * Generates names with {@link UUID#randomUUID()}, which draws from a shared
+     * {@link java.security.SecureRandom}, so that the key of a payload cannot be guessed
+     * from the keys of other payloads. This is the default. Concurrent senders contend on
+     * the lock of the shared generator; see {@link #threadLocalRandom()} for a generator that
+     * does not contend.
+     *
+     * @return the key generator.
+     */
+    public static S3KeyGenerator secureRandom() {
+        return SECURE_RANDOM;
+    }
+
+    /**
+     * Generates random version 4 UUIDs from a thread-local random number generator,
+     * so that concurrent senders never contend on a shared lock. The names are unique
+     * but, unlike {@link #secureRandom()}, predictable: only use it when the payload
+     * bucket is not shared with untrusted parties.
+     *
+     * @return the key generator.
+     */
+    public static S3KeyGenerator threadLocalRandom() {
+        return THREAD_LOCAL_RANDOM;
+    }
+
+    /**
+     * Generates version 7 UUIDs, whose leading 48 bits hold the Unix time in
+     * milliseconds. Names generated in different milliseconds sort by creation
+     * time, which makes listing objects by age cheap. The remaining bits are drawn
+     * from {@link ThreadLocalRandom}, so, like {@link #threadLocalRandom()}, names
+     * are predictable: only use it when the payload bucket is not shared with
+     * untrusted parties.
+     *
+     * @return the key generator.
+     */
+    public static S3KeyGenerator timeOrdered() {
+        return timeOrdered(Clock.systemUTC());
+    }
+
+    /**
+     * Generates version 7 UUIDs using the given clock. Names are predictable, see
+     * {@link #timeOrdered()}.
+     *
+     * @param clock
+     *            The clock used to read the current time.
+     * @return the key generator.
+     */
+    public static S3KeyGenerator timeOrdered(Clock clock) {
+        if (clock == null) {
+            String errorMessage = "clock cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long mostSigBits = (clock.millis() << 16) | 0x7000L | (random.nextInt() & 0x0fff);
+            long leastSigBits = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+            return format(mostSigBits, leastSigBits);
+        };
+    }
+
+    static String format(long mostSigBits, long leastSigBits) {
+        char[] chars = new char[SQSExtendedClientConstants.UUID_LENGTH];
+        appendHex(chars, 0, mostSigBits >>> 32, 8);
+        chars[8] = '-';
+        appendHex(chars, 9, mostSigBits >>> 16, 4);
+        chars[13] = '-';
+        appendHex(chars, 14, mostSigBits, 4);
+        chars[18] = '-';
+        appendHex(chars, 19, leastSigBits >>> 48, 4);
+        chars[23] = '-';
+        appendHex(chars, 24, leastSigBits, 12);
+        return new String(chars);
+    }
+
+    private static void appendHex(char[] chars, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
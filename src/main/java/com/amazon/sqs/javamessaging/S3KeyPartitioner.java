@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+/**
+ * Strategy for spreading payload objects across several S3 key prefixes.
+ *
+ * <p>
+ * The partition returned for an object is inserted between the configured S3 key
+ * prefix and the unique object name, so that the final key is
+ * <code>s3KeyPrefix + partition + name</code>. Spreading objects across partitions
+ * allows Amazon S3 to scale request rates per prefix instead of throttling all
+ * writes made under a single prefix.
+ * </p>
+ *
+ * @see S3KeyPartitioners
+ */
+public interface S3KeyPartitioner {
+
+    /**
+     * Returns the partition in which the object with the given unique name is stored.
+     *
+     * @param s3KeyName
+     *            The unique name of the object, without any prefix.
+     * @return the partition, usually ending with '/'. May be empty but never null.
+     */
+    String getPartition(String s3KeyName);
+
+    /**
+     * Returns the maximum length of any partition returned by {@link #getPartition(String)}.
+     * It is used to ensure that the S3 key prefix and the partition together never
+     * exceed {@link SQSExtendedClientConstants#MAX_S3_KEY_PREFIX_LENGTH}.
+     *
+     * @return the maximum partition length.
+     */
+    int getMaxPartitionLength();
+}
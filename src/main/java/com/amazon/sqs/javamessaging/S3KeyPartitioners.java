@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * Built-in {@link S3KeyPartitioner} implementations.
+ */
+public final class S3KeyPartitioners {
+    private static final Log LOG = LogFactory.getLog(S3KeyPartitioners.class);
+
+    public static final int MAX_HASHED_PARTITION_COUNT = 65536;
+
+    private S3KeyPartitioners() {
+    }
+
+    /**
+     * Spreads objects evenly across a fixed number of hashed partitions named with
+     * zero-padded hexadecimal digits, for example <code>0a/</code> or <code>ff/</code>.
+     *
+     * @param partitionCount
+     *            Number of partitions, between 1 and {@link #MAX_HASHED_PARTITION_COUNT}.
+     * @return the partitioner.
+     */
+    public static S3KeyPartitioner hashed(int partitionCount) {
+        if (partitionCount < 1 || partitionCount > MAX_HASHED_PARTITION_COUNT) {
+            String errorMessage = "The number of hashed S3 key partitions must be between 1 and "
+                                  + MAX_HASHED_PARTITION_COUNT + ".";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return new HashedS3KeyPartitioner(partitionCount);
+    }
+
+    /**
+     * Groups objects by the UTC date and hour at which they are stored, for example
+     * <code>2024/05/31/23/</code>.
+     *
+     * @return the partitioner.
+     */
+    public static S3KeyPartitioner dateHour() {
+        return dateHour(Clock.systemUTC());
+    }
+
+    /**
+     * Groups objects by the UTC date and hour, as given by the specified clock, at
+     * which they are stored.
+     *
+     * @param clock
+     *            The clock used to read the current time.
+     * @return the partitioner.
+     */
+    public static S3KeyPartitioner dateHour(Clock clock) {
+        if (clock == null) {
+            String errorMessage = "clock cannot be null.";
+            LOG.error(errorMessage);
+            throw SdkClientException.create(errorMessage);
+        }
+        return new DateHourS3KeyPartitioner(clock);
+    }
+
+    private static final class HashedS3KeyPartitioner implements S3KeyPartitioner {
+        private final int partitionCount;
+        private final String[] partitions;
+
+        private HashedS3KeyPartitioner(int partitionCount) {
+            this.partitionCount = partitionCount;
+            int width = Math.max(1, Integer.toHexString(partitionCount - 1).length());
+            this.partitions = new String[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                String hex = Integer.toHexString(i);
+                StringBuilder partition = new StringBuilder(width + 1);
+                for (int pad = hex.length(); pad < width; pad++) {
+                    partition.append('0');
+                }
+                this.partitions[i] = partition.append(hex).append('/').toString();
+            }
+        }
+
+        @Override
+        public String getPartition(String s3KeyName) {
+            // Mix the bits of the hash code so that similar names still land in different partitions
+            int hash = s3KeyName.hashCode();
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return partitions[Math.floorMod(hash, partitionCount)];
+        }
+
+        @Override
+        public int getMaxPartitionLength() {
+            return partitions[partitionCount - 1].length();
+        }
+    }
+
+    private static final class DateHourS3KeyPartitioner implements S3KeyPartitioner {
+        private static final DateTimeFormatter FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy/MM/dd/HH/").withZone(ZoneOffset.UTC);
+
+        private final Clock clock;
+
+        private DateHourS3KeyPartitioner(Clock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public String getPartition(String s3KeyName) {
+            return FORMATTER.format(clock.instant());
+        }
+
+        @Override
+        public int getMaxPartitionLength() {
+            return "yyyy/MM/dd/HH/".length();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Deletes the payloads stored under an S3 key prefix that are older than a cutoff.
+ *
+ * <p>
+ * The prefix is walked as a tree: each <code>ListObjectsV2</code> page is listed with the
+ * '/' delimiter, and every common prefix it returns, such as a hashed or date partition,
+ * is listed in parallel with the others. The root prefix may also be split into 16 key
+ * ranges, one per leading hexadecimal digit of the names below it, listed in parallel.
+ * The objects of each page are removed with one <code>DeleteObjects</code> call of up to
+ * 1000 keys. All listings and deletions share one concurrency limit, and deletions may be
+ * further limited to a number of requests per second. Only objects last modified before
+ * the cutoff are deleted.
+ * </p>
+ *
+ * <p>
+ * A sweeper runs a single sweep. The progress listener may be called concurrently.
+ * </p>
+ */
+class S3PayloadSweeper {
+    private static final Log LOG = LogFactory.getLog(S3PayloadSweeper.class);
+
+    static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final String DELIMITER = "/";
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
+    private final AsyncOperationLimiter limiter;
+    private final Instant storedBefore;
+    private final Consumer<PayloadSweepProgress> progressListener;
+    private final Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> listObjects;
+    private final Function<DeleteObjectsRequest, CompletableFuture<DeleteObjectsResponse>> deleteObjects;
+    private boolean keyRangeSplitting;
+    private boolean timeOrderedKeys;
+    private long deleteIntervalNanos;
+    private ScheduledExecutorService deleteScheduler;
+
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final AtomicLong nextDeleteNanos = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong pagesListed = new AtomicLong();
+    private final AtomicLong objectsListed = new AtomicLong();
+    private final AtomicLong objectsDeleted = new AtomicLong();
+    private final AtomicLong objectsFailed = new AtomicLong();
+    private final AtomicReference<Throwable> listFailure = new AtomicReference<>();
+    private final CompletableFuture<PayloadSweepProgress> result = new CompletableFuture<>();
+    private long startNanos;
+
+    /**
+     * Creates a sweeper.
+     *
+     * @param concurrency
+     *            The maximum number of S3 requests in flight.
+     * @param storedBefore
+     *            Objects last modified at or after this time are kept.
+     * @param progressListener
+     *            Called with the progress, or null.
+     * @param listObjects
+     *            Calls ListObjectsV2.
+     * @param deleteObjects
+     *            Calls DeleteObjects, or null to only count the objects that would be deleted.
+     */
+    S3PayloadSweeper(int concurrency, Instant storedBefore, Consumer<PayloadSweepProgress> progressListener,
+                     Function<ListObjectsV2Request, CompletableFuture<ListObjectsV2Response>> listObjects,
+                     Function<DeleteObjectsRequest, CompletableFuture<DeleteObjectsResponse>> deleteObjects) {
+        this.limiter = new S3ConcurrencyLimiter(concurrency);
+        this.storedBefore = storedBefore;
+        this.progressListener = progressListener;
+        this.listObjects = listObjects;
+        this.deleteObjects = deleteObjects;
+    }
+
+    /**
+     * Lists the root prefix as 16 key ranges in parallel instead of one page after another.
+     *
+     * @return this sweeper.
+     */
+    S3PayloadSweeper withKeyRangeSplitting() {
+        this.keyRangeSplitting = true;
+        return this;
+    }
+
+    /**
+     * Stops listing a prefix at the first version 7 UUID name created at or after the cutoff,
+     * since the names that follow it are newer.
+     *
+     * @return this sweeper.
+     */
+    S3PayloadSweeper withTimeOrderedKeys() {
+        this.timeOrderedKeys = true;
+        return this;
+    }
+
+    S3PayloadSweeper withDeleteRateLimit(double deleteRequestsPerSecond) {
+        return withDeleteRateLimit(deleteRequestsPerSecond, Scheduler.INSTANCE);
+    }
+
+    /**
+     * Starts at most the given number of DeleteObjects requests per second.
+     *
+     * @param deleteRequestsPerSecond
+     *            The rate limit, which must be positive.
+     * @param scheduler
+     *            Starts the delayed requests.
+     * @return this sweeper.
+     */
+    S3PayloadSweeper withDeleteRateLimit(double deleteRequestsPerSecond, ScheduledExecutorService scheduler) {
+        this.deleteIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / deleteRequestsPerSecond));
+        this.deleteScheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * Deletes the old objects stored under the prefix in each bucket.
+     *
+     * @param s3BucketNames
+     *            The buckets to sweep.
+     * @param s3KeyPrefix
+     *            The S3 key prefix to sweep.
+     * @return a future completed with the final progress, or completed exceptionally if
+     *         some prefix could not be listed.
+     */
+    CompletableFuture<PayloadSweepProgress> sweep(Collection<String> s3BucketNames, String s3KeyPrefix) {
+        startNanos = System.nanoTime();
+        // Hold a task so that the sweep cannot complete before every bucket is listed
+        pendingTasks.incrementAndGet();
+        for (String s3BucketName : s3BucketNames) {
+            if (!keyRangeSplitting) {
+                listPage(s3BucketName, s3KeyPrefix, null, null, null);
+                continue;
+            }
+            // Range i holds the keys after prefix + digit i, up to and including prefix + digit i + 1
+            String startAfter = null;
+            for (int i = 1; i <= HEX_DIGITS.length(); i++) {
+                String endAt = i < HEX_DIGITS.length() ? s3KeyPrefix + HEX_DIGITS.charAt(i) : null;
+                listPage(s3BucketName, s3KeyPrefix, null, startAfter, endAt);
+                startAfter = endAt;
+            }
+        }
+        finishTask();
+        return result;
+    }
+
+    private void listPage(String s3BucketName, String s3KeyPrefix, String continuationToken, String startAfter,
+                          String endAt) {
+        pendingTasks.incrementAndGet();
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+            .bucket(s3BucketName)
+            .prefix(s3KeyPrefix)
+            .delimiter(DELIMITER)
+            .continuationToken(continuationToken)
+            .startAfter(continuationToken == null ? startAfter : null)
+            .build();
+        limiter.submit(() -> listObjects.apply(request)).whenComplete((response, throwable) -> {
+            try {
+                if (throwable != null) {
+                    LOG.warn("Failed to list payloads under prefix " + s3KeyPrefix + " of bucket "
+                             + s3BucketName + ".", throwable);
+                    listFailure.compareAndSet(null, throwable);
+                } else {
+                    onPage(s3BucketName, s3KeyPrefix, response, endAt);
+                }
+            } finally {
+                finishTask();
+            }
+        });
+    }
+
+    private void onPage(String s3BucketName, String s3KeyPrefix, ListObjectsV2Response response, String endAt) {
+        pagesListed.incrementAndGet();
+        boolean reachedEnd = false;
+        List<ObjectIdentifier> objects = new ArrayList<>();
+        for (S3Object object : response.contents()) {
+            if (isPastEnd(object.key(), endAt)) {
+                reachedEnd = true;
+                break;
+            }
+            if (timeOrderedKeys && response.commonPrefixes().isEmpty() && isCreatedAfterCutoff(object.key())) {
+                reachedEnd = true;
+                break;
+            }
+            if (object.lastModified() != null && object.lastModified().isBefore(storedBefore)) {
+                objects.add(ObjectIdentifier.builder().key(object.key()).build());
+            }
+        }
+        objectsListed.addAndGet(objects.size());
+
+        for (int from = 0; from < objects.size(); from += MAX_KEYS_PER_DELETE) {
+            deleteObjects(s3BucketName, objects.subList(from, Math.min(objects.size(), from + MAX_KEYS_PER_DELETE)));
+        }
+        for (CommonPrefix commonPrefix : response.commonPrefixes()) {
+            if (isPastEnd(commonPrefix.prefix(), endAt)) {
+                reachedEnd = true;
+                break;
+            }
+            listPage(s3BucketName, commonPrefix.prefix(), null, null, null);
+        }
+        if (Boolean.TRUE.equals(response.isTruncated()) && !reachedEnd) {
+            listPage(s3BucketName, s3KeyPrefix, response.nextContinuationToken(), null, endAt);
+        }
+        report(false);
+    }
+
+    private static boolean isPastEnd(String key, String endAt) {
+        return endAt != null && key.compareTo(endAt) > 0;
+    }
+
+    private boolean isCreatedAfterCutoff(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        if (name.length() != SQSExtendedClientConstants.UUID_LENGTH || name.charAt(14) != '7') {
+            return false;
+        }
+        try {
+            long createdMillis = Long.parseLong(name.substring(0, 8) + name.substring(9, 13), 16);
+            return createdMillis >= storedBefore.toEpochMilli();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void deleteObjects(String s3BucketName, List<ObjectIdentifier> objects) {
+        if (deleteObjects == null) {
+            return;
+        }
+        pendingTasks.incrementAndGet();
+        DeleteObjectsRequest request = DeleteObjectsRequest.builder()
+            .bucket(s3BucketName)
+            .delete(Delete.builder().objects(objects).quiet(true).build())
+            .build();
+        long delayNanos = reserveDeleteStart();
+        if (delayNanos > 0) {
+            deleteScheduler.schedule(() -> startDelete(s3BucketName, request), delayNanos, TimeUnit.NANOSECONDS);
+        } else {
+            startDelete(s3BucketName, request);
+        }
+    }
+
+    private long reserveDeleteStart() {
+        if (deleteIntervalNanos == 0) {
+            return 0;
+        }
+        long nowNanos = System.nanoTime();
+        long previousStartNanos = nextDeleteNanos.getAndAccumulate(nowNanos,
+            (next, now) -> Math.max(next, now) + deleteIntervalNanos);
+        return Math.max(previousStartNanos, nowNanos) - nowNanos;
+    }
+
+    private void startDelete(String s3BucketName, DeleteObjectsRequest request) {
+        int objectCount = request.delete().objects().size();
+        limiter.submit(() -> deleteObjects.apply(request)).whenComplete((response, throwable) -> {
+            try {
+                if (throwable != null) {
+                    LOG.warn("Failed to delete " + objectCount + " payloads from bucket " + s3BucketName + ".",
+                             throwable);
+                    objectsFailed.addAndGet(objectCount);
+                } else {
+                    // Quiet mode only reports the keys that could not be deleted
+                    int failed = response.errors().size();
+                    objectsFailed.addAndGet(failed);
+                    objectsDeleted.addAndGet(objectCount - failed);
+                }
+                report(false);
+            } finally {
+                finishTask();
+            }
+        });
+    }
+
+    private void finishTask() {
+        if (pendingTasks.decrementAndGet() != 0) {
+            return;
+        }
+        PayloadSweepProgress progress = report(true);
+        Throwable failure = listFailure.get();
+        if (failure != null) {
+            String errorMessage = "Failed to list some payloads to sweep, " + progress.getObjectsDeleted()
+                                  + " payloads were deleted.";
+            LOG.error(errorMessage);
+            result.completeExceptionally(SdkClientException.create(errorMessage, failure));
+            return;
+        }
+        LOG.info("Swept payloads: " + progress);
+        result.complete(progress);
+    }
+
+    private PayloadSweepProgress report(boolean complete) {
+        PayloadSweepProgress progress = new PayloadSweepProgress(pagesListed.get(), objectsListed.get(),
+            objectsDeleted.get(), objectsFailed.get(), System.nanoTime() - startNanos, complete);
+        if (progressListener != null) {
+            try {
+                progressListener.accept(progress);
+            } catch (RuntimeException e) {
+                LOG.warn("Payload sweep progress listener failed.", e);
+            }
+        }
+        return progress;
+    }
+
+    private static final class Scheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqs-extended-payload-sweep-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -31,6 +31,12 @@ public class SQSExtendedClientConstants {
     // SNS team should be notified of any changes made to this
     public static final int DEFAULT_MESSAGE_SIZE_THRESHOLD = 262144;
 
+    // Marks a message body compressed inline by an OffloadPolicy, in place of the reserved attribute
+    public static final String COMPRESSED_BODY_ATTRIBUTE_NAME = "ExtendedPayloadEncoding";
+
+    // Largest body compressed inline; larger bodies are offloaded, and larger decompressed bodies rejected
+    public static final int MAX_COMPRESSED_INLINE_BODY_SIZE = 16 * 1024 * 1024;
+
     public static final String S3_BUCKET_NAME_MARKER = "-..s3BucketName..-";
     public static final String S3_KEY_MARKER = "-..s3Key..-";
 
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.getOrigReceiptHandle;
+import static com.amazon.sqs.javamessaging.AmazonSQSExtendedClientUtil.isS3ReceiptHandle;
+
+/**
+ * Keeps received messages invisible while they are being downloaded and processed.
+ *
+ * <p>
+ * Every heartbeat interval, the visibility timeout of each tracked message is set again
+ * with <code>ChangeMessageVisibilityBatch</code>, using the original receipt handle, so that
+ * no other consumer receives the message and downloads its payload a second time. A
+ * message stops being tracked when it is deleted, when its visibility is changed by the
+ * application, when extending it fails, or when it reaches the maximum extension time, so that
+ * a consumer that hangs without crashing does not hold a message for the 12 hour limit of
+ * Amazon SQS. The last extension is shortened for the message to become visible again when
+ * the maximum extension time is reached.
+ * </p>
+ */
+class VisibilityHeartbeat implements AutoCloseable {
+    private static final Log LOG = LogFactory.getLog(VisibilityHeartbeat.class);
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final long MAX_VISIBILITY_SECONDS = TimeUnit.HOURS.toSeconds(12);
+    static final int DEFAULT_MAX_EXTENSION_SECONDS = (int) TimeUnit.HOURS.toSeconds(1);
+
+    private final int visibilityTimeoutSeconds;
+    private final long maxExtensionSeconds;
+    private final Function<ChangeMessageVisibilityBatchRequest,
+        CompletableFuture<ChangeMessageVisibilityBatchResponse>> changeMessageVisibilityBatch;
+    private final LongSupplier nanoTime;
+    private final Map<String, Map<String, Long>> receivedNanosByQueueUrl = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> task;
+
+    VisibilityHeartbeat(int visibilityTimeoutSeconds, int heartbeatIntervalSeconds, int maxExtensionSeconds,
+                        Function<ChangeMessageVisibilityBatchRequest,
+                            CompletableFuture<ChangeMessageVisibilityBatchResponse>> changeMessageVisibilityBatch) {
+        this(visibilityTimeoutSeconds, heartbeatIntervalSeconds, maxExtensionSeconds, changeMessageVisibilityBatch,
+            System::nanoTime, Scheduler.INSTANCE);
+    }
+
+    VisibilityHeartbeat(int visibilityTimeoutSeconds, int heartbeatIntervalSeconds, int maxExtensionSeconds,
+                        Function<ChangeMessageVisibilityBatchRequest,
+                            CompletableFuture<ChangeMessageVisibilityBatchResponse>> changeMessageVisibilityBatch,
+                        LongSupplier nanoTime, ScheduledExecutorService scheduler) {
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        this.maxExtensionSeconds = Math.min(maxExtensionSeconds, MAX_VISIBILITY_SECONDS);
+        this.changeMessageVisibilityBatch = changeMessageVisibilityBatch;
+        this.nanoTime = nanoTime;
+        this.task = scheduler.scheduleWithFixedDelay(this::beatSafely, heartbeatIntervalSeconds,
+            heartbeatIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void track(String queueUrl, Collection<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long receivedNanos = nanoTime.getAsLong();
+        Map<String, Long> receivedNanosByReceiptHandle =
+            receivedNanosByQueueUrl.computeIfAbsent(queueUrl, key -> new ConcurrentHashMap<>());
+        for (Message message : messages) {
+            receivedNanosByReceiptHandle.put(toOrigReceiptHandle(message.receiptHandle()), receivedNanos);
+        }
+    }
+
+    void release(String queueUrl, Collection<Message> messages) {
+        for (Message message : messages) {
+            release(queueUrl, message.receiptHandle());
+        }
+    }
+
+    void release(String queueUrl, String receiptHandle) {
+        Map<String, Long> receivedNanosByReceiptHandle = receivedNanosByQueueUrl.get(queueUrl);
+        if (receivedNanosByReceiptHandle != null) {
+            receivedNanosByReceiptHandle.remove(toOrigReceiptHandle(receiptHandle));
+        }
+    }
+
+    int getTrackedCount() {
+        return receivedNanosByQueueUrl.values().stream().mapToInt(Map::size).sum();
+    }
+
+    void beat() {
+        long nowNanos = nanoTime.getAsLong();
+        for (Map.Entry<String, Map<String, Long>> queue : receivedNanosByQueueUrl.entrySet()) {
+            String queueUrl = queue.getKey();
+            Map<String, Long> receivedNanosByReceiptHandle = queue.getValue();
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(MAX_BATCH_SIZE);
+            int expiredCount = 0;
+            for (Map.Entry<String, Long> message : receivedNanosByReceiptHandle.entrySet()) {
+                long remainingSeconds =
+                    maxExtensionSeconds - TimeUnit.NANOSECONDS.toSeconds(nowNanos - message.getValue());
+                if (remainingSeconds <= 0) {
+                    // The message has been held for as long as allowed, let it become visible again
+                    receivedNanosByReceiptHandle.remove(message.getKey());
+                    expiredCount++;
+                    continue;
+                }
+                entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                    .id(Integer.toString(entries.size()))
+                    .receiptHandle(message.getKey())
+                    .visibilityTimeout((int) Math.min(visibilityTimeoutSeconds, remainingSeconds))
+                    .build());
+                if (entries.size() == MAX_BATCH_SIZE) {
+                    extend(queueUrl, entries);
+                    entries = new ArrayList<>(MAX_BATCH_SIZE);
+                }
+            }
+            if (!entries.isEmpty()) {
+                extend(queueUrl, entries);
+            }
+            if (expiredCount > 0) {
+                LOG.warn("Stopped extending the visibility timeout of " + expiredCount + " messages of queue "
+                         + queueUrl + " that were not deleted within " + maxExtensionSeconds + " seconds.");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        task.cancel(false);
+        receivedNanosByQueueUrl.clear();
+    }
+
+    private void beatSafely() {
+        try {
+            beat();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to extend the visibility timeout of received messages.", e);
+        }
+    }
+
+    private void extend(String queueUrl, List<ChangeMessageVisibilityBatchRequestEntry> entries) {
+        ChangeMessageVisibilityBatchRequest request = ChangeMessageVisibilityBatchRequest.builder()
+            .queueUrl(queueUrl)
+            .entries(entries)
+            .build();
+        changeMessageVisibilityBatch.apply(request).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                LOG.warn("Failed to extend the visibility timeout of " + entries.size() + " messages.", throwable);
+                return;
+            }
+            Map<String, Long> receivedNanosByReceiptHandle = receivedNanosByQueueUrl.get(queueUrl);
+            for (BatchResultErrorEntry failed : response.failed()) {
+                // The message was deleted or received again elsewhere, stop extending it
+                String receiptHandle = entries.get(Integer.parseInt(failed.id())).receiptHandle();
+                if (receivedNanosByReceiptHandle != null) {
+                    receivedNanosByReceiptHandle.remove(receiptHandle);
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Stopped extending the visibility timeout of a message: " + failed.code() + ".");
+                }
+            }
+        });
+    }
+
+    private static String toOrigReceiptHandle(String receiptHandle) {
+        return isS3ReceiptHandle(receiptHandle) ? getOrigReceiptHandle(receiptHandle) : receiptHandle;
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sqs-extended-visibility-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the AdaptiveS3ConcurrencyController class.
+ */
+public class AdaptiveS3ConcurrencyControllerTest {
+
+    @Test
+    public void testLimitGrowsWhileSaturatedUpToMaximum() {
+        AdaptiveS3ConcurrencyController controller = new AdaptiveS3ConcurrencyController(1, 4);
+        List<CompletableFuture<String>> operations = submitPending(controller, 30);
+
+        assertEquals(1, controller.getConcurrencyLimit());
+        for (CompletableFuture<String> operation : operations) {
+            operation.complete("done");
+            assertTrue(controller.getInFlight() <= controller.getConcurrencyLimit());
+        }
+
+        assertEquals(4, controller.getConcurrencyLimit());
+        assertEquals(0, controller.getInFlight());
+        assertEquals(0, controller.getQueueDepth());
+    }
+
+    @Test
+    public void testLimitDoesNotGrowWhenNotInUse() {
+        AdaptiveS3ConcurrencyController controller = new AdaptiveS3ConcurrencyController(1, 4);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("done", controller.call(() -> "done"));
+        }
+
+        // Only the first call used the whole limit
+        assertEquals(2, controller.getConcurrencyLimit());
+    }
+
+    @Test
+    public void testThrottlingBacksOffOncePerWindow() {
+        AdaptiveS3ConcurrencyController controller = new AdaptiveS3ConcurrencyController(1, 4);
+        List<CompletableFuture<String>> operations = submitPending(controller, 30);
+        int completed = 0;
+        while (controller.getConcurrencyLimit() < 4) {
+            operations.get(completed++).complete("done");
+        }
+
+        operations.get(completed++).completeExceptionally(slowDown());
+        assertEquals(2, controller.getConcurrencyLimit());
+
+        // Started before the backoff, so it does not cut the limit again
+        operations.get(completed).completeExceptionally(slowDown());
+        assertEquals(2, controller.getConcurrencyLimit());
+        assertEquals(2, controller.getThrottleCount());
+        assertEquals(1, controller.getBackoffCount());
+    }
+
+    @Test
+    public void testSlowOperationBacksOff() {
+        AtomicLong nanoTime = new AtomicLong();
+        AdaptiveS3ConcurrencyController controller = new AdaptiveS3ConcurrencyController(1, 4,
+                Duration.ofMillis(100), 0.5, nanoTime::get);
+
+        controller.call(() -> nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(10)));
+        assertEquals(2, controller.getConcurrencyLimit());
+
+        controller.call(() -> nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(200)));
+        assertEquals(1, controller.getConcurrencyLimit());
+        assertEquals(1, controller.getBackoffCount());
+        assertEquals(0, controller.getThrottleCount());
+    }
+
+    @Test
+    public void testThrottledCallIsRethrownAndCounted() {
+        AdaptiveS3ConcurrencyController controller = new AdaptiveS3ConcurrencyController(1, 4);
+        SdkClientException failure = slowDown();
+
+        SdkClientException thrown = assertThrows(SdkClientException.class, () -> controller.call(() -> {
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        assertEquals(1, controller.getThrottleCount());
+        assertEquals(0, controller.getInFlight());
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejected() {
+        assertThrows(SdkClientException.class, () -> new AdaptiveS3ConcurrencyController(0, 4));
+        assertThrows(SdkClientException.class, () -> new AdaptiveS3ConcurrencyController(4, 2));
+        assertThrows(SdkClientException.class, () -> new AdaptiveS3ConcurrencyController(1, 4, Duration.ZERO, 0.5));
+        assertThrows(SdkClientException.class, () -> new AdaptiveS3ConcurrencyController(1, 4, null, 1.0));
+    }
+
+    private static List<CompletableFuture<String>> submitPending(AdaptiveS3ConcurrencyController controller,
+                                                                 int count) {
+        List<CompletableFuture<String>> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<String> operation = new CompletableFuture<>();
+            operations.add(operation);
+            controller.submit(() -> operation);
+        }
+        return operations;
+    }
+
+    private static SdkClientException slowDown() {
+        // Payload stores wrap S3 failures in a client exception
+        S3Exception s3Exception = (S3Exception) S3Exception.builder()
+                .statusCode(503)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("SlowDown").build())
+                .build();
+        return SdkClientException.create("Failed to get the S3 object.", s3Exception);
+    }
+}
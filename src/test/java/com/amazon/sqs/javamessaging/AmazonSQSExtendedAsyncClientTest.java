@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -21,6 +22,7 @@ import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -38,10 +40,13 @@ import software.amazon.awssdk.core.ApiName;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
@@ -758,6 +763,29 @@ public class AmazonSQSExtendedAsyncClientTest {
         verify(mockSqsBackend).cancelMessageMoveTask(request);
     }
 
+    @Test
+    public void testLifecycleCleanupCheckFailsWhenBucketHasNoLifecycleRule() {
+        when(mockS3.getBucketLifecycleConfiguration(isA(GetBucketLifecycleConfigurationRequest.class))).thenReturn(
+            CompletableFuture.completedFuture(GetBucketLifecycleConfigurationResponse.builder().build()));
+        AmazonSQSExtendedAsyncClient sqsExtended = new AmazonSQSExtendedAsyncClient(mockSqsBackend,
+            new ExtendedAsyncClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withLifecycleCleanup(Duration.ofDays(15)));
+
+        CompletionException exception = assertThrows(CompletionException.class,
+            () -> sqsExtended.lifecycleCleanupCheck().join());
+        assertTrue(exception.getCause() instanceof SdkClientException);
+    }
+
+    @Test
+    public void testLifecycleCleanupCheckIsCompletedWhenLifecycleCleanupIsDisabled() {
+        AmazonSQSExtendedAsyncClient sqsExtended = new AmazonSQSExtendedAsyncClient(mockSqsBackend,
+            new ExtendedAsyncClientConfiguration().withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+
+        assertNull(sqsExtended.lifecycleCleanupCheck().join());
+        verify(mockS3, never()).getBucketLifecycleConfiguration(isA(GetBucketLifecycleConfigurationRequest.class));
+    }
+
     private DeleteMessageBatchRequest generateLargeDeleteBatchRequest(List<String> originalReceiptHandles) {
         List<DeleteMessageBatchRequestEntry> deleteEntries = IntStream.range(0, originalReceiptHandles.size())
             .mapToObj(i -> DeleteMessageBatchRequestEntry.builder()
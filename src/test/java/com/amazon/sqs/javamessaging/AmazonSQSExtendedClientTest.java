@@ -25,26 +25,46 @@ import org.mockito.MockedStatic;
 import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.ApiName;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.http.AbortableInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.LifecycleExpiration;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.ObjectCannedACL;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
 import software.amazon.awssdk.services.sqs.model.CancelMessageMoveTaskRequest;
 import software.amazon.awssdk.services.sqs.model.CancelMessageMoveTaskResponse;
 import software.amazon.awssdk.services.sqs.model.ListMessageMoveTasksRequest;
 import software.amazon.awssdk.services.sqs.model.ListMessageMoveTasksResponse;
 import software.amazon.awssdk.services.sqs.model.Message;
 import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
@@ -55,10 +75,18 @@ import software.amazon.awssdk.services.sqs.model.StartMessageMoveTaskResponse;
 import software.amazon.awssdk.utils.ImmutableMap;
 import software.amazon.awssdk.utils.StringInputStream;
 import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStore;
 import software.amazon.payloadoffloading.ServerSideEncryptionFactory;
 import software.amazon.payloadoffloading.ServerSideEncryptionStrategy;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -72,6 +100,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -87,6 +116,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 /**
  * Tests the AmazonSQSExtendedClient class.
@@ -145,7 +175,8 @@ public class AmazonSQSExtendedClientTest {
 
         ExtendedClientConfiguration extendedClientConfigurationWithS3KeyPrefix = new ExtendedClientConfiguration()
                 .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
-                .withS3KeyPrefix(S3_KEY_PREFIX);
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withS3KeyGenerator(() -> S3_KEY_UUID);
 
         UUID uuidMock = mock(UUID.class);
         when(uuidMock.toString()).thenReturn(S3_KEY_UUID);
@@ -333,6 +364,110 @@ public class AmazonSQSExtendedClientTest {
         verify(mockS3, never()).putObject(isA(PutObjectRequest.class), isA(RequestBody.class));
     }
 
+    @Test
+    public void testWhenQueueAllowsLargerMessagesThenMessageIsNotOffloadedUntilQueueLimit() {
+        when(mockSqsBackend.getQueueAttributes(isA(GetQueueAttributesRequest.class))).thenReturn(
+                GetQueueAttributesResponse.builder()
+                        .attributes(Collections.singletonMap(QueueAttributeName.MAXIMUM_MESSAGE_SIZE, "1048576"))
+                        .build());
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withQueueMessageSizeDiscovery(Duration.ofMinutes(5)));
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL)
+                .messageBody(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)).build());
+        verify(mockS3, never()).putObject(isA(PutObjectRequest.class), isA(RequestBody.class));
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL)
+                .messageBody(generateStringWithLength(1048577)).build());
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class), isA(RequestBody.class));
+        verify(mockSqsBackend, times(1)).getQueueAttributes(isA(GetQueueAttributesRequest.class));
+    }
+
+    @Test
+    public void testWhenOffloadPolicyCompressesInlineThenLargeMessageIsSentCompressedWithoutS3() {
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withOffloadPolicy((queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+                        OffloadPolicy.Decision.COMPRESS_INLINE));
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<SendMessageRequest> captor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsBackend).sendMessage(captor.capture());
+        SendMessageRequest sentRequest = captor.getValue();
+        assertTrue(sentRequest.messageBody().length() < SQS_SIZE_LIMIT);
+        assertEquals(InlineCompression.ENCODING, sentRequest.messageAttributes()
+                .get(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME).stringValue());
+        verifyNoInteractions(mockS3);
+
+        Message message = Message.builder()
+                .body(sentRequest.messageBody())
+                .messageAttributes(sentRequest.messageAttributes())
+                .build();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+        Message receivedMessage = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().build()).messages().get(0);
+
+        assertEquals(messageBody, receivedMessage.body());
+        assertFalse(receivedMessage.messageAttributes()
+                .containsKey(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME));
+    }
+
+    @Test
+    public void testWhenCompressedMessageCannotBeDecompressedThenOnlyThatMessageIsReturnedAsReceived() {
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withOffloadPolicy((queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+                        OffloadPolicy.Decision.COMPRESS_INLINE));
+        Map<String, MessageAttributeValue> compressedAttributes = new HashMap<>();
+        compressedAttributes.put(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME,
+                MessageAttributeValue.builder().dataType("String").stringValue(InlineCompression.ENCODING).build());
+        String messageBody = generateStringWithLength(1000);
+        Message corrupt = Message.builder().messageId("corrupt").body("not gzip")
+                .messageAttributes(compressedAttributes).build();
+        Message valid = Message.builder().messageId("valid").body(InlineCompression.compress(messageBody))
+                .messageAttributes(compressedAttributes).build();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(corrupt, valid).build());
+
+        List<Message> messages = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().build()).messages();
+
+        assertEquals(corrupt, messages.get(0));
+        assertEquals(messageBody, messages.get(1).body());
+    }
+
+    @Test
+    public void testWithoutOffloadPolicyEncodingAttributeIsNotReservedOrDecoded() {
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        attributes.put(SQSExtendedClientConstants.COMPRESSED_BODY_ATTRIBUTE_NAME,
+                MessageAttributeValue.builder().dataType("String").stringValue(InlineCompression.ENCODING).build());
+        Message message = Message.builder().body("plain body").messageAttributes(attributes).build();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class)))
+                .thenReturn(ReceiveMessageResponse.builder().messages(message).build());
+
+        extendedSqsWithDefaultConfig.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL)
+                .messageBody("plain body").messageAttributes(attributes).build());
+        Message receivedMessage = extendedSqsWithDefaultConfig.receiveMessage(
+                ReceiveMessageRequest.builder().build()).messages().get(0);
+
+        assertEquals(message, receivedMessage);
+    }
+
+    @Test
+    public void testWhenOffloadPolicyKeepsLargeMessageInlineThenItIsStillStoredInS3() {
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withOffloadPolicy((queueUrl, bodySize, attributesSize, payloadSizeThreshold, request) ->
+                        OffloadPolicy.Decision.INLINE));
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL)
+                .messageBody(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT)).build());
+
+        verify(mockS3, times(1)).putObject(isA(PutObjectRequest.class), isA(RequestBody.class));
+    }
+
     @Test
     public void testWhenSendMessageWithLargePayloadSupportDisabledThenS3IsNotUsedAndSqsBackendIsResponsibleToFailIt() {
         String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
@@ -679,6 +814,503 @@ public class AmazonSQSExtendedClientTest {
             isA(RequestBody.class));
     }
 
+    @Test
+    public void testWhenSendLargeMessageWithS3KeyPartitionerDefined() {
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        Clock clock = Clock.fixed(Instant.parse("2024-05-31T23:15:30Z"), ZoneOffset.UTC);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withS3KeyPartitioner(S3KeyPartitioners.dateHour(clock))
+                .withS3KeyGenerator(() -> S3_KEY_UUID);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        SendMessageRequest messageRequest = SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build();
+        sqsExtended.sendMessage(messageRequest);
+
+        verify(mockS3, times(1)).putObject(
+            argThat((PutObjectRequest obj) -> obj.key().equals(S3_KEY_PREFIX + "2024/05/31/23/" + S3_KEY_UUID)),
+            isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithQueueScopedS3KeyPrefixThenKeyIncludesAccountAndQueueName() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withQueueScopedS3KeyPrefix(true)
+                .withS3KeyGenerator(() -> S3_KEY_UUID);
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration);
+
+        sqsExtended.sendMessage(SendMessageRequest.builder()
+                .queueUrl("https://sqs.us-east-1.amazonaws.com/123456789012/test-queue")
+                .messageBody(generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT))
+                .build());
+
+        verify(mockS3, times(1)).putObject(
+            argThat((PutObjectRequest obj) -> obj.key().equals(S3_KEY_PREFIX + "123456789012/test-queue/" + S3_KEY_UUID)),
+            isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenPurgeQueueWithPayloadsThenQueueIsPurgedAndItsPayloadsAreDeleted() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withQueueScopedS3KeyPrefix(true));
+        when(mockS3.listObjectsV2(isA(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(SQS_QUEUE_URL + "/old").lastModified(Instant.EPOCH).build())
+                .build());
+        when(mockS3.deleteObjects(isA(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+
+        PayloadSweepProgress progress = sqsExtended.purgeQueueWithPayloads(
+                PurgeQueueRequest.builder().queueUrl(SQS_QUEUE_URL).build(), 4, null);
+
+        verify(mockSqsBackend).purgeQueue(isA(PurgeQueueRequest.class));
+        verify(mockS3).listObjectsV2(argThat((ListObjectsV2Request request) ->
+                request.bucket().equals(S3_BUCKET_NAME) && request.prefix().equals(SQS_QUEUE_URL + "/")));
+        verify(mockS3).deleteObjects(argThat((DeleteObjectsRequest request) ->
+                request.delete().objects().get(0).key().equals(SQS_QUEUE_URL + "/old")));
+        assertEquals(1, progress.getObjectsDeleted());
+        assertTrue(progress.isComplete());
+    }
+
+    @Test
+    public void testWhenPurgeQueueWithPayloadsThenSweepRequestsTakeAdaptiveConcurrencyPermits() {
+        AdaptiveS3ConcurrencyController adaptiveS3Concurrency = new AdaptiveS3ConcurrencyController(1, 1);
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withQueueScopedS3KeyPrefix(true)
+                .withAdaptiveS3Concurrency(adaptiveS3Concurrency));
+        List<Integer> inFlight = Collections.synchronizedList(new ArrayList<>());
+        when(mockS3.listObjectsV2(isA(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            inFlight.add(adaptiveS3Concurrency.getInFlight());
+            return ListObjectsV2Response.builder()
+                    .contents(S3Object.builder().key(SQS_QUEUE_URL + "/old").lastModified(Instant.EPOCH).build())
+                    .build();
+        });
+        when(mockS3.deleteObjects(isA(DeleteObjectsRequest.class))).thenAnswer(invocation -> {
+            inFlight.add(adaptiveS3Concurrency.getInFlight());
+            return DeleteObjectsResponse.builder().build();
+        });
+
+        sqsExtended.purgeQueueWithPayloads(PurgeQueueRequest.builder().queueUrl(SQS_QUEUE_URL).build(), 4, null);
+
+        assertEquals(Arrays.asList(1, 1), inFlight);
+        assertEquals(0, adaptiveS3Concurrency.getInFlight());
+    }
+
+    @Test
+    public void testWhenPurgeQueueWithPayloadsWithoutQueueScopedS3KeyPrefixThenQueueIsNotPurged() {
+        AmazonSQSExtendedClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME));
+
+        assertThrows(SdkClientException.class, () -> sqsExtended.purgeQueueWithPayloads(
+                PurgeQueueRequest.builder().queueUrl(SQS_QUEUE_URL).build(), 4, null));
+        verify(mockSqsBackend, never()).purgeQueue(isA(PurgeQueueRequest.class));
+    }
+
+    @Test
+    public void testWhenLifecycleCleanupIsEnabledThenDeletedMessagePayloadIsLeftToLifecycleRule() {
+        when(mockS3.getBucketLifecycleConfiguration(isA(GetBucketLifecycleConfigurationRequest.class)))
+                .thenReturn(GetBucketLifecycleConfigurationResponse.builder()
+                        .rules(LifecycleRule.builder()
+                                .status(ExpirationStatus.ENABLED)
+                                .expiration(LifecycleExpiration.builder().days(15).build())
+                                .filter(LifecycleRuleFilter.builder().build())
+                                .build())
+                        .build());
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withLifecycleCleanup(Duration.ofDays(15)));
+
+        String receiptHandle = AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle("receipt-handle",
+                new PayloadS3Pointer(S3_BUCKET_NAME, S3_KEY_UUID).toJson());
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder().queueUrl(SQS_QUEUE_URL).receiptHandle(receiptHandle).build());
+
+        verify(mockSqsBackend).deleteMessage(isA(DeleteMessageRequest.class));
+        verify(mockS3, never()).deleteObject(isA(DeleteObjectRequest.class));
+    }
+
+    @Test
+    public void testWhenLifecycleCleanupIsEnabledThenRetentionPeriodIsReadOncePerQueue() {
+        when(mockS3.getBucketLifecycleConfiguration(isA(GetBucketLifecycleConfigurationRequest.class)))
+                .thenReturn(GetBucketLifecycleConfigurationResponse.builder()
+                        .rules(LifecycleRule.builder()
+                                .status(ExpirationStatus.ENABLED)
+                                .expiration(LifecycleExpiration.builder().days(15).build())
+                                .filter(LifecycleRuleFilter.builder().build())
+                                .build())
+                        .build());
+        when(mockSqsBackend.getQueueAttributes(isA(GetQueueAttributesRequest.class))).thenReturn(
+                GetQueueAttributesResponse.builder()
+                        .attributes(Collections.singletonMap(QueueAttributeName.MESSAGE_RETENTION_PERIOD, "1209600"))
+                        .build());
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend, new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withLifecycleCleanup(Duration.ofDays(15)));
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody("body").build());
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody("body").build());
+
+        verify(mockSqsBackend, times(1)).getQueueAttributes(argThat((GetQueueAttributesRequest request) ->
+                request.attributeNames().contains(QueueAttributeName.MESSAGE_RETENTION_PERIOD)));
+    }
+
+    @Test
+    public void testWhenLifecycleCleanupIsEnabledWithoutLifecycleRuleThenClientIsNotCreated() {
+        when(mockS3.getBucketLifecycleConfiguration(isA(GetBucketLifecycleConfigurationRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(404).build());
+
+        assertThrows(SdkClientException.class, () -> new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration()
+                        .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                        .withLifecycleCleanup(Duration.ofDays(15))));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithS3KeyPartitionerAndUndefinedS3PrefixKey() {
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3KeyPartitioner(S3KeyPartitioners.hashed(1))
+                .withS3KeyGenerator(() -> S3_KEY_UUID);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        SendMessageRequest messageRequest = SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build();
+        sqsExtended.sendMessage(messageRequest);
+
+        verify(mockS3, times(1)).putObject(
+            argThat((PutObjectRequest obj) -> obj.key().equals("0/" + S3_KEY_UUID)),
+            isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithTimeOrderedS3KeyGenerator() {
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(0x0123456789abL), ZoneOffset.UTC);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withS3KeyGenerator(S3KeyGenerators.timeOrdered(clock));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        SendMessageRequest messageRequest = SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build();
+        sqsExtended.sendMessage(messageRequest);
+
+        verify(mockS3, times(1)).putObject(
+            argThat((PutObjectRequest obj) -> obj.key().startsWith(S3_KEY_PREFIX + "01234567-89ab-7")),
+            isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithTooLongS3KeyNameThenItIsRejected() {
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3KeyGenerator(() -> generateStringWithLength(SQSExtendedClientConstants.UUID_LENGTH + 1));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        SendMessageRequest messageRequest = SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build();
+
+        assertThrows(SdkClientException.class, () -> sqsExtended.sendMessage(messageRequest));
+        verifyNoInteractions(mockS3);
+    }
+
+    @Test
+    public void testWhenMetricsAreEnabledThenPayloadOperationsAreRecorded() {
+        ExtendedClientMetrics metrics = new ExtendedClientMetrics();
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withMetrics(metrics);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+        String receiptHandle = AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle("receipt-handle",
+                new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson());
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder().queueUrl(SQS_QUEUE_URL).receiptHandle(receiptHandle).build());
+
+        Map<ExtendedClientMetric, Map<String, ExtendedClientMetrics.OperationSnapshot>> snapshot = metrics.snapshot();
+        ExtendedClientMetrics.OperationSnapshot store = snapshot.get(ExtendedClientMetric.PAYLOAD_STORE).get(SQS_QUEUE_URL);
+        assertEquals(1, store.getCount());
+        assertEquals(MORE_THAN_SQS_SIZE_LIMIT, store.getTotalPayloadBytes());
+        assertEquals(1, snapshot.get(ExtendedClientMetric.PAYLOAD_DELETE).get(SQS_QUEUE_URL).getCount());
+    }
+
+    @Test
+    public void testWhenSendLargeMessagesWithS3BucketRoutingPolicyThenBucketsAreUsedInTurn() {
+        String otherS3BucketName = "other-test-bucket-name";
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3BucketRoutingPolicy(S3BucketRoutingPolicies.roundRobin(S3_BUCKET_NAME, otherS3BucketName));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        for (int i = 0; i < 4; i++) {
+            String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+            sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+        }
+
+        verify(mockS3, times(2)).putObject(
+            argThat((PutObjectRequest obj) -> obj.bucket().equals(S3_BUCKET_NAME)),
+            isA(RequestBody.class));
+        verify(mockS3, times(2)).putObject(
+            argThat((PutObjectRequest obj) -> obj.bucket().equals(otherS3BucketName)),
+            isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithS3BucketRoutingPolicyThenPointerCarriesSelectedBucket() {
+        String largeS3BucketName = "large-test-bucket-name";
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3BucketRoutingPolicy(S3BucketRoutingPolicies.bySizeClass(S3_BUCKET_NAME,
+                        ImmutableMap.of((long) MORE_THAN_SQS_SIZE_LIMIT, largeS3BucketName)));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        PayloadS3Pointer pointer = PayloadS3Pointer.fromJson(sendMessageRequestCaptor.getValue().messageBody());
+        assertEquals(largeS3BucketName, pointer.getS3BucketName());
+    }
+
+    @Test
+    public void testWhenDeleteMessageWithS3BucketRoutingPolicyThenPayloadIsDeletedFromBucketInReceiptHandle() {
+        String otherS3BucketName = "other-test-bucket-name";
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withS3BucketRoutingPolicy(S3BucketRoutingPolicies.roundRobin(S3_BUCKET_NAME));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String randomS3Key = UUID.randomUUID().toString();
+        String pointer = new PayloadS3Pointer(otherS3BucketName, randomS3Key).toJson();
+        String receiptHandle = AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle("receipt-handle", pointer);
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder().queueUrl(SQS_QUEUE_URL).receiptHandle(receiptHandle).build());
+
+        verify(mockS3).deleteObject(eq(DeleteObjectRequest.builder().bucket(otherS3BucketName).key(randomS3Key).build()));
+    }
+
+    @Test
+    public void testWhenSendLargeMessageWithCustomPayloadStoreThenPayloadIsStoredThroughIt() {
+        PayloadStore customPayloadStore = mock(PayloadStore.class);
+        String pointer = new PayloadS3Pointer(S3_BUCKET_NAME, S3_KEY_UUID).toJson();
+        when(customPayloadStore.storeOriginalPayload(any(String.class), any(String.class))).thenReturn(pointer);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(customPayloadStore);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(customPayloadStore).storeOriginalPayload(messageBody, S3_KEY_UUID);
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        assertEquals(pointer, sendMessageRequestCaptor.getValue().messageBody());
+        verifyNoInteractions(mockS3);
+    }
+
+    @Test
+    public void testWhenReceiveAndDeleteLargeMessageWithCustomPayloadStoreThenPayloadIsReadAndDeletedThroughIt() {
+        PayloadStore customPayloadStore = mock(PayloadStore.class);
+        String pointer = new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson();
+        String expectedMessage = "LargeMessage";
+        when(customPayloadStore.getOriginalPayload(pointer)).thenReturn(expectedMessage);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(customPayloadStore);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        Message message = Message.builder()
+                .messageAttributes(ImmutableMap.of(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, MessageAttributeValue.builder().build()))
+                .body(pointer)
+                .receiptHandle("receipt-handle")
+                .build();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+                ReceiveMessageResponse.builder().messages(message).build());
+
+        Message actualMessage = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().queueUrl(SQS_QUEUE_URL).build())
+                .messages().get(0);
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(SQS_QUEUE_URL)
+                .receiptHandle(actualMessage.receiptHandle())
+                .build());
+
+        assertEquals(expectedMessage, actualMessage.body());
+        verify(customPayloadStore).deleteOriginalPayload(pointer);
+        verifyNoInteractions(mockS3);
+    }
+
+    @Test
+    public void testWhenPayloadStoreDecoratorsAreConfiguredThenTheyWrapTheDefaultStoreInOrder() {
+        List<String> calls = new ArrayList<>();
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withPayloadStoreDecorator(store -> new RecordingPayloadStore(store, "inner", calls))
+                .withPayloadStoreDecorator(store -> new RecordingPayloadStore(store, "outer", calls));
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        assertEquals(Arrays.asList("outer", "inner"), calls);
+        verify(mockS3).putObject(isA(PutObjectRequest.class), isA(RequestBody.class));
+    }
+
+    @Test
+    public void testWhenCustomPayloadStoreIsUsedWithS3BucketRoutingPolicyThenClientCreationFails() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mock(PayloadStore.class))
+                .withS3BucketRoutingPolicy(S3BucketRoutingPolicies.roundRobin(S3_BUCKET_NAME));
+
+        assertThrows(SdkClientException.class,
+                () -> new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+    }
+
+    @Test
+    public void testWhenClientIsClosedThenCloseablePayloadStoreIsClosed() throws Exception {
+        PayloadStore customPayloadStore = mock(PayloadStore.class,
+                withSettings().extraInterfaces(AutoCloseable.class));
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(customPayloadStore);
+
+        new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration).close();
+
+        verify((AutoCloseable) customPayloadStore).close();
+    }
+
+    @Test
+    public void testWhenInProcessPayloadStoreIsEnabledThenMessagesConsumedInProcessDoNotUseS3() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withInProcessPayloadStoreEnabled(4 * MORE_THAN_SQS_SIZE_LIMIT, InProcessPayloadStore.UploadMode.ON_EVICTION);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        SendMessageRequest sentRequest = sendMessageRequestCaptor.getValue();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(ReceiveMessageResponse.builder()
+                .messages(Message.builder()
+                        .body(sentRequest.messageBody())
+                        .messageAttributes(sentRequest.messageAttributes())
+                        .receiptHandle("receipt-handle")
+                        .build())
+                .build());
+        Message message = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().queueUrl(SQS_QUEUE_URL).build())
+                .messages().get(0);
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(SQS_QUEUE_URL)
+                .receiptHandle(message.receiptHandle())
+                .build());
+
+        assertEquals(messageBody, message.body());
+        verifyNoInteractions(mockS3);
+    }
+
+    @Test
+    public void testWhenInProcessPayloadStoreIsUsedWithCustomPayloadStoreThenClientCreationFails() {
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mock(PayloadStore.class))
+                .withInProcessPayloadStoreEnabled(1024, InProcessPayloadStore.UploadMode.ASYNC);
+
+        assertThrows(SdkClientException.class,
+                () -> new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+    }
+
+    @Test
+    public void testWhenInProcessPayloadStoreIsEnabledAndPayloadNotFoundIsIgnoredThenClientCreationFails() {
+        for (InProcessPayloadStore.UploadMode uploadMode : InProcessPayloadStore.UploadMode.values()) {
+            ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                    .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                    .withIgnorePayloadNotFound(true)
+                    .withInProcessPayloadStoreEnabled(1024, uploadMode);
+
+            assertThrows(SdkClientException.class,
+                    () -> new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+        }
+    }
+
+    @Test
+    public void testWhenPayloadBufferPoolIsSetThenPayloadsAreStagedInPooledBuffers() throws Exception {
+        PayloadBufferPool payloadBufferPool = new PayloadBufferPool();
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withServerSideEncryption(SERVER_SIDE_ENCRYPTION_DEFAULT_STRATEGY)
+                .withPayloadBufferPool(payloadBufferPool);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        String messageBody = generateStringWithLength(MORE_THAN_SQS_SIZE_LIMIT);
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<PutObjectRequest> putObjectRequestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<RequestBody> requestBodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
+        verify(mockS3).putObject(putObjectRequestCaptor.capture(), requestBodyCaptor.capture());
+        assertEquals(S3_BUCKET_NAME, putObjectRequestCaptor.getValue().bucket());
+        assertEquals(ServerSideEncryption.AWS_KMS, putObjectRequestCaptor.getValue().serverSideEncryption());
+        assertEquals(MORE_THAN_SQS_SIZE_LIMIT, requestBodyCaptor.getValue().optionalContentLength().get());
+
+        Message message = Message.builder()
+                .messageAttributes(ImmutableMap.of(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME, MessageAttributeValue.builder().build()))
+                .body(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson())
+                .build();
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+                ReceiveMessageResponse.builder().messages(message).build());
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().contentLength((long) MORE_THAN_SQS_SIZE_LIMIT).build(),
+                AbortableInputStream.create(new StringInputStream(messageBody))));
+
+        Message actualMessage = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().build()).messages().get(0);
+
+        assertEquals(messageBody, actualMessage.body());
+        assertEquals(2, payloadBufferPool.getAcquireCount());
+        assertEquals(0, payloadBufferPool.getOutstandingBufferCount());
+    }
+
+    @Test
+    public void testWhenPayloadsExceedReceiveByteBudgetThenExtraMessagesAreMadeVisibleAgain() {
+        PayloadByteBudget payloadByteBudget = new PayloadByteBudget(MORE_THAN_SQS_SIZE_LIMIT + 1);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withPayloadSupportEnabled(mockS3, S3_BUCKET_NAME)
+                .withReceivePayloadByteBudget(payloadByteBudget);
+        SqsClient sqsExtended = spy(new AmazonSQSExtendedClient(mockSqsBackend, extendedClientConfiguration));
+
+        List<Message> messages = IntStream.range(0, 2)
+                .mapToObj(i -> Message.builder()
+                        .messageAttributes(ImmutableMap.of(SQSExtendedClientConstants.RESERVED_ATTRIBUTE_NAME,
+                                MessageAttributeValue.builder()
+                                        .dataType("Number")
+                                        .stringValue(Integer.toString(MORE_THAN_SQS_SIZE_LIMIT))
+                                        .build()))
+                        .body(new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key" + i).toJson())
+                        .receiptHandle("receipt-handle-" + i)
+                        .build())
+                .collect(Collectors.toList());
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(
+                ReceiveMessageResponse.builder().messages(messages).build());
+        when(mockSqsBackend.changeMessageVisibilityBatch(isA(ChangeMessageVisibilityBatchRequest.class))).thenReturn(
+                ChangeMessageVisibilityBatchResponse.builder().build());
+        when(mockS3.getObject(isA(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(), AbortableInputStream.create(new StringInputStream("LargeMessage"))));
+
+        ReceiveMessageResponse response = sqsExtended.receiveMessage(
+                ReceiveMessageRequest.builder().queueUrl(SQS_QUEUE_URL).build());
+
+        assertEquals(1, response.messages().size());
+        assertEquals("LargeMessage", response.messages().get(0).body());
+        verify(mockS3, times(1)).getObject(isA(GetObjectRequest.class));
+        ArgumentCaptor<ChangeMessageVisibilityBatchRequest> requestCaptor =
+                ArgumentCaptor.forClass(ChangeMessageVisibilityBatchRequest.class);
+        verify(mockSqsBackend).changeMessageVisibilityBatch(requestCaptor.capture());
+        assertEquals(SQS_QUEUE_URL, requestCaptor.getValue().queueUrl());
+        assertEquals(1, requestCaptor.getValue().entries().size());
+        assertEquals("receipt-handle-1", requestCaptor.getValue().entries().get(0).receiptHandle());
+        assertEquals(0, requestCaptor.getValue().entries().get(0).visibilityTimeout());
+        assertEquals(0, payloadByteBudget.getReservedBytes());
+    }
+
     private void testReceiveMessage_when_MessageIsLarge(String reservedAttributeName) {
         String pointer = new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson();
         Message message = Message.builder()
@@ -832,4 +1464,40 @@ public class AmazonSQSExtendedClientTest {
     private String getSampleLargeReceiptHandle(String originalReceiptHandle) {
         return getLargeReceiptHandle(UUID.randomUUID().toString(), originalReceiptHandle);
     }
+
+    private static class RecordingPayloadStore implements PayloadStore {
+        private final PayloadStore delegate;
+        private final String name;
+        private final List<String> calls;
+
+        RecordingPayloadStore(PayloadStore delegate, String name, List<String> calls) {
+            this.delegate = delegate;
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Override
+        public String storeOriginalPayload(String payload) {
+            calls.add(name);
+            return delegate.storeOriginalPayload(payload);
+        }
+
+        @Override
+        public String storeOriginalPayload(String payload, String s3Key) {
+            calls.add(name);
+            return delegate.storeOriginalPayload(payload, s3Key);
+        }
+
+        @Override
+        public String getOriginalPayload(String payloadPointer) {
+            calls.add(name);
+            return delegate.getOriginalPayload(payloadPointer);
+        }
+
+        @Override
+        public void deleteOriginalPayload(String payloadPointer) {
+            calls.add(name);
+            delegate.deleteOriginalPayload(payloadPointer);
+        }
+    }
 }
@@ -224,4 +224,35 @@ public class ExtendedClientConfigurationTest {
 
         assertThrows(SdkClientException.class, () -> extendedClientConfiguration.withS3KeyPrefix(s3KeyPrefix));
     }
+
+    @Test
+    public void testS3KeyPartitionerIsCopied() {
+        S3KeyPartitioner s3KeyPartitioner = S3KeyPartitioners.hashed(16);
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withS3KeyPartitioner(s3KeyPartitioner);
+
+        ExtendedClientConfiguration newExtendedClientConfig = new ExtendedClientConfiguration(extendedClientConfiguration);
+
+        assertEquals(s3KeyPartitioner, newExtendedClientConfig.getS3KeyPartitioner());
+    }
+
+    @Test
+    public void testS3KeyPartitionerWithALargeS3KeyPrefix() {
+        int maxS3KeyPrefixLength = SQSExtendedClientConstants.MAX_S3_KEY_PREFIX_LENGTH;
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withS3KeyPrefix(generateStringWithLength(maxS3KeyPrefixLength));
+
+        assertThrows(SdkClientException.class,
+                () -> extendedClientConfiguration.withS3KeyPartitioner(S3KeyPartitioners.hashed(16)));
+    }
+
+    @Test
+    public void testLargeS3KeyPrefixWithS3KeyPartitioner() {
+        int maxS3KeyPrefixLength = SQSExtendedClientConstants.MAX_S3_KEY_PREFIX_LENGTH;
+        ExtendedClientConfiguration extendedClientConfiguration = new ExtendedClientConfiguration()
+                .withS3KeyPartitioner(S3KeyPartitioners.dateHour());
+
+        assertThrows(SdkClientException.class,
+                () -> extendedClientConfiguration.withS3KeyPrefix(generateStringWithLength(maxS3KeyPrefixLength)));
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the ExtendedClientMetrics class.
+ */
+public class ExtendedClientMetricsTest {
+
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    @Test
+    public void testRecordedValuesAreInSnapshot() {
+        ExtendedClientMetrics metrics = new ExtendedClientMetrics();
+
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(ExtendedClientMetric.PAYLOAD_STORE, SQS_QUEUE_URL, i * 1000L, 1024L, i != 100);
+        }
+        metrics.increment(ExtendedClientMetric.PAYLOAD_NOT_FOUND, null);
+
+        Map<ExtendedClientMetric, Map<String, ExtendedClientMetrics.OperationSnapshot>> snapshot = metrics.snapshot();
+        ExtendedClientMetrics.OperationSnapshot store = snapshot.get(ExtendedClientMetric.PAYLOAD_STORE).get(SQS_QUEUE_URL);
+
+        assertEquals(100, store.getCount());
+        assertEquals(1, store.getFailureCount());
+        assertEquals(100 * 1024L, store.getTotalPayloadBytes());
+        assertEquals(100000L, store.getLatencyNanos().getMax());
+        assertEquals(1024L, store.getPayloadBytes().getPercentile(50));
+        assertEquals(1, snapshot.get(ExtendedClientMetric.PAYLOAD_NOT_FOUND).get("").getCount());
+        assertTrue(snapshot.get(ExtendedClientMetric.PAYLOAD_FETCH).isEmpty());
+    }
+
+    @Test
+    public void testPercentilesAreWithinAFactorOfTwo() {
+        ExtendedClientMetrics metrics = new ExtendedClientMetrics();
+
+        for (long latency = 1; latency <= 10000; latency++) {
+            metrics.record(ExtendedClientMetric.PAYLOAD_FETCH, SQS_QUEUE_URL, latency, -1L, true);
+        }
+
+        ExtendedClientMetrics.HistogramSnapshot latencies = metrics.snapshot()
+            .get(ExtendedClientMetric.PAYLOAD_FETCH).get(SQS_QUEUE_URL).getLatencyNanos();
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(percentile / 100 * 10000);
+            long estimate = latencies.getPercentile(percentile);
+            assertTrue(estimate >= exact && estimate < 2 * exact, percentile + ": " + estimate);
+        }
+        assertEquals(10000L, latencies.getPercentile(100));
+    }
+
+    @Test
+    public void testRecordedValuesArePublished() {
+        MetricPublisher metricPublisher = mock(MetricPublisher.class);
+        ExtendedClientMetrics metrics = new ExtendedClientMetrics(metricPublisher);
+
+        metrics.record(ExtendedClientMetric.PAYLOAD_DELETE, SQS_QUEUE_URL, 5000L, -1L, true);
+
+        ArgumentCaptor<MetricCollection> captor = ArgumentCaptor.forClass(MetricCollection.class);
+        verify(metricPublisher).publish(captor.capture());
+        MetricCollection metricCollection = captor.getValue();
+        assertEquals(ExtendedClientMetrics.METRIC_COLLECTION_NAME, metricCollection.name());
+        assertEquals("PAYLOAD_DELETE", metricCollection.metricValues(ExtendedClientMetrics.OPERATION).get(0));
+        assertEquals(SQS_QUEUE_URL, metricCollection.metricValues(ExtendedClientMetrics.QUEUE_URL).get(0));
+        assertEquals(Duration.ofNanos(5000L), metricCollection.metricValues(ExtendedClientMetrics.DURATION).get(0));
+        assertTrue(metricCollection.metricValues(ExtendedClientMetrics.PAYLOAD_BYTES).isEmpty());
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the ExtendedQueuePublisher class.
+ */
+public class ExtendedQueuePublisherTest {
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    private SqsAsyncClient mockSqs;
+    private ExtendedQueuePublisher publisher;
+    private RecordingSubscriber subscriber;
+
+    @BeforeEach
+    public void setupPublisher() {
+        mockSqs = mock(SqsAsyncClient.class);
+        publisher = new ExtendedQueuePublisher(mockSqs, ReceiveMessageRequest.builder()
+                .queueUrl(SQS_QUEUE_URL)
+                .maxNumberOfMessages(10)
+                .waitTimeSeconds(20)
+                .build());
+        subscriber = new RecordingSubscriber();
+    }
+
+    @Test
+    public void testNothingIsReceivedWithoutDemand() {
+        publisher.subscribe(subscriber);
+
+        verifyNoInteractions(mockSqs);
+    }
+
+    @Test
+    public void testReceivesAreLimitedToOutstandingDemand() {
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(3)))
+                .thenReturn(CompletableFuture.completedFuture(response(2)));
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(3);
+        subscriber.subscription.request(2);
+
+        ArgumentCaptor<ReceiveMessageRequest> requestCaptor = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        verify(mockSqs, times(2)).receiveMessage(requestCaptor.capture());
+        assertEquals(3, requestCaptor.getAllValues().get(0).maxNumberOfMessages());
+        assertEquals(2, requestCaptor.getAllValues().get(1).maxNumberOfMessages());
+        assertEquals(20, requestCaptor.getAllValues().get(0).waitTimeSeconds());
+        assertEquals(5, subscriber.messages.size());
+    }
+
+    @Test
+    public void testEmptyReceivesArePolledAgainWhileDemandRemains() {
+        CompletableFuture<ReceiveMessageResponse> pending = new CompletableFuture<>();
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(0)))
+                .thenReturn(pending);
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.request(1);
+        pending.complete(response(2));
+
+        verify(mockSqs, times(2)).receiveMessage(any(ReceiveMessageRequest.class));
+        assertEquals(2, subscriber.messages.size());
+    }
+
+    @Test
+    public void testNoReceiveIsStartedAfterCancel() {
+        CompletableFuture<ReceiveMessageResponse> pending = new CompletableFuture<>();
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(pending);
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(5);
+        subscriber.subscription.cancel();
+        pending.complete(response(2));
+
+        verify(mockSqs, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
+        assertTrue(subscriber.messages.isEmpty());
+    }
+
+    @Test
+    public void testReceiveFailureTerminatesSubscription() {
+        CompletableFuture<ReceiveMessageResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(SqsException.builder().message("failed").build());
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(failed);
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.error instanceof SqsException);
+        verify(mockSqs, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
+    }
+
+    @Test
+    public void testWrappedReceiveFailureIsSignalledUnwrapped() {
+        CompletableFuture<ReceiveMessageResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new CompletionException(SqsException.builder().message("failed").build()));
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(failed);
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.error instanceof SqsException);
+    }
+
+    @Test
+    public void testNonPositiveRequestIsSignalledAsError() {
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        verifyNoInteractions(mockSqs);
+    }
+
+    @Test
+    public void testMessagesAreDeliveredInOrder() {
+        when(mockSqs.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(4)));
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(4);
+
+        assertEquals(IntStream.range(0, 4).mapToObj(Integer::toString).collect(Collectors.toList()),
+                subscriber.messages.stream().map(Message::messageId).collect(Collectors.toList()));
+        assertNull(subscriber.error);
+    }
+
+    private static ReceiveMessageResponse response(int messageCount) {
+        return ReceiveMessageResponse.builder()
+                .messages(IntStream.range(0, messageCount)
+                        .mapToObj(i -> Message.builder().messageId(Integer.toString(i)).receiptHandle("handle-" + i).build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Message> {
+        private final List<Message> messages = new ArrayList<>();
+        private Subscription subscription;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Message message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
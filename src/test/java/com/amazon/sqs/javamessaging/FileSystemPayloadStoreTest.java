@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import static com.amazon.sqs.javamessaging.StringTestUtil.generateStringWithLength;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the FileSystemPayloadStore class.
+ */
+public class FileSystemPayloadStoreTest {
+    private static final String STORE_NAME = "test-store-name";
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    @TempDir
+    Path rootDirectory;
+
+    private FileSystemPayloadStore payloadStore;
+
+    @BeforeEach
+    public void setupStore() {
+        payloadStore = new FileSystemPayloadStore(rootDirectory, STORE_NAME);
+    }
+
+    @Test
+    public void testStoredPayloadIsWrittenUnderKeyAndReturnedFromPointer() throws IOException {
+        String payload = "payload \u00e9\u4e2d";
+
+        String pointer = payloadStore.storeOriginalPayload(payload, "prefix/partition/key");
+
+        PayloadS3Pointer s3Pointer = PayloadS3Pointer.fromJson(pointer);
+        assertEquals(STORE_NAME, s3Pointer.getS3BucketName());
+        assertEquals("prefix/partition/key", s3Pointer.getS3Key());
+        Path file = payloadStore.getRootDirectory().resolve("prefix/partition/key");
+        assertEquals(payload, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertEquals(payload, payloadStore.getOriginalPayload(pointer));
+    }
+
+    @Test
+    public void testStoreLeavesNoTemporaryFiles() throws IOException {
+        payloadStore.storeOriginalPayload("first");
+        payloadStore.storeOriginalPayload("second", "key");
+
+        try (Stream<Path> files = Files.list(payloadStore.getRootDirectory())) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testStoreReplacesExistingPayload() {
+        payloadStore.storeOriginalPayload("first", "key");
+        String pointer = payloadStore.storeOriginalPayload("second", "key");
+
+        assertEquals("second", payloadStore.getOriginalPayload(pointer));
+    }
+
+    @Test
+    public void testDeletedPayloadIsReportedAsMissingKey() {
+        String pointer = payloadStore.storeOriginalPayload("payload");
+
+        payloadStore.deleteOriginalPayload(pointer);
+        payloadStore.deleteOriginalPayload(pointer);
+
+        SdkClientException exception = assertThrows(SdkClientException.class,
+                () -> payloadStore.getOriginalPayload(pointer));
+        assertInstanceOf(NoSuchKeyException.class, exception.getCause());
+    }
+
+    @Test
+    public void testKeysOutsideRootDirectoryAreRejected() {
+        assertThrows(SdkClientException.class, () -> payloadStore.storeOriginalPayload("payload", "../escaped"));
+        assertThrows(SdkClientException.class, () -> payloadStore.storeOriginalPayload("payload", "a/../../escaped"));
+        assertThrows(SdkClientException.class, () -> payloadStore.storeOriginalPayload("payload", ""));
+    }
+
+    @Test
+    public void testPointersOfOtherStoresAreRejected() {
+        String pointer = new PayloadS3Pointer("other-store-name", "key").toJson();
+
+        assertThrows(SdkClientException.class, () -> payloadStore.getOriginalPayload(pointer));
+        assertThrows(SdkClientException.class, () -> payloadStore.deleteOriginalPayload(pointer));
+    }
+
+    @Test
+    public void testExtendedClientOffloadsReceivesAndDeletesThroughStore() throws IOException {
+        SqsClient mockSqsBackend = mock(SqsClient.class);
+        SqsClient sqsExtended = new AmazonSQSExtendedClient(mockSqsBackend,
+                new ExtendedClientConfiguration().withPayloadSupportEnabled(payloadStore));
+        String messageBody = generateStringWithLength(300000);
+
+        sqsExtended.sendMessage(SendMessageRequest.builder().queueUrl(SQS_QUEUE_URL).messageBody(messageBody).build());
+
+        ArgumentCaptor<SendMessageRequest> sendMessageRequestCaptor = ArgumentCaptor.forClass(SendMessageRequest.class);
+        verify(mockSqsBackend).sendMessage(sendMessageRequestCaptor.capture());
+        SendMessageRequest sentRequest = sendMessageRequestCaptor.getValue();
+        Path file = payloadStore.getRootDirectory()
+                .resolve(PayloadS3Pointer.fromJson(sentRequest.messageBody()).getS3Key());
+        assertTrue(Files.exists(file));
+
+        when(mockSqsBackend.receiveMessage(isA(ReceiveMessageRequest.class))).thenReturn(ReceiveMessageResponse.builder()
+                .messages(Message.builder()
+                        .body(sentRequest.messageBody())
+                        .messageAttributes(sentRequest.messageAttributes())
+                        .receiptHandle("receipt-handle")
+                        .build())
+                .build());
+        Message message = sqsExtended.receiveMessage(ReceiveMessageRequest.builder().queueUrl(SQS_QUEUE_URL).build())
+                .messages().get(0);
+        assertEquals(messageBody, message.body());
+
+        sqsExtended.deleteMessage(DeleteMessageRequest.builder()
+                .queueUrl(SQS_QUEUE_URL)
+                .receiptHandle(message.receiptHandle())
+                .build());
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+import software.amazon.payloadoffloading.PayloadStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the InProcessPayloadStore class.
+ */
+public class InProcessPayloadStoreTest {
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+
+    private PayloadStore mockDelegate;
+
+    @BeforeEach
+    public void setupDelegate() {
+        mockDelegate = mock(PayloadStore.class);
+    }
+
+    @Test
+    public void testPayloadStoredAndDeletedInMemoryIsNeverWritten() {
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 1024,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+
+        String pointer = store.storeOriginalPayload("payload", "key");
+        assertEquals(new PayloadS3Pointer(S3_BUCKET_NAME, "key").toJson(), pointer);
+        assertEquals("payload", store.getOriginalPayload(pointer));
+        store.deleteOriginalPayload(pointer);
+        store.close();
+
+        verifyNoInteractions(mockDelegate);
+        assertEquals(0, store.getRetainedBytes());
+    }
+
+    @Test
+    public void testOldestPayloadIsWrittenWhenBudgetIsExceeded() {
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 20,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+        String firstPointer = store.storeOriginalPayload("first", "first-key");
+        when(mockDelegate.getOriginalPayload(firstPointer)).thenReturn("first");
+
+        String secondPointer = store.storeOriginalPayload("second", "second-key");
+
+        verify(mockDelegate).storeOriginalPayload("first", "first-key");
+        verify(mockDelegate, never()).storeOriginalPayload("second", "second-key");
+        assertEquals(12, store.getRetainedBytes());
+        assertEquals("first", store.getOriginalPayload(firstPointer));
+        assertEquals("second", store.getOriginalPayload(secondPointer));
+        verify(mockDelegate).getOriginalPayload(firstPointer);
+
+        store.deleteOriginalPayload(firstPointer);
+        verify(mockDelegate).deleteOriginalPayload(firstPointer);
+    }
+
+    @Test
+    public void testEvictedPayloadIsKeptWhenWriteFails() {
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 20,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+        String firstPointer = store.storeOriginalPayload("first", "first-key");
+        when(mockDelegate.storeOriginalPayload("first", "first-key")).thenThrow(SdkClientException.create("failed"));
+
+        assertThrows(SdkClientException.class, () -> store.storeOriginalPayload("second", "second-key"));
+
+        assertEquals("first", store.getOriginalPayload(firstPointer));
+    }
+
+    @Test
+    public void testPayloadLargerThanBudgetIsWrittenDirectly() {
+        String pointer = new PayloadS3Pointer(S3_BUCKET_NAME, "key").toJson();
+        when(mockDelegate.storeOriginalPayload("payload", "key")).thenReturn(pointer);
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 8,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+
+        assertEquals(pointer, store.storeOriginalPayload("payload", "key"));
+        assertEquals(0, store.getRetainedBytes());
+    }
+
+    @Test
+    public void testAsyncModeWritesPayloadInBackgroundAndServesItFromMemory() {
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 1024,
+                InProcessPayloadStore.UploadMode.ASYNC);
+
+        String pointer = store.storeOriginalPayload("payload", "key");
+
+        verify(mockDelegate, timeout(5000)).storeOriginalPayload("payload", "key");
+        assertEquals("payload", store.getOriginalPayload(pointer));
+        verify(mockDelegate, never()).getOriginalPayload(anyString());
+
+        store.deleteOriginalPayload(pointer);
+        verify(mockDelegate).deleteOriginalPayload(pointer);
+        store.close();
+    }
+
+    @Test
+    public void testCloseWritesPayloadsKeptInMemory() {
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 1024,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+        store.storeOriginalPayload("payload", "key");
+
+        store.close();
+
+        verify(mockDelegate).storeOriginalPayload("payload", "key");
+        assertEquals(0, store.getRetainedBytes());
+    }
+
+    @Test
+    public void testPointersOfOtherBucketsAreDelegated() {
+        String pointer = new PayloadS3Pointer("other-bucket-name", "key").toJson();
+        InProcessPayloadStore store = new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 1024,
+                InProcessPayloadStore.UploadMode.ON_EVICTION);
+        store.storeOriginalPayload("payload", "key");
+
+        store.getOriginalPayload(pointer);
+        store.deleteOriginalPayload(pointer);
+
+        verify(mockDelegate).getOriginalPayload(pointer);
+        verify(mockDelegate).deleteOriginalPayload(pointer);
+    }
+
+    @Test
+    public void testInvalidBudgetIsRejected() {
+        assertThrows(SdkClientException.class, () -> new InProcessPayloadStore(mockDelegate, S3_BUCKET_NAME, 0,
+                InProcessPayloadStore.UploadMode.ASYNC));
+    }
+}
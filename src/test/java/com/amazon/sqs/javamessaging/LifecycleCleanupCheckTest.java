@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationResponse;
+import software.amazon.awssdk.services.s3.model.LifecycleExpiration;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.Tag;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LifecycleCleanupCheckTest {
+    private static final String S3_KEY_PREFIX = "payloads/orders/";
+    private static final Duration PAYLOAD_TTL = Duration.ofDays(15);
+
+    @Test
+    public void testWhenRuleExpiresPrefixLateEnoughThenItMatches() {
+        assertTrue(LifecycleCleanupCheck.hasMatchingRule(
+            Collections.singletonList(rule(ExpirationStatus.ENABLED, 15, prefixFilter("payloads/"))),
+            S3_KEY_PREFIX, PAYLOAD_TTL));
+        assertTrue(LifecycleCleanupCheck.hasMatchingRule(
+            Collections.singletonList(rule(ExpirationStatus.ENABLED, 30, LifecycleRuleFilter.builder().build())),
+            S3_KEY_PREFIX, PAYLOAD_TTL));
+    }
+
+    @Test
+    public void testWhenRuleDoesNotCoverAllPayloadsLongEnoughThenItDoesNotMatch() {
+        assertFalse(LifecycleCleanupCheck.hasMatchingRule(Arrays.asList(
+                rule(ExpirationStatus.DISABLED, 15, prefixFilter("payloads/")),
+                rule(ExpirationStatus.ENABLED, 14, prefixFilter("payloads/")),
+                rule(ExpirationStatus.ENABLED, 15, prefixFilter("payloads/orders/eu/")),
+                rule(ExpirationStatus.ENABLED, 15, LifecycleRuleFilter.builder()
+                    .tag(Tag.builder().key("expire").value("true").build())
+                    .build())),
+            S3_KEY_PREFIX, PAYLOAD_TTL));
+    }
+
+    @Test
+    public void testRetentionPeriodIsComparedWithPayloadTtl() {
+        assertFalse(LifecycleCleanupCheck.checkRetentionPeriod("queue-url", PAYLOAD_TTL,
+            request -> retentionPeriod("1296000")).join());
+        assertTrue(LifecycleCleanupCheck.checkRetentionPeriod("queue-url", PAYLOAD_TTL,
+            request -> retentionPeriod("1209600")).join());
+    }
+
+    @Test
+    public void testWhenRetentionPeriodCannotBeReadThenCheckPasses() {
+        assertTrue(LifecycleCleanupCheck.checkRetentionPeriod("queue-url", PAYLOAD_TTL, request -> {
+            CompletableFuture<GetQueueAttributesResponse> response = new CompletableFuture<>();
+            response.completeExceptionally(SqsException.builder().message("denied").build());
+            return response;
+        }).join());
+    }
+
+    @Test
+    public void testWhenBucketHasNoLifecycleConfigurationThenCheckFails() {
+        CompletableFuture<Void> check = LifecycleCleanupCheck.check(Collections.singletonList("bucket"),
+            S3_KEY_PREFIX, PAYLOAD_TTL, request -> {
+                CompletableFuture<GetBucketLifecycleConfigurationResponse> response = new CompletableFuture<>();
+                response.completeExceptionally(S3Exception.builder().statusCode(404).build());
+                return response;
+            });
+
+        CompletionException e = assertThrows(CompletionException.class, check::join);
+        assertInstanceOf(SdkClientException.class, e.getCause());
+    }
+
+    @Test
+    public void testWhenLifecycleConfigurationCannotBeReadThenCheckPasses() {
+        CompletableFuture<Void> check = LifecycleCleanupCheck.check(Collections.singletonList("bucket"),
+            S3_KEY_PREFIX, PAYLOAD_TTL, request -> {
+                throw S3Exception.builder().statusCode(403).build();
+            });
+
+        check.join();
+    }
+
+    @Test
+    public void testWhenEveryBucketHasMatchingRuleThenCheckPasses() {
+        CompletableFuture<Void> check = LifecycleCleanupCheck.check(Arrays.asList("bucket-a", "bucket-b"),
+            S3_KEY_PREFIX, PAYLOAD_TTL, request -> CompletableFuture.completedFuture(
+                GetBucketLifecycleConfigurationResponse.builder()
+                    .rules(rule(ExpirationStatus.ENABLED, 20, prefixFilter(S3_KEY_PREFIX)))
+                    .build()));
+
+        check.join();
+    }
+
+    private static LifecycleRuleFilter prefixFilter(String prefix) {
+        return LifecycleRuleFilter.builder().prefix(prefix).build();
+    }
+
+    private static LifecycleRule rule(ExpirationStatus status, int days, LifecycleRuleFilter filter) {
+        return LifecycleRule.builder()
+            .status(status)
+            .expiration(LifecycleExpiration.builder().days(days).build())
+            .filter(filter)
+            .build();
+    }
+
+    private static CompletableFuture<GetQueueAttributesResponse> retentionPeriod(String seconds) {
+        return CompletableFuture.completedFuture(GetQueueAttributesResponse.builder()
+            .attributes(Collections.singletonMap(QueueAttributeName.MESSAGE_RETENTION_PERIOD, seconds))
+            .build());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the MessageBatchAcknowledger class.
+ */
+public class MessageBatchAcknowledgerTest {
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+
+    private SqsAsyncClient mockSqs;
+    private Subscription mockSubscription;
+
+    @BeforeEach
+    public void setupMocks() {
+        mockSqs = mock(SqsAsyncClient.class);
+        mockSubscription = mock(Subscription.class);
+        when(mockSqs.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(DeleteMessageBatchResponse.builder().build()));
+    }
+
+    @Test
+    public void testFullBatchesAreDeletedAndRemainderIsFlushedOnComplete() throws Exception {
+        MessageBatchAcknowledger acknowledger = new MessageBatchAcknowledger(mockSqs, SQS_QUEUE_URL, 10,
+                Duration.ofMinutes(1));
+        acknowledger.onSubscribe(mockSubscription);
+        verify(mockSubscription).request(40);
+
+        for (int i = 0; i < 12; i++) {
+            acknowledger.onNext(message(i));
+        }
+        assertFalse(acknowledger.getCompletion().isDone());
+        acknowledger.onComplete();
+
+        ArgumentCaptor<DeleteMessageBatchRequest> requestCaptor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(mockSqs, times(2)).deleteMessageBatch(requestCaptor.capture());
+        assertEquals(10, requestCaptor.getAllValues().get(0).entries().size());
+        assertEquals(SQS_QUEUE_URL, requestCaptor.getAllValues().get(0).queueUrl());
+        assertEquals("handle-10,handle-11", requestCaptor.getAllValues().get(1).entries().stream()
+                .map(DeleteMessageBatchRequestEntry::receiptHandle)
+                .collect(Collectors.joining(",")));
+        verify(mockSubscription).request(10);
+        verify(mockSubscription).request(2);
+        acknowledger.getCompletion().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPartialBatchIsDeletedAfterMaxDelay() {
+        MessageBatchAcknowledger acknowledger = new MessageBatchAcknowledger(mockSqs, SQS_QUEUE_URL, 10,
+                Duration.ofMillis(10));
+        acknowledger.onSubscribe(mockSubscription);
+
+        acknowledger.onNext(message(0));
+
+        verify(mockSqs, timeout(5000)).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+    }
+
+    @Test
+    public void testCompletionWaitsForInFlightDeletes() {
+        CompletableFuture<DeleteMessageBatchResponse> pending = new CompletableFuture<>();
+        when(mockSqs.deleteMessageBatch(any(DeleteMessageBatchRequest.class))).thenReturn(pending);
+        MessageBatchAcknowledger acknowledger = new MessageBatchAcknowledger(mockSqs, SQS_QUEUE_URL, 1,
+                Duration.ofMinutes(1));
+        acknowledger.onSubscribe(mockSubscription);
+
+        acknowledger.onNext(message(0));
+        acknowledger.onComplete();
+        assertFalse(acknowledger.getCompletion().isDone());
+
+        pending.complete(DeleteMessageBatchResponse.builder().build());
+        assertTrue(acknowledger.getCompletion().isDone());
+    }
+
+    @Test
+    public void testUpstreamErrorCompletesExceptionallyAfterFlushing() {
+        MessageBatchAcknowledger acknowledger = new MessageBatchAcknowledger(mockSqs, SQS_QUEUE_URL, 10,
+                Duration.ofMinutes(1));
+        acknowledger.onSubscribe(mockSubscription);
+
+        acknowledger.onNext(message(0));
+        acknowledger.onError(new IllegalStateException("failed"));
+
+        verify(mockSqs).deleteMessageBatch(any(DeleteMessageBatchRequest.class));
+        assertTrue(acknowledger.getCompletion().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testInvalidBatchSizeIsRejected() {
+        assertThrows(SdkClientException.class,
+                () -> new MessageBatchAcknowledger(mockSqs, SQS_QUEUE_URL, 11, Duration.ZERO));
+    }
+
+    private static Message message(int index) {
+        return Message.builder().messageId(Integer.toString(index)).receiptHandle("handle-" + index).build();
+    }
+}
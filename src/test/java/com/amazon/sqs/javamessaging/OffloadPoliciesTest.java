@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the OffloadPolicies class.
+ */
+public class OffloadPoliciesTest {
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+    private static final int PAYLOAD_SIZE_THRESHOLD = 262144;
+
+    @Test
+    public void testSizeThresholdOffloadsMessagesAboveTheLowerThreshold() {
+        OffloadPolicy policy = OffloadPolicies.sizeThreshold(1000);
+
+        assertEquals(OffloadPolicy.Decision.INLINE, decide(policy, 900, 100));
+        assertEquals(OffloadPolicy.Decision.OFFLOAD, decide(policy, 901, 100));
+        assertEquals(OffloadPolicy.Decision.OFFLOAD,
+                decide(OffloadPolicies.sizeThreshold(), PAYLOAD_SIZE_THRESHOLD + 1, 0));
+        assertThrows(SdkClientException.class, () -> OffloadPolicies.sizeThreshold(-1));
+    }
+
+    @Test
+    public void testPerQueueUsesThePolicyOfTheQueue() {
+        OffloadPolicy policy = OffloadPolicies.perQueue(
+                Collections.singletonMap(SQS_QUEUE_URL, OffloadPolicies.sizeThreshold(0)),
+                OffloadPolicies.sizeThreshold());
+
+        assertEquals(OffloadPolicy.Decision.OFFLOAD, decide(policy, 10, 0));
+        assertEquals(OffloadPolicy.Decision.INLINE,
+                policy.decide("other-queue-url", 10, 0, PAYLOAD_SIZE_THRESHOLD, null));
+    }
+
+    @Test
+    public void testCostWeightedPicksTheCheapestDecision() {
+        OffloadPolicy policy = OffloadPolicies.costWeighted(1, 0.25);
+
+        assertEquals(OffloadPolicy.Decision.INLINE, decide(policy, 1000, 0));
+        assertEquals(OffloadPolicy.Decision.COMPRESS_INLINE, decide(policy, 200_000, 0));
+        assertEquals(OffloadPolicy.Decision.COMPRESS_INLINE, decide(policy, 300_000, 0));
+        assertEquals(OffloadPolicy.Decision.OFFLOAD, decide(policy, 1_000_000, 0));
+        assertEquals(OffloadPolicy.Decision.OFFLOAD,
+                decide(OffloadPolicies.costWeighted(1, 1), 200_000, 0));
+    }
+
+    @Test
+    public void testCostWeightedRejectsInvalidArguments() {
+        assertThrows(SdkClientException.class, () -> OffloadPolicies.costWeighted(-1, 0.5));
+        assertThrows(SdkClientException.class, () -> OffloadPolicies.costWeighted(1, 0));
+        assertThrows(SdkClientException.class, () -> OffloadPolicies.costWeighted(1, 1.5));
+    }
+
+    @Test
+    public void testInlineCompressionRoundTrips() {
+        String body = StringTestUtil.generateStringWithLength(10_000);
+
+        assertEquals(body, InlineCompression.decompress(InlineCompression.compress(body), body.length()));
+    }
+
+    @Test
+    public void testInlineDecompressionStopsAtLimit() {
+        String body = StringTestUtil.generateStringWithLength(10_000);
+
+        assertThrows(SdkClientException.class,
+                () -> InlineCompression.decompress(InlineCompression.compress(body), body.length() - 1));
+    }
+
+    private static OffloadPolicy.Decision decide(OffloadPolicy policy, long bodySize, int attributesSize) {
+        return policy.decide(SQS_QUEUE_URL, bodySize, attributesSize, PAYLOAD_SIZE_THRESHOLD, null);
+    }
+}
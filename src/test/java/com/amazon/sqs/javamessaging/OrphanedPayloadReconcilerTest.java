@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the OrphanedPayloadReconciler class.
+ */
+public class OrphanedPayloadReconcilerTest {
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String S3_KEY_PREFIX = "test-s3-key-prefix/";
+
+    private S3Client mockS3;
+
+    @BeforeEach
+    public void setupClients() {
+        mockS3 = mock(S3Client.class);
+        when(mockS3.listObjectsV2(isA(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key(S3_KEY_PREFIX + "old").lastModified(Instant.now().minus(Duration.ofDays(5))).build(),
+                        S3Object.builder().key(S3_KEY_PREFIX + "new").lastModified(Instant.now()).build())
+                .build());
+        when(mockS3.deleteObjects(isA(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+    }
+
+    @Test
+    public void testPayloadsOlderThanMaxAgeAreDeleted() {
+        PayloadSweepProgress progress = new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(4))
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withKeyRangeSplitting(false)
+                .withShortMaxPayloadAgeAllowed(true)
+                .reconcile();
+
+        verify(mockS3).listObjectsV2(argThat((ListObjectsV2Request request) ->
+                request.bucket().equals(S3_BUCKET_NAME) && request.prefix().equals(S3_KEY_PREFIX)));
+        verify(mockS3).deleteObjects(argThat((DeleteObjectsRequest request) ->
+                request.delete().objects().size() == 1
+                && request.delete().objects().get(0).key().equals(S3_KEY_PREFIX + "old")));
+        assertEquals(1, progress.getObjectsDeleted());
+    }
+
+    @Test
+    public void testDryRunOnlyCountsOrphanedPayloads() {
+        PayloadSweepProgress progress = new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(4))
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withKeyRangeSplitting(false)
+                .withShortMaxPayloadAgeAllowed(true)
+                .withDryRun(true)
+                .reconcile();
+
+        verify(mockS3, never()).deleteObjects(isA(DeleteObjectsRequest.class));
+        assertEquals(1, progress.getObjectsListed());
+    }
+
+    @Test
+    public void testMessageRetentionPeriodIsReadFromQueue() {
+        SqsClient mockSqs = mock(SqsClient.class);
+        when(mockSqs.getQueueAttributes(isA(GetQueueAttributesRequest.class))).thenReturn(
+                GetQueueAttributesResponse.builder()
+                        .attributes(Collections.singletonMap(QueueAttributeName.MESSAGE_RETENTION_PERIOD, "345600"))
+                        .build());
+
+        assertEquals(Duration.ofDays(4), OrphanedPayloadReconciler.getMessageRetentionPeriod(mockSqs, "test-queue-url"));
+    }
+
+    @Test
+    public void testMaxPayloadAgeShorterThanMaximumRetentionIsRejectedUnlessAllowed() {
+        OrphanedPayloadReconciler reconciler = new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(4))
+                .withS3KeyPrefix(S3_KEY_PREFIX);
+
+        assertThrows(SdkClientException.class, reconciler::reconcile);
+        verify(mockS3, never()).listObjectsV2(isA(ListObjectsV2Request.class));
+
+        PayloadSweepProgress progress = new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME,
+                OrphanedPayloadReconciler.MAXIMUM_MESSAGE_RETENTION_PERIOD)
+                .withS3KeyPrefix(S3_KEY_PREFIX)
+                .withKeyRangeSplitting(false)
+                .reconcile();
+        assertEquals(0, progress.getObjectsDeleted());
+    }
+
+    @Test
+    public void testInvalidArgumentsAreRejected() {
+        assertThrows(SdkClientException.class,
+                () -> new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(-1)));
+        assertThrows(SdkClientException.class,
+                () -> new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ZERO));
+        assertThrows(SdkClientException.class,
+                () -> new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(4)).withConcurrency(0));
+        assertThrows(SdkClientException.class,
+                () -> new OrphanedPayloadReconciler(mockS3, S3_BUCKET_NAME, Duration.ofDays(4)).withDeleteRateLimit(-1));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the PayloadBufferPool and PayloadBuffers classes.
+ */
+public class PayloadBufferPoolTest {
+
+    @Test
+    public void testBuffersAreRoundedUpToSizeClassesAndReused() {
+        PayloadBufferPool pool = new PayloadBufferPool(1024, 8192, 65536);
+
+        ByteBuffer buffer = pool.acquire(1500);
+        assertTrue(buffer.isDirect());
+        assertEquals(2048, buffer.capacity());
+        assertEquals(1500, buffer.limit());
+        assertEquals(1, pool.getOutstandingBufferCount());
+
+        pool.release(buffer);
+        assertEquals(2048, pool.getRetainedBytes());
+        ByteBuffer reused = pool.acquire(1100);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1100, reused.limit());
+        assertEquals(2, pool.getAcquireCount());
+        assertEquals(1, pool.getReuseCount());
+        assertEquals(2048, pool.getAllocatedBytes());
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testBuffersLargerThanMaxClassAreNotPooled() {
+        PayloadBufferPool pool = new PayloadBufferPool(1024, 8192, 65536);
+
+        ByteBuffer buffer = pool.acquire(10000);
+        assertEquals(10000, buffer.capacity());
+        assertFalse(buffer.isDirect());
+        pool.release(buffer);
+
+        assertEquals(0, pool.getAllocatedBytes());
+        assertEquals(0, pool.getRetainedBytes());
+        assertEquals(0, pool.getOutstandingBufferCount());
+    }
+
+    @Test
+    public void testLargePayloadsAreStagedInPooledDirectBuffersByDefault() {
+        PayloadBufferPool pool = new PayloadBufferPool();
+        String payload = StringTestUtil.generateStringWithLength(20 * 1024 * 1024);
+
+        ByteBuffer buffer = PayloadBuffers.encode(pool, payload);
+        assertTrue(buffer.isDirect());
+        assertEquals(PayloadBufferPool.DEFAULT_MAX_CLASS_SIZE, buffer.capacity());
+        assertEquals(payload, PayloadBuffers.decode(buffer));
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(payload.length());
+        assertSame(buffer, reused);
+        pool.release(reused);
+        assertEquals(PayloadBufferPool.DEFAULT_MAX_CLASS_SIZE, pool.getAllocatedBytes());
+    }
+
+    @Test
+    public void testPayloadsLargerThanDefaultMaxClassAreStagedOnTheHeap() {
+        PayloadBufferPool pool = new PayloadBufferPool();
+
+        ByteBuffer buffer = pool.acquire(PayloadBufferPool.DEFAULT_MAX_CLASS_SIZE + 1);
+        assertFalse(buffer.isDirect());
+        pool.release(buffer);
+
+        assertEquals(0, pool.getAllocatedBytes());
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testReleasedBuffersAreDroppedBeyondRetainedLimit() {
+        PayloadBufferPool pool = new PayloadBufferPool(1024, 8192, 4096);
+        ByteBuffer first = pool.acquire(4096);
+        ByteBuffer second = pool.acquire(4096);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(4096, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testInvalidClassSizesAreRejected() {
+        assertThrows(SdkClientException.class, () -> new PayloadBufferPool(1000, 8192, 0));
+        assertThrows(SdkClientException.class, () -> new PayloadBufferPool(8192, 1024, 0));
+    }
+
+    @Test
+    public void testEncodeMatchesStringBytes() {
+        PayloadBufferPool pool = new PayloadBufferPool(16, 1024, 4096);
+        String payload = "a\u00e9\u4e2d\ud83d\ude00\ud800b";
+        byte[] expected = payload.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = PayloadBuffers.encode(pool, payload);
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.duplicate().get(actual);
+
+        assertEquals(expected.length, PayloadBuffers.getUtf8Length(payload));
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+        assertEquals(new String(expected, StandardCharsets.UTF_8), PayloadBuffers.decode(buffer));
+        pool.release(buffer);
+    }
+
+    @Test
+    public void testDecodeHandlesHeapBuffersAndMultiByteCharactersAcrossChunks() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("a\u00e9\u4e2d\ud83d\ude00");
+        }
+        String payload = builder.toString();
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        assertEquals(payload, PayloadBuffers.decode(direct));
+        assertEquals(payload, PayloadBuffers.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void testReadFullyGrowsBufferBeyondExpectedLength() throws IOException {
+        PayloadBufferPool pool = new PayloadBufferPool(16, 1024, 4096);
+        String payload = StringTestUtil.generateStringWithLength(3000);
+
+        for (Long expectedLength : new Long[] {null, 0L, 10L, 3000L}) {
+            ByteBuffer buffer = PayloadBuffers.readFully(pool,
+                    new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), expectedLength);
+            assertEquals(payload, PayloadBuffers.decode(buffer));
+            pool.release(buffer);
+        }
+
+        assertEquals(0, pool.getOutstandingBufferCount());
+        assertFalse(pool.getRetainedBytes() > 4096);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the PayloadByteBudget class.
+ */
+public class PayloadByteBudgetTest {
+
+    @Test
+    public void testReservationsAreBoundedByBudget() {
+        PayloadByteBudget budget = new PayloadByteBudget(100);
+
+        assertTrue(budget.tryReserve(60));
+        assertTrue(budget.tryReserve(40));
+        assertFalse(budget.tryReserve(1));
+        assertEquals(100, budget.getReservedBytes());
+
+        budget.release(40);
+        assertTrue(budget.tryReserve(30));
+        assertEquals(90, budget.getReservedBytes());
+    }
+
+    @Test
+    public void testReservationLargerThanBudgetIsAllowedOnlyWhenIdle() {
+        PayloadByteBudget budget = new PayloadByteBudget(100);
+
+        assertTrue(budget.tryReserve(500));
+        assertFalse(budget.tryReserve(500));
+        budget.release(500);
+
+        assertTrue(budget.tryReserve(10));
+        assertFalse(budget.tryReserve(500));
+    }
+
+    @Test
+    public void testNonPositiveBudgetIsRejected() {
+        assertThrows(SdkClientException.class, () -> new PayloadByteBudget(0));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the PayloadFetchHedging class.
+ */
+public class PayloadFetchHedgingTest {
+    private final AtomicLong nanoTime = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    private List<Runnable> scheduledHedges;
+    private List<CompletableFuture<String>> attempts;
+
+    @BeforeEach
+    public void setupScheduler() {
+        scheduler = mock(ScheduledExecutorService.class);
+        scheduledHedges = new ArrayList<>();
+        attempts = new ArrayList<>();
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduledHedges.add(invocation.getArgument(0));
+            return mock(ScheduledFuture.class);
+        });
+    }
+
+    @Test
+    public void testHedgeWinsWhenFirstFetchIsSlow() {
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0);
+
+        CompletableFuture<String> result = hedging.fetchAsync(this::newAttempt);
+        scheduledHedges.get(0).run();
+        assertEquals(2, attempts.size());
+
+        attempts.get(1).complete("hedged");
+        attempts.get(0).complete("first");
+
+        assertEquals("hedged", result.join());
+        assertTrue(attempts.get(0).isCancelled());
+        assertEquals(1, hedging.getHedgeCount());
+        assertEquals(1, hedging.getHedgeWinCount());
+    }
+
+    @Test
+    public void testPayloadsLargerThanMaxHedgedSizeAreNotHedged() {
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0).withMaxHedgedPayloadSize(1024);
+
+        PayloadFetchHedging.withPayloadSize(4096, () -> hedging.fetchAsync(this::newAttempt));
+        PayloadFetchHedging.withPayloadSize(-1, () -> hedging.fetchAsync(this::newAttempt));
+        assertTrue(scheduledHedges.isEmpty());
+
+        PayloadFetchHedging.withPayloadSize(512, () -> hedging.fetchAsync(this::newAttempt));
+        assertEquals(1, scheduledHedges.size());
+        assertEquals(1, hedging.getFetchCount());
+    }
+
+    @Test
+    public void testLosingBlockingFetchIsInterrupted() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch firstInterrupted = new CountDownLatch(1);
+        ExecutorService fetchExecutor = Executors.newFixedThreadPool(2);
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0).withFetchExecutor(fetchExecutor);
+        AtomicLong calls = new AtomicLong();
+        try {
+            CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> hedging.fetch(() -> {
+                if (calls.incrementAndGet() > 1) {
+                    return "hedged";
+                }
+                firstStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    firstInterrupted.countDown();
+                }
+                return "first";
+            }));
+            assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+            verify(scheduler, timeout(10000)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+            scheduledHedges.get(0).run();
+
+            assertEquals("hedged", result.get(10, TimeUnit.SECONDS));
+            assertTrue(firstInterrupted.await(10, TimeUnit.SECONDS));
+        } finally {
+            fetchExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFetchRunsOnCallingThreadWhenExecutorIsSaturated() {
+        ExecutorService fetchExecutor = mock(ExecutorService.class);
+        doThrow(new RejectedExecutionException()).when(fetchExecutor).execute(any(Runnable.class));
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0).withFetchExecutor(fetchExecutor);
+        Thread caller = Thread.currentThread();
+
+        assertEquals("payload", hedging.fetch(() -> Thread.currentThread() == caller ? "payload" : "other"));
+    }
+
+    @Test
+    public void testFetchCompletedBeforeDelayIsNotHedged() {
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0);
+
+        CompletableFuture<String> result = hedging.fetchAsync(this::newAttempt);
+        attempts.get(0).complete("first");
+        scheduledHedges.get(0).run();
+
+        assertEquals("first", result.join());
+        assertEquals(1, attempts.size());
+        assertEquals(0, hedging.getHedgeCount());
+    }
+
+    @Test
+    public void testHedgesAreCappedAtMaxRatio() {
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 0.5);
+
+        hedging.fetchAsync(this::newAttempt);
+        scheduledHedges.get(0).run();
+        assertEquals(1, attempts.size());
+
+        hedging.fetchAsync(this::newAttempt);
+        scheduledHedges.get(1).run();
+        assertEquals(3, attempts.size());
+
+        assertEquals(2, hedging.getFetchCount());
+        assertEquals(1, hedging.getHedgeCount());
+    }
+
+    @Test
+    public void testFailureWaitsForPendingHedge() {
+        PayloadFetchHedging hedging = newHedging(Double.NaN, 1.0);
+
+        CompletableFuture<String> result = hedging.fetchAsync(this::newAttempt);
+        scheduledHedges.get(0).run();
+        attempts.get(0).completeExceptionally(SdkClientException.create("failed"));
+        assertFalse(result.isDone());
+
+        SdkClientException failure = SdkClientException.create("failed again");
+        attempts.get(1).completeExceptionally(failure);
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, hedging.getHedgeWinCount());
+    }
+
+    @Test
+    public void testDelayTracksLatencyPercentile() {
+        PayloadFetchHedging hedging = newHedging(0.5, 1.0);
+
+        for (int i = 1; i <= 64; i++) {
+            hedging.fetchAsync(this::newAttempt);
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(i));
+            attempts.get(attempts.size() - 1).complete("payload");
+        }
+
+        assertEquals(Duration.ofMillis(33), hedging.getHedgeDelay());
+    }
+
+    @Test
+    public void testBlockingFetchReturnsResultAndRethrowsFailure() {
+        PayloadFetchHedging hedging = PayloadFetchHedging.fixedDelay(Duration.ofSeconds(10), 0.05);
+        SdkClientException failure = SdkClientException.create("failed");
+
+        assertEquals("payload", hedging.fetch(() -> "payload"));
+        assertSame(failure, assertThrows(SdkClientException.class, () -> hedging.fetch(() -> {
+            throw failure;
+        })));
+    }
+
+    @Test
+    public void testInvalidSettingsAreRejected() {
+        assertThrows(SdkClientException.class, () -> PayloadFetchHedging.fixedDelay(Duration.ZERO, 0.05));
+        assertThrows(SdkClientException.class, () -> PayloadFetchHedging.fixedDelay(Duration.ofMillis(50), 0));
+        assertThrows(SdkClientException.class,
+                () -> PayloadFetchHedging.percentileDelay(1.0, Duration.ofMillis(50), 0.05));
+    }
+
+    private PayloadFetchHedging newHedging(double percentile, double maxHedgeRatio) {
+        return new PayloadFetchHedging(percentile, Duration.ofMillis(1), maxHedgeRatio, nanoTime::get, scheduler,
+                null).withMaxHedgedPayloadSize(Long.MAX_VALUE);
+    }
+
+    private CompletableFuture<String> newAttempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+}
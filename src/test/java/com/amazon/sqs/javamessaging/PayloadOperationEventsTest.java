@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests the PayloadOperationEvents class.
+ */
+public class PayloadOperationEventsTest {
+
+    private static final String SQS_QUEUE_URL = "test-queue-url";
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+
+    @BeforeEach
+    public void setupJfr() {
+        assumeTrue(PayloadOperationEvents.isJfrAvailable());
+    }
+
+    @Test
+    public void testWhenNotRecordingThenHandleIsDisabled() {
+        assertSame(PayloadOperationEvents.DISABLED,
+            PayloadOperationEvents.begin(PayloadOperationEvents.Operation.STORE));
+    }
+
+    @Test
+    public void testWhenRecordingThenEventsAreCommitted() throws IOException {
+        List<RecordedEvent> events;
+        Path dump = Files.createTempFile("payload-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PayloadJfrEvents.PayloadStoreEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(PayloadJfrEvents.PayloadFetchEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            PayloadOperationEvents.begin(PayloadOperationEvents.Operation.STORE)
+                .complete(SQS_QUEUE_URL, S3_BUCKET_NAME, 1024L, true);
+            PayloadOperationEvents.begin(PayloadOperationEvents.Operation.FETCH)
+                .completeForPointer(SQS_QUEUE_URL, new PayloadS3Pointer(S3_BUCKET_NAME, "S3Key").toJson(), -1L, false);
+            PayloadOperationEvents.begin(PayloadOperationEvents.Operation.DELETE)
+                .complete(SQS_QUEUE_URL, S3_BUCKET_NAME, -1L, true);
+
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+
+        RecordedEvent storeEvent = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.amazon.sqs.javamessaging.PayloadStore"))
+            .findFirst().get();
+        assertEquals(SQS_QUEUE_URL, storeEvent.getString("queueUrl"));
+        assertEquals(S3_BUCKET_NAME, storeEvent.getString("s3BucketName"));
+        assertEquals(1024L, storeEvent.getLong("payloadBytes"));
+        assertTrue(storeEvent.getBoolean("succeeded"));
+
+        RecordedEvent fetchEvent = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.amazon.sqs.javamessaging.PayloadFetch"))
+            .findFirst().get();
+        assertEquals(S3_BUCKET_NAME, fetchEvent.getString("s3BucketName"));
+        assertFalse(fetchEvent.getBoolean("succeeded"));
+    }
+}
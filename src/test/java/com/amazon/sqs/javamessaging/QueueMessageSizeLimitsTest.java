@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests the QueueMessageSizeLimits class.
+ */
+public class QueueMessageSizeLimitsTest {
+    private static final String QUEUE_URL = "test-queue-url";
+    private static final int FALLBACK_LIMIT = 262144;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final List<GetQueueAttributesRequest> requests = new ArrayList<>();
+    private final List<CompletableFuture<GetQueueAttributesResponse>> responses = new ArrayList<>();
+    private final QueueMessageSizeLimits limits = new QueueMessageSizeLimits(Duration.ofMinutes(5), FALLBACK_LIMIT,
+            request -> {
+                requests.add(request);
+                CompletableFuture<GetQueueAttributesResponse> response = new CompletableFuture<>();
+                responses.add(response);
+                return response;
+            }, nanoTime::get);
+
+    @Test
+    public void testLimitIsReadOnceAndCachedUntilTtlExpires() {
+        CompletableFuture<Integer> first = limits.get(QUEUE_URL);
+        CompletableFuture<Integer> concurrent = limits.get(QUEUE_URL);
+        assertSame(first, concurrent);
+        assertEquals(1, requests.size());
+        assertEquals(Collections.singletonList(QueueAttributeName.MAXIMUM_MESSAGE_SIZE),
+                requests.get(0).attributeNames());
+
+        responses.get(0).complete(maximumMessageSize("1048576"));
+        assertEquals(1048576, limits.get(QUEUE_URL).join());
+
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        CompletableFuture<Integer> refreshed = limits.get(QUEUE_URL);
+        assertEquals(2, requests.size());
+        responses.get(1).complete(maximumMessageSize("65536"));
+        assertEquals(65536, refreshed.join());
+    }
+
+    @Test
+    public void testLoadingLimitDoesNotExpire() {
+        CompletableFuture<Integer> first = limits.get(QUEUE_URL);
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(10));
+
+        assertSame(first, limits.get(QUEUE_URL));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void testFailedLookupFallsBackToThreshold() {
+        CompletableFuture<Integer> limit = limits.get(QUEUE_URL);
+        responses.get(0).completeExceptionally(SqsException.builder().message("denied").build());
+
+        assertEquals(FALLBACK_LIMIT, limit.join());
+    }
+
+    @Test
+    public void testMissingAttributeFallsBackToThreshold() {
+        CompletableFuture<Integer> limit = limits.get(QUEUE_URL);
+        responses.get(0).complete(GetQueueAttributesResponse.builder().build());
+
+        assertEquals(FALLBACK_LIMIT, limit.join());
+    }
+
+    private static GetQueueAttributesResponse maximumMessageSize(String value) {
+        return GetQueueAttributesResponse.builder()
+                .attributes(Collections.singletonMap(QueueAttributeName.MAXIMUM_MESSAGE_SIZE, value))
+                .build();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the QueueMetadataCache class.
+ */
+public class QueueMetadataCacheTest {
+    private static final String QUEUE_NAME = "test-queue";
+    private static final String QUEUE_URL = "test-queue-url";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final List<CompletableFuture<GetQueueUrlResponse>> queueUrlResponses = new ArrayList<>();
+    private final List<CompletableFuture<GetQueueAttributesResponse>> attributesResponses = new ArrayList<>();
+    private final QueueMetadataCache cache = new QueueMetadataCache(Duration.ofMinutes(5),
+            QueueMetadataCache.DEFAULT_CACHED_ATTRIBUTE_NAMES, nanoTime::get);
+
+    @Test
+    public void testConcurrentMissesShareOneCallUntilTtlExpires() {
+        CompletableFuture<GetQueueUrlResponse> first = getQueueUrl();
+        CompletableFuture<GetQueueUrlResponse> concurrent = getQueueUrl();
+        assertEquals(1, queueUrlResponses.size());
+
+        queueUrlResponses.get(0).complete(GetQueueUrlResponse.builder().queueUrl(QUEUE_URL).build());
+        assertEquals(QUEUE_URL, first.join().queueUrl());
+        assertEquals(QUEUE_URL, concurrent.join().queueUrl());
+        assertEquals(QUEUE_URL, getQueueUrl().join().queueUrl());
+        assertEquals(1, queueUrlResponses.size());
+
+        nanoTime.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        getQueueUrl();
+        assertEquals(2, queueUrlResponses.size());
+    }
+
+    @Test
+    public void testFailuresAreSharedButNotCached() {
+        CompletableFuture<GetQueueUrlResponse> first = getQueueUrl();
+        CompletableFuture<GetQueueUrlResponse> concurrent = getQueueUrl();
+        queueUrlResponses.get(0).completeExceptionally(QueueDoesNotExistException.builder().build());
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, concurrent::join);
+        getQueueUrl();
+        assertEquals(2, queueUrlResponses.size());
+    }
+
+    @Test
+    public void testOnlyCachedAttributesAreCached() {
+        getQueueAttributes(QueueAttributeName.QUEUE_ARN).join();
+        getQueueAttributes(QueueAttributeName.QUEUE_ARN).join();
+        assertEquals(1, attributesResponses.size());
+
+        getQueueAttributes(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES).join();
+        getQueueAttributes(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES).join();
+        getQueueAttributes(QueueAttributeName.ALL).join();
+        assertEquals(4, attributesResponses.size());
+    }
+
+    @Test
+    public void testInvalidateDropsUrlAndAttributesOfQueue() {
+        getQueueUrl();
+        queueUrlResponses.get(0).complete(GetQueueUrlResponse.builder().queueUrl(QUEUE_URL).build());
+        getQueueAttributes(QueueAttributeName.QUEUE_ARN).join();
+
+        cache.invalidateIfQueueDoesNotExist(QUEUE_URL,
+                new CompletionException(QueueDoesNotExistException.builder().build()));
+
+        getQueueUrl();
+        getQueueAttributes(QueueAttributeName.QUEUE_ARN).join();
+        assertEquals(2, queueUrlResponses.size());
+        assertEquals(2, attributesResponses.size());
+    }
+
+    @Test
+    public void testLoadInvalidatedWhileInFlightIsNotCached() {
+        CompletableFuture<GetQueueUrlResponse> inFlight = getQueueUrl();
+        cache.invalidate(QUEUE_URL);
+        queueUrlResponses.get(0).complete(GetQueueUrlResponse.builder().queueUrl(QUEUE_URL).build());
+        assertTrue(inFlight.isDone());
+
+        getQueueUrl();
+        assertEquals(2, queueUrlResponses.size());
+    }
+
+    private CompletableFuture<GetQueueUrlResponse> getQueueUrl() {
+        return cache.getQueueUrl(GetQueueUrlRequest.builder().queueName(QUEUE_NAME).build(), request -> {
+            CompletableFuture<GetQueueUrlResponse> response = new CompletableFuture<>();
+            queueUrlResponses.add(response);
+            return response;
+        });
+    }
+
+    private CompletableFuture<GetQueueAttributesResponse> getQueueAttributes(QueueAttributeName attributeName) {
+        GetQueueAttributesRequest request = GetQueueAttributesRequest.builder()
+                .queueUrl(QUEUE_URL)
+                .attributeNames(attributeName)
+                .build();
+        return cache.getQueueAttributes(request, r -> {
+            CompletableFuture<GetQueueAttributesResponse> response =
+                    CompletableFuture.completedFuture(GetQueueAttributesResponse.builder().build());
+            attributesResponses.add(response);
+            return response;
+        });
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the S3BucketRoutingPolicies class.
+ */
+public class S3BucketRoutingPoliciesTest {
+
+    @Test
+    public void testRoundRobin() {
+        S3BucketRoutingPolicy policy = S3BucketRoutingPolicies.roundRobin("bucket-a", "bucket-b", "bucket-c");
+
+        assertEquals(3, policy.getBucketNames().size());
+        assertEquals("bucket-a", policy.selectBucket(1));
+        assertEquals("bucket-b", policy.selectBucket(1));
+        assertEquals("bucket-c", policy.selectBucket(1));
+        assertEquals("bucket-a", policy.selectBucket(1));
+    }
+
+    @Test
+    public void testWeighted() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("bucket-a", 3);
+        weights.put("bucket-b", 1);
+        S3BucketRoutingPolicy policy = S3BucketRoutingPolicies.weighted(weights);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            counts.merge(policy.selectBucket(1), 1, Integer::sum);
+        }
+
+        assertEquals(2, counts.size());
+        double ratio = counts.get("bucket-a") / (double) counts.get("bucket-b");
+        assertTrue(ratio > 2.5 && ratio < 3.5, "Unexpected ratio " + ratio);
+    }
+
+    @Test
+    public void testBySizeClass() {
+        Map<Long, String> sizeClasses = new TreeMap<>();
+        sizeClasses.put(1024L * 1024, "bucket-medium");
+        sizeClasses.put(1024L * 1024 * 1024, "bucket-large");
+        S3BucketRoutingPolicy policy = S3BucketRoutingPolicies.bySizeClass("bucket-small", sizeClasses);
+
+        assertEquals(3, policy.getBucketNames().size());
+        assertEquals("bucket-small", policy.selectBucket(1024L * 1024 - 1));
+        assertEquals("bucket-medium", policy.selectBucket(1024L * 1024));
+        assertEquals("bucket-large", policy.selectBucket(2L * 1024 * 1024 * 1024));
+    }
+
+    @Test
+    public void testInvalidPolicies() {
+        assertThrows(SdkClientException.class, S3BucketRoutingPolicies::roundRobin);
+        assertThrows(SdkClientException.class, () -> S3BucketRoutingPolicies.roundRobin("bucket-a", " "));
+        assertThrows(SdkClientException.class,
+            () -> S3BucketRoutingPolicies.weighted(Collections.singletonMap("bucket-a", 0)));
+        assertThrows(SdkClientException.class,
+            () -> S3BucketRoutingPolicies.bySizeClass("bucket-a", Collections.singletonMap(-1L, "bucket-b")));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the S3ConcurrencyLimiter class.
+ */
+public class S3ConcurrencyLimiterTest {
+
+    @Test
+    public void testOperationsBeyondLimitWaitAndStartInOrder() {
+        S3ConcurrencyLimiter limiter = new S3ConcurrencyLimiter(2);
+        List<CompletableFuture<Integer>> operations = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            int index = i;
+            CompletableFuture<Integer> operation = new CompletableFuture<>();
+            operations.add(operation);
+            results.add(limiter.submit(() -> {
+                started.add(index);
+                return operation;
+            }));
+        }
+
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(2, limiter.getQueueDepth());
+        assertEquals(2, limiter.getPeakQueueDepth());
+        assertEquals(Arrays.asList(0, 1), started);
+
+        operations.get(1).complete(1);
+        assertEquals(Arrays.asList(0, 1, 2), started);
+        assertEquals(1, results.get(1).join());
+        assertEquals(1, limiter.getQueueDepth());
+
+        operations.get(0).completeExceptionally(new IllegalStateException("failed"));
+        assertTrue(results.get(0).isCompletedExceptionally());
+        assertEquals(Arrays.asList(0, 1, 2, 3), started);
+
+        operations.get(2).complete(2);
+        operations.get(3).complete(3);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testPermitIsReleasedWhenOperationFailsToStart() {
+        S3ConcurrencyLimiter limiter = new S3ConcurrencyLimiter(1);
+
+        CompletableFuture<Object> failed = limiter.submit(() -> {
+            throw new IllegalStateException("failed");
+        });
+        CompletableFuture<String> next = limiter.submit(() -> CompletableFuture.completedFuture("next"));
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("next", next.join());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testQueuedOperationsDoNotJumpAheadWhenPermitIsFree() {
+        S3ConcurrencyLimiter limiter = new S3ConcurrencyLimiter(1);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        CompletableFuture<String> second = limiter.submit(() -> CompletableFuture.completedFuture("second"));
+
+        assertFalse(second.isDone());
+        first.complete("first");
+
+        assertEquals("second", second.join());
+    }
+
+    @Test
+    public void testLongQueueOfSynchronouslyCompletingOperationsDoesNotRecurse() {
+        S3ConcurrencyLimiter limiter = new S3ConcurrencyLimiter(1);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            int index = i;
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(index)));
+        }
+
+        first.complete(-1);
+
+        assertEquals(99999, results.get(99999).join());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testCancellingResultCancelsOperation() {
+        S3ConcurrencyLimiter limiter = new S3ConcurrencyLimiter(1);
+        CompletableFuture<String> operation = new CompletableFuture<>();
+        CompletableFuture<String> result = limiter.submit(() -> operation);
+        CompletableFuture<String> queued = limiter.submit(() -> CompletableFuture.completedFuture("queued"));
+
+        queued.cancel(true);
+        result.cancel(true);
+
+        assertTrue(operation.isCancelled());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testNonPositiveLimitIsRejected() {
+        assertThrows(SdkClientException.class, () -> new S3ConcurrencyLimiter(0));
+    }
+}
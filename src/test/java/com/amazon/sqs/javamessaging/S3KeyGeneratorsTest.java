@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the S3KeyGenerators class.
+ */
+public class S3KeyGeneratorsTest {
+
+    @Test
+    public void testFormatMatchesUuidToString() {
+        UUID uuid = new UUID(0x0123456789abcdefL, 0xfedcba9876543210L);
+
+        assertEquals(uuid.toString(), S3KeyGenerators.format(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+
+    @Test
+    public void testThreadLocalRandomGeneratesVersion4Uuids() {
+        S3KeyGenerator s3KeyGenerator = S3KeyGenerators.threadLocalRandom();
+        Set<String> names = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            String name = s3KeyGenerator.generateS3KeyName();
+            UUID uuid = UUID.fromString(name);
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertEquals(name, uuid.toString());
+            names.add(name);
+        }
+
+        assertEquals(10000, names.size());
+    }
+
+    @Test
+    public void testTimeOrderedGeneratesSortedVersion7Uuids() {
+        AtomicLong millis = new AtomicLong(1700000000000L);
+        Clock clock = new Clock() {
+            @Override
+            public ZoneOffset getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(java.time.ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochMilli(millis.getAndIncrement());
+            }
+        };
+        S3KeyGenerator s3KeyGenerator = S3KeyGenerators.timeOrdered(clock);
+
+        String previous = "";
+        for (int i = 0; i < 1000; i++) {
+            String name = s3KeyGenerator.generateS3KeyName();
+            UUID uuid = UUID.fromString(name);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertTrue(name.compareTo(previous) > 0);
+            previous = name;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the S3KeyPartitioners class.
+ */
+public class S3KeyPartitionersTest {
+
+    @Test
+    public void testHashedPartitionsAreSpreadAndValid() {
+        S3KeyPartitioner s3KeyPartitioner = S3KeyPartitioners.hashed(256);
+        Set<String> partitions = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            String partition = s3KeyPartitioner.getPartition(UUID.randomUUID().toString());
+            assertEquals(3, partition.length());
+            assertEquals(partition, AmazonSQSExtendedClientUtil.trimAndValidateS3KeyPrefix(partition));
+            partitions.add(partition);
+        }
+
+        assertEquals(256, partitions.size());
+        assertEquals(3, s3KeyPartitioner.getMaxPartitionLength());
+    }
+
+    @Test
+    public void testHashedPartitionIsStableForTheSameName() {
+        S3KeyPartitioner s3KeyPartitioner = S3KeyPartitioners.hashed(10);
+        String s3KeyName = UUID.randomUUID().toString();
+
+        assertEquals(s3KeyPartitioner.getPartition(s3KeyName), s3KeyPartitioner.getPartition(s3KeyName));
+        assertTrue(s3KeyPartitioner.getPartition(s3KeyName).matches("[0-9]/"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1, S3KeyPartitioners.MAX_HASHED_PARTITION_COUNT + 1})
+    public void testHashedWithInvalidPartitionCount(int partitionCount) {
+        assertThrows(SdkClientException.class, () -> S3KeyPartitioners.hashed(partitionCount));
+    }
+
+    @Test
+    public void testDateHourPartition() {
+        Clock clock = Clock.fixed(Instant.parse("2024-01-02T03:04:05Z"), ZoneOffset.UTC);
+        S3KeyPartitioner s3KeyPartitioner = S3KeyPartitioners.dateHour(clock);
+
+        assertEquals("2024/01/02/03/", s3KeyPartitioner.getPartition("any"));
+        assertEquals("2024/01/02/03/".length(), s3KeyPartitioner.getMaxPartitionLength());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the S3PayloadSweeper class.
+ */
+public class S3PayloadSweeperTest {
+    private static final String S3_BUCKET_NAME = "test-bucket-name";
+    private static final String PREFIX = "123456789012/test-queue/";
+    private static final Instant PURGE_START_TIME = Instant.parse("2024-05-31T23:00:00Z");
+
+    private final Map<String, ListObjectsV2Response> pages = new HashMap<>();
+    private final List<String> deletedKeys = Collections.synchronizedList(new ArrayList<>());
+    private final List<PayloadSweepProgress> reports = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testPartitionsAndPagesAreWalkedAndOldObjectsDeleted() {
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "a", PURGE_START_TIME.minusSeconds(60)))
+                .commonPrefixes(CommonPrefix.builder().prefix(PREFIX + "00/").build(),
+                        CommonPrefix.builder().prefix(PREFIX + "01/").build())
+                .build());
+        pages.put(PREFIX + "00/|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "00/b", PURGE_START_TIME.minusSeconds(60)))
+                .isTruncated(true)
+                .nextContinuationToken("token")
+                .build());
+        pages.put(PREFIX + "00/|token", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "00/c", PURGE_START_TIME.minusSeconds(60)),
+                        object(PREFIX + "00/new", PURGE_START_TIME.plusSeconds(1)))
+                .build());
+        pages.put(PREFIX + "01/|null", ListObjectsV2Response.builder().build());
+
+        PayloadSweepProgress progress = newSweeper(this::delete).sweep(
+                Collections.singletonList(S3_BUCKET_NAME), PREFIX).join();
+
+        assertEquals(4, progress.getPagesListed());
+        assertEquals(3, progress.getObjectsListed());
+        assertEquals(3, progress.getObjectsDeleted());
+        assertEquals(0, progress.getObjectsFailed());
+        assertTrue(progress.isComplete());
+        assertFalse(deletedKeys.contains(PREFIX + "00/new"));
+        assertTrue(deletedKeys.containsAll(Arrays.asList(PREFIX + "a", PREFIX + "00/b", PREFIX + "00/c")));
+        assertTrue(reports.get(reports.size() - 1).isComplete());
+    }
+
+    @Test
+    public void testFailedDeletionsAreCounted() {
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "a", PURGE_START_TIME.minusSeconds(60)),
+                        object(PREFIX + "b", PURGE_START_TIME.minusSeconds(60)))
+                .build());
+
+        PayloadSweepProgress progress = newSweeper(request -> CompletableFuture.completedFuture(
+                DeleteObjectsResponse.builder()
+                        .errors(S3Error.builder().key(PREFIX + "b").code("AccessDenied").build())
+                        .build()))
+                .sweep(Collections.singletonList(S3_BUCKET_NAME), PREFIX).join();
+
+        assertEquals(1, progress.getObjectsDeleted());
+        assertEquals(1, progress.getObjectsFailed());
+    }
+
+    @Test
+    public void testListingFailureFailsTheSweepAfterTheOtherPrefixes() {
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "a", PURGE_START_TIME.minusSeconds(60)))
+                .commonPrefixes(CommonPrefix.builder().prefix(PREFIX + "missing/").build())
+                .build());
+
+        CompletableFuture<PayloadSweepProgress> sweep = newSweeper(this::delete).sweep(
+                Collections.singletonList(S3_BUCKET_NAME), PREFIX);
+
+        CompletionException exception = assertThrows(CompletionException.class, sweep::join);
+        assertInstanceOf(SdkClientException.class, exception.getCause());
+        assertEquals(Collections.singletonList(PREFIX + "a"), deletedKeys);
+    }
+
+    @Test
+    public void testKeyRangeSplittingListsEveryKeyExactlyOnce() {
+        List<String> keys = Arrays.asList(PREFIX + "0a", PREFIX + "1", PREFIX + "1b", PREFIX + "9c", PREFIX + "f3",
+                PREFIX + "zz");
+
+        PayloadSweepProgress progress = new S3PayloadSweeper(4, PURGE_START_TIME, null,
+                request -> CompletableFuture.completedFuture(ListObjectsV2Response.builder()
+                        .contents(keys.stream()
+                                .filter(key -> request.startAfter() == null || key.compareTo(request.startAfter()) > 0)
+                                .map(key -> object(key, PURGE_START_TIME.minusSeconds(60)))
+                                .collect(Collectors.toList()))
+                        .build()),
+                this::delete)
+                .withKeyRangeSplitting()
+                .sweep(Collections.singletonList(S3_BUCKET_NAME), PREFIX).join();
+
+        assertEquals(16, progress.getPagesListed());
+        assertEquals(keys.size(), progress.getObjectsDeleted());
+        assertEquals(keys.size(), deletedKeys.size());
+        assertTrue(deletedKeys.containsAll(keys));
+    }
+
+    @Test
+    public void testTimeOrderedKeysStopListingAtNamesCreatedAfterCutoff() {
+        String oldName = S3KeyGenerators.timeOrdered(
+                Clock.fixed(PURGE_START_TIME.minusSeconds(60), ZoneOffset.UTC)).generateS3KeyName();
+        String newName = S3KeyGenerators.timeOrdered(
+                Clock.fixed(PURGE_START_TIME.plusSeconds(60), ZoneOffset.UTC)).generateS3KeyName();
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + oldName, PURGE_START_TIME.minusSeconds(60)),
+                        object(PREFIX + newName, PURGE_START_TIME.minusSeconds(60)))
+                .isTruncated(true)
+                .nextContinuationToken("token")
+                .build());
+
+        PayloadSweepProgress progress = newSweeper(this::delete).withTimeOrderedKeys()
+                .sweep(Collections.singletonList(S3_BUCKET_NAME), PREFIX).join();
+
+        assertEquals(1, progress.getPagesListed());
+        assertEquals(Collections.singletonList(PREFIX + oldName), deletedKeys);
+    }
+
+    @Test
+    public void testDeleteRateLimitDelaysDeletes() {
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "a", PURGE_START_TIME.minusSeconds(60)))
+                .commonPrefixes(CommonPrefix.builder().prefix(PREFIX + "00/").build())
+                .build());
+        pages.put(PREFIX + "00/|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "00/b", PURGE_START_TIME.minusSeconds(60)))
+                .build());
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+        CompletableFuture<PayloadSweepProgress> sweep = newSweeper(this::delete)
+                .withDeleteRateLimit(1, scheduler)
+                .sweep(Collections.singletonList(S3_BUCKET_NAME), PREFIX);
+
+        assertEquals(Collections.singletonList(PREFIX + "a"), deletedKeys);
+        verify(scheduler).schedule(isA(Runnable.class),
+                longThat(delayNanos -> delayNanos > TimeUnit.MILLISECONDS.toNanos(500)), eq(TimeUnit.NANOSECONDS));
+        assertFalse(sweep.isDone());
+    }
+
+    @Test
+    public void testWithoutDeleteObjectsOldObjectsAreOnlyCounted() {
+        pages.put(PREFIX + "|null", ListObjectsV2Response.builder()
+                .contents(object(PREFIX + "a", PURGE_START_TIME.minusSeconds(60)))
+                .build());
+
+        PayloadSweepProgress progress = newSweeper(null).sweep(
+                Collections.singletonList(S3_BUCKET_NAME), PREFIX).join();
+
+        assertEquals(1, progress.getObjectsListed());
+        assertEquals(0, progress.getObjectsDeleted());
+    }
+
+    private S3PayloadSweeper newSweeper(
+            Function<DeleteObjectsRequest, CompletableFuture<DeleteObjectsResponse>> deleteObjects) {
+        return new S3PayloadSweeper(2, PURGE_START_TIME, reports::add, this::list, deleteObjects);
+    }
+
+    private CompletableFuture<ListObjectsV2Response> list(ListObjectsV2Request request) {
+        assertEquals(S3_BUCKET_NAME, request.bucket());
+        assertEquals("/", request.delimiter());
+        ListObjectsV2Response page = pages.get(request.prefix() + "|" + request.continuationToken());
+        CompletableFuture<ListObjectsV2Response> response = new CompletableFuture<>();
+        if (page == null) {
+            response.completeExceptionally(SdkClientException.create("No such page"));
+        } else {
+            response.complete(page);
+        }
+        return response;
+    }
+
+    private CompletableFuture<DeleteObjectsResponse> delete(DeleteObjectsRequest request) {
+        deletedKeys.addAll(request.delete().objects().stream().map(ObjectIdentifier::key).collect(Collectors.toList()));
+        return CompletableFuture.completedFuture(DeleteObjectsResponse.builder().build());
+    }
+
+    private static S3Object object(String key, Instant lastModified) {
+        return S3Object.builder().key(key).lastModified(lastModified).build();
+    }
+}
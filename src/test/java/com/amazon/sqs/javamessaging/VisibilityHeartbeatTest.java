@@ -0,0 +1,186 @@
+/*
+ * Copyright 2010-2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.amazon.sqs.javamessaging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.payloadoffloading.PayloadS3Pointer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the VisibilityHeartbeat class.
+ */
+public class VisibilityHeartbeatTest {
+    private static final String QUEUE_URL = "test-queue-url";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final List<ChangeMessageVisibilityBatchRequest> requests = new ArrayList<>();
+    private ScheduledFuture<?> task;
+    private ChangeMessageVisibilityBatchResponse response;
+    private VisibilityHeartbeat heartbeat;
+
+    @BeforeEach
+    public void setupHeartbeat() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        task = mock(ScheduledFuture.class);
+        doReturn(task).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        response = ChangeMessageVisibilityBatchResponse.builder().build();
+        heartbeat = new VisibilityHeartbeat(120, 30, (int) VisibilityHeartbeat.MAX_VISIBILITY_SECONDS, request -> {
+            requests.add(request);
+            return CompletableFuture.completedFuture(response);
+        }, nanoTime::get, scheduler);
+        verify(scheduler).scheduleWithFixedDelay(any(Runnable.class), eq(30L), eq(30L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTrackedMessagesAreExtendedInBatches() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            messages.add(Message.builder().receiptHandle("handle-" + i).build());
+        }
+        heartbeat.track(QUEUE_URL, messages);
+
+        heartbeat.beat();
+
+        assertEquals(2, requests.size());
+        assertEquals(10, requests.get(0).entries().size());
+        assertEquals(2, requests.get(1).entries().size());
+        assertEquals(QUEUE_URL, requests.get(0).queueUrl());
+        assertEquals(120, requests.get(0).entries().get(0).visibilityTimeout());
+    }
+
+    @Test
+    public void testOriginalReceiptHandleIsExtendedAndReleased() {
+        String receiptHandle = AmazonSQSExtendedClientUtil.embedS3PointerInReceiptHandle("handle",
+                new PayloadS3Pointer("test-bucket", "key").toJson());
+        heartbeat.track(QUEUE_URL, Collections.singletonList(Message.builder().receiptHandle(receiptHandle).build()));
+
+        heartbeat.beat();
+        assertEquals("handle", requests.get(0).entries().get(0).receiptHandle());
+
+        heartbeat.release(QUEUE_URL, receiptHandle);
+        assertEquals(0, heartbeat.getTrackedCount());
+    }
+
+    @Test
+    public void testFailedEntriesStopBeingTracked() {
+        heartbeat.track(QUEUE_URL, messages("handle-0", "handle-1"));
+        response = ChangeMessageVisibilityBatchResponse.builder()
+                .failed(BatchResultErrorEntry.builder().id("1").code("ReceiptHandleIsInvalid").build())
+                .build();
+
+        heartbeat.beat();
+        // Tracked messages are not extended in any particular order
+        String failedReceiptHandle = null;
+        for (ChangeMessageVisibilityBatchRequestEntry entry : requests.get(0).entries()) {
+            if (entry.id().equals("1")) {
+                failedReceiptHandle = entry.receiptHandle();
+            }
+        }
+        String remainingReceiptHandle = "handle-0".equals(failedReceiptHandle) ? "handle-1" : "handle-0";
+        requests.clear();
+        heartbeat.beat();
+
+        assertEquals(1, requests.get(0).entries().size());
+        assertEquals(remainingReceiptHandle, requests.get(0).entries().get(0).receiptHandle());
+    }
+
+    @Test
+    public void testExtensionStopsAtTwelveHours() {
+        heartbeat.track(QUEUE_URL, messages("handle"));
+
+        nanoTime.set(TimeUnit.HOURS.toNanos(12) - TimeUnit.SECONDS.toNanos(30));
+        heartbeat.beat();
+        ChangeMessageVisibilityBatchRequestEntry entry = requests.get(0).entries().get(0);
+        assertEquals(30, entry.visibilityTimeout());
+
+        nanoTime.set(TimeUnit.HOURS.toNanos(12));
+        heartbeat.beat();
+        assertEquals(1, requests.size());
+        assertEquals(0, heartbeat.getTrackedCount());
+    }
+
+    @Test
+    public void testExtensionStopsAtMaxExtensionTime() {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        doReturn(task).when(scheduler).scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+        heartbeat = new VisibilityHeartbeat(120, 30, 600, request -> {
+            requests.add(request);
+            return CompletableFuture.completedFuture(response);
+        }, nanoTime::get, scheduler);
+        heartbeat.track(QUEUE_URL, messages("handle"));
+
+        nanoTime.set(TimeUnit.SECONDS.toNanos(540));
+        heartbeat.beat();
+        assertEquals(60, requests.get(0).entries().get(0).visibilityTimeout());
+
+        nanoTime.set(TimeUnit.SECONDS.toNanos(600));
+        heartbeat.beat();
+        assertEquals(1, requests.size());
+        assertEquals(0, heartbeat.getTrackedCount());
+    }
+
+    @Test
+    public void testCloseCancelsHeartbeat() {
+        heartbeat.track(QUEUE_URL, messages("handle"));
+
+        heartbeat.close();
+
+        verify(task).cancel(false);
+        assertEquals(0, heartbeat.getTrackedCount());
+    }
+
+    @Test
+    public void testInvalidHeartbeatSettingsAreRejected() {
+        assertThrows(SdkClientException.class, () -> new ExtendedClientConfiguration().withVisibilityHeartbeat(30, 30));
+        assertThrows(SdkClientException.class,
+                () -> new ExtendedAsyncClientConfiguration().withVisibilityHeartbeat(43201, 30));
+        assertThrows(SdkClientException.class,
+                () -> new ExtendedClientConfiguration().withVisibilityHeartbeatMaxExtension(0));
+    }
+
+    private static List<Message> messages(String... receiptHandles) {
+        List<Message> messages = new ArrayList<>();
+        for (String receiptHandle : receiptHandles) {
+            messages.add(Message.builder().receiptHandle(receiptHandle).build());
+        }
+        return messages;
+    }
+}